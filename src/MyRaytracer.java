@@ -6,8 +6,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -16,6 +20,8 @@ import lighting.*;
 import lighting.models.*;
 import math.*;
 import math.geometry.*;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.acceleration.SceneAccelerator;
 import math.geometry.objects.*;
 import scene.*;
 import stuff.*;
@@ -36,11 +42,30 @@ public class MyRaytracer {
     private static MemoryImageSource imageSource;
 
     private static CubeMap skybox = null;
+    private static SceneAccelerator sceneAccelerator;
+    private static ShadowSampler shadowSampler;
+    private static LightBVH lightBVH;
+    private static LightResampler lightResampler;
+    private static ShadowStatistics shadowStatistics;
+    private static final AcceleratorType SCENE_ACCELERATOR = AcceleratorType.SAH_BVH;
     private static final CookTorranceLighting cookTorranceLighting = new CookTorranceLighting();
     private static final int DIFFUSE_REFLECTION_SAMPLES = 0;
     private static final int GLOSSY_REFLECTION_SAMPLES = 1;
-
-    private static final int SOFT_SHADOW_SAMPLES =1;
+    private static final int ENVIRONMENT_SAMPLES = 4;
+    private static final boolean SH_AMBIENT = true;             // SH sky irradiance instead of environment NEE on secondary hits
+    private static final boolean SH_AMBIENT_PRIMARY = false;    // ... and on primary hits too
+    private static final int AMBIENT_OCCLUSION_SAMPLES = 4;     // occlusion rays darkening the SH term on every hit
+    private static final float AMBIENT_OCCLUSION_RADIUS = 1.0f;
+
+    private static final int SOFT_SHADOW_SAMPLES = 16;
+    private static final int SHADOW_PROBE_SAMPLES = 4;
+    private static final int MANY_LIGHTS_THRESHOLD = 16;
+    private static final int LIGHT_SAMPLES = 4;
+    private static final boolean RESERVOIR_RESAMPLING = false;
+    private static final int RESERVOIR_PASSES = 4;
+    private static final int RESERVOIR_CANDIDATES = 32;
+    private static final int RESERVOIR_NEIGHBOURS = 4;
+    private static final boolean DISTANCE_FIELD_SOFT_SHADOWS = true;
 
     private static final int MAX_SUPERSAMPLING_DEPTH = 3;
     private static final int SUPERSAMPLING_SAMPLES_PER_SIDE = 1;
@@ -62,10 +87,15 @@ public class MyRaytracer {
         Vec3 imgPlaneR = new Vec3(1, 0, 0);
         Camera camera = new Camera(cameraPos, cameraV, imgPlaneR, 2, 2, 1);
 
-        // Load scene parts
-        List<SceneObject> sceneObjects = getCSG4(); // SceneBuilder.getObjects();
-        List<Light> lights =getLights();    // SceneBuilder.getLights();
-        skybox = SceneBuilder.getSkybox();
+        // Load scene parts; the skybox faces decode in the background while the objects are set up
+        List<SceneObject> sceneObjects;
+        List<Light> lights;
+        try (AssetLoader assets = new AssetLoader()) {
+            CompletableFuture<CubeMap> skyboxAsset = SceneBuilder.loadSkybox(assets);
+            sceneObjects = getCSG4(); // SceneBuilder.getObjects();
+            lights = getLights();    // SceneBuilder.getLights();
+            skybox = assets.await(skyboxAsset);
+        }
 
         System.out.println("Finished Setup");
         renderScene(camera, sceneObjects, lights);
@@ -74,6 +104,15 @@ public class MyRaytracer {
         saveImageToFile();
     }
 
+    /**
+     * Returns the per-pixel shadow ray counts of the last render.
+     *
+     * @return the statistics, or null before the first render
+     */
+    public static ShadowStatistics getShadowStatistics() {
+        return shadowStatistics;
+    }
+
     /**
      * Renders the scene using multi-threading, launching a task for each image row.
      * Performs adaptive supersampling and ray tracing per pixel.
@@ -87,45 +126,85 @@ public class MyRaytracer {
         Vec3 stepRight = camera.getPxRightStep(RES_X);
         Vec3 stepUp = camera.getPxUpStep(RES_Y);
 
+        // Top-level acceleration structure over the scene objects, shared read-only by all render tasks
+        sceneAccelerator = new SceneAccelerator(objects, SCENE_ACCELERATOR);
+        System.out.println("Scene " + sceneAccelerator.getStatistics());
+        shadowSampler = new ShadowSampler(sceneAccelerator, objects, SOFT_SHADOW_SAMPLES, SHADOW_PROBE_SAMPLES, DISTANCE_FIELD_SOFT_SHADOWS);
+
+        // With many lights, each hit shades a few lights chosen from a light BVH instead of all of them
+        lightBVH = lights.size() > MANY_LIGHTS_THRESHOLD ? new LightBVH(lights) : null;
+
+        // Reservoir resampling reuses light choices across pixels and progressive passes, which are averaged
+        lightResampler = RESERVOIR_RESAMPLING && !lights.isEmpty()
+                ? new LightResampler(RES_X, RES_Y, lights, lightBVH, RESERVOIR_CANDIDATES, RESERVOIR_NEIGHBOURS) : null;
+        int passes = lightResampler != null ? RESERVOIR_PASSES : 1;
+        float[] accumulated = new float[3 * RES_X * RES_Y];
+        shadowStatistics = new ShadowStatistics(RES_X, RES_Y);
+
         int threads = Runtime.getRuntime().availableProcessors();
         ExecutorService executor = Executors.newFixedThreadPool(threads);
         long startTime = System.nanoTime();
 
         final int rowsPerTask = Math.max(1, RES_Y / (threads * 4));
 
-        for (int startRow = 0; startRow < RES_Y; startRow += rowsPerTask) {
-            final int rowStart = startRow;
-            final int rowEnd = Math.min(startRow + rowsPerTask, RES_Y);
+        for (int pass = 0; pass < passes; pass++) {
+            final int passCount = pass + 1;
+            List<Future<?>> tasks = new ArrayList<>();
+
+            for (int startRow = 0; startRow < RES_Y; startRow += rowsPerTask) {
+                final int rowStart = startRow;
+                final int rowEnd = Math.min(startRow + rowsPerTask, RES_Y);
 
-            executor.submit(() -> {
+                tasks.add(executor.submit(() -> {
 
-                Stack<Float> initialIorStack = getInitialIorStack(camera.getPosition(), objects);
+                    Stack<Float> initialIorStack = getInitialIorStack(camera.getPosition(), objects);
 
-                for (int row = rowStart; row < rowEnd; row++) {
-                    for (int x = 0; x < RES_X; ++x) {
+                    for (int row = rowStart; row < rowEnd; row++) {
+                        for (int x = 0; x < RES_X; ++x) {
 
-                        Vec3 pixelTopLeft = pxStart.add(stepRight.multiply(x)).add(stepUp.multiply(row));
+                            Vec3 pixelTopLeft = pxStart.add(stepRight.multiply(x)).add(stepUp.multiply(row));
 
-                        // Prepare index of refraction stack for handling nested transparent objects
-                        Stack<Float> pixelIorStack = new Stack<>();
-                        pixelIorStack.addAll(initialIorStack);
+                            // Prepare index of refraction stack for handling nested transparent objects
+                            Stack<Float> pixelIorStack = new Stack<>();
+                            pixelIorStack.addAll(initialIorStack);
 
-                        // Perform adaptive sampling to calculate pixel color
-                        Color color = adaptiveSample(camera, pixelTopLeft, stepRight, stepUp, 0, objects, lights, pixelIorStack, 5);
-                        pixels[row * RES_X + x] = color.toHex();
+                            // Perform adaptive sampling to calculate pixel color
+                            int pixel = row * RES_X + x;
+                            shadowSampler.resetRayCounts();
+                            Color color = adaptiveSample(camera, pixelTopLeft, stepRight, stepUp, 0, objects, lights, pixelIorStack, 5, pixel);
+                            shadowSampler.recordRayCounts(shadowStatistics, pixel);
+                            accumulated[3 * pixel] += color.getR();
+                            accumulated[3 * pixel + 1] += color.getG();
+                            accumulated[3 * pixel + 2] += color.getB();
+                            pixels[pixel] = new Color(accumulated[3 * pixel] / passCount, accumulated[3 * pixel + 1] / passCount,
+                                    accumulated[3 * pixel + 2] / passCount).toHex();
+                        }
                     }
-                }
 
-                // Reduced synchronization frequency
-                if (rowStart % (rowsPerTask * 4) == 0) {
-                    synchronized (imageSource) {
-                        imageSource.newPixels();
+                    // Reduced synchronization frequency
+                    if (rowStart % (rowsPerTask * 4) == 0) {
+                        synchronized (imageSource) {
+                            imageSource.newPixels();
+                        }
+                        long elapsedTime = System.nanoTime() - startTime;
+                        double seconds = elapsedTime / 1_000_000_000.0;
+                        System.out.printf("Rendered rows %d-%d - Time elapsed: %.2f seconds%n", rowStart, rowEnd - 1, seconds);
                     }
-                    long elapsedTime = System.nanoTime() - startTime;
-                    double seconds = elapsedTime / 1_000_000_000.0;
-                    System.out.printf("Rendered rows %d-%d - Time elapsed: %.2f seconds%n", rowStart, rowEnd - 1, seconds);
+                }));
+            }
+
+            // Wait for the pass, since the next one reuses its reservoirs
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
                 }
-            });
+            }
+            if (lightResampler != null) {
+                lightResampler.nextPass();
+                System.out.printf("Finished pass %d of %d%n", passCount, passes);
+            }
         }
 
         // Shutdown executor and wait for completion of all tasks
@@ -135,6 +214,7 @@ public class MyRaytracer {
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        System.out.println("Shadows: " + shadowStatistics);
     }
 
     /**
@@ -150,9 +230,10 @@ public class MyRaytracer {
      * @param lights        Lichter
      * @param iorStack      IOR Stack für Brechung
      * @param rayTraceDepth maximale Ray-Recursionstiefe für Trace-Aufrufe
+     * @param pixel         Index des Pixels im Bild, für die Wiederverwendung von Licht-Reservoirs
      * @return Farbwert des Pixels
      */
-    private static Color adaptiveSample(Camera camera, Vec3 topLeft, Vec3 stepX, Vec3 stepY, int depth, List<SceneObject> objects, List<Light> lights, Stack<Float> iorStack, int rayTraceDepth) {
+    private static Color adaptiveSample(Camera camera, Vec3 topLeft, Vec3 stepX, Vec3 stepY, int depth, List<SceneObject> objects, List<Light> lights, Stack<Float> iorStack, int rayTraceDepth, int pixel) {
         int totalSamples = SUPERSAMPLING_SAMPLES_PER_SIDE * SUPERSAMPLING_SAMPLES_PER_SIDE;
         Color[] colors = new Color[totalSamples];
         Vec3 cameraPos = camera.getPosition();
@@ -166,7 +247,7 @@ public class MyRaytracer {
                 Ray ray = new Ray(cameraPos, samplePos.subtract(cameraPos));
                 Stack<Float> localIorStack = new Stack<>();
                 localIorStack.addAll(iorStack);
-                colors[idx++] = traceRay(ray, objects, lights, camera, localIorStack, rayTraceDepth);
+                colors[idx++] = traceRay(ray, objects, lights, camera, localIorStack, rayTraceDepth, pixel);
             }
         }
 
@@ -189,10 +270,10 @@ public class MyRaytracer {
             Vec3 halfX = stepX.multiply(0.5f);
             Vec3 halfY = stepY.multiply(0.5f);
 
-            Color c1 = adaptiveSample(camera,              topLeft,         halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth);
-            Color c2 = adaptiveSample(camera, topLeft.add(halfX),            halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth);
-            Color c3 = adaptiveSample(camera, topLeft.add(halfX).add(halfY), halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth);
-            Color c4 = adaptiveSample(camera, topLeft.add(halfY),            halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth);
+            Color c1 = adaptiveSample(camera,              topLeft,         halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth, pixel);
+            Color c2 = adaptiveSample(camera, topLeft.add(halfX),            halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth, pixel);
+            Color c3 = adaptiveSample(camera, topLeft.add(halfX).add(halfY), halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth, pixel);
+            Color c4 = adaptiveSample(camera, topLeft.add(halfY),            halfX, halfY, depth + 1, objects, lights, iorStack, rayTraceDepth, pixel);
 
             Vec3 avg = c1.getVector().add(c2.getVector()).add(c3.getVector()).add(c4.getVector()).divide(4f);
             return new Color(avg);
@@ -209,13 +290,31 @@ public class MyRaytracer {
      * @param camera the camera viewing the scene
      * @param iorStack stack managing index of refraction states for nested transparent objects
      * @param depth recursion depth limit for ray tracing
+     * @param pixel index of the pixel for a primary ray, -1 for secondary rays
      * @return computed color for the ray intersection
      */
-    private static Color traceRay(Ray ray, List<SceneObject> objects, List<Light> lights, Camera camera, Stack<Float> iorStack, int depth) {
+    private static Color traceRay(Ray ray, List<SceneObject> objects, List<Light> lights, Camera camera, Stack<Float> iorStack, int depth, int pixel) {
         if (depth <= 0) return Color.BLACK;
+        return traceRay(ray, ray.getNearestIntersection(sceneAccelerator), objects, lights, camera, iorStack, depth, pixel);
+    }
 
-        Intersection nearestIntersection = ray.getNearestIntersection(objects);
-        if (nearestIntersection == null) return Color.BLACK;
+    /**
+     * Shades a ray whose nearest intersection is already known, e.g. a reflection ray traced to
+     * decide whether it escapes.
+     *
+     * @param ray the traced ray
+     * @param nearestIntersection nearest hit of the ray, or null if it missed
+     * @param objects list of scene objects
+     * @param lights list of lights
+     * @param camera the camera viewing the scene
+     * @param iorStack stack managing index of refraction states for nested transparent objects
+     * @param depth recursion depth limit for ray tracing
+     * @param pixel index of the pixel for a primary ray, -1 for secondary rays
+     * @return computed color for the ray intersection
+     */
+    private static Color traceRay(Ray ray, Intersection nearestIntersection, List<SceneObject> objects, List<Light> lights,
+                                  Camera camera, Stack<Float> iorStack, int depth, int pixel) {
+        if (depth <= 0 || nearestIntersection == null) return Color.BLACK;
 
         SceneObject hitObject = nearestIntersection.object();
         Material material = nearestIntersection.material();
@@ -230,8 +329,29 @@ public class MyRaytracer {
         Vec3 materialAlbedo = material.getAlbedo().getVector();
 
         // Compute soft shadows with optimized light filtering
-        List<Light> relevantLights = computeSoftShadows(nearestIntersection, lights, objects);
-        LightingContext context = new LightingContext(relevantLights, hitObject, nearestIntersection, camera, Vec3.ZERO, currentIOR);
+        List<Light> relevantLights;
+        if (pixel >= 0 && lightResampler != null) {
+            // One shadow ray towards the light kept by the pixel's reservoir
+            Reservoir reservoir = lightResampler.resample(pixel, hitPoint, normal, nearestIntersection.distance());
+            Light light = reservoir.getLight();
+            relevantLights = light == null || reservoir.getWeight() <= 0 ? List.of()
+                    : shadowSampler.shade(nearestIntersection, List.of(light.copyWithIntensity(light.getIntensity() * reservoir.getWeight())));
+            if (relevantLights.isEmpty()) reservoir.discard();
+        } else {
+            relevantLights = shadowSampler.shade(nearestIntersection, selectLights(hitPoint, normal, lights));
+        }
+        // Secondary hits take the O(1) SH sky term; primary hits keep environment NEE unless configured otherwise
+        boolean primaryHit = pixel >= 0;
+        boolean shAmbient = SH_AMBIENT && skybox != null && (!primaryHit || SH_AMBIENT_PRIMARY);
+        Vec3 ambient = Vec3.ZERO;
+        if (shAmbient) {
+            // Unoccluded sky irradiance from the SH projection, darkened by the same short-range occlusion
+            // estimate on primary and secondary hits, so light bounced off a crevice is not lit by the full sky
+            Vec3 irradiance = skybox.getIrradiance().getIrradiance(normal);
+            float visibility = computeAmbientVisibility(hitPoint.add(normal.multiply(EPSILON)), normal);
+            ambient = irradiance.multiply(materialAlbedo).multiply((1.0f - material.getMetalness()) * visibility / (float) Math.PI);
+        }
+        LightingContext context = new LightingContext(relevantLights, hitObject, nearestIntersection, camera, ambient, currentIOR);
         Color localColor = cookTorranceLighting.getFinalColor(context);
 
         // INDIRECT LIGHTING (with Path Tracing) - diffuse reflection
@@ -250,10 +370,10 @@ public class MyRaytracer {
                 Ray bounceRay = new Ray(hitPoint.add(normal.multiply(EPSILON)), sampleDir);
                 Stack<Float> bounceIorStack = new Stack<>();
                 bounceIorStack.addAll(iorStack);
-                Color bounceColor = traceRay(bounceRay, objects, lights, camera, bounceIorStack, depth - 1);
+                Color bounceColor = traceRay(bounceRay, objects, lights, camera, bounceIorStack, depth - 1, -1);
                 bounceRadiance = bounceColor.getVector();
 
-                Intersection bounceIntersection = bounceRay.getNearestIntersection(objects);
+                Intersection bounceIntersection = bounceRay.getNearestIntersection(sceneAccelerator);
                 float bounceRoughness = 1.0f;
                 materialContribution = Vec3.ZERO;
 
@@ -263,6 +383,13 @@ public class MyRaytracer {
                     materialContribution = bounceMaterial.getAlbedo().getVector().multiply(0.1f * bounceRoughness);
                 }
 
+                if (bounceIntersection == null && skybox != null && !shAmbient) {
+                    // Escaped to the environment; weighted against environment next-event estimation below
+                    float weight = ENVIRONMENT_SAMPLES > 0
+                            ? powerHeuristic(DIFFUSE_REFLECTION_SAMPLES * pdf, ENVIRONMENT_SAMPLES * skybox.pdf(sampleDir)) : 1f;
+                    bounceRadiance = skybox.sample(sampleDir).getVector().multiply(weight);
+                }
+
                 bounceRadiance = bounceRadiance.add(materialContribution).multiply(bounceRoughness);
                 float cosTheta = Math.max(0.0f, normal.dot(sampleDir));
 
@@ -271,7 +398,30 @@ public class MyRaytracer {
             }
             indirect = indirect.divide(DIFFUSE_REFLECTION_SAMPLES);
         }
-        Color totalLocalColor = new Color(localColor.getVector().add(indirect));
+
+        // ENVIRONMENT LIGHTING - next-event estimation towards bright parts of the skybox, unless the SH ambient term covers it
+        Vec3 environment = Vec3.ZERO;
+        if (ENVIRONMENT_SAMPLES > 0 && skybox != null && !shAmbient) {
+            Vec3 brdf = materialAlbedo.multiply((1.0f - material.getMetalness()) / (float) Math.PI);
+            Vec3 origin = hitPoint.add(normal.multiply(EPSILON));
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            for (int i = 0; i < ENVIRONMENT_SAMPLES; i++) {
+                CubeMap.DirectionSample sample = skybox.sampleDirection(random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+                Vec3 lightDir = sample.direction();
+                float cosTheta = normal.dot(lightDir);
+                if (cosTheta <= 0 || sample.pdf() <= 0) continue;
+                float transmission = shadowSampler.computeTransmission(new Ray(origin, lightDir), Float.POSITIVE_INFINITY);
+                if (transmission <= 0f) continue;
+
+                float weight = DIFFUSE_REFLECTION_SAMPLES > 0
+                        ? powerHeuristic(ENVIRONMENT_SAMPLES * sample.pdf(), DIFFUSE_REFLECTION_SAMPLES * pdfCosine(normal, lightDir)) : 1f;
+                Vec3 radiance = skybox.sample(lightDir).getVector();
+                environment = environment.add(radiance.multiply(brdf).multiply(cosTheta * transmission * weight / sample.pdf()));
+            }
+            environment = environment.divide(ENVIRONMENT_SAMPLES);
+        }
+        Color totalLocalColor = new Color(localColor.getVector().add(indirect).add(environment));
 
         // REFLECTION (with Path Tracing) - glossy reflection
         Color reflectedColor = Color.BLACK;
@@ -279,34 +429,45 @@ public class MyRaytracer {
             int reflectionSamples = (materialRoughness < 0.05f) ? 1 : GLOSSY_REFLECTION_SAMPLES;
             Vec3 reflectionDir = viewDir.reflect(normal);
             Vec3 glossySum = Vec3.ZERO;
+            Ray mirrorRay = new Ray(hitPoint.add(normal.multiply(EPSILON)), reflectionDir);
+            // Only needed to shade a smooth surface or to test a rough one for escape
+            Intersection mirrorHit = materialRoughness < 0.05f || skybox != null ? mirrorRay.getNearestIntersection(sceneAccelerator) : null;
+
+            // Escape is decided by the mirror ray only: if it leaves the scene, one lookup in the
+            // GGX-prefiltered skybox replaces the lobe samples, even where parts of the lobe are blocked
+            if (skybox != null && materialRoughness >= 0.05f && mirrorHit == null) {
+                float cosTheta = Math.max(0.0f, normal.dot(reflectionDir));
+                reflectedColor = new Color(skybox.sample(reflectionDir, materialRoughness).getVector().multiply(cosTheta));
+            } else {
+                for (int i = 0; i < reflectionSamples; i++) {
+                    Vec3 sampledDir = (materialRoughness < 0.05f)
+                            ? reflectionDir
+                            : reflectionDir.sampleGlossyDirection(normal, materialRoughness);
+
+                    // A smooth surface reflects along the mirror ray, whose hit is reused instead of traced again
+                    Ray glossyRay = sampledDir == reflectionDir ? mirrorRay : new Ray(hitPoint.add(normal.multiply(EPSILON)), sampledDir);
+                    Stack<Float> glossyIorStack = new Stack<>();
+                    glossyIorStack.addAll(iorStack);
+
+                    Intersection glossyHit = glossyRay == mirrorRay ? mirrorHit : glossyRay.getNearestIntersection(sceneAccelerator);
+                    Color bounceColor;
+
+                    if (glossyHit == null && skybox != null) {
+                        // skybox if reflection ray misses
+                        bounceColor = skybox.sample(sampledDir);
+                    } else if (glossyHit != null) {
+                        bounceColor = traceRay(glossyRay, glossyHit, objects, lights, camera, glossyIorStack, depth - 1, -1);
+                    } else {
+                        bounceColor = Color.BLACK;
+                    }
 
-            for (int i = 0; i < reflectionSamples; i++) {
-                Vec3 sampledDir = (materialRoughness < 0.05f)
-                        ? reflectionDir
-                        : reflectionDir.sampleGlossyDirection(normal, materialRoughness);
-
-                Ray glossyRay = new Ray(hitPoint.add(normal.multiply(EPSILON)), sampledDir);
-                Stack<Float> glossyIorStack = new Stack<>();
-                glossyIorStack.addAll(iorStack);
-
-                Intersection glossyHit = glossyRay.getNearestIntersection(objects);
-                Color bounceColor;
-
-                if (glossyHit == null && skybox != null) {
-                    // skybox if reflection ray misses
-                    bounceColor = skybox.sample(sampledDir);
-                } else if (glossyHit != null) {
-                    bounceColor = traceRay(glossyRay, objects, lights, camera, glossyIorStack, depth - 1);
-                } else {
-                    bounceColor = Color.BLACK;
+                    // weight by cosine for energy conservation
+                    float cosTheta = Math.max(0.0f, normal.dot(sampledDir));
+                    glossySum = glossySum.add(bounceColor.getVector().multiply(cosTheta));
                 }
-
-                // weight by cosine for energy conservation
-                float cosTheta = Math.max(0.0f, normal.dot(sampledDir));
-                glossySum = glossySum.add(bounceColor.getVector().multiply(cosTheta));
+                glossySum = glossySum.divide(reflectionSamples);
+                reflectedColor = new Color(glossySum);
             }
-            glossySum = glossySum.divide(reflectionSamples);
-            reflectedColor = new Color(glossySum);
         }
 
         // REFRACTION - optimized IOR stack management
@@ -336,7 +497,7 @@ public class MyRaytracer {
         if (refractionDir != null) {
             Vec3 offset = entering ? normal.multiply(-0.1f*EPSILON) : normal.multiply(EPSILON);
             Ray refractedRay = new Ray(nearestIntersection.point().add(offset), refractionDir);
-            refractedColor = traceRay(refractedRay, objects, lights, camera, newIorStack, depth - 1);
+            refractedColor = traceRay(refractedRay, objects, lights, camera, newIorStack, depth - 1, -1);
         }
 
         float fresnel = cookTorranceLighting.calculateFresnel(viewDir, refractionNormal, iorFrom, iorTo);
@@ -365,6 +526,36 @@ public class MyRaytracer {
         return cosTheta / (float)Math.PI;
     }
 
+    /**
+     * Estimates the fraction of the hemisphere that is open to the sky, tracing a few
+     * cosine-distributed occlusion rays that only count occluders within {@link #AMBIENT_OCCLUSION_RADIUS}.
+     * Transmissive occluders let their transmission through, as for shadow rays.
+     *
+     * @param origin surface point, already offset along the normal
+     * @param normal surface normal
+     * @return visibility between 0 (fully occluded) and 1
+     */
+    private static float computeAmbientVisibility(Vec3 origin, Vec3 normal) {
+        if (AMBIENT_OCCLUSION_SAMPLES <= 0) return 1.0f;
+        float open = 0f;
+        for (int i = 0; i < AMBIENT_OCCLUSION_SAMPLES; i++) {
+            open += shadowSampler.computeTransmission(new Ray(origin, normal.randomHemisphereDirection()), AMBIENT_OCCLUSION_RADIUS);
+        }
+        return open / AMBIENT_OCCLUSION_SAMPLES;
+    }
+
+    /**
+     * Multiple importance sampling weight of a strategy against another one (power heuristic, beta = 2).
+     *
+     * @param pdf      sample count times density of the strategy that drew the direction
+     * @param otherPdf sample count times density of the other strategy for the same direction
+     * @return weight of the sample
+     */
+    private static float powerHeuristic(float pdf, float otherPdf) {
+        float a = pdf * pdf, b = otherPdf * otherPdf;
+        return a + b > 0 ? a / (a + b) : 0f;
+    }
+
     /**
      * Initializes the index of refraction stack based on the camera position,
      * checking if it starts inside any transparent objects.
@@ -384,52 +575,28 @@ public class MyRaytracer {
         return iorStack;
     }
 
-    private static List<Light> computeSoftShadows(Intersection hit, List<Light> lights, List<SceneObject> objects) {
-        List<Light> relevantLights = new ArrayList<>();
-        Vec3 point = hit.point();
-        Vec3 shadowOrigin = point.add(hit.normal().multiply(EPSILON));
-
-        for (Light light : lights) {
-            float shadowCount = 0;
-            boolean hasAnyLight = false;
-
-            if (light instanceof SpotLight spot && spot.getAttenuation(point) <= 0) {
-                continue;
-            }
-
-            for (int i = 0; i < SOFT_SHADOW_SAMPLES; i++) {
-                Vec3 samplePos = light.jitterLightPosition();
-
-                Vec3 toLight = samplePos.subtract(point);
-                float distance = toLight.getLength();
-
-                Ray shadowRay = new Ray(shadowOrigin, toLight);
-                float transmission = 1.0f;
-
-                for (SceneObject obj : objects) {
-                    if (obj.isOccluding(shadowRay, distance)) {
-                        transmission *= obj.getMaterial().getTransmission();
-                        if (transmission <= 0.001f) {
-                            break;
-                        }
-                    }
-                }
-
-                shadowCount += transmission;
-                if (transmission > 0) {
-                    hasAnyLight = true;
-                }
-            }
-
-            if (hasAnyLight) {
-                float factor = shadowCount / SOFT_SHADOW_SAMPLES;
-                if (factor > 0.001f) {
-                    relevantLights.add(light.copyWithIntensity(light.getIntensity() * factor));
-                }
-            }
+    /**
+     * Returns the lights to shade a point with. Below {@link #MANY_LIGHTS_THRESHOLD} lights these are
+     * all lights; otherwise {@link #LIGHT_SAMPLES} lights are drawn from the light BVH, each with its
+     * intensity divided by the number of draws and its selection probability, which keeps the
+     * estimate unbiased.
+     *
+     * @param point shading point
+     * @param normal surface normal at the point
+     * @param lights all lights of the scene
+     * @return lights to shade the point with
+     */
+    private static List<Light> selectLights(Vec3 point, Vec3 normal, List<Light> lights) {
+        if (lightBVH == null) return lights;
+        List<Light> selected = new ArrayList<>(LIGHT_SAMPLES);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < LIGHT_SAMPLES; i++) {
+            LightBVH.Selection selection = lightBVH.sample(point, normal, random.nextFloat());
+            if (selection == null) break;
+            Light light = selection.light();
+            selected.add(light.copyWithIntensity(light.getIntensity() / (LIGHT_SAMPLES * selection.probability())));
         }
-
-        return relevantLights;
+        return selected;
     }
 
     /**
@@ -0,0 +1,161 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Base class of lights with a surface that emits a constant radiance.
+ *
+ * <p>Unlike a point light that is jittered around its centre, an area light is sampled with a
+ * known density: {@link #sample} maps two uniform numbers to a point on the light and reports its
+ * probability density with respect to solid angle at the shading point. Dividing the emitted
+ * radiance by that density gives an unbiased estimate of the light's contribution, so shadow
+ * samples can be spent where the light actually subtends angle. Feeding the numbers from
+ * {@link #stratify} spreads the samples evenly over the light, which removes most of the noise of
+ * independent samples.</p>
+ *
+ * <p>The intensity of an area light is its emitted radiance, and {@link #getR()} is the radius of a
+ * sphere around {@link #getP()} that bounds the light.</p>
+ */
+public abstract class AreaLight extends Light {
+
+    /**
+     * Constructs a new area light.
+     *
+     * @param center    Centre of the light in world coordinates.
+     * @param radiance  Emitted radiance.
+     * @param bounds    Radius of a sphere around the centre that contains the light.
+     * @param color     Color of the light.
+     */
+    protected AreaLight(Vec3 center, float radiance, float bounds, Color color) {
+        super(center, radiance, bounds, color);
+    }
+
+    /**
+     * Samples a point on the light as seen from a shading point.
+     *
+     * @param point The shading point.
+     * @param u1    First uniform random number in [0, 1).
+     * @param u2    Second uniform random number in [0, 1).
+     * @return The sample, or null if the sampled point does not emit towards the shading point.
+     */
+    public abstract LightSample sample(Vec3 point, float u1, float u2);
+
+    /**
+     * Picks a point on the light uniformly by area.
+     *
+     * @param u1 First uniform random number in [0, 1).
+     * @param u2 Second uniform random number in [0, 1).
+     * @return The point.
+     */
+    public abstract Vec3 samplePosition(float u1, float u2);
+
+    /**
+     * Returns the density with which {@link #sample} produces a point on the light.
+     *
+     * @param point    The shading point.
+     * @param position A point on the light.
+     * @return Density with respect to solid angle at the shading point, 0 if the point is never sampled.
+     */
+    public abstract float pdf(Vec3 point, Vec3 position);
+
+    /**
+     * @return Surface area of the light.
+     */
+    public abstract float getArea();
+
+    /**
+     * @return Normal of the emitting side for flat lights, or null if the light emits in all directions.
+     */
+    public Vec3 getNormal() {
+        return null;
+    }
+
+    /**
+     * Returns the emitted power {@code pi * area * radiance}, so that a large dim light and a small
+     * bright one are ranked by what they actually emit.
+     *
+     * @return Emitted power.
+     */
+    @Override
+    public float getPower() {
+        return (float) Math.PI * getArea() * getIntensity();
+    }
+
+    /**
+     * Picks a uniformly distributed point on the light, ignoring where it is seen from.
+     *
+     * @param u1 First uniform random number in [0, 1).
+     * @param u2 Second uniform random number in [0, 1).
+     * @return A point on the light.
+     */
+    @Override
+    public Vec3 jitterLightPosition(float u1, float u2) {
+        return samplePosition(u1, u2);
+    }
+
+    /**
+     * Generates stratified pairs of uniform numbers for sampling a light {@code count} times.
+     * A square count gives a jittered grid with one sample per cell, any other count a Latin
+     * hypercube with one sample per row and column.
+     *
+     * @param count  Number of pairs.
+     * @param random Source of the jitter.
+     * @return {@code 2 * count} numbers in [0, 1), the pairs interleaved.
+     */
+    public static float[] stratify(int count, ThreadLocalRandom random) {
+        float[] u = new float[2 * count];
+        int side = (int) Math.sqrt(count);
+        if (side * side == count) {
+            for (int y = 0, i = 0; y < side; y++) {
+                for (int x = 0; x < side; x++, i++) {
+                    u[2 * i] = Math.min((x + random.nextFloat()) / side, 0x1.fffffep-1f);
+                    u[2 * i + 1] = Math.min((y + random.nextFloat()) / side, 0x1.fffffep-1f);
+                }
+            }
+            return u;
+        }
+        for (int i = 0; i < count; i++) {
+            u[2 * i] = Math.min((i + random.nextFloat()) / count, 0x1.fffffep-1f);
+            u[2 * i + 1] = Math.min((i + random.nextFloat()) / count, 0x1.fffffep-1f);
+        }
+        // Shuffle the second coordinates so the rows are paired with random columns
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            float swap = u[2 * i + 1];
+            u[2 * i + 1] = u[2 * j + 1];
+            u[2 * j + 1] = swap;
+        }
+        return u;
+    }
+
+    /**
+     * Converts a density with respect to area on the light into one with respect to solid angle.
+     *
+     * @param point    The shading point.
+     * @param position The point on the light.
+     * @param normal   Emitting normal of the light at that point.
+     * @param areaPdf  Density with respect to area.
+     * @return Density with respect to solid angle, 0 if the point faces away from the shading point.
+     */
+    static float toSolidAngle(Vec3 point, Vec3 position, Vec3 normal, float areaPdf) {
+        Vec3 toPoint = point.subtract(position);
+        float distanceSquared = toPoint.getLengthSquared();
+        float cosine = normal.dot(toPoint) / (float) Math.sqrt(distanceSquared);
+        return cosine <= 1e-6f ? 0f : areaPdf * distanceSquared / cosine;
+    }
+
+    /**
+     * Builds two unit vectors that form an orthonormal basis together with a unit normal.
+     *
+     * @param normal Unit normal.
+     * @return The tangent and bitangent.
+     */
+    static Vec3[] basis(Vec3 normal) {
+        Vec3 up = Math.abs(normal.getY()) < 0.99f ? new Vec3(0, 1, 0) : new Vec3(1, 0, 0);
+        Vec3 tangent = up.cross(normal).normalize();
+        return new Vec3[] {tangent, normal.cross(tangent)};
+    }
+}
@@ -0,0 +1,109 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+/**
+ * A flat circular light that emits from the side its normal points to.
+ *
+ * <p>Points are sampled uniformly by area with the concentric mapping, which keeps neighbouring
+ * strata of the unit square neighbouring on the disk, and converted to solid angle.</p>
+ */
+public class DiskLight extends AreaLight {
+
+    private final Vec3 normal;
+    private final float diskRadius;
+    private final Vec3 tangent, bitangent;
+
+    /**
+     * Constructs a new disk light.
+     *
+     * @param center   Centre of the disk in world coordinates.
+     * @param radiance Emitted radiance.
+     * @param radius   Radius of the disk.
+     * @param color    Color of the light.
+     * @param normal   Direction the disk emits to (will be normalized).
+     */
+    public DiskLight(Vec3 center, float radiance, float radius, Color color, Vec3 normal) {
+        super(center, radiance, radius, color);
+        this.normal = normal.normalize();
+        this.diskRadius = radius;
+        Vec3[] basis = basis(this.normal);
+        this.tangent = basis[0];
+        this.bitangent = basis[1];
+    }
+
+    /**
+     * Creates a copy of this disk light with a different radiance.
+     *
+     * @param newIntensity New radiance.
+     * @return A new DiskLight instance with the specified radiance.
+     */
+    @Override
+    public DiskLight copyWithIntensity(float newIntensity) {
+        return new DiskLight(getP(), newIntensity, diskRadius, getColor(), normal);
+    }
+
+    /**
+     * @param point The shading point.
+     * @param u1    First uniform random number in [0, 1).
+     * @param u2    Second uniform random number in [0, 1).
+     * @return The sample, or null if the shading point is behind the disk.
+     */
+    @Override
+    public LightSample sample(Vec3 point, float u1, float u2) {
+        Vec3 position = samplePosition(u1, u2);
+        float pdf = toSolidAngle(point, position, normal, 1f / getArea());
+        return pdf > 0f ? new LightSample(position, pdf) : null;
+    }
+
+    /**
+     * @param u1 First uniform random number in [0, 1).
+     * @param u2 Second uniform random number in [0, 1).
+     * @return A point distributed uniformly on the disk.
+     */
+    @Override
+    public Vec3 samplePosition(float u1, float u2) {
+        // Shirley and Chiu's concentric mapping of the square onto the disk
+        float a = 2f * u1 - 1f, b = 2f * u2 - 1f;
+        float r, phi;
+        if (a == 0f && b == 0f) {
+            r = 0f;
+            phi = 0f;
+        } else if (Math.abs(a) > Math.abs(b)) {
+            r = a;
+            phi = (float) (Math.PI / 4) * (b / a);
+        } else {
+            r = b;
+            phi = (float) (Math.PI / 2) - (float) (Math.PI / 4) * (a / b);
+        }
+        r *= diskRadius;
+        return getP().add(tangent.multiply(r * (float) Math.cos(phi))).add(bitangent.multiply(r * (float) Math.sin(phi)));
+    }
+
+    /**
+     * @param point    The shading point.
+     * @param position A point on the disk.
+     * @return Density with respect to solid angle at the shading point.
+     */
+    @Override
+    public float pdf(Vec3 point, Vec3 position) {
+        return toSolidAngle(point, position, normal, 1f / getArea());
+    }
+
+    /**
+     * @return Area of the disk.
+     */
+    @Override
+    public float getArea() {
+        return (float) Math.PI * diskRadius * diskRadius;
+    }
+
+    /**
+     * @return Normalized direction the disk emits to.
+     */
+    @Override
+    public Vec3 getNormal() {
+        return normal;
+    }
+}
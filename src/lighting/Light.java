@@ -47,7 +47,18 @@ public class Light {
      * @return A jittered position as Vec3.
      */
     public Vec3 jitterLightPosition() {
-        Vec3 diskOffset = randomPointInDisk();
+        return jitterLightPosition((float) Math.random(), (float) Math.random());
+    }
+
+    /**
+     * Generates a jittered position from two given uniform numbers, so that callers can stratify them.
+     *
+     * @param u1 Uniform random number in [0, 1) selecting the distance from the centre.
+     * @param u2 Uniform random number in [0, 1) selecting the angle around the centre.
+     * @return A jittered position as Vec3.
+     */
+    public Vec3 jitterLightPosition(float u1, float u2) {
+        Vec3 diskOffset = pointInDisk(u1, u2);
 
         if (this instanceof SpotLight spot) {
             Vec3 dir = spot.getDirection().normalize();
@@ -68,15 +79,15 @@ public class Light {
     }
 
     /**
-     * Samples a random point uniformly distributed inside a disk of radius `this.radius`.
+     * Maps two uniform numbers to a point uniformly distributed inside a disk of radius `this.radius`.
      *
-     * Uses polar coordinates with sqrt(random) for uniform distribution.
+     * Uses polar coordinates with sqrt(u1) for uniform distribution.
      *
      * @return Vec3 offset vector (X, Y) within disk, Z=0.
      */
-    private Vec3 randomPointInDisk() {
-        double r = radius * Math.sqrt(Math.random());
-        double theta = 2.0 * Math.PI * Math.random();
+    private Vec3 pointInDisk(float u1, float u2) {
+        double r = radius * Math.sqrt(u1);
+        double theta = 2.0 * Math.PI * u2;
 
         return new Vec3((float) (r * Math.cos(theta)), (float) (r * Math.sin(theta)), 0f);
     }
@@ -91,6 +102,15 @@ public class Light {
         return intensity;
     }
 
+    /**
+     * Returns the emitted power used to rank lights against each other. For point lights this is the intensity.
+     *
+     * @return Emitted power.
+     */
+    public float getPower() {
+        return intensity;
+    }
+
     /** Returns the radius of the light (used for jittering). */
     public float getR() {
         return radius;
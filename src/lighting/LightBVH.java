@@ -0,0 +1,369 @@
+package lighting;
+
+import math.Vec3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy over the lights of a scene for stochastic light selection
+ * (Conty Estevez and Kulla, "Importance Sampling of Many Lights with Adaptive Tree Splitting").
+ *
+ * <p>Every node stores the spatial bounds, the total power and an orientation cone of its
+ * lights: an axis, the spread {@code thetaO} of the emitter directions around it and the
+ * emission angle {@code thetaE} each emitter lights up. Point lights emit in all directions
+ * ({@code thetaO = pi}); a {@link SpotLight} points along its direction and emits within its cutoff
+ * angle. {@link #sample} walks from the root to one light, choosing each child with probability
+ * proportional to a conservative estimate of its contribution at the shading point, so the cost
+ * per hit is logarithmic in the number of lights. The estimate follows the shading model: point
+ * and spot lights shade with their intensity regardless of distance, so only the power of area
+ * lights, whose samples carry the inverse square falloff, is divided by the squared distance. The tree is built top-down with the surface area
+ * orientation heuristic.</p>
+ */
+public final class LightBVH {
+
+    private static final int BINS = 12;
+    private static final float PI = (float) Math.PI;
+
+    /**
+     * A light chosen by {@link #sample}.
+     *
+     * @param light       The chosen light.
+     * @param probability Probability with which it was chosen.
+     */
+    public record Selection(Light light, float probability) {
+    }
+
+    private final Light[] lights;
+    private final float[] bounds;   // 6 per node: min xyz, max xyz
+    private final float[] cones;    // 5 per node: axis xyz, thetaO, thetaE
+    private final float[] power;    // per node
+    private final float[] areaPower;    // per node: part of the power emitted by area lights
+    private final int[] nodes;      // 2 per node: {right child, -1} for interior nodes, {-1, light} for leaves
+    private int nodeCount;
+
+    /**
+     * Builds the hierarchy.
+     *
+     * @param lights The lights of the scene.
+     * @throws IllegalArgumentException If the list is empty.
+     */
+    public LightBVH(List<Light> lights) {
+        if (lights.isEmpty()) throw new IllegalArgumentException("Light BVH needs at least one light");
+        this.lights = lights.toArray(new Light[0]);
+        int n = this.lights.length;
+        bounds = new float[6 * (2 * n - 1)];
+        cones = new float[5 * (2 * n - 1)];
+        power = new float[2 * n - 1];
+        areaPower = new float[2 * n - 1];
+        nodes = new int[2 * (2 * n - 1)];
+
+        // Per-light bounds, cones and power
+        float[] lightBounds = new float[6 * n];
+        float[] lightCones = new float[5 * n];
+        float[] lightPower = new float[n];
+        float[] lightAreaPower = new float[n];
+        for (int i = 0; i < n; i++) {
+            Light light = this.lights[i];
+            Vec3 p = light.getP();
+            float r = light.getR();
+            lightBounds[6 * i] = p.getX() - r;
+            lightBounds[6 * i + 1] = p.getY() - r;
+            lightBounds[6 * i + 2] = p.getZ() - r;
+            lightBounds[6 * i + 3] = p.getX() + r;
+            lightBounds[6 * i + 4] = p.getY() + r;
+            lightBounds[6 * i + 5] = p.getZ() + r;
+            if (light instanceof SpotLight spot) {
+                Vec3 d = spot.getDirection();
+                setCone(lightCones, i, d.getX(), d.getY(), d.getZ(), 0f, Math.min(spot.getAngle(), PI));
+            } else if (light instanceof AreaLight area && area.getNormal() != null) {
+                Vec3 d = area.getNormal();
+                setCone(lightCones, i, d.getX(), d.getY(), d.getZ(), 0f, PI / 2);
+            } else {
+                setCone(lightCones, i, 0f, 0f, 1f, PI, PI / 2);
+            }
+            Vec3 c = light.getColor().getVector();
+            lightPower[i] = light.getPower() * (0.2126f * c.getX() + 0.7152f * c.getY() + 0.0722f * c.getZ());
+            if (light instanceof AreaLight) lightAreaPower[i] = lightPower[i];
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        build(order, 0, n, lightBounds, lightCones, lightPower, lightAreaPower);
+    }
+
+    private static void setCone(float[] cones, int index, float x, float y, float z, float thetaO, float thetaE) {
+        cones[5 * index] = x;
+        cones[5 * index + 1] = y;
+        cones[5 * index + 2] = z;
+        cones[5 * index + 3] = thetaO;
+        cones[5 * index + 4] = thetaE;
+    }
+
+    /**
+     * Builds the subtree over {@code order[start, end)} and returns its node index.
+     */
+    private int build(int[] order, int start, int end, float[] lightBounds, float[] lightCones, float[] lightPower, float[] lightAreaPower) {
+        int node = nodeCount++;
+        float[] box = emptyBox();
+        float[] cone = null;
+        float total = 0f, totalArea = 0f;
+        for (int i = start; i < end; i++) {
+            int light = order[i];
+            growBox(box, lightBounds, 6 * light);
+            cone = cone == null ? Arrays.copyOfRange(lightCones, 5 * light, 5 * light + 5)
+                    : unionCone(cone, lightCones, 5 * light);
+            total += lightPower[light];
+            totalArea += lightAreaPower[light];
+        }
+        System.arraycopy(box, 0, bounds, 6 * node, 6);
+        System.arraycopy(cone, 0, cones, 5 * node, 5);
+        power[node] = total;
+        areaPower[node] = totalArea;
+
+        if (end - start == 1) {
+            nodes[2 * node] = -1;
+            nodes[2 * node + 1] = order[start];
+            return node;
+        }
+
+        int mid = split(order, start, end, box, lightBounds, lightCones, lightPower);
+        build(order, start, mid, lightBounds, lightCones, lightPower, lightAreaPower);
+        int right = build(order, mid, end, lightBounds, lightCones, lightPower, lightAreaPower);
+        nodes[2 * node] = right;
+        nodes[2 * node + 1] = -1;
+        return node;
+    }
+
+    /**
+     * Partitions the lights at the binned split with the lowest surface area orientation cost
+     * {@code power * area * M_omega} summed over both sides, falling back to the median.
+     *
+     * @return First index of the right partition.
+     */
+    private static int split(int[] order, int start, int end, float[] box,
+                             float[] lightBounds, float[] lightCones, float[] lightPower) {
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1, bestBin = -1;
+        float[] centroidMin = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] centroidMax = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float c = centroid(lightBounds, order[i], axis);
+                centroidMin[axis] = Math.min(centroidMin[axis], c);
+                centroidMax[axis] = Math.max(centroidMax[axis], c);
+            }
+        }
+        float maxExtent = Math.max(box[3] - box[0], Math.max(box[4] - box[1], box[5] - box[2]));
+
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = centroidMax[axis] - centroidMin[axis];
+            if (extent <= 0f) continue;
+            float[][] binBoxes = new float[BINS][];
+            float[][] binCones = new float[BINS][];
+            float[] binPower = new float[BINS];
+            for (int i = start; i < end; i++) {
+                int light = order[i];
+                int bin = bin(centroid(lightBounds, light, axis), centroidMin[axis], extent);
+                if (binBoxes[bin] == null) {
+                    binBoxes[bin] = emptyBox();
+                    binCones[bin] = Arrays.copyOfRange(lightCones, 5 * light, 5 * light + 5);
+                } else {
+                    binCones[bin] = unionCone(binCones[bin], lightCones, 5 * light);
+                }
+                growBox(binBoxes[bin], lightBounds, 6 * light);
+                binPower[bin] += lightPower[light];
+            }
+            for (int splitBin = 1; splitBin < BINS; splitBin++) {
+                float cost = sideCost(binBoxes, binCones, binPower, 0, splitBin)
+                        + sideCost(binBoxes, binCones, binPower, splitBin, BINS);
+                // Penalize splits across a thin axis so cells stay roughly cubic
+                cost *= maxExtent / Math.max(box[axis + 3] - box[axis], 1e-6f);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = splitBin;
+                }
+            }
+        }
+
+        int mid = start;
+        if (bestAxis >= 0) {
+            float extent = centroidMax[bestAxis] - centroidMin[bestAxis];
+            for (int i = start; i < end; i++) {
+                if (bin(centroid(lightBounds, order[i], bestAxis), centroidMin[bestAxis], extent) < bestBin) {
+                    int tmp = order[i];
+                    order[i] = order[mid];
+                    order[mid++] = tmp;
+                }
+            }
+        }
+        // Coincident lights or a degenerate split: halve the range
+        if (mid == start || mid == end) mid = (start + end) / 2;
+        return mid;
+    }
+
+    private static float sideCost(float[][] binBoxes, float[][] binCones, float[] binPower, int from, int to) {
+        float[] box = emptyBox();
+        float[] cone = null;
+        float total = 0f;
+        for (int bin = from; bin < to; bin++) {
+            if (binBoxes[bin] == null) continue;
+            growBox(box, binBoxes[bin], 0);
+            cone = cone == null ? binCones[bin].clone() : unionCone(cone, binCones[bin], 0);
+            total += binPower[bin];
+        }
+        if (cone == null) return 0f;
+        return total * area(box) * orientationMeasure(cone[3], cone[4]);
+    }
+
+    private static int bin(float centroid, float min, float extent) {
+        return Math.min(BINS - 1, (int) ((centroid - min) / extent * BINS));
+    }
+
+    private static float centroid(float[] lightBounds, int light, int axis) {
+        return 0.5f * (lightBounds[6 * light + axis] + lightBounds[6 * light + axis + 3]);
+    }
+
+    private static float[] emptyBox() {
+        return new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    }
+
+    private static void growBox(float[] box, float[] other, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.min(box[axis], other[offset + axis]);
+            box[axis + 3] = Math.max(box[axis + 3], other[offset + axis + 3]);
+        }
+    }
+
+    private static float area(float[] box) {
+        float dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+        // Point lights have empty extent; a small floor keeps their cost comparable
+        return 2f * (dx * dy + dy * dz + dz * dx) + 1e-6f;
+    }
+
+    /**
+     * Solid-angle measure of the directions a cone with spread {@code thetaO} and emission
+     * angle {@code thetaE} can light, used to weigh the orientation part of the split cost.
+     */
+    private static float orientationMeasure(float thetaO, float thetaE) {
+        float thetaW = Math.min(thetaO + thetaE, PI);
+        float sinO = (float) Math.sin(thetaO), cosO = (float) Math.cos(thetaO);
+        return 2f * PI * (1f - cosO) + PI / 2f * (2f * thetaW * sinO - (float) Math.cos(thetaO - 2f * thetaW)
+                - 2f * thetaO * sinO + cosO);
+    }
+
+    /**
+     * Smallest cone containing the cone {@code a} and the cone stored in {@code other} at {@code offset}.
+     */
+    private static float[] unionCone(float[] a, float[] other, int offset) {
+        float[] b = Arrays.copyOfRange(other, offset, offset + 5);
+        if (a[3] < b[3]) {
+            float[] tmp = a;
+            a = b;
+            b = tmp;
+        }
+        float dot = Math.max(-1f, Math.min(1f, a[0] * b[0] + a[1] * b[1] + a[2] * b[2]));
+        float thetaD = (float) Math.acos(dot);
+        float thetaE = Math.max(a[4], b[4]);
+        if (Math.min(thetaD + b[3], PI) <= a[3]) {
+            return new float[]{a[0], a[1], a[2], a[3], thetaE};
+        }
+        float thetaO = (a[3] + thetaD + b[3]) / 2f;
+        if (thetaO >= PI) {
+            return new float[]{a[0], a[1], a[2], PI, thetaE};
+        }
+        // Rotate a's axis towards b's by the growth of the spread
+        float rotation = thetaO - a[3];
+        float px = b[0] - dot * a[0], py = b[1] - dot * a[1], pz = b[2] - dot * a[2];
+        float length = (float) Math.sqrt(px * px + py * py + pz * pz);
+        if (length < 1e-6f) {
+            return new float[]{a[0], a[1], a[2], PI, thetaE};
+        }
+        float cos = (float) Math.cos(rotation), sin = (float) Math.sin(rotation) / length;
+        return new float[]{cos * a[0] + sin * px, cos * a[1] + sin * py, cos * a[2] + sin * pz, thetaO, thetaE};
+    }
+
+    /**
+     * Chooses one light for a shading point, each with probability roughly proportional to
+     * its contribution there.
+     *
+     * @param point  The shading point.
+     * @param normal Surface normal at the point; lights below the horizon are not chosen.
+     * @param u      Uniform random number in [0, 1).
+     * @return The light and its selection probability, or null if no light can contribute.
+     */
+    public Selection sample(Vec3 point, Vec3 normal, float u) {
+        float px = point.getX(), py = point.getY(), pz = point.getZ();
+        float nx = normal.getX(), ny = normal.getY(), nz = normal.getZ();
+        if (importance(0, px, py, pz, nx, ny, nz) <= 0f) return null;
+
+        int node = 0;
+        float probability = 1f;
+        while (nodes[2 * node] >= 0) {
+            int left = node + 1, right = nodes[2 * node];
+            float wl = importance(left, px, py, pz, nx, ny, nz);
+            float wr = importance(right, px, py, pz, nx, ny, nz);
+            if (wl + wr <= 0f) return null;
+            float pl = wl / (wl + wr);
+            if (u < pl) {
+                u /= pl;
+                probability *= pl;
+                node = left;
+            } else {
+                u = (u - pl) / (1f - pl);
+                probability *= 1f - pl;
+                node = right;
+            }
+            u = Math.min(u, 0x1.fffffep-1f);
+        }
+        return new Selection(lights[nodes[2 * node + 1]], probability);
+    }
+
+    /**
+     * Conservative contribution estimate of a node at a shading point: the power of its point and
+     * spot lights plus that of its area lights over pi times the squared distance (the irradiance
+     * of a small Lambertian emitter), times upper bounds of the emitter and receiver cosines over
+     * the node's bounds.
+     */
+    private float importance(int node, float px, float py, float pz, float nx, float ny, float nz) {
+        if (power[node] <= 0f) return 0f;
+        int b = 6 * node, c = 5 * node;
+        float cx = 0.5f * (bounds[b] + bounds[b + 3]), cy = 0.5f * (bounds[b + 1] + bounds[b + 4]), cz = 0.5f * (bounds[b + 2] + bounds[b + 5]);
+        float hx = bounds[b + 3] - cx, hy = bounds[b + 4] - cy, hz = bounds[b + 5] - cz;
+        float radius2 = hx * hx + hy * hy + hz * hz;
+
+        float dx = px - cx, dy = py - cy, dz = pz - cz;
+        float distance2 = dx * dx + dy * dy + dz * dz;
+        float distance = (float) Math.sqrt(distance2);
+
+        // Angle the bounds subtend from the point
+        float thetaU = distance2 <= radius2 ? PI : (float) Math.asin(Math.sqrt(radius2 / distance2));
+
+        // Emitter side: angle between the cone axis and the direction to the point
+        float thetaO = cones[c + 3], thetaE = cones[c + 4];
+        float cosTheta = distance > 0f ? (cones[c] * dx + cones[c + 1] * dy + cones[c + 2] * dz) / distance : 1f;
+        float theta = (float) Math.acos(Math.max(-1f, Math.min(1f, cosTheta)));
+        float thetaPrime = Math.max(0f, theta - thetaO - thetaU);
+        if (thetaPrime >= thetaE) return 0f;
+
+        // Receiver side: angle between the normal and the direction to the light
+        float cosI = distance > 0f ? -(nx * dx + ny * dy + nz * dz) / distance : 1f;
+        float thetaI = Math.max(0f, (float) Math.acos(Math.max(-1f, Math.min(1f, cosI))) - thetaU);
+        if (thetaI >= PI / 2f) return 0f;
+
+        // Spots wider than 90 degrees can still light points beyond the point where the cosine vanishes
+        float emitter = Math.max((float) Math.cos(thetaPrime), 1e-3f);
+        float falloffFree = Math.max(0f, power[node] - areaPower[node]);
+        float area = areaPower[node] > 0f ? areaPower[node] / (PI * Math.max(distance2, radius2)) : 0f;
+        return (falloffFree + area) * (float) Math.cos(thetaI) * emitter;
+    }
+
+    /**
+     * @return Number of lights in the hierarchy.
+     */
+    public int getLightCount() {
+        return lights.length;
+    }
+}
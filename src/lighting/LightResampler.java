@@ -0,0 +1,182 @@
+package lighting;
+
+import math.Vec3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reservoir-based resampling of direct lighting across the pixels of an image (in the style of ReSTIR).
+ *
+ * <p>For the primary hit of each pixel, {@link #resample} draws many cheap light candidates,
+ * weighs them by an unshadowed contribution estimate and keeps one in a {@link Reservoir}. The
+ * reservoir is then merged with the same pixel's reservoir from the previous progressive pass
+ * (temporal reuse) and with those of a few random neighbouring pixels (spatial reuse), provided
+ * their surfaces are similar. The caller traces a single shadow ray to the kept light, so the
+ * result approaches the quality of sampling thousands of candidates at the cost of one light.</p>
+ *
+ * <p>Reused reservoirs are read from the previous pass only, so render threads never read a
+ * pixel that another thread is writing. Call {@link #nextPass()} between passes. Reuse uses
+ * the biased 1/M combination, which slightly darkens hard shadow edges in exchange for lower noise.</p>
+ */
+public final class LightResampler {
+
+    /** Pixel radius in which spatial neighbours are picked. */
+    private static final int SPATIAL_RADIUS = 16;
+
+    /** Candidates a reused reservoir may count for, as a multiple of the candidate count per pixel. */
+    private static final int MAX_HISTORY = 20;
+
+    /** Minimum cosine between the normals of surfaces that share reservoirs. */
+    private static final float MIN_NORMAL_COSINE = 0.9f;
+
+    /** Maximum relative difference of the hit distances of surfaces that share reservoirs. */
+    private static final float MAX_DISTANCE_DIFFERENCE = 0.1f;
+
+    private final int width, height;
+    private final Light[] lights;
+    private final LightBVH hierarchy;
+    private final int candidates, neighbours;
+
+    private Reservoir[] current, previous;
+    private float[] currentSurfaces, previousSurfaces;   // 4 per pixel: normal xyz, hit distance
+
+    /**
+     * Creates the reservoir buffers for an image.
+     *
+     * @param width      Image width in pixels.
+     * @param height     Image height in pixels.
+     * @param lights     The lights of the scene.
+     * @param hierarchy  Light BVH to draw candidates from, or null to draw them uniformly.
+     * @param candidates Number of candidates drawn per pixel and pass.
+     * @param neighbours Number of neighbouring pixels merged per pixel and pass.
+     * @throws IllegalArgumentException If there are no lights or no candidates.
+     */
+    public LightResampler(int width, int height, List<Light> lights, LightBVH hierarchy, int candidates, int neighbours) {
+        if (lights.isEmpty()) throw new IllegalArgumentException("Light resampling needs at least one light");
+        if (candidates <= 0) throw new IllegalArgumentException("At least one candidate is needed");
+        this.width = width;
+        this.height = height;
+        this.lights = lights.toArray(new Light[0]);
+        this.hierarchy = hierarchy;
+        this.candidates = candidates;
+        this.neighbours = neighbours;
+        current = new Reservoir[width * height];
+        previous = new Reservoir[width * height];
+        currentSurfaces = new float[4 * width * height];
+        previousSurfaces = new float[4 * width * height];
+    }
+
+    /**
+     * Estimates the unshadowed contribution of a light at a surface point: its brightness,
+     * spot attenuation and the cosine at the surface. Area lights are weighted by the solid angle
+     * they cover at the point. This is the target function the candidates
+     * are resampled by.
+     *
+     * @param light  The light.
+     * @param point  The surface point.
+     * @param normal The surface normal.
+     * @return Non-negative target value.
+     */
+    public static float targetPdf(Light light, Vec3 point, Vec3 normal) {
+        Vec3 toLight = light.getP().subtract(point).normalize();
+        float cosine = normal.dot(toLight);
+        if (cosine <= 0f) return 0f;
+        float attenuation = light instanceof SpotLight spot ? spot.getAttenuation(point) : 1f;
+        if (light instanceof AreaLight area) {
+            float pdf = area.pdf(point, area.getP());
+            attenuation = pdf > 0f ? 1f / pdf : 0f;
+        }
+        Vec3 c = light.getColor().getVector();
+        return light.getIntensity() * (0.2126f * c.getX() + 0.7152f * c.getY() + 0.0722f * c.getZ()) * cosine * attenuation;
+    }
+
+    /**
+     * Chooses the light for the primary hit of a pixel and stores the reservoir for reuse in the next pass.
+     * Resampling happens once per pixel and pass: further primary hits of the same pixel in the pass,
+     * e.g. of its supersamples, share the reservoir of the first instead of drawing and merging again.
+     *
+     * @param pixel    Index {@code y * width + x} of the pixel.
+     * @param point    The hit point.
+     * @param normal   The surface normal at the hit.
+     * @param distance Distance from the camera to the hit.
+     * @return The finished reservoir; its light is null if no light can reach the point.
+     */
+    public Reservoir resample(int pixel, Vec3 point, Vec3 normal, float distance) {
+        if (current[pixel] != null) return current[pixel];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Reservoir reservoir = new Reservoir();
+
+        for (int i = 0; i < candidates; i++) {
+            Light light;
+            float sourcePdf;
+            if (hierarchy != null) {
+                LightBVH.Selection selection = hierarchy.sample(point, normal, random.nextFloat());
+                if (selection == null) {
+                    reservoir.update(null, 0f, 0f, 0f);
+                    continue;
+                }
+                light = selection.light();
+                sourcePdf = selection.probability();
+            } else {
+                light = lights[random.nextInt(lights.length)];
+                sourcePdf = 1f / lights.length;
+            }
+            float target = targetPdf(light, point, normal);
+            reservoir.update(light, target / sourcePdf, target, random.nextFloat());
+        }
+
+        int maxCount = MAX_HISTORY * candidates;
+        if (previous[pixel] != null && isSimilar(pixel, normal, distance)) {
+            reuse(reservoir, previous[pixel], point, normal, maxCount, random);
+        }
+        int x = pixel % width, y = pixel / width;
+        for (int i = 0; i < neighbours; i++) {
+            int nx = x + random.nextInt(-SPATIAL_RADIUS, SPATIAL_RADIUS + 1);
+            int ny = y + random.nextInt(-SPATIAL_RADIUS, SPATIAL_RADIUS + 1);
+            if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+            int neighbour = ny * width + nx;
+            if (neighbour == pixel || previous[neighbour] == null || !isSimilar(neighbour, normal, distance)) continue;
+            reuse(reservoir, previous[neighbour], point, normal, maxCount, random);
+        }
+        reservoir.finish();
+
+        current[pixel] = reservoir;
+        currentSurfaces[4 * pixel] = normal.getX();
+        currentSurfaces[4 * pixel + 1] = normal.getY();
+        currentSurfaces[4 * pixel + 2] = normal.getZ();
+        currentSurfaces[4 * pixel + 3] = distance;
+        return reservoir;
+    }
+
+    private static void reuse(Reservoir reservoir, Reservoir other, Vec3 point, Vec3 normal, int maxCount, ThreadLocalRandom random) {
+        float target = other.getLight() == null ? 0f : targetPdf(other.getLight(), point, normal);
+        reservoir.combine(other, target, maxCount, random.nextFloat());
+    }
+
+    /**
+     * Checks that the previous-pass surface of a pixel is close enough to the current surface for its
+     * reservoir to be meaningful here.
+     */
+    private boolean isSimilar(int pixel, Vec3 normal, float distance) {
+        float cosine = previousSurfaces[4 * pixel] * normal.getX() + previousSurfaces[4 * pixel + 1] * normal.getY()
+                + previousSurfaces[4 * pixel + 2] * normal.getZ();
+        float otherDistance = previousSurfaces[4 * pixel + 3];
+        return cosine >= MIN_NORMAL_COSINE && Math.abs(otherDistance - distance) <= MAX_DISTANCE_DIFFERENCE * distance;
+    }
+
+    /**
+     * Makes the reservoirs of the finished pass available for reuse and starts a new pass.
+     * Must not be called while a pass is being rendered.
+     */
+    public void nextPass() {
+        Reservoir[] reservoirs = previous;
+        previous = current;
+        current = reservoirs;
+        Arrays.fill(current, null);
+        float[] surfaces = previousSurfaces;
+        previousSurfaces = currentSurfaces;
+        currentSurfaces = surfaces;
+    }
+}
@@ -0,0 +1,12 @@
+package lighting;
+
+import math.Vec3;
+
+/**
+ * A point sampled on the surface of an {@link AreaLight} as seen from a shading point.
+ *
+ * @param position Sampled point on the light.
+ * @param pdf      Density of the sample with respect to solid angle at the shading point.
+ */
+public record LightSample(Vec3 position, float pdf) {
+}
@@ -0,0 +1,195 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+/**
+ * A flat rectangular light that emits from the side its normal points to.
+ *
+ * <p>Points are sampled uniformly in the solid angle the rectangle subtends at the shading point
+ * (Ureña, Fajardo and King, "An Area-Preserving Parametrization for Spherical Rectangles"), so
+ * every sample carries the same weight no matter how close or oblique the light is. When the
+ * rectangle covers a tiny solid angle, where that mapping runs out of precision and the density is
+ * nearly uniform anyway, points are sampled by area instead.</p>
+ */
+public class RectLight extends AreaLight {
+
+    /** Solid angle below which the rectangle is sampled by area. */
+    private static final double MIN_SOLID_ANGLE = 1e-4;
+
+    private final Vec3 edgeU, edgeV;
+    private final Vec3 normal, axisU, axisV;
+    private final float lengthU, lengthV;
+
+    /**
+     * Constructs a new rectangle light. The normal is {@code edgeU x edgeV}.
+     *
+     * @param center   Centre of the rectangle in world coordinates.
+     * @param radiance Emitted radiance.
+     * @param color    Color of the light.
+     * @param edgeU    First edge of the rectangle.
+     * @param edgeV    Second edge of the rectangle, perpendicular to the first.
+     * @throws IllegalArgumentException If the edges are degenerate or not perpendicular.
+     */
+    public RectLight(Vec3 center, float radiance, Color color, Vec3 edgeU, Vec3 edgeV) {
+        super(center, radiance, 0.5f * edgeU.add(edgeV).getLength(), color);
+        this.lengthU = edgeU.getLength();
+        this.lengthV = edgeV.getLength();
+        if (!(lengthU > 0f && lengthV > 0f)) throw new IllegalArgumentException("Rectangle light edges must not be empty");
+        if (Math.abs(edgeU.dot(edgeV)) > 1e-3f * lengthU * lengthV) {
+            throw new IllegalArgumentException("Rectangle light edges must be perpendicular");
+        }
+        this.edgeU = edgeU;
+        this.edgeV = edgeV;
+        this.axisU = edgeU.divide(lengthU);
+        this.axisV = edgeV.divide(lengthV);
+        this.normal = axisU.cross(axisV).normalize();
+    }
+
+    /**
+     * Creates a copy of this rectangle light with a different radiance.
+     *
+     * @param newIntensity New radiance.
+     * @return A new RectLight instance with the specified radiance.
+     */
+    @Override
+    public RectLight copyWithIntensity(float newIntensity) {
+        return new RectLight(getP(), newIntensity, getColor(), edgeU, edgeV);
+    }
+
+    /**
+     * @param point The shading point.
+     * @param u1    First uniform random number in [0, 1).
+     * @param u2    Second uniform random number in [0, 1).
+     * @return The sample, or null if the shading point is behind the rectangle.
+     */
+    @Override
+    public LightSample sample(Vec3 point, float u1, float u2) {
+        SphericalRectangle rectangle = new SphericalRectangle(point);
+        if (rectangle.z0 >= 0.0) return null;
+        if (rectangle.solidAngle < MIN_SOLID_ANGLE) {
+            Vec3 position = samplePosition(u1, u2);
+            float pdf = toSolidAngle(point, position, normal, 1f / getArea());
+            return pdf > 0f ? new LightSample(position, pdf) : null;
+        }
+        return new LightSample(rectangle.sample(point, u1, u2), (float) (1.0 / rectangle.solidAngle));
+    }
+
+    /**
+     * @param u1 First uniform random number in [0, 1).
+     * @param u2 Second uniform random number in [0, 1).
+     * @return A point distributed uniformly on the rectangle.
+     */
+    @Override
+    public Vec3 samplePosition(float u1, float u2) {
+        return getP().add(edgeU.multiply(u1 - 0.5f)).add(edgeV.multiply(u2 - 0.5f));
+    }
+
+    /**
+     * @param point    The shading point.
+     * @param position A point on the rectangle.
+     * @return Density with respect to solid angle at the shading point.
+     */
+    @Override
+    public float pdf(Vec3 point, Vec3 position) {
+        SphericalRectangle rectangle = new SphericalRectangle(point);
+        if (rectangle.z0 >= 0.0) return 0f;
+        if (rectangle.solidAngle < MIN_SOLID_ANGLE) return toSolidAngle(point, position, normal, 1f / getArea());
+        return (float) (1.0 / rectangle.solidAngle);
+    }
+
+    /**
+     * @return Area of the rectangle.
+     */
+    @Override
+    public float getArea() {
+        return lengthU * lengthV;
+    }
+
+    /**
+     * @return Normalized direction the rectangle emits to.
+     */
+    @Override
+    public Vec3 getNormal() {
+        return normal;
+    }
+
+    /**
+     * The rectangle projected onto the unit sphere around a shading point, in the local frame of
+     * the rectangle's edges. Computed in double precision because the solid angle is a small
+     * difference of angles close to pi.
+     */
+    private final class SphericalRectangle {
+
+        final double x0, y0, z0, x1, y1;
+        final double b0, b1, k, solidAngle;
+
+        SphericalRectangle(Vec3 point) {
+            Vec3 d = getP().subtract(edgeU.multiply(0.5f)).subtract(edgeV.multiply(0.5f)).subtract(point);
+            x0 = d.dot(axisU);
+            y0 = d.dot(axisV);
+            z0 = d.dot(normal);
+            x1 = x0 + lengthU;
+            y1 = y0 + lengthV;
+            if (z0 >= 0.0) {
+                b0 = b1 = k = solidAngle = 0.0;
+                return;
+            }
+
+            // Normals of the planes through the shading point and each edge
+            double[] n0 = normalizedCross(x0, y0, x1, y0);
+            double[] n1 = normalizedCross(x1, y0, x1, y1);
+            double[] n2 = normalizedCross(x1, y1, x0, y1);
+            double[] n3 = normalizedCross(x0, y1, x0, y0);
+            double g0 = Math.acos(clamp(-dot(n0, n1)));
+            double g1 = Math.acos(clamp(-dot(n1, n2)));
+            double g2 = Math.acos(clamp(-dot(n2, n3)));
+            double g3 = Math.acos(clamp(-dot(n3, n0)));
+            b0 = n0[2];
+            b1 = n2[2];
+            k = 2.0 * Math.PI - g2 - g3;
+            solidAngle = g0 + g1 - k;
+        }
+
+        /**
+         * Cross product of the corners {@code (ax, ay, z0)} and {@code (bx, by, z0)}, normalized.
+         */
+        private double[] normalizedCross(double ax, double ay, double bx, double by) {
+            double x = ay * z0 - z0 * by, y = z0 * bx - ax * z0, z = ax * by - ay * bx;
+            double length = Math.sqrt(x * x + y * y + z * z);
+            return new double[] {x / length, y / length, z / length};
+        }
+
+        private static double dot(double[] a, double[] b) {
+            return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+        }
+
+        private static double clamp(double cosine) {
+            return Math.max(-1.0, Math.min(1.0, cosine));
+        }
+
+        /**
+         * Maps two uniform numbers to a point on the rectangle, uniformly in solid angle.
+         */
+        Vec3 sample(Vec3 point, float u1, float u2) {
+            // Pick the horizontal position so that the solid angle to its left is u1 * solidAngle
+            double au = u1 * solidAngle + k;
+            double sinAu = Math.sin(au);
+            double fu = (Math.cos(au) * b0 - b1) / (Math.abs(sinAu) < 1e-12 ? Math.copySign(1e-12, sinAu) : sinAu);
+            double cu = Math.copySign(1.0, fu) / Math.sqrt(fu * fu + b0 * b0);
+            cu = clamp(cu);
+            double xu = -cu * z0 / Math.sqrt(Math.max(1e-12, 1.0 - cu * cu));
+            xu = Math.max(x0, Math.min(x1, xu));
+
+            // Then the vertical position, uniformly in the sine of the elevation along that column
+            double distance = Math.sqrt(xu * xu + z0 * z0);
+            double h0 = y0 / Math.sqrt(distance * distance + y0 * y0);
+            double h1 = y1 / Math.sqrt(distance * distance + y1 * y1);
+            double hv = h0 + u2 * (h1 - h0);
+            double yv = hv * hv < 1.0 - 1e-9 ? hv * distance / Math.sqrt(1.0 - hv * hv) : y1;
+            yv = Math.max(y0, Math.min(y1, yv));
+
+            return point.add(axisU.multiply((float) xu)).add(axisV.multiply((float) yv)).add(normal.multiply((float) z0));
+        }
+    }
+}
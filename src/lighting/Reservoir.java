@@ -0,0 +1,98 @@
+package lighting;
+
+/**
+ * Weighted reservoir holding one light chosen by resampled importance sampling.
+ *
+ * <p>Candidates are streamed through {@link #update} with weight {@code targetPdf / sourcePdf};
+ * each replaces the kept light with probability proportional to its weight, so after {@code M}
+ * candidates the kept light is distributed approximately proportional to the target function.
+ * {@link #getWeight()} is the unbiased contribution weight {@code W = weightSum / (M * targetPdf)}
+ * by which the kept light's contribution is scaled. Reservoirs of other pixels or earlier passes
+ * are merged with {@link #combine}, which is what makes reuse cheap: the merged reservoir
+ * represents all their candidates at the cost of one.</p>
+ */
+public final class Reservoir {
+
+    private Light light;
+    private float targetPdf;    // target function of the kept light at the shading point
+    private float weightSum;
+    private float weight;       // W, valid after finish()
+    private int count;          // M, number of candidates seen
+    private boolean discarded;  // kept light was occluded; not spread to other reservoirs
+
+    /**
+     * Streams one candidate into the reservoir.
+     *
+     * @param candidate  The candidate light.
+     * @param resampling Resampling weight of the candidate, e.g. target over source density.
+     * @param target     Target function of the candidate at the shading point.
+     * @param u          Uniform random number in [0, 1).
+     * @return True if the candidate replaced the kept light.
+     */
+    public boolean update(Light candidate, float resampling, float target, float u) {
+        count++;
+        if (!(resampling > 0f)) return false;
+        weightSum += resampling;
+        if (u * weightSum < resampling) {
+            light = candidate;
+            targetPdf = target;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merges a finished reservoir, e.g. of a neighbouring pixel or the previous pass.
+     *
+     * @param other    The reservoir to merge.
+     * @param target   Target function of the other reservoir's light at this shading point.
+     * @param maxCount Upper bound on the candidates the other reservoir may count for,
+     *                 limiting how much old or distant history can dominate.
+     * @param u        Uniform random number in [0, 1).
+     */
+    public void combine(Reservoir other, float target, int maxCount, float u) {
+        int otherCount = Math.min(other.count, maxCount);
+        if (otherCount == 0) return;
+        int before = count;
+        float otherWeight = other.light == null || other.discarded ? 0f : other.weight;
+        update(other.light, target * otherWeight * otherCount, target, u);
+        count = before + otherCount;
+    }
+
+    /**
+     * Computes the contribution weight once all candidates and reservoirs are in.
+     */
+    public void finish() {
+        weight = light == null || targetPdf <= 0f || count == 0 ? 0f : weightSum / (count * targetPdf);
+    }
+
+    /**
+     * Marks the kept light as occluded, e.g. after a shadow ray towards it was blocked. The candidate
+     * count is kept, but reservoirs that merge this one no longer take over its light, so an occluded
+     * light does not spread. {@link #getWeight()} is unchanged for other samples shading with it.
+     */
+    public void discard() {
+        discarded = true;
+    }
+
+    /**
+     * @return The kept light, or null if no candidate had a positive weight.
+     */
+    public Light getLight() {
+        return light;
+    }
+
+    /**
+     * @return Contribution weight W of the kept light.
+     */
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return Number of candidates the reservoir represents.
+     */
+    public int getCount() {
+        return count;
+    }
+}
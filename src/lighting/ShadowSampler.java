@@ -0,0 +1,262 @@
+package lighting;
+
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.acceleration.SceneAccelerator;
+import math.geometry.objects.Area;
+import math.geometry.objects.SceneObject;
+import math.geometry.objects.sdf.SDFObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Adaptive soft shadow sampling against the occlusion queries of a {@link SceneAccelerator}.
+ *
+ * <p>Each light is sampled with a small probe batch of stratified shadow rays first; only if their
+ * transmissions disagree, i.e. the point lies in a penumbra, are the remaining rays traced. Fully
+ * lit and fully shadowed points, the bulk of most images, stop after the probe batch. When every
+ * soft shadow caster of the scene is a signed distance field, lights with a radius are shadowed by
+ * a single distance-field penumbra estimate instead.</p>
+ *
+ * <p>The shadow rays are counted per thread, so render threads can share one sampler and record
+ * their counts into {@link ShadowStatistics} after each pixel.</p>
+ */
+public final class ShadowSampler {
+
+    /** Offset of shadow ray origins along the surface normal, against self-intersection. */
+    private static final float EPSILON = 1e-3f;
+
+    private final SceneAccelerator accelerator;
+    private final List<SceneObject> objects;
+    private final int samples, probeSamples;
+    private final boolean distanceFieldShadows;
+    private final ThreadLocal<int[]> rayCounts = ThreadLocal.withInitial(() -> new int[3]);
+
+    /**
+     * Creates a sampler for a scene.
+     *
+     * @param accelerator          Acceleration structure answering the occlusion queries.
+     * @param objects              The scene objects the accelerator was built over.
+     * @param samples              Shadow rays per light at a point in a penumbra.
+     * @param probeSamples         Shadow rays per light that decide whether a point is in a penumbra.
+     * @param distanceFieldShadows Whether to use the distance-field estimate if only SDFs cast soft shadows.
+     * @throws IllegalArgumentException If there are no samples or no probe samples.
+     */
+    public ShadowSampler(SceneAccelerator accelerator, List<SceneObject> objects, int samples, int probeSamples,
+                         boolean distanceFieldShadows) {
+        if (samples <= 0 || probeSamples <= 0) throw new IllegalArgumentException("At least one shadow sample is needed");
+        this.accelerator = accelerator;
+        this.objects = objects;
+        this.samples = samples;
+        this.probeSamples = Math.min(probeSamples, samples);
+        // Decided once per scene instead of scanning the object list at every shaded hit
+        this.distanceFieldShadows = distanceFieldShadows && hasOnlyDistanceFieldOccluders(objects);
+    }
+
+    /**
+     * Shadows the lights at a hit point. Each light is sampled adaptively, or with a single
+     * distance-field penumbra estimate when only SDFs cast soft shadows.
+     *
+     * <p>Point lights are returned scaled by their visible fraction. Area lights are returned as one
+     * point light per visible sample with the radiance divided by the sample density, so shading uses
+     * the direction towards each sample instead of the light's centre.</p>
+     *
+     * @param hit    The hit point to shade.
+     * @param lights Lights to shade the point with.
+     * @return The lights that reach the point, scaled by their visibility.
+     */
+    public List<Light> shade(Intersection hit, List<Light> lights) {
+        List<Light> relevantLights = new ArrayList<>();
+        Vec3 point = hit.point();
+        Vec3 shadowOrigin = point.add(hit.normal().multiply(EPSILON));
+
+        for (Light light : lights) {
+            if (light instanceof SpotLight spot && spot.getAttenuation(point) <= 0) {
+                continue;
+            }
+
+            // Single-ray penumbra estimate instead of jittered samples when only SDFs can cast soft shadows
+            if (distanceFieldShadows && light.getR() > 0 && !(light instanceof AreaLight)) {
+                int[] counts = rayCounts.get();
+                counts[0]++;
+                counts[1]++;
+                float factor = computeDistanceFieldShadow(shadowOrigin, light);
+                if (factor > 0.001f) {
+                    relevantLights.add(light.copyWithIntensity(light.getIntensity() * factor));
+                }
+                continue;
+            }
+
+            sampleShadows(light, point, shadowOrigin, relevantLights);
+        }
+
+        return relevantLights;
+    }
+
+    /**
+     * Multiplies the transmission of everything a shadow ray passes through up to a distance,
+     * using occlusion queries instead of a closest-hit search. Not counted as a shadow ray.
+     *
+     * @param shadowRay The shadow ray.
+     * @param distance  Distance to the light, infinite for the environment.
+     * @return Fraction of the light arriving along the ray, 0 if an opaque object blocks it.
+     */
+    public float computeTransmission(Ray shadowRay, float distance) {
+        float transmission = 1.0f;
+
+        for (SceneObject obj : accelerator.getCandidates(shadowRay, distance)) {
+            if (obj.isOccluding(shadowRay, distance)) {
+                transmission *= obj.getMaterial().getTransmission();
+                if (transmission <= 0.001f) {
+                    return 0f;
+                }
+            }
+        }
+        return transmission;
+    }
+
+    /**
+     * Clears the shadow ray counts of the calling thread, e.g. before shading a pixel.
+     */
+    public void resetRayCounts() {
+        Arrays.fill(rayCounts.get(), 0);
+    }
+
+    /**
+     * Adds the shadow rays counted by the calling thread since the last reset to a pixel.
+     *
+     * @param statistics The statistics to record into.
+     * @param pixel      Index of the pixel.
+     */
+    public void recordRayCounts(ShadowStatistics statistics, int pixel) {
+        int[] counts = rayCounts.get();
+        statistics.record(pixel, counts[0], counts[1], counts[2]);
+    }
+
+    /**
+     * Traces a probe batch towards a light and, at points in a penumbra, the remaining samples.
+     * Stopping early slightly darkens points at the very edge of the umbra, where all probes can
+     * miss a thin visible sliver.
+     */
+    private void sampleShadows(Light light, Vec3 point, Vec3 shadowOrigin, List<Light> relevantLights) {
+        AreaLight area = light instanceof AreaLight a ? a : null;
+        // Every jittered position of a light without radius is the same, so one ray decides
+        int probeCount = area == null && light.getR() <= 0 ? 1 : probeSamples;
+
+        Vec3[] positions = new Vec3[samples];
+        float[] pdfs = new float[samples];
+        float[] transmissions = new float[samples];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int rays = traceShadowSamples(light, area, point, shadowOrigin, AreaLight.stratify(probeCount, random), 0,
+                positions, pdfs, transmissions);
+
+        float min = transmissions[0], max = transmissions[0];
+        for (int i = 1; i < probeCount; i++) {
+            min = Math.min(min, transmissions[i]);
+            max = Math.max(max, transmissions[i]);
+        }
+        boolean penumbra = probeCount > 1 && probeCount < samples && max - min > 0.001f;
+        int count = probeCount;
+        if (penumbra) {
+            rays += traceShadowSamples(light, area, point, shadowOrigin, AreaLight.stratify(samples - probeCount, random),
+                    probeCount, positions, pdfs, transmissions);
+            count = samples;
+        }
+
+        int[] counts = rayCounts.get();
+        counts[0] += rays;
+        counts[1] += samples;
+        if (penumbra) counts[2]++;
+
+        if (area != null) {
+            for (int i = 0; i < count; i++) {
+                if (transmissions[i] > 0.001f) {
+                    float intensity = light.getIntensity() * transmissions[i] / (count * pdfs[i]);
+                    relevantLights.add(new Light(positions[i], intensity, 0f, light.getColor()));
+                }
+            }
+            return;
+        }
+        float shadowCount = 0;
+        for (int i = 0; i < count; i++) shadowCount += transmissions[i];
+        float factor = shadowCount / count;
+        if (factor > 0.001f) {
+            relevantLights.add(light.copyWithIntensity(light.getIntensity() * factor));
+        }
+    }
+
+    /**
+     * Traces a batch of shadow samples towards a light into the output arrays, starting at an offset;
+     * samples of an area light facing away keep a transmission of 0.
+     *
+     * @return Number of shadow rays traced.
+     */
+    private int traceShadowSamples(Light light, AreaLight area, Vec3 point, Vec3 shadowOrigin, float[] u, int offset,
+                                   Vec3[] positions, float[] pdfs, float[] transmissions) {
+        int rays = 0;
+        for (int i = 0; i < u.length / 2; i++) {
+            int at = offset + i;
+            if (area != null) {
+                LightSample sample = area.sample(point, u[2 * i], u[2 * i + 1]);
+                if (sample == null) continue;
+                positions[at] = sample.position();
+                pdfs[at] = sample.pdf();
+            } else {
+                positions[at] = light.jitterLightPosition(u[2 * i], u[2 * i + 1]);
+            }
+            Vec3 toLight = positions[at].subtract(point);
+            transmissions[at] = computeTransmission(new Ray(shadowOrigin, toLight), toLight.getLength());
+            rays++;
+        }
+        return rays;
+    }
+
+    /**
+     * Computes the visibility of a light with a single shadow ray towards its center.
+     * SDF occluders contribute a min-ratio penumbra estimate scaled by the light radius,
+     * all other objects are tested for hard occlusion.
+     */
+    private float computeDistanceFieldShadow(Vec3 shadowOrigin, Light light) {
+        Vec3 toLight = light.getP().subtract(shadowOrigin);
+        float distance = toLight.getLength();
+
+        Ray shadowRay = new Ray(shadowOrigin, toLight);
+        float transmission = 1.0f;
+
+        for (SceneObject obj : objects) {
+            float visibility;
+            if (obj instanceof SDFObject sdf) {
+                visibility = sdf.softShadow(shadowRay, distance, light.getR());
+            } else {
+                visibility = obj.isOccluding(shadowRay, distance) ? 0f : 1f;
+            }
+
+            if (visibility < 1f) {
+                // Only the covered part of the light is attenuated by the occluder
+                transmission *= 1f - (1f - visibility) * (1f - obj.getMaterial().getTransmission());
+                if (transmission <= 0.001f) {
+                    break;
+                }
+            }
+        }
+
+        return transmission;
+    }
+
+    /**
+     * Checks whether every potential soft shadow caster in the scene is a signed distance field.
+     * Planes are allowed as they only cast hard shadows onto geometry below them.
+     */
+    private static boolean hasOnlyDistanceFieldOccluders(List<SceneObject> objects) {
+        for (SceneObject obj : objects) {
+            if (!(obj instanceof SDFObject) && !(obj instanceof Area)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
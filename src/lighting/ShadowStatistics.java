@@ -0,0 +1,106 @@
+package lighting;
+
+/**
+ * Per-pixel counts of the shadow rays traced by adaptive soft shadow sampling.
+ *
+ * <p>For every pixel it keeps the shadow rays actually traced, the rays fixed-count sampling would
+ * have traced for the same lights, and how many light samplings found a penumbra and had to
+ * continue past the probe batch. Each pixel is written by one render thread only; read the counts
+ * after rendering has finished.</p>
+ */
+public final class ShadowStatistics {
+
+    private final int width, height;
+    private final int[] rays, fixedRays, penumbras;
+
+    /**
+     * Creates empty statistics for an image.
+     *
+     * @param width  Image width in pixels.
+     * @param height Image height in pixels.
+     */
+    public ShadowStatistics(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rays = new int[width * height];
+        fixedRays = new int[width * height];
+        penumbras = new int[width * height];
+    }
+
+    /**
+     * Adds the shadow rays of one pixel sample, e.g. one progressive pass.
+     *
+     * @param pixel     Index {@code y * width + x} of the pixel.
+     * @param rays      Shadow rays traced.
+     * @param fixedRays Shadow rays fixed-count sampling would have traced.
+     * @param penumbras Light samplings that continued past the probe batch.
+     */
+    public void record(int pixel, int rays, int fixedRays, int penumbras) {
+        this.rays[pixel] += rays;
+        this.fixedRays[pixel] += fixedRays;
+        this.penumbras[pixel] += penumbras;
+    }
+
+    /**
+     * @param pixel Index {@code y * width + x} of the pixel.
+     * @return Shadow rays traced for the pixel.
+     */
+    public int getRays(int pixel) {
+        return rays[pixel];
+    }
+
+    /**
+     * @param pixel Index {@code y * width + x} of the pixel.
+     * @return Shadow rays fixed-count sampling would have traced for the pixel.
+     */
+    public int getFixedRays(int pixel) {
+        return fixedRays[pixel];
+    }
+
+    /**
+     * @param pixel Index {@code y * width + x} of the pixel.
+     * @return Light samplings of the pixel that found a penumbra.
+     */
+    public int getPenumbras(int pixel) {
+        return penumbras[pixel];
+    }
+
+    /**
+     * @return Shadow rays traced for the whole image.
+     */
+    public long getTotalRays() {
+        long total = 0;
+        for (int count : rays) total += count;
+        return total;
+    }
+
+    /**
+     * @return Image width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Image height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Summary of rays per pixel, the saving over fixed-count sampling and the share of pixels in a penumbra.
+     */
+    @Override
+    public String toString() {
+        long traced = 0, fixed = 0;
+        int penumbraPixels = 0;
+        for (int i = 0; i < rays.length; i++) {
+            traced += rays[i];
+            fixed += fixedRays[i];
+            if (penumbras[i] > 0) penumbraPixels++;
+        }
+        return String.format("%.2f shadow rays per pixel, %.1fx fewer than fixed sampling, %.1f%% of pixels in penumbra",
+                (double) traced / rays.length, traced == 0 ? 1.0 : (double) fixed / traced, 100.0 * penumbraPixels / rays.length);
+    }
+}
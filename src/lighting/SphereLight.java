@@ -0,0 +1,112 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+/**
+ * A spherical light that emits outwards from its whole surface.
+ *
+ * <p>Seen from outside, the sphere covers a cone of directions. Directions are sampled uniformly
+ * inside that cone and the sample is the point where they hit the near side of the sphere, so no
+ * samples are wasted on the hidden back half.</p>
+ */
+public class SphereLight extends AreaLight {
+
+    private final float sphereRadius;
+
+    /**
+     * Constructs a new sphere light.
+     *
+     * @param center   Centre of the sphere in world coordinates.
+     * @param radiance Emitted radiance.
+     * @param radius   Radius of the sphere.
+     * @param color    Color of the light.
+     */
+    public SphereLight(Vec3 center, float radiance, float radius, Color color) {
+        super(center, radiance, radius, color);
+        this.sphereRadius = radius;
+    }
+
+    /**
+     * Creates a copy of this sphere light with a different radiance.
+     *
+     * @param newIntensity New radiance.
+     * @return A new SphereLight instance with the specified radiance.
+     */
+    @Override
+    public SphereLight copyWithIntensity(float newIntensity) {
+        return new SphereLight(getP(), newIntensity, sphereRadius, getColor());
+    }
+
+    /**
+     * @param point The shading point.
+     * @param u1    First uniform random number in [0, 1).
+     * @param u2    Second uniform random number in [0, 1).
+     * @return The sample, or null if the shading point is inside the sphere.
+     */
+    @Override
+    public LightSample sample(Vec3 point, float u1, float u2) {
+        Vec3 toCenter = getP().subtract(point);
+        float distanceSquared = toCenter.getLengthSquared();
+        float radiusSquared = sphereRadius * sphereRadius;
+        if (distanceSquared <= radiusSquared) return null;
+        float distance = (float) Math.sqrt(distanceSquared);
+        Vec3 axis = toCenter.divide(distance);
+
+        float oneMinusCosMax = coneHeight(distanceSquared, radiusSquared);
+        float cosTheta = 1f - u1 * oneMinusCosMax;
+        float sinTheta = (float) Math.sqrt(Math.max(0f, 1f - cosTheta * cosTheta));
+        float phi = 2f * (float) Math.PI * u2;
+        Vec3[] basis = basis(axis);
+        Vec3 direction = axis.multiply(cosTheta)
+                .add(basis[0].multiply(sinTheta * (float) Math.cos(phi)))
+                .add(basis[1].multiply(sinTheta * (float) Math.sin(phi)));
+
+        // Nearest intersection of the sampled direction with the sphere
+        float t = distance * cosTheta - (float) Math.sqrt(Math.max(0f, radiusSquared - distanceSquared * sinTheta * sinTheta));
+        return new LightSample(point.add(direction.multiply(t)), 1f / (2f * (float) Math.PI * oneMinusCosMax));
+    }
+
+    /**
+     * @param u1 First uniform random number in [0, 1).
+     * @param u2 Second uniform random number in [0, 1).
+     * @return A point distributed uniformly on the sphere.
+     */
+    @Override
+    public Vec3 samplePosition(float u1, float u2) {
+        float z = 1f - 2f * u1;
+        float r = (float) Math.sqrt(Math.max(0f, 1f - z * z));
+        float phi = 2f * (float) Math.PI * u2;
+        return getP().add(new Vec3(r * (float) Math.cos(phi), r * (float) Math.sin(phi), z).multiply(sphereRadius));
+    }
+
+    /**
+     * @param point    The shading point.
+     * @param position A point on the visible side of the sphere.
+     * @return Density with respect to solid angle at the shading point, 0 inside the sphere.
+     */
+    @Override
+    public float pdf(Vec3 point, Vec3 position) {
+        float distanceSquared = getP().subtract(point).getLengthSquared();
+        float radiusSquared = sphereRadius * sphereRadius;
+        if (distanceSquared <= radiusSquared) return 0f;
+        return 1f / (2f * (float) Math.PI * coneHeight(distanceSquared, radiusSquared));
+    }
+
+    /**
+     * Computes {@code 1 - cos(thetaMax)} of the cone the sphere subtends, without the
+     * cancellation of the direct formula for distant spheres.
+     */
+    private static float coneHeight(float distanceSquared, float radiusSquared) {
+        float sinSquared = radiusSquared / distanceSquared;
+        return sinSquared / (1f + (float) Math.sqrt(Math.max(0f, 1f - sinSquared)));
+    }
+
+    /**
+     * @return Surface area of the sphere.
+     */
+    @Override
+    public float getArea() {
+        return 4f * (float) Math.PI * sphereRadius * sphereRadius;
+    }
+}
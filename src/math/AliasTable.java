@@ -0,0 +1,108 @@
+package math;
+
+/**
+ * Discrete distribution over {@code n} outcomes that is sampled in constant time (Walker's alias method).
+ *
+ * <p>The table splits the probability mass into {@code n} equally likely columns. Each column holds
+ * its own outcome with probability {@code threshold} and otherwise an alias, so drawing a sample is
+ * one column choice and one comparison. The table is built in linear time with Vose's method.</p>
+ */
+public final class AliasTable {
+
+    private final float[] probabilities;
+    private final float[] thresholds;
+    private final int[] aliases;
+    private final double total;
+
+    /**
+     * Builds the table for the given weights.
+     *
+     * @param weights Non-negative weight of each outcome.
+     * @throws IllegalArgumentException If there are no weights, a weight is negative or not finite, or all are zero.
+     */
+    public AliasTable(float[] weights) {
+        int n = weights.length;
+        if (n == 0) throw new IllegalArgumentException("Alias table needs at least one weight");
+        double sum = 0;
+        for (float weight : weights) {
+            if (!(weight >= 0f) || Float.isInfinite(weight)) {
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            }
+            sum += weight;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("Alias table weights sum to zero");
+        total = sum;
+
+        probabilities = new float[n];
+        thresholds = new float[n];
+        aliases = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            probabilities[i] = (float) (weights[i] / sum);
+            scaled[i] = weights[i] / sum * n;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount], more = large[--largeCount];
+            thresholds[less] = (float) scaled[less];
+            aliases[less] = more;
+            scaled[more] += scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Leftovers are 1 up to rounding and always keep their own outcome
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            thresholds[i] = 1f;
+            aliases[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            thresholds[i] = 1f;
+            aliases[i] = i;
+        }
+    }
+
+    /**
+     * Draws an outcome.
+     *
+     * @param u Uniform random number in [0, 1).
+     * @return Index of the outcome, chosen with probability {@link #getProbability(int)}.
+     */
+    public int sample(float u) {
+        float scaled = u * thresholds.length;
+        int column = Math.min((int) scaled, thresholds.length - 1);
+        return scaled - column < thresholds[column] ? column : aliases[column];
+    }
+
+    /**
+     * @param index Index of an outcome.
+     * @return Probability of drawing the outcome.
+     */
+    public float getProbability(int index) {
+        return probabilities[index];
+    }
+
+    /**
+     * @return Sum of all weights the table was built from.
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Number of outcomes.
+     */
+    public int size() {
+        return thresholds.length;
+    }
+}
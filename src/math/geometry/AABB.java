@@ -0,0 +1,201 @@
+package math.geometry;
+
+import math.*;
+
+/**
+ * Represents an axis-aligned bounding box defined by its minimum and maximum corners.
+ * Unbounded extents are represented by infinite coordinates.
+ */
+public record AABB(Vec3 min, Vec3 max) {
+
+    /**
+     * Box covering all of space, used by objects without finite bounds.
+     */
+    public static final AABB INFINITE = new AABB(
+            new Vec3(Float.NEGATIVE_INFINITY),
+            new Vec3(Float.POSITIVE_INFINITY));
+
+    /**
+     * Box containing nothing, neutral element for {@link #union(AABB)}.
+     */
+    public static final AABB EMPTY = new AABB(
+            new Vec3(Float.POSITIVE_INFINITY),
+            new Vec3(Float.NEGATIVE_INFINITY));
+
+    /**
+     * Creates the smallest box containing all given points.
+     *
+     * @param points The points to enclose.
+     * @return Bounding box of the points.
+     */
+    public static AABB of(Vec3... points) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (Vec3 p : points) {
+            minX = Math.min(minX, p.getX());
+            minY = Math.min(minY, p.getY());
+            minZ = Math.min(minZ, p.getZ());
+            maxX = Math.max(maxX, p.getX());
+            maxY = Math.max(maxY, p.getY());
+            maxZ = Math.max(maxZ, p.getZ());
+        }
+        return new AABB(new Vec3(minX, minY, minZ), new Vec3(maxX, maxY, maxZ));
+    }
+
+    /**
+     * Returns the smallest box containing this box and another one.
+     *
+     * @param other The other box.
+     * @return Union of both boxes.
+     */
+    public AABB union(AABB other) {
+        return new AABB(
+                new Vec3(Math.min(min.getX(), other.min.getX()), Math.min(min.getY(), other.min.getY()), Math.min(min.getZ(), other.min.getZ())),
+                new Vec3(Math.max(max.getX(), other.max.getX()), Math.max(max.getY(), other.max.getY()), Math.max(max.getZ(), other.max.getZ())));
+    }
+
+    /**
+     * Returns the overlap of this box and another one.
+     *
+     * @param other The other box.
+     * @return Intersection of both boxes, possibly empty.
+     */
+    public AABB intersection(AABB other) {
+        return new AABB(
+                new Vec3(Math.max(min.getX(), other.min.getX()), Math.max(min.getY(), other.min.getY()), Math.max(min.getZ(), other.min.getZ())),
+                new Vec3(Math.min(max.getX(), other.max.getX()), Math.min(max.getY(), other.max.getY()), Math.min(max.getZ(), other.max.getZ())));
+    }
+
+    /**
+     * Grows the box by the given margin on every side.
+     *
+     * @param margin Distance to add on each side.
+     * @return Expanded box.
+     */
+    public AABB expand(float margin) {
+        return new AABB(min.subtract(new Vec3(margin)), max.add(new Vec3(margin)));
+    }
+
+    /**
+     * Returns the bounding box of this box after applying a transformation.
+     * All eight corners are transformed, so the result stays conservative for rotations.
+     *
+     * @param matrix The transformation to apply.
+     * @return Transformed bounding box, or {@link #INFINITE} if this box is unbounded.
+     */
+    public AABB transform(Mat4 matrix) {
+        if (!isBounded()) return INFINITE;
+        if (isEmpty()) return EMPTY;
+
+        Vec3[] corners = new Vec3[8];
+        for (int i = 0; i < 8; i++) {
+            corners[i] = matrix.transform(new Vec3(
+                    (i & 1) == 0 ? min.getX() : max.getX(),
+                    (i & 2) == 0 ? min.getY() : max.getY(),
+                    (i & 4) == 0 ? min.getZ() : max.getZ()));
+        }
+        return of(corners);
+    }
+
+    /**
+     * Computes the entry and exit distances of a ray through this box (slab test).
+     *
+     * @param ray The ray to test.
+     * @return Array {tNear, tFar} along the ray, or null if the ray line misses the box.
+     */
+    public float[] intersect(Ray ray) {
+        float tNear = Float.NEGATIVE_INFINITY;
+        float tFar = Float.POSITIVE_INFINITY;
+
+        for (int axis = 0; axis < 3; axis++) {
+            float origin = component(ray.p(), axis);
+            float invDir = 1f / component(ray.v(), axis);
+            float t0 = (component(min, axis) - origin) * invDir;
+            float t1 = (component(max, axis) - origin) * invDir;
+            if (t0 > t1) {
+                float tmp = t0;
+                t0 = t1;
+                t1 = tmp;
+            }
+            // Comparisons instead of Math.min/max so NaNs from 0 * infinity are ignored
+            if (t0 > tNear) tNear = t0;
+            if (t1 < tFar) tFar = t1;
+            if (tNear > tFar) return null;
+        }
+        return new float[]{tNear, tFar};
+    }
+
+    /**
+     * Checks whether a ray hits this box within the given distance range.
+     *
+     * @param ray  The ray to test.
+     * @param tMin Minimum distance along the ray.
+     * @param tMax Maximum distance along the ray.
+     * @return True if some part of the box lies in [tMin, tMax] along the ray.
+     */
+    public boolean intersects(Ray ray, float tMin, float tMax) {
+        float[] span = intersect(ray);
+        return span != null && span[1] >= tMin && span[0] <= tMax;
+    }
+
+    /**
+     * Checks whether a point lies within the box (inclusive).
+     *
+     * @param p The point to test.
+     * @return True if the point is inside or on the boundary.
+     */
+    public boolean contains(Vec3 p) {
+        return p.getX() >= min.getX() && p.getX() <= max.getX()
+                && p.getY() >= min.getY() && p.getY() <= max.getY()
+                && p.getZ() >= min.getZ() && p.getZ() <= max.getZ();
+    }
+
+    /**
+     * @return True if all extents are finite.
+     */
+    public boolean isBounded() {
+        return Float.isFinite(min.getX()) && Float.isFinite(min.getY()) && Float.isFinite(min.getZ())
+                && Float.isFinite(max.getX()) && Float.isFinite(max.getY()) && Float.isFinite(max.getZ());
+    }
+
+    /**
+     * @return True if the box contains no points.
+     */
+    public boolean isEmpty() {
+        return min.getX() > max.getX() || min.getY() > max.getY() || min.getZ() > max.getZ();
+    }
+
+    /**
+     * @return The center point of the box.
+     */
+    public Vec3 center() {
+        return min.add(max).multiply(0.5f);
+    }
+
+    /**
+     * @return The extent of the box along each axis.
+     */
+    public Vec3 size() {
+        return max.subtract(min);
+    }
+
+    /**
+     * @return The surface area of the box, used by the surface area heuristic.
+     */
+    public float surfaceArea() {
+        if (isEmpty()) return 0f;
+        Vec3 d = size();
+        return 2f * (d.getX() * d.getY() + d.getY() * d.getZ() + d.getZ() * d.getX());
+    }
+
+    /**
+     * Returns a vector component by axis index.
+     *
+     * @param v    The vector.
+     * @param axis 0 for x, 1 for y, 2 for z.
+     * @return The selected component.
+     */
+    private static float component(Vec3 v, int axis) {
+        return axis == 0 ? v.getX() : axis == 1 ? v.getY() : v.getZ();
+    }
+}
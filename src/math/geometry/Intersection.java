@@ -6,12 +6,41 @@ import stuff.Material;
 
 /**
  * Represents a geometric intersection between a ray and a scene object.
+ *
+ * <p>Hits on objects made of several primitives (e.g. triangle meshes) also record which
+ * primitive was hit and the barycentric coordinates of the hit point on it, so surface
+ * attributes can be looked up directly instead of searching for the primitive again.</p>
  */
-public record Intersection(Vec3 point, Vec3 normal, float distance, SceneObject object, Material material) implements Comparable<Intersection> {
+public record Intersection(Vec3 point, Vec3 normal, float distance, SceneObject object, Material material,
+                           int primitiveId, float u, float v) implements Comparable<Intersection> {
 
     /**
      * Constructs an Intersection instance.
      *
+     * @param point       The intersection point in world space.
+     * @param normal      The surface normal at the intersection (automatically normalized).
+     * @param distance    The distance along the ray to the intersection point.
+     * @param object      The intersected scene object.
+     * @param material    The material of the intersected object.
+     * @param primitiveId Index of the hit primitive within the object, or -1 if not applicable.
+     * @param u           Barycentric weight of the primitive's second vertex.
+     * @param v           Barycentric weight of the primitive's third vertex.
+     */
+    public Intersection(Vec3 point, Vec3 normal, float distance, SceneObject object, Material material,
+                        int primitiveId, float u, float v) {
+        this.point = point;
+        this.normal = normal.normalize();
+        this.distance = distance;
+        this.object = object;
+        this.material = material;
+        this.primitiveId = primitiveId;
+        this.u = u;
+        this.v = v;
+    }
+
+    /**
+     * Constructs an Intersection instance without primitive information.
+     *
      * @param point    The intersection point in world space.
      * @param normal   The surface normal at the intersection (automatically normalized).
      * @param distance The distance along the ray to the intersection point.
@@ -19,11 +48,32 @@ public record Intersection(Vec3 point, Vec3 normal, float distance, SceneObject
      * @param material The material of the intersected object.
      */
     public Intersection(Vec3 point, Vec3 normal, float distance, SceneObject object, Material material) {
-        this.point = point;
-        this.normal = normal.normalize();
-        this.distance = distance;
-        this.object = object;
-        this.material = material;
+        this(point, normal, distance, object, material, -1, 0f, 0f);
+    }
+
+    /**
+     * Returns a copy attributed to another object, keeping the primitive information.
+     * Used by composite objects that re-label the hits of their children.
+     *
+     * @param normal   The (possibly adjusted) surface normal.
+     * @param object   The object the hit is attributed to.
+     * @param material The material to report.
+     * @return A new Intersection at the same point and distance.
+     */
+    public Intersection withObject(Vec3 normal, SceneObject object, Material material) {
+        return new Intersection(point, normal, distance, object, material, primitiveId, u, v);
+    }
+
+    /**
+     * Interpolates per-vertex attributes of the hit primitive with the barycentric coordinates.
+     *
+     * @param a Attribute at the first vertex.
+     * @param b Attribute at the second vertex.
+     * @param c Attribute at the third vertex.
+     * @return The attribute at the hit point.
+     */
+    public Vec3 interpolate(Vec3 a, Vec3 b, Vec3 c) {
+        return a.multiply(1f - u - v).add(b.multiply(u)).add(c.multiply(v));
     }
 
     /**
@@ -36,4 +86,4 @@ public record Intersection(Vec3 point, Vec3 normal, float distance, SceneObject
     public int compareTo(Intersection other) {
         return Float.compare(this.distance, other.distance);
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package math.geometry;
 
 import math.*;
+import math.geometry.acceleration.SceneAccelerator;
 import math.geometry.objects.SceneObject;
 
 import java.util.List;
@@ -54,15 +55,23 @@ public record Ray(Vec3 p, Vec3 v) {
         float minDist = Float.MAX_VALUE;
 
         for (SceneObject obj : objects) {
-            for (Intersection inter : obj.intersect(this)) {
-                float dist = inter.distance();
-                if (dist > 1e-4f && dist < minDist) {
-                    minDist = dist;
-                    nearestIntersection = inter;
-                }
+            Intersection inter = obj.intersectNearest(this, 1e-4f, minDist);
+            if (inter != null && inter.distance() > 1e-4f && inter.distance() < minDist) {
+                minDist = inter.distance();
+                nearestIntersection = inter;
             }
         }
 
         return nearestIntersection;
     }
-}
\ No newline at end of file
+
+    /**
+     * Finds the closest intersection using a scene's top-level acceleration structure.
+     *
+     * @param accelerator The acceleration structure over the scene objects.
+     * @return The nearest valid intersection, or null if none are found.
+     */
+    public Intersection getNearestIntersection(SceneAccelerator accelerator) {
+        return accelerator.getNearestIntersection(this);
+    }
+}
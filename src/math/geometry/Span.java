@@ -0,0 +1,28 @@
+package math.geometry;
+
+/**
+ * Represents an interval along a ray that lies inside a solid object.
+ *
+ * <p>The interval is bounded by the intersections where the ray enters and exits the object.
+ * A {@code null} entry means the interval extends to negative infinity (the ray line starts
+ * inside the object), a {@code null} exit means it extends to positive infinity.</p>
+ *
+ * @param enter Intersection where the ray enters the solid, or null if unbounded.
+ * @param exit  Intersection where the ray exits the solid, or null if unbounded.
+ */
+public record Span(Intersection enter, Intersection exit) {
+
+    /**
+     * @return Distance of the entry point, or negative infinity if unbounded.
+     */
+    public float start() {
+        return enter == null ? Float.NEGATIVE_INFINITY : enter.distance();
+    }
+
+    /**
+     * @return Distance of the exit point, or positive infinity if unbounded.
+     */
+    public float end() {
+        return exit == null ? Float.POSITIVE_INFINITY : exit.distance();
+    }
+}
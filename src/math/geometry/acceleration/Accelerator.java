@@ -0,0 +1,32 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+/**
+ * Spatial index over a set of primitives identified by their index.
+ *
+ * <p>The structure only knows the primitives' bounds; the actual intersection tests are
+ * performed by the {@link PrimitiveVisitor} passed to {@link #traverse}.</p>
+ */
+public interface Accelerator {
+
+    /**
+     * Visits the primitives whose bounds the ray reaches within {@code [0, tMax]}.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    void traverse(Ray ray, float tMax, PrimitiveVisitor visitor);
+
+    /**
+     * @return Bounding box of all primitives.
+     */
+    AABB getBounds();
+
+    /**
+     * @return One-line summary of the structure's size and build cost, for logging.
+     */
+    String getStatistics();
+}
@@ -0,0 +1,104 @@
+package math.geometry.acceleration;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Ray;
+import math.geometry.objects.MeshObject;
+import math.geometry.objects.mesh.MeshGeometry;
+import math.geometry.objects.mesh.TriangleIntersector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares all acceleration structures head-to-head on the triangles of one OBJ mesh.
+ *
+ * <p>Every structure is built over the same triangles and traces the same closest-hit rays,
+ * shot from a sphere around the mesh towards random points inside its bounds. Reported are
+ * build time, rays per second and triangle tests per ray; a checksum over the hit distances
+ * confirms that all structures find the same hits.</p>
+ *
+ * <p>Usage: {@code AcceleratorBenchmark <mesh.obj> [rays]}</p>
+ */
+public class AcceleratorBenchmark {
+
+    private static final int DEFAULT_RAYS = 200_000;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Path of the OBJ file and optionally the number of rays.
+     * @throws IOException if the OBJ file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: AcceleratorBenchmark <mesh.obj> [rays]");
+            return;
+        }
+        int rayCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RAYS;
+
+        MeshObject mesh = new MeshObject(new File(args[0]), null);
+        MeshGeometry geometry = mesh.getGeometry();
+        AABB[] bounds = geometry.getTriangleBounds();
+        Ray[] rays = generateRays(mesh.getBounds(), rayCount);
+        System.out.printf("%d triangles, %d rays%n", geometry.getTriangleCount(), rayCount);
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            long buildStart = System.nanoTime();
+            Accelerator accelerator = type.build(bounds);
+            double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+
+            // Warm-up pass so the JIT has compiled the traversal before timing
+            trace(accelerator, geometry, rays, new long[1]);
+
+            long[] tests = new long[1];
+            long traceStart = System.nanoTime();
+            double checksum = trace(accelerator, geometry, rays, tests);
+            double traceSeconds = (System.nanoTime() - traceStart) / 1e9;
+
+            System.out.printf("%-8s build %8.1f ms | %8.3f Mrays/s | %6.1f tests/ray | checksum %.3f%n",
+                    type, buildMillis, rays.length / traceSeconds / 1e6, (double) tests[0] / rays.length, checksum);
+            System.out.println("         " + accelerator.getStatistics());
+        }
+    }
+
+    /**
+     * Traces all rays for their closest hit.
+     *
+     * @param tests Incremented by the number of triangle tests.
+     * @return Sum of the closest hit distances.
+     */
+    private static double trace(Accelerator accelerator, MeshGeometry geometry, Ray[] rays, long[] tests) {
+        double checksum = 0;
+        for (Ray ray : rays) {
+            float[] closest = {Float.POSITIVE_INFINITY};
+            TriangleIntersector kernel = new TriangleIntersector(geometry, ray);
+            accelerator.traverse(ray, Float.POSITIVE_INFINITY, (i, tMax) -> {
+                tests[0]++;
+                float t = kernel.intersect(i);
+                if (t < tMax) {
+                    tMax = t;
+                    closest[0] = t;
+                }
+                return tMax;
+            });
+            if (closest[0] < Float.POSITIVE_INFINITY) checksum += closest[0];
+        }
+        return checksum;
+    }
+
+    private static Ray[] generateRays(AABB bounds, int count) {
+        Random random = new Random(42);
+        Vec3 center = bounds.center();
+        float radius = bounds.size().getLength();
+        Ray[] rays = new Ray[count];
+        for (int i = 0; i < count; i++) {
+            Vec3 direction = new Vec3((float) random.nextGaussian(), (float) random.nextGaussian(), (float) random.nextGaussian()).normalize();
+            Vec3 origin = center.add(direction.multiply(radius));
+            Vec3 target = bounds.min().add(bounds.size().multiply(new Vec3(random.nextFloat(), random.nextFloat(), random.nextFloat())));
+            rays[i] = new Ray(origin, target.subtract(origin));
+        }
+        return rays;
+    }
+}
@@ -0,0 +1,36 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+
+/**
+ * The available acceleration structures.
+ */
+public enum AcceleratorType {
+
+    /** Binary BVH built with the binned surface area heuristic. */
+    SAH_BVH,
+    /** Binary BVH built from Morton codes; fastest build, lower quality. */
+    LBVH,
+    /** Four-wide BVH with 8-bit quantized child bounds. */
+    WIDE_BVH,
+    /** Uniform grid with nested grids in dense cells; linear-time build. */
+    GRID,
+    /** SAH kd-tree; slowest build, fewest tests per ray for static scenes. */
+    KD_TREE;
+
+    /**
+     * Builds a structure of this type.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @return The finished acceleration structure.
+     */
+    public Accelerator build(AABB[] bounds) {
+        return switch (this) {
+            case SAH_BVH -> BVH.build(bounds, BVH.BuildMethod.SAH);
+            case LBVH -> BVH.build(bounds, BVH.BuildMethod.LBVH);
+            case WIDE_BVH -> WideBVH.build(bounds);
+            case GRID -> Grid.build(bounds);
+            case KD_TREE -> KdTree.build(bounds);
+        };
+    }
+}
@@ -0,0 +1,353 @@
+package math.geometry.acceleration;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over primitive bounding boxes.
+ *
+ * <p>Nodes are stored flattened in depth-first order: the left child of an interior node
+ * directly follows it, so each node only stores the index of its right child. Bounds are
+ * kept in a float array (min xyz, max xyz per node) to keep traversal free of allocations.
+ * Construction is done in parallel by {@link BVHBuilder}, either with the binned surface
+ * area heuristic (SAH) or as a Morton-code LBVH.</p>
+ *
+ * <p>For animated geometry the hierarchy can be {@link #refit refitted} to moved primitives
+ * in linear time. Refitting keeps the topology, so the tree degrades as primitives drift
+ * apart; {@link #needsRebuild()} reports when the SAH cost has grown enough that a full
+ * rebuild pays off.</p>
+ */
+public final class BVH implements Accelerator {
+
+    /**
+     * Construction algorithms.
+     */
+    public enum BuildMethod {
+        /** Binned surface area heuristic: slower build, fewer tests per ray. */
+        SAH,
+        /** Morton-code linear BVH: very fast build, lower tree quality. */
+        LBVH
+    }
+
+    // Relative SAH costs of a node traversal step and a primitive test
+    private static final float TRAVERSAL_COST = 1f;
+    private static final float INTERSECTION_COST = 1f;
+
+    /**
+     * Ratio of current to build-time SAH cost above which a refitted tree should be rebuilt.
+     */
+    public static final float REBUILD_COST_RATIO = 1.5f;
+
+    private final float[] nodeBounds;      // 6 floats per node
+    private final int[] nodes;             // 2 ints per node: leaf {first, count}, interior {right child, -axis}
+    private final int[] primitiveIndices;
+    private final int nodeCount;
+    private final BuildMethod buildMethod;
+    private final long buildNanos;
+    private AABB rootBounds = AABB.EMPTY;
+    private float builtCost, cost;
+
+    /**
+     * Wraps flattened node arrays. Use {@link #build(AABB[])} to create a hierarchy.
+     */
+    BVH(float[] nodeBounds, int[] nodes, int[] primitiveIndices, int nodeCount, BuildMethod buildMethod, long buildNanos) {
+        this.nodeBounds = nodeBounds;
+        this.nodes = nodes;
+        this.primitiveIndices = primitiveIndices;
+        this.nodeCount = nodeCount;
+        this.buildMethod = buildMethod;
+        this.buildNanos = buildNanos;
+        updateCost();
+        this.builtCost = cost;
+    }
+
+    /**
+     * Builds a hierarchy over primitives with the given bounds using the binned SAH.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @return The finished hierarchy.
+     */
+    public static BVH build(AABB[] bounds) {
+        return build(bounds, BuildMethod.SAH);
+    }
+
+    /**
+     * Builds a hierarchy over primitives with the given bounds.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @param method The construction algorithm.
+     * @return The finished hierarchy.
+     */
+    public static BVH build(AABB[] bounds, BuildMethod method) {
+        return BVHBuilder.build(bounds, method);
+    }
+
+    /**
+     * Updates all node bounds bottom-up for moved primitives, keeping the tree topology.
+     * Children are stored after their parent, so a single reverse pass suffices.
+     *
+     * @param bounds New bounding box of each primitive, indexed like the build input.
+     * @throws IllegalArgumentException If the number of primitives changed.
+     */
+    public void refit(AABB[] bounds) {
+        if (bounds.length != primitiveIndices.length) {
+            throw new IllegalArgumentException("Refitting requires the same primitives; rebuild instead.");
+        }
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            int offset = 6 * node;
+            clear(nodeBounds, offset);
+            int count = nodes[2 * node + 1];
+            if (count > 0) {
+                float[] box = new float[6];
+                int first = nodes[2 * node];
+                for (int i = first; i < first + count; i++) {
+                    store(bounds[primitiveIndices[i]], box, 0);
+                    grow(nodeBounds, offset, box, 0);
+                }
+            } else {
+                grow(nodeBounds, offset, nodeBounds, 6 * (node + 1));
+                grow(nodeBounds, offset, nodeBounds, 6 * nodes[2 * node]);
+            }
+        }
+        updateCost();
+    }
+
+    /**
+     * Recomputes the SAH cost of the tree and the cached root bounds.
+     */
+    private void updateCost() {
+        if (nodeCount == 0) {
+            rootBounds = AABB.EMPTY;
+            cost = 0f;
+            return;
+        }
+        rootBounds = new AABB(new Vec3(nodeBounds[0], nodeBounds[1], nodeBounds[2]),
+                new Vec3(nodeBounds[3], nodeBounds[4], nodeBounds[5]));
+
+        float rootArea = area(nodeBounds, 0);
+        if (!(rootArea > 0f)) {
+            cost = INTERSECTION_COST * primitiveIndices.length;
+            return;
+        }
+        float sum = 0f;
+        for (int node = 0; node < nodeCount; node++) {
+            int count = nodes[2 * node + 1];
+            float nodeCost = count > 0 ? INTERSECTION_COST * count : TRAVERSAL_COST;
+            sum += nodeCost * area(nodeBounds, 6 * node);
+        }
+        cost = sum / rootArea;
+    }
+
+    /**
+     * @return Expected cost of a ray query under the surface area heuristic.
+     */
+    public float getSahCost() {
+        return cost;
+    }
+
+    /**
+     * @return Current SAH cost relative to the cost right after the build.
+     */
+    public float getCostRatio() {
+        return builtCost > 0f ? cost / builtCost : 1f;
+    }
+
+    /**
+     * @return True if refitting has degraded the tree past {@link #REBUILD_COST_RATIO}.
+     */
+    public boolean needsRebuild() {
+        return getCostRatio() > REBUILD_COST_RATIO;
+    }
+
+    /**
+     * Visits the primitives of all leaves the ray reaches, nearer child first.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    @Override
+    public void traverse(Ray ray, float tMax, PrimitiveVisitor visitor) {
+        if (nodeCount == 0) return;
+
+        float ox = ray.p().getX(), oy = ray.p().getY(), oz = ray.p().getZ();
+        float ix = 1f / ray.v().getX(), iy = 1f / ray.v().getY(), iz = 1f / ray.v().getZ();
+        boolean[] negative = {ix < 0f, iy < 0f, iz < 0f};
+
+        int[] stack = new int[64];
+        int stackSize = 0;
+        int node = 0;
+
+        while (true) {
+            if (hitsNode(node, ox, oy, oz, ix, iy, iz, tMax)) {
+                int count = nodes[2 * node + 1];
+                if (count > 0) {
+                    int first = nodes[2 * node];
+                    for (int i = first; i < first + count; i++) {
+                        tMax = visitor.visit(primitiveIndices[i], tMax);
+                        if (tMax < 0f) return;
+                    }
+                } else {
+                    if (stackSize == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                    int left = node + 1, right = nodes[2 * node];
+                    if (negative[-count]) {
+                        stack[stackSize++] = left;
+                        node = right;
+                    } else {
+                        stack[stackSize++] = right;
+                        node = left;
+                    }
+                    continue;
+                }
+            }
+            if (stackSize == 0) return;
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     * Slab test against a node. Comparisons are ordered so NaNs from 0 * infinity are ignored.
+     */
+    private boolean hitsNode(int node, float ox, float oy, float oz, float ix, float iy, float iz, float tMax) {
+        int b = 6 * node;
+        float tNear = 0f, tFar = tMax;
+
+        float t0 = (nodeBounds[b] - ox) * ix, t1 = (nodeBounds[b + 3] - ox) * ix;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (nodeBounds[b + 1] - oy) * iy;
+        t1 = (nodeBounds[b + 4] - oy) * iy;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (nodeBounds[b + 2] - oz) * iz;
+        t1 = (nodeBounds[b + 5] - oz) * iz;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        return tNear <= tFar;
+    }
+
+    /**
+     * @return Bounding box of all primitives, or {@link AABB#EMPTY} if there are none.
+     */
+    @Override
+    public AABB getBounds() {
+        return rootBounds;
+    }
+
+    /**
+     * @return The algorithm the hierarchy was built with.
+     */
+    public BuildMethod getBuildMethod() {
+        return buildMethod;
+    }
+
+    /**
+     * @return Construction time in milliseconds.
+     */
+    public double getBuildTimeMillis() {
+        return buildNanos / 1e6;
+    }
+
+    /**
+     * @return One-line summary of size, SAH cost and build time, for logging.
+     */
+    @Override
+    public String getStatistics() {
+        return String.format("%d primitives, %d nodes (%d KiB), SAH cost %.2f, %s build in %.1f ms",
+                primitiveIndices.length, nodeCount, getNodeMemoryBytes() / 1024, cost, buildMethod, getBuildTimeMillis());
+    }
+
+    /**
+     * @return Memory used by the node arrays in bytes.
+     */
+    public long getNodeMemoryBytes() {
+        return 4L * (nodeBounds.length + nodes.length);
+    }
+
+    /**
+     * Wraps node arrays that were saved from another hierarchy, e.g. by a mesh cache.
+     *
+     * @param nodeBounds       Six floats per node, as returned by {@link #nodeBounds()}.
+     * @param nodes            Two ints per node, as returned by {@link #nodes()}.
+     * @param primitiveIndices Primitive ids in leaf order, as returned by {@link #primitiveIndices()}.
+     * @param buildMethod      Method the arrays were built with.
+     * @return Hierarchy using the arrays without copying.
+     * @throws IllegalArgumentException If the array lengths do not match.
+     */
+    public static BVH fromArrays(float[] nodeBounds, int[] nodes, int[] primitiveIndices, BuildMethod buildMethod) {
+        if (nodes.length % 2 != 0 || nodeBounds.length != 3 * nodes.length) {
+            throw new IllegalArgumentException("Node arrays do not match: " + nodeBounds.length + " bounds, " + nodes.length + " node ints");
+        }
+        return new BVH(nodeBounds, nodes, primitiveIndices, nodes.length / 2, buildMethod, 0);
+    }
+
+    // Raw node data for structures derived from this hierarchy and for serialization; must not be modified
+
+    /**
+     * @return The node bounds, six floats per node; the internal array, not a copy.
+     */
+    public float[] nodeBounds() {
+        return nodeBounds;
+    }
+
+    /**
+     * @return The node links, two ints per node; the internal array, not a copy.
+     */
+    public int[] nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The primitive ids in leaf order; the internal array, not a copy.
+     */
+    public int[] primitiveIndices() {
+        return primitiveIndices;
+    }
+
+    /**
+     * @return Number of nodes in the hierarchy.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    static void store(AABB box, float[] target, int offset) {
+        target[offset] = box.min().getX();
+        target[offset + 1] = box.min().getY();
+        target[offset + 2] = box.min().getZ();
+        target[offset + 3] = box.max().getX();
+        target[offset + 4] = box.max().getY();
+        target[offset + 5] = box.max().getZ();
+    }
+
+    static void clear(float[] box, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Float.POSITIVE_INFINITY;
+            box[offset + 3 + axis] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    static void grow(float[] box, int boxOffset, float[] source, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[boxOffset + axis] = Math.min(box[boxOffset + axis], source[offset + axis]);
+            box[boxOffset + 3 + axis] = Math.max(box[boxOffset + 3 + axis], source[offset + 3 + axis]);
+        }
+    }
+
+    static float area(float[] box, int offset) {
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        if (dx < 0f || dy < 0f || dz < 0f) return 0f;
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+}
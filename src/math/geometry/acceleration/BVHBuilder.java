@@ -0,0 +1,462 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds {@link BVH}s in parallel on the common {@link ForkJoinPool}.
+ *
+ * <p>The SAH builder bins primitive centroids into {@value #BIN_COUNT} buckets per axis.
+ * Near the root, where a node covers many primitives, the binning pass itself is split
+ * into chunks and merged; further down, both children of a node are built as independent
+ * tasks. The LBVH builder sorts primitives by the Morton code of their centroid and splits
+ * at the highest differing bit, which is much faster but gives a worse tree.</p>
+ *
+ * <p>Both builders first produce a pointer-based tree which is then flattened into the
+ * depth-first arrays used by {@link BVH}.</p>
+ */
+final class BVHBuilder {
+
+    static final int BIN_COUNT = 12;
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int MAX_SAH_LEAF_SIZE = 16;
+
+    // Nodes with at least this many primitives bin their centroids in parallel chunks
+    private static final int PARALLEL_BINNING_THRESHOLD = 1 << 16;
+    private static final int BINNING_CHUNK_SIZE = 1 << 14;
+    // Subtrees with at least this many primitives are built as separate tasks
+    private static final int SUBTREE_TASK_THRESHOLD = 1 << 10;
+
+    private final float[] primitiveBounds;   // 6 floats per primitive
+    private final float[] centroids;         // 3 floats per primitive
+    private final int[] indices;
+
+    /**
+     * Node of the intermediate tree. Leaves reference the range {@code [start, start + count)}
+     * of the primitive index array.
+     */
+    private static final class Node {
+        final float[] box = new float[6];
+        Node left, right;
+        int axis, start, count;
+    }
+
+    private BVHBuilder(AABB[] bounds) {
+        int n = bounds.length;
+        this.primitiveBounds = new float[6 * n];
+        this.centroids = new float[3 * n];
+        this.indices = new int[n];
+
+        IntStream range = IntStream.range(0, n);
+        (n >= SUBTREE_TASK_THRESHOLD ? range.parallel() : range).forEach(i -> {
+            BVH.store(bounds[i], primitiveBounds, 6 * i);
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[3 * i + axis] = 0.5f * (primitiveBounds[6 * i + axis] + primitiveBounds[6 * i + 3 + axis]);
+            }
+            indices[i] = i;
+        });
+    }
+
+    /**
+     * Builds a hierarchy with the given method.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @param method The construction algorithm.
+     * @return The flattened hierarchy.
+     */
+    static BVH build(AABB[] bounds, BVH.BuildMethod method) {
+        long startTime = System.nanoTime();
+        BVHBuilder builder = new BVHBuilder(bounds);
+
+        Node root = null;
+        if (bounds.length > 0) {
+            root = switch (method) {
+                case SAH -> ForkJoinPool.commonPool().invoke(builder.new SahTask(0, bounds.length));
+                case LBVH -> builder.buildLinear();
+            };
+        }
+        return builder.flatten(root, method, System.nanoTime() - startTime);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Binned SAH
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Builds the subtree over {@code indices[start, end)} with the binned SAH.
+     */
+    @SuppressWarnings("serial")
+    private final class SahTask extends RecursiveTask<Node> {
+        private final int start, end;
+
+        SahTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Node compute() {
+            return buildSah(start, end);
+        }
+    }
+
+    private Node buildSah(int start, int end) {
+        Node node = new Node();
+        int count = end - start;
+
+        float[] centroidBox = new float[6];
+        Bounds bounds = count >= PARALLEL_BINNING_THRESHOLD
+                ? ForkJoinPool.commonPool().invoke(new BoundsTask(start, end))
+                : computeBounds(start, end);
+        System.arraycopy(bounds.box, 0, node.box, 0, 6);
+        System.arraycopy(bounds.centroidBox, 0, centroidBox, 0, 6);
+
+        if (count <= MAX_LEAF_SIZE) {
+            return makeLeaf(node, start, count);
+        }
+
+        Bins bins = count >= PARALLEL_BINNING_THRESHOLD
+                ? ForkJoinPool.commonPool().invoke(new BinTask(start, end, centroidBox))
+                : computeBins(start, end, centroidBox);
+
+        // Find the cheapest split over all axes
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1, bestBin = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            if (!(centroidBox[3 + axis] - centroidBox[axis] > 0f)) continue;
+
+            // Sweep from the right to get the cost of every right-hand partition
+            float[] rightArea = new float[BIN_COUNT];
+            int[] rightCount = new int[BIN_COUNT];
+            float[] acc = new float[6];
+            BVH.clear(acc, 0);
+            int accCount = 0;
+            for (int b = BIN_COUNT - 1; b > 0; b--) {
+                BVH.grow(acc, 0, bins.bounds, bins.offset(axis, b));
+                accCount += bins.counts[axis * BIN_COUNT + b];
+                rightArea[b] = BVH.area(acc, 0);
+                rightCount[b] = accCount;
+            }
+            BVH.clear(acc, 0);
+            accCount = 0;
+            for (int b = 0; b < BIN_COUNT - 1; b++) {
+                BVH.grow(acc, 0, bins.bounds, bins.offset(axis, b));
+                accCount += bins.counts[axis * BIN_COUNT + b];
+                if (accCount == 0 || rightCount[b + 1] == 0) continue;
+                float cost = accCount * BVH.area(acc, 0) + rightCount[b + 1] * rightArea[b + 1];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = b;
+                }
+            }
+        }
+
+        int mid;
+        if (bestAxis < 0) {
+            // All centroids coincide: split the range in half
+            mid = start + count / 2;
+            bestAxis = 0;
+        } else {
+            float leafCost = count * BVH.area(node.box, 0);
+            if (bestCost >= leafCost && count <= MAX_SAH_LEAF_SIZE) {
+                return makeLeaf(node, start, count);
+            }
+            mid = partition(start, end, bestAxis, bestBin, centroidBox[bestAxis], centroidBox[3 + bestAxis] - centroidBox[bestAxis]);
+        }
+
+        node.axis = bestAxis;
+        if (count >= SUBTREE_TASK_THRESHOLD) {
+            SahTask leftTask = new SahTask(start, mid);
+            leftTask.fork();
+            node.right = buildSah(mid, end);
+            node.left = leftTask.join();
+        } else {
+            node.left = buildSah(start, mid);
+            node.right = buildSah(mid, end);
+        }
+        return node;
+    }
+
+    private int partition(int start, int end, int axis, int splitBin, float cMin, float extent) {
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (binIndex(centroids[3 * indices[i] + axis], cMin, extent) <= splitBin) {
+                i++;
+            } else {
+                int tmp = indices[i];
+                indices[i] = indices[j];
+                indices[j--] = tmp;
+            }
+        }
+        return i;
+    }
+
+    private static int binIndex(float centroid, float cMin, float extent) {
+        int b = (int) (BIN_COUNT * (centroid - cMin) / extent);
+        return Math.min(BIN_COUNT - 1, Math.max(0, b));
+    }
+
+    /**
+     * Primitive bounds and centroid bounds of a range.
+     */
+    private static final class Bounds {
+        final float[] box = new float[6];
+        final float[] centroidBox = new float[6];
+
+        Bounds() {
+            BVH.clear(box, 0);
+            BVH.clear(centroidBox, 0);
+        }
+
+        Bounds merge(Bounds other) {
+            BVH.grow(box, 0, other.box, 0);
+            BVH.grow(centroidBox, 0, other.centroidBox, 0);
+            return this;
+        }
+    }
+
+    private Bounds computeBounds(int start, int end) {
+        Bounds result = new Bounds();
+        for (int i = start; i < end; i++) {
+            int p = indices[i];
+            BVH.grow(result.box, 0, primitiveBounds, 6 * p);
+            for (int axis = 0; axis < 3; axis++) {
+                float c = centroids[3 * p + axis];
+                result.centroidBox[axis] = Math.min(result.centroidBox[axis], c);
+                result.centroidBox[3 + axis] = Math.max(result.centroidBox[3 + axis], c);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private final class BoundsTask extends RecursiveTask<Bounds> {
+        private final int start, end;
+
+        BoundsTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Bounds compute() {
+            if (end - start <= BINNING_CHUNK_SIZE) return computeBounds(start, end);
+            int mid = (start + end) >>> 1;
+            BoundsTask left = new BoundsTask(start, mid);
+            left.fork();
+            Bounds right = new BoundsTask(mid, end).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Per-axis bin counts and bounds of a range.
+     */
+    private static final class Bins {
+        final int[] counts = new int[3 * BIN_COUNT];
+        final float[] bounds = new float[6 * 3 * BIN_COUNT];
+
+        Bins() {
+            for (int b = 0; b < 3 * BIN_COUNT; b++) BVH.clear(bounds, 6 * b);
+        }
+
+        int offset(int axis, int bin) {
+            return 6 * (axis * BIN_COUNT + bin);
+        }
+
+        Bins merge(Bins other) {
+            for (int b = 0; b < 3 * BIN_COUNT; b++) {
+                counts[b] += other.counts[b];
+                BVH.grow(bounds, 6 * b, other.bounds, 6 * b);
+            }
+            return this;
+        }
+    }
+
+    private Bins computeBins(int start, int end, float[] centroidBox) {
+        Bins bins = new Bins();
+        for (int axis = 0; axis < 3; axis++) {
+            float cMin = centroidBox[axis], extent = centroidBox[3 + axis] - cMin;
+            if (!(extent > 0f)) continue;
+            for (int i = start; i < end; i++) {
+                int p = indices[i];
+                int b = binIndex(centroids[3 * p + axis], cMin, extent);
+                bins.counts[axis * BIN_COUNT + b]++;
+                BVH.grow(bins.bounds, bins.offset(axis, b), primitiveBounds, 6 * p);
+            }
+        }
+        return bins;
+    }
+
+    @SuppressWarnings("serial")
+    private final class BinTask extends RecursiveTask<Bins> {
+        private final int start, end;
+        private final float[] centroidBox;
+
+        BinTask(int start, int end, float[] centroidBox) {
+            this.start = start;
+            this.end = end;
+            this.centroidBox = centroidBox;
+        }
+
+        @Override
+        protected Bins compute() {
+            if (end - start <= BINNING_CHUNK_SIZE) return computeBins(start, end, centroidBox);
+            int mid = (start + end) >>> 1;
+            BinTask left = new BinTask(start, mid, centroidBox);
+            left.fork();
+            Bins right = new BinTask(mid, end, centroidBox).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Morton-code LBVH
+    // ---------------------------------------------------------------------------------
+
+    private Node buildLinear() {
+        int n = indices.length;
+        Bounds sceneBounds = ForkJoinPool.commonPool().invoke(new BoundsTask(0, n));
+        float[] c = sceneBounds.centroidBox;
+
+        long[] keys = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int code = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                float extent = c[3 + axis] - c[axis];
+                float t = extent > 0f ? (centroids[3 * i + axis] - c[axis]) / extent : 0.5f;
+                int quantized = Math.min(1023, Math.max(0, (int) (t * 1024f)));
+                code |= expandBits(quantized) << (2 - axis);
+            }
+            keys[i] = ((long) code << 32) | i;
+        });
+        Arrays.parallelSort(keys);
+
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) {
+            codes[i] = (int) (keys[i] >>> 32);
+            indices[i] = (int) keys[i];
+        }
+        return ForkJoinPool.commonPool().invoke(new LinearTask(codes, 0, n));
+    }
+
+    /**
+     * Spreads the lower 10 bits of a value so there are two zero bits between each of them.
+     */
+    private static int expandBits(int v) {
+        v = (v * 0x00010001) & 0xFF0000FF;
+        v = (v * 0x00000101) & 0x0F00F00F;
+        v = (v * 0x00000011) & 0xC30C30C3;
+        v = (v * 0x00000005) & 0x49249249;
+        return v;
+    }
+
+    /**
+     * Builds the subtree over the Morton-sorted range {@code [start, end)}.
+     */
+    @SuppressWarnings("serial")
+    private final class LinearTask extends RecursiveTask<Node> {
+        private final int[] codes;
+        private final int start, end;
+
+        LinearTask(int[] codes, int start, int end) {
+            this.codes = codes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Node compute() {
+            int count = end - start;
+            Node node = new Node();
+            if (count <= MAX_LEAF_SIZE) {
+                System.arraycopy(computeBounds(start, end).box, 0, node.box, 0, 6);
+                return makeLeaf(node, start, count);
+            }
+
+            int mid = findSplit(codes, start, end);
+            LinearTask leftTask = new LinearTask(codes, start, mid);
+            LinearTask rightTask = new LinearTask(codes, mid, end);
+            if (count >= SUBTREE_TASK_THRESHOLD) {
+                leftTask.fork();
+                node.right = rightTask.compute();
+                node.left = leftTask.join();
+            } else {
+                node.left = leftTask.compute();
+                node.right = rightTask.compute();
+            }
+
+            System.arraycopy(node.left.box, 0, node.box, 0, 6);
+            BVH.grow(node.box, 0, node.right.box, 0);
+            node.axis = largestAxis(node.box);
+            return node;
+        }
+    }
+
+    /**
+     * Finds the first index whose code differs from the range start in the highest
+     * differing bit of the range. Equal codes are split in the middle.
+     */
+    private static int findSplit(int[] codes, int start, int end) {
+        int first = codes[start], last = codes[end - 1];
+        if (first == last) return (start + end) >>> 1;
+
+        int prefix = Integer.numberOfLeadingZeros(first ^ last);
+        int split = start;
+        int step = end - 1 - start;
+        do {
+            step = (step + 1) >>> 1;
+            int candidate = split + step;
+            if (candidate < end - 1 && Integer.numberOfLeadingZeros(first ^ codes[candidate]) > prefix) {
+                split = candidate;
+            }
+        } while (step > 1);
+        return split + 1;
+    }
+
+    private static int largestAxis(float[] box) {
+        float dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+        return dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Flattening
+    // ---------------------------------------------------------------------------------
+
+    private static Node makeLeaf(Node node, int start, int count) {
+        node.start = start;
+        node.count = count;
+        return node;
+    }
+
+    private BVH flatten(Node root, BVH.BuildMethod method, long buildNanos) {
+        int maxNodes = Math.max(1, 2 * indices.length - 1);
+        float[] nodeBounds = new float[6 * maxNodes];
+        int[] nodes = new int[2 * maxNodes];
+        int[] nodeCount = new int[1];
+        if (root != null) {
+            flatten(root, nodeBounds, nodes, nodeCount);
+        }
+        return new BVH(Arrays.copyOf(nodeBounds, 6 * nodeCount[0]), Arrays.copyOf(nodes, 2 * nodeCount[0]),
+                indices, nodeCount[0], method, buildNanos);
+    }
+
+    private static int flatten(Node node, float[] nodeBounds, int[] nodes, int[] nodeCount) {
+        int index = nodeCount[0]++;
+        System.arraycopy(node.box, 0, nodeBounds, 6 * index, 6);
+        if (node.left == null) {
+            nodes[2 * index] = node.start;
+            nodes[2 * index + 1] = node.count;
+        } else {
+            flatten(node.left, nodeBounds, nodes, nodeCount);
+            nodes[2 * index] = flatten(node.right, nodeBounds, nodes, nodeCount);
+            nodes[2 * index + 1] = -node.axis;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,270 @@
+package math.geometry.acceleration;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over primitive bounds, traversed with a 3D-DDA.
+ *
+ * <p>The resolution is chosen so that there are about {@value #CELLS_PER_PRIMITIVE} cells per
+ * primitive, distributed according to the aspect ratio of the scene. Cells are stored in a
+ * compact offset/reference layout and the grid is built in two linear passes (count, fill),
+ * so rebuilding for every frame is cheap. Cells that still hold many primitives, e.g. where
+ * the density is uneven, get a nested grid of their own (two-level grid).</p>
+ *
+ * <p>Primitives overlapping several cells are tested only once per ray thanks to a
+ * per-thread {@link Mailbox}.</p>
+ */
+public final class Grid implements Accelerator {
+
+    private static final float CELLS_PER_PRIMITIVE = 3f;
+    private static final int MAX_RESOLUTION = 256;
+    // Cells with more primitives than this get a nested grid
+    private static final int SUBGRID_THRESHOLD = 32;
+
+    private final float[] primitiveBounds;  // 6 floats per primitive, shared with nested grids
+    private final AABB bounds;
+    private final float minX, minY, minZ;
+    private final int resX, resY, resZ;
+    private final float cellX, cellY, cellZ;
+    private final int[] cellStart;          // references of cell c are cellPrimitives[cellStart[c], cellStart[c + 1])
+    private final int[] cellPrimitives;
+    private final Grid[] subgrids;          // nested grid per cell, or null
+    private final ThreadLocal<Mailbox> mailboxes;
+    private final long buildNanos;
+
+    /**
+     * Builds a grid over primitives with the given bounds.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @return The finished grid.
+     */
+    public static Grid build(AABB[] bounds) {
+        long startTime = System.nanoTime();
+        float[] primitiveBounds = new float[6 * bounds.length];
+        int[] primitives = new int[bounds.length];
+        AABB sceneBounds = AABB.EMPTY;
+        for (int i = 0; i < bounds.length; i++) {
+            BVH.store(bounds[i], primitiveBounds, 6 * i);
+            primitives[i] = i;
+            sceneBounds = sceneBounds.union(bounds[i]);
+        }
+        return new Grid(primitiveBounds, sceneBounds, primitives, true, startTime);
+    }
+
+    private Grid(float[] primitiveBounds, AABB box, int[] primitives, boolean allowSubgrids, long startTime) {
+        this.primitiveBounds = primitiveBounds;
+        this.mailboxes = allowSubgrids ? Mailbox.perThread(primitiveBounds.length / 6) : null;
+
+        int n = primitives.length;
+        if (n == 0) {
+            this.bounds = AABB.EMPTY;
+            this.minX = this.minY = this.minZ = 0f;
+            this.resX = this.resY = this.resZ = 0;
+            this.cellX = this.cellY = this.cellZ = 1f;
+            this.cellStart = new int[1];
+            this.cellPrimitives = new int[0];
+            this.subgrids = new Grid[0];
+            this.buildNanos = System.nanoTime() - startTime;
+            return;
+        }
+
+        // Pad flat axes so every cell has a volume
+        Vec3 size = box.size();
+        float maxExtent = Math.max(size.getX(), Math.max(size.getY(), size.getZ()));
+        float pad = maxExtent > 0f ? 1e-3f * maxExtent : 1e-3f;
+        float ex = Math.max(size.getX(), pad), ey = Math.max(size.getY(), pad), ez = Math.max(size.getZ(), pad);
+        Vec3 center = box.center();
+        this.minX = center.getX() - 0.5f * ex;
+        this.minY = center.getY() - 0.5f * ey;
+        this.minZ = center.getZ() - 0.5f * ez;
+        this.bounds = new AABB(new Vec3(minX, minY, minZ), new Vec3(minX + ex, minY + ey, minZ + ez));
+
+        float cellsPerUnit = (float) Math.cbrt(CELLS_PER_PRIMITIVE * n / (ex * ey * ez));
+        this.resX = resolution(ex * cellsPerUnit);
+        this.resY = resolution(ey * cellsPerUnit);
+        this.resZ = resolution(ez * cellsPerUnit);
+        this.cellX = ex / resX;
+        this.cellY = ey / resY;
+        this.cellZ = ez / resZ;
+
+        // Pass 1: count the references of every cell
+        int cellCount = resX * resY * resZ;
+        int[] counts = new int[cellCount + 1];
+        int[] range = new int[6];
+        for (int p : primitives) {
+            cellRange(p, range);
+            for (int z = range[2]; z <= range[5]; z++)
+                for (int y = range[1]; y <= range[4]; y++)
+                    for (int x = range[0]; x <= range[3]; x++)
+                        counts[cellIndex(x, y, z)]++;
+        }
+
+        // Prefix sum, then pass 2: fill the references
+        this.cellStart = new int[cellCount + 1];
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] = cellStart[c] + counts[c];
+        }
+        this.cellPrimitives = new int[cellStart[cellCount]];
+        int[] cursor = Arrays.copyOf(cellStart, cellCount);
+        for (int p : primitives) {
+            cellRange(p, range);
+            for (int z = range[2]; z <= range[5]; z++)
+                for (int y = range[1]; y <= range[4]; y++)
+                    for (int x = range[0]; x <= range[3]; x++)
+                        cellPrimitives[cursor[cellIndex(x, y, z)]++] = p;
+        }
+
+        this.subgrids = new Grid[cellCount];
+        if (allowSubgrids) {
+            for (int c = 0; c < cellCount; c++) {
+                int count = cellStart[c + 1] - cellStart[c];
+                if (count > SUBGRID_THRESHOLD) {
+                    int[] cellContent = Arrays.copyOfRange(cellPrimitives, cellStart[c], cellStart[c + 1]);
+                    subgrids[c] = new Grid(primitiveBounds, cellBox(c), cellContent, false, System.nanoTime());
+                }
+            }
+        }
+        this.buildNanos = System.nanoTime() - startTime;
+    }
+
+    private static int resolution(float cells) {
+        return Math.max(1, Math.min(MAX_RESOLUTION, Math.round(cells)));
+    }
+
+    private int cellIndex(int x, int y, int z) {
+        return (z * resY + y) * resX + x;
+    }
+
+    private AABB cellBox(int c) {
+        int x = c % resX, y = (c / resX) % resY, z = c / (resX * resY);
+        return new AABB(new Vec3(minX + x * cellX, minY + y * cellY, minZ + z * cellZ),
+                new Vec3(minX + (x + 1) * cellX, minY + (y + 1) * cellY, minZ + (z + 1) * cellZ));
+    }
+
+    /**
+     * Computes the inclusive cell range {x0, y0, z0, x1, y1, z1} overlapped by a primitive,
+     * clipped to this grid.
+     */
+    private void cellRange(int p, int[] range) {
+        int o = 6 * p;
+        range[0] = clamp((int) Math.floor((primitiveBounds[o] - minX) / cellX), resX);
+        range[1] = clamp((int) Math.floor((primitiveBounds[o + 1] - minY) / cellY), resY);
+        range[2] = clamp((int) Math.floor((primitiveBounds[o + 2] - minZ) / cellZ), resZ);
+        range[3] = clamp((int) Math.floor((primitiveBounds[o + 3] - minX) / cellX), resX);
+        range[4] = clamp((int) Math.floor((primitiveBounds[o + 4] - minY) / cellY), resY);
+        range[5] = clamp((int) Math.floor((primitiveBounds[o + 5] - minZ) / cellZ), resZ);
+    }
+
+    private static int clamp(int cell, int resolution) {
+        return Math.max(0, Math.min(resolution - 1, cell));
+    }
+
+    /**
+     * Visits the primitives of the cells the ray passes through, in front-to-back order.
+     * Traversal stops once {@code tMax} lies before the exit of the current cell.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    @Override
+    public void traverse(Ray ray, float tMax, PrimitiveVisitor visitor) {
+        if (cellPrimitives.length == 0) return;
+
+        Mailbox mailbox = Mailbox.acquire(mailboxes);
+        try {
+            march(ray, 0f, Float.POSITIVE_INFINITY, tMax, visitor, mailbox);
+        } finally {
+            mailbox.release();
+        }
+    }
+
+    /**
+     * Walks the cells between {@code tStart} and {@code tEnd} with a 3D-DDA.
+     *
+     * @return The updated maximum distance, negative if the visitor stopped the traversal.
+     */
+    private float march(Ray ray, float tStart, float tEnd, float tMax, PrimitiveVisitor visitor, Mailbox mailbox) {
+        float[] span = bounds.intersect(ray);
+        if (span == null) return tMax;
+        float t = Math.max(tStart, span[0]);
+        float tLimit = Math.min(tEnd, span[1]);
+        if (t > Math.min(tLimit, tMax)) return tMax;
+
+        float ox = ray.p().getX(), oy = ray.p().getY(), oz = ray.p().getZ();
+        float dx = ray.v().getX(), dy = ray.v().getY(), dz = ray.v().getZ();
+
+        int x = clamp((int) Math.floor((ox + t * dx - minX) / cellX), resX);
+        int y = clamp((int) Math.floor((oy + t * dy - minY) / cellY), resY);
+        int z = clamp((int) Math.floor((oz + t * dz - minZ) / cellZ), resZ);
+
+        int stepX = dx > 0f ? 1 : -1, stepY = dy > 0f ? 1 : -1, stepZ = dz > 0f ? 1 : -1;
+        float nextX = dx == 0f ? Float.POSITIVE_INFINITY : (minX + (x + (dx > 0f ? 1 : 0)) * cellX - ox) / dx;
+        float nextY = dy == 0f ? Float.POSITIVE_INFINITY : (minY + (y + (dy > 0f ? 1 : 0)) * cellY - oy) / dy;
+        float nextZ = dz == 0f ? Float.POSITIVE_INFINITY : (minZ + (z + (dz > 0f ? 1 : 0)) * cellZ - oz) / dz;
+        float deltaX = dx == 0f ? Float.POSITIVE_INFINITY : cellX / Math.abs(dx);
+        float deltaY = dy == 0f ? Float.POSITIVE_INFINITY : cellY / Math.abs(dy);
+        float deltaZ = dz == 0f ? Float.POSITIVE_INFINITY : cellZ / Math.abs(dz);
+
+        while (true) {
+            float cellExit = Math.min(nextX, Math.min(nextY, nextZ));
+            int c = cellIndex(x, y, z);
+
+            if (subgrids[c] != null) {
+                tMax = subgrids[c].march(ray, t, cellExit, tMax, visitor, mailbox);
+                if (tMax < 0f) return tMax;
+            } else {
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    int p = cellPrimitives[i];
+                    if (mailbox.check(p)) {
+                        tMax = visitor.visit(p, tMax);
+                        if (tMax < 0f) return tMax;
+                    }
+                }
+            }
+
+            // Hits found so far lie before every primitive that starts in a later cell
+            if (tMax <= cellExit || cellExit >= tLimit) return tMax;
+
+            t = cellExit;
+            if (nextX <= nextY && nextX <= nextZ) {
+                x += stepX;
+                if (x < 0 || x >= resX) return tMax;
+                nextX += deltaX;
+            } else if (nextY <= nextZ) {
+                y += stepY;
+                if (y < 0 || y >= resY) return tMax;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                if (z < 0 || z >= resZ) return tMax;
+                nextZ += deltaZ;
+            }
+        }
+    }
+
+    /**
+     * @return Bounding box of the grid.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return One-line summary of resolution, references and build time, for logging.
+     */
+    @Override
+    public String getStatistics() {
+        int nested = 0;
+        for (Grid subgrid : subgrids) {
+            if (subgrid != null) nested++;
+        }
+        return String.format("%d primitives, %dx%dx%d cells, %d references, %d nested grids, build in %.1f ms",
+                primitiveBounds.length / 6, resX, resY, resZ, cellPrimitives.length, nested, buildNanos / 1e6);
+    }
+}
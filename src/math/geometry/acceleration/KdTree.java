@@ -0,0 +1,403 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+import java.util.Arrays;
+
+/**
+ * kd-tree over primitive bounds built with the surface area heuristic.
+ *
+ * <p>The build follows Wald and Havran's O(n log n) algorithm: the split candidates (start,
+ * end and planar events of every primitive on every axis) are sorted once, each node sweeps
+ * its sorted event list to find the cheapest plane, and the list is split into the children's
+ * lists in linear time. Only primitives straddling the plane produce new events, clipped to
+ * the child boxes, which are sorted and merged in.</p>
+ *
+ * <p>Events are packed into a single {@code long}: the sortable bits of the position in the
+ * upper half, then axis, type and primitive id, so sorting the raw values orders them by
+ * position, axis and type. Nodes are flattened depth-first into an {@code int[]} with the left
+ * child following its parent. Traversal uses a short stack bounded by the maximum depth, and a
+ * {@link Mailbox} prevents testing primitives referenced by several leaves more than once.</p>
+ */
+public final class KdTree implements Accelerator {
+
+    // Relative costs of a traversal step and a primitive test, and the bonus for cutting off empty space
+    private static final float TRAVERSAL_COST = 1f;
+    private static final float INTERSECTION_COST = 1.5f;
+    private static final float EMPTY_BONUS = 0.2f;
+
+    private static final int END = 0, PLANAR = 1, START = 2;
+    private static final int MAX_PRIMITIVES = 1 << 28;
+    private static final int LEAF = 3;
+
+    private static final byte BOTH = 0, LEFT_ONLY = 1, RIGHT_ONLY = 2, CLIPPED = 3;
+
+    private final float[] primitiveBounds;
+    private final AABB bounds;
+    private final int maxDepth;
+    private final ThreadLocal<Mailbox> mailboxes;
+    private final long buildNanos;
+
+    private int[] nodes = new int[64];     // 2 ints per node: interior {right child << 2 | axis, split bits}, leaf {offset << 2 | 3, count}
+    private int nodeCount;
+    private int[] leafPrimitives = new int[64];
+    private int leafPrimitiveCount;
+
+    // Build-time scratch data
+    private byte[] sides;
+
+    private KdTree(AABB[] primitives) {
+        long startTime = System.nanoTime();
+        int n = primitives.length;
+        if (n >= MAX_PRIMITIVES) {
+            throw new IllegalArgumentException("Too many primitives for a kd-tree: " + n);
+        }
+
+        this.primitiveBounds = new float[6 * n];
+        AABB box = AABB.EMPTY;
+        for (int i = 0; i < n; i++) {
+            BVH.store(primitives[i], primitiveBounds, 6 * i);
+            box = box.union(primitives[i]);
+        }
+        this.bounds = box;
+        this.maxDepth = (int) (8 + 1.3 * Math.log(Math.max(1, n)) / Math.log(2));
+        this.mailboxes = Mailbox.perThread(n);
+
+        if (n > 0) {
+            float[] rootBox = new float[6];
+            BVH.store(box, rootBox, 0);
+            long[] events = new long[6 * n];
+            int eventCount = 0;
+            for (int p = 0; p < n; p++) {
+                eventCount = addEvents(p, primitiveBounds, 6 * p, events, eventCount);
+            }
+            events = Arrays.copyOf(events, eventCount);
+            Arrays.parallelSort(events);
+
+            sides = new byte[n];
+            buildNode(events, n, rootBox, 0);
+            sides = null;
+        }
+        this.nodes = Arrays.copyOf(nodes, 2 * nodeCount);
+        this.leafPrimitives = Arrays.copyOf(leafPrimitives, leafPrimitiveCount);
+        this.buildNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Builds a kd-tree over primitives with the given bounds.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @return The finished tree.
+     */
+    public static KdTree build(AABB[] bounds) {
+        return new KdTree(bounds);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Events
+    // ---------------------------------------------------------------------------------
+
+    private static long event(float position, int axis, int type, int primitive) {
+        int bits = Float.floatToIntBits(position);
+        int sortable = bits ^ ((bits >> 31) & 0x7fffffff);
+        return ((long) sortable << 32) | ((long) axis << 30) | ((long) type << 28) | primitive;
+    }
+
+    private static float position(long event) {
+        int sortable = (int) (event >> 32);
+        return Float.intBitsToFloat(sortable ^ ((sortable >> 31) & 0x7fffffff));
+    }
+
+    private static int axis(long event) {
+        return (int) (event >>> 30) & 3;
+    }
+
+    private static int type(long event) {
+        return (int) (event >>> 28) & 3;
+    }
+
+    private static int primitive(long event) {
+        return (int) event & (MAX_PRIMITIVES - 1);
+    }
+
+    /**
+     * Appends the events of a primitive box: a planar event for flat axes, start and end otherwise.
+     */
+    private static int addEvents(int p, float[] box, int offset, long[] events, int count) {
+        for (int axis = 0; axis < 3; axis++) {
+            float min = box[offset + axis], max = box[offset + 3 + axis];
+            if (min == max) {
+                events[count++] = event(min, axis, PLANAR, p);
+            } else {
+                events[count++] = event(min, axis, START, p);
+                events[count++] = event(max, axis, END, p);
+            }
+        }
+        return count;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Build
+    // ---------------------------------------------------------------------------------
+
+    private void buildNode(long[] events, int primitiveCount, float[] box, int depth) {
+        int node = nodeCount++;
+        if (2 * nodeCount > nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+
+        // Sweep all events once, keeping per-axis counts of primitives left, right and on the plane
+        float boxArea = BVH.area(box, 0);
+        float bestCost = Float.POSITIVE_INFINITY, bestPosition = 0f;
+        int bestAxis = -1;
+        boolean bestPlanarLeft = false;
+
+        if (primitiveCount > 1 && depth < maxDepth && boxArea > 0f) {
+            int[] left = new int[3];
+            int[] right = {primitiveCount, primitiveCount, primitiveCount};
+            int i = 0;
+            while (i < events.length) {
+                long key = events[i] >>> 30;
+                float position = position(events[i]);
+                int axis = axis(events[i]);
+                int ending = 0, planar = 0, starting = 0;
+                while (i < events.length && events[i] >>> 30 == key && type(events[i]) == END) { ending++; i++; }
+                while (i < events.length && events[i] >>> 30 == key && type(events[i]) == PLANAR) { planar++; i++; }
+                while (i < events.length && events[i] >>> 30 == key && type(events[i]) == START) { starting++; i++; }
+
+                right[axis] -= planar + ending;
+                if (position > box[axis] && position < box[3 + axis]) {
+                    float[] leftBox = box.clone(), rightBox = box.clone();
+                    leftBox[3 + axis] = position;
+                    rightBox[axis] = position;
+                    float pLeft = BVH.area(leftBox, 0) / boxArea, pRight = BVH.area(rightBox, 0) / boxArea;
+
+                    float costLeft = splitCost(pLeft, pRight, left[axis] + planar, right[axis]);
+                    float costRight = splitCost(pLeft, pRight, left[axis], right[axis] + planar);
+                    float cost = Math.min(costLeft, costRight);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestPosition = position;
+                        bestPlanarLeft = costLeft <= costRight;
+                    }
+                }
+                left[axis] += starting + planar;
+            }
+        }
+
+        if (bestAxis < 0 || bestCost >= INTERSECTION_COST * primitiveCount) {
+            makeLeaf(node, events, primitiveCount);
+            return;
+        }
+
+        // Classify primitives: every primitive starts as straddling the plane
+        for (long e : events) sides[primitive(e)] = BOTH;
+        for (long e : events) {
+            if (axis(e) != bestAxis) continue;
+            int p = primitive(e), type = type(e);
+            float position = position(e);
+            if (type == END && position <= bestPosition) {
+                sides[p] = LEFT_ONLY;
+            } else if (type == START && position >= bestPosition) {
+                sides[p] = RIGHT_ONLY;
+            } else if (type == PLANAR) {
+                if (position < bestPosition || (position == bestPosition && bestPlanarLeft)) {
+                    sides[p] = LEFT_ONLY;
+                } else {
+                    sides[p] = RIGHT_ONLY;
+                }
+            }
+        }
+
+        float[] leftBox = box.clone(), rightBox = box.clone();
+        leftBox[3 + bestAxis] = bestPosition;
+        rightBox[bestAxis] = bestPosition;
+
+        // Split the sorted list; straddling primitives get new events clipped to each child
+        long[] leftEvents = new long[events.length], rightEvents = new long[events.length];
+        long[] leftClipped = new long[16], rightClipped = new long[16];
+        int leftCount = 0, rightCount = 0, leftClippedCount = 0, rightClippedCount = 0;
+        int leftPrimitives = 0, rightPrimitives = 0;
+        float[] clipped = new float[6];
+
+        for (long e : events) {
+            int p = primitive(e);
+            byte side = sides[p];
+            if (side == LEFT_ONLY) {
+                leftEvents[leftCount++] = e;
+                if (axis(e) == 0 && type(e) != END) leftPrimitives++;
+            } else if (side == RIGHT_ONLY) {
+                rightEvents[rightCount++] = e;
+                if (axis(e) == 0 && type(e) != END) rightPrimitives++;
+            } else if (side == BOTH) {
+                sides[p] = CLIPPED;
+                leftPrimitives++;
+                rightPrimitives++;
+                if (leftClippedCount + 6 > leftClipped.length) leftClipped = Arrays.copyOf(leftClipped, leftClipped.length * 2);
+                if (rightClippedCount + 6 > rightClipped.length) rightClipped = Arrays.copyOf(rightClipped, rightClipped.length * 2);
+                clip(p, leftBox, clipped);
+                leftClippedCount = addEvents(p, clipped, 0, leftClipped, leftClippedCount);
+                clip(p, rightBox, clipped);
+                rightClippedCount = addEvents(p, clipped, 0, rightClipped, rightClippedCount);
+            }
+        }
+
+        long[] leftList = merge(leftEvents, leftCount, leftClipped, leftClippedCount);
+        long[] rightList = merge(rightEvents, rightCount, rightClipped, rightClippedCount);
+        events = null;
+
+        buildNode(leftList, leftPrimitives, leftBox, depth + 1);
+        leftList = null;
+        int rightChild = nodeCount;
+        buildNode(rightList, rightPrimitives, rightBox, depth + 1);
+
+        nodes[2 * node] = (rightChild << 2) | bestAxis;
+        nodes[2 * node + 1] = Float.floatToRawIntBits(bestPosition);
+    }
+
+    private static float splitCost(float pLeft, float pRight, int left, int right) {
+        float cost = TRAVERSAL_COST + INTERSECTION_COST * (pLeft * left + pRight * right);
+        return (left == 0 || right == 0) ? cost * (1f - EMPTY_BONUS) : cost;
+    }
+
+    private void clip(int p, float[] box, float[] result) {
+        for (int axis = 0; axis < 3; axis++) {
+            result[axis] = Math.max(primitiveBounds[6 * p + axis], box[axis]);
+            result[3 + axis] = Math.min(primitiveBounds[6 * p + 3 + axis], box[3 + axis]);
+        }
+    }
+
+    /**
+     * Merges a sorted list with a small unsorted list of new events.
+     */
+    private static long[] merge(long[] sorted, int sortedCount, long[] extra, int extraCount) {
+        Arrays.sort(extra, 0, extraCount);
+        long[] result = new long[sortedCount + extraCount];
+        int i = 0, j = 0, k = 0;
+        while (i < sortedCount && j < extraCount) {
+            result[k++] = sorted[i] <= extra[j] ? sorted[i++] : extra[j++];
+        }
+        while (i < sortedCount) result[k++] = sorted[i++];
+        while (j < extraCount) result[k++] = extra[j++];
+        return result;
+    }
+
+    private void makeLeaf(int node, long[] events, int primitiveCount) {
+        if (leafPrimitiveCount + primitiveCount > leafPrimitives.length) {
+            leafPrimitives = Arrays.copyOf(leafPrimitives, Math.max(leafPrimitives.length * 2, leafPrimitiveCount + primitiveCount));
+        }
+        nodes[2 * node] = (leafPrimitiveCount << 2) | LEAF;
+        // Every primitive has exactly one start or planar event on the x axis
+        int count = 0;
+        for (long e : events) {
+            if (axis(e) == 0 && type(e) != END) {
+                leafPrimitives[leafPrimitiveCount + count++] = primitive(e);
+            }
+        }
+        nodes[2 * node + 1] = count;
+        leafPrimitiveCount += count;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Traversal
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Visits the primitives of the leaves the ray passes through, in front-to-back order.
+     * Traversal stops once {@code tMax} lies within the current leaf.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    @Override
+    public void traverse(Ray ray, float tMax, PrimitiveVisitor visitor) {
+        if (nodeCount == 0) return;
+        float[] span = bounds.intersect(ray);
+        if (span == null) return;
+        float tMin = Math.max(0f, span[0]);
+        float tNodeMax = Math.min(span[1], tMax);
+        if (tMin > tNodeMax) return;
+
+        float[] origin = {ray.p().getX(), ray.p().getY(), ray.p().getZ()};
+        float[] direction = {ray.v().getX(), ray.v().getY(), ray.v().getZ()};
+
+        int[] stackNode = new int[maxDepth + 1];
+        float[] stackMin = new float[maxDepth + 1], stackMax = new float[maxDepth + 1];
+        int stackSize = 0;
+
+        Mailbox mailbox = Mailbox.acquire(mailboxes);
+        try {
+            int node = 0;
+            while (true) {
+                int word = nodes[2 * node];
+                int axis = word & 3;
+
+                if (axis != LEAF) {
+                    float split = Float.intBitsToFloat(nodes[2 * node + 1]);
+                    float o = origin[axis], d = direction[axis];
+                    boolean belowFirst = o < split || (o == split && d <= 0f);
+                    int first = belowFirst ? node + 1 : word >>> 2;
+                    int second = belowFirst ? word >>> 2 : node + 1;
+
+                    if (d == 0f) {
+                        node = first;
+                        continue;
+                    }
+                    float tSplit = (split - o) / d;
+                    if (tSplit > tNodeMax || tSplit <= 0f) {
+                        node = first;
+                    } else if (tSplit < tMin) {
+                        node = second;
+                    } else {
+                        stackNode[stackSize] = second;
+                        stackMin[stackSize] = tSplit;
+                        stackMax[stackSize] = tNodeMax;
+                        stackSize++;
+                        node = first;
+                        tNodeMax = tSplit;
+                    }
+                    continue;
+                }
+
+                int offset = word >>> 2, count = nodes[2 * node + 1];
+                for (int i = offset; i < offset + count; i++) {
+                    int p = leafPrimitives[i];
+                    if (mailbox.check(p)) {
+                        tMax = visitor.visit(p, tMax);
+                        if (tMax < 0f) return;
+                    }
+                }
+                // Anything in later leaves lies behind the closest hit found so far
+                if (tMax <= tNodeMax) return;
+
+                do {
+                    if (stackSize == 0) return;
+                    stackSize--;
+                    node = stackNode[stackSize];
+                    tMin = stackMin[stackSize];
+                    tNodeMax = Math.min(stackMax[stackSize], tMax);
+                } while (tMin > tMax);
+            }
+        } finally {
+            mailbox.release();
+        }
+    }
+
+    /**
+     * @return Bounding box of all primitives.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return One-line summary of size and build time, for logging.
+     */
+    @Override
+    public String getStatistics() {
+        return String.format("%d primitives, %d nodes, %d leaf references, build in %.1f ms",
+                primitiveBounds.length / 6, nodeCount, leafPrimitiveCount, buildNanos / 1e6);
+    }
+}
@@ -0,0 +1,66 @@
+package math.geometry.acceleration;
+
+import java.util.Arrays;
+
+/**
+ * Remembers for each primitive the ray it was last tested with, so structures that reference
+ * a primitive from several cells or leaves test it only once per ray.
+ *
+ * <p>Each structure keeps one mailbox per thread. A query started from inside a visitor of
+ * the same structure gets a fresh mailbox instead of clobbering the outer one.</p>
+ */
+final class Mailbox {
+
+    private final int[] stamps;
+    private int stamp;
+    private boolean inUse;
+
+    private Mailbox(int primitiveCount) {
+        this.stamps = new int[primitiveCount];
+    }
+
+    /**
+     * Creates the per-thread mailboxes of a structure.
+     *
+     * @param primitiveCount Number of primitives of the structure.
+     * @return Thread-local mailboxes.
+     */
+    static ThreadLocal<Mailbox> perThread(int primitiveCount) {
+        return ThreadLocal.withInitial(() -> new Mailbox(primitiveCount));
+    }
+
+    /**
+     * Starts a new ray on this thread's mailbox.
+     *
+     * @param mailboxes The structure's mailboxes.
+     * @return The mailbox to use; must be passed to {@link #release()} afterwards.
+     */
+    static Mailbox acquire(ThreadLocal<Mailbox> mailboxes) {
+        Mailbox mailbox = mailboxes.get();
+        if (mailbox.inUse) {
+            mailbox = new Mailbox(mailbox.stamps.length);
+        }
+        mailbox.inUse = true;
+        if (++mailbox.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(mailbox.stamps, 0);
+            mailbox.stamp = 1;
+        }
+        return mailbox;
+    }
+
+    /**
+     * Marks the mailbox as free again.
+     */
+    void release() {
+        inUse = false;
+    }
+
+    /**
+     * @return True the first time a primitive is offered for the current ray.
+     */
+    boolean check(int primitive) {
+        if (stamps[primitive] == stamp) return false;
+        stamps[primitive] = stamp;
+        return true;
+    }
+}
@@ -0,0 +1,90 @@
+package math.geometry.acceleration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, little-endian memory map of a whole file, addressed with 64-bit offsets.
+ *
+ * <p>A single {@link MappedByteBuffer} is limited to 2 GiB, so the file is mapped as a sequence of
+ * 1 GiB windows. Data stays off the Java heap; the operating system pages it in on access and
+ * evicts it under memory pressure, which makes the page cache the only cache for out-of-core data.
+ * Reads must be aligned to their size, so no value straddles two windows.</p>
+ */
+public final class MappedFile {
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_MASK = (1L << WINDOW_SHIFT) - 1;
+
+    private final File file;
+    private final MappedByteBuffer[] windows;
+    private final long size;
+
+    private MappedFile(File file, MappedByteBuffer[] windows, long size) {
+        this.file = file;
+        this.windows = windows;
+        this.size = size;
+    }
+
+    /**
+     * Maps a file.
+     *
+     * @param file The file to map.
+     * @return The mapping; it stays valid until it is garbage collected.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static MappedFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((size + WINDOW_MASK) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << WINDOW_SHIFT));
+                windows[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedFile(file, windows, size);
+        }
+    }
+
+    /**
+     * @param offset Byte offset, a multiple of four.
+     * @return The float at the offset.
+     */
+    public float getFloat(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)].getFloat((int) (offset & WINDOW_MASK));
+    }
+
+    /**
+     * @param offset Byte offset, a multiple of four.
+     * @return The int at the offset.
+     */
+    public int getInt(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)].getInt((int) (offset & WINDOW_MASK));
+    }
+
+    /**
+     * @param offset Byte offset, a multiple of eight.
+     * @return The long at the offset.
+     */
+    public long getLong(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)].getLong((int) (offset & WINDOW_MASK));
+    }
+
+    /**
+     * @return Size of the file in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The mapped file.
+     */
+    public File getFile() {
+        return file;
+    }
+}
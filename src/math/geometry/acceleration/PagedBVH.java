@@ -0,0 +1,297 @@
+package math.geometry.acceleration;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * A binary BVH traversed directly in a memory-mapped file, for meshes larger than the heap.
+ *
+ * <p>Each node is a {@value #NODE_BYTES}-byte record: six floats of bounds followed by two ints,
+ * {@code {left | axis << 30, right}} for interior nodes and {@code {first, -count}} for leaves.
+ * The primitive indices follow the records.</p>
+ *
+ * <p>The records are grouped into treelets of up to {@value #TREELET_NODES} nodes (one 4 KiB page).
+ * A treelet grows from its root by repeatedly adding the frontier node with the largest surface
+ * area, i.e. the node most likely to be visited next; the remaining frontier nodes become roots of
+ * later treelets. Full treelets start on a page of their own; the smaller treelets of complete
+ * subtrees near the leaves are packed together into shared pages, never across a page boundary.
+ * Padding records between them are unused. A ray therefore touches few pages per level of the
+ * tree, so traversal stays fast when only part of the file is resident in the page cache. The
+ * records must start on a page boundary of the file for this to hold.</p>
+ */
+public final class PagedBVH implements Accelerator {
+
+    /** Size of a node record in bytes. */
+    public static final int NODE_BYTES = 32;
+
+    /** Maximum number of nodes per treelet, filling one 4 KiB page. */
+    public static final int TREELET_NODES = 4096 / NODE_BYTES;
+
+    private final MappedFile file;
+    private final long nodeOffset;
+    private final long primitiveOffset;
+    private final int nodeCount;        // records including padding
+    private final int primitiveCount;
+    private final AABB bounds;
+
+    private PagedBVH(MappedFile file, long nodeOffset, int nodeCount, int primitiveCount) {
+        this.file = file;
+        this.nodeOffset = nodeOffset;
+        this.nodeCount = nodeCount;
+        this.primitiveCount = primitiveCount;
+        this.primitiveOffset = nodeOffset + (long) NODE_BYTES * nodeCount;
+        if (nodeCount == 0) {
+            bounds = AABB.EMPTY;
+        } else {
+            bounds = new AABB(
+                    new Vec3(file.getFloat(nodeOffset), file.getFloat(nodeOffset + 4), file.getFloat(nodeOffset + 8)),
+                    new Vec3(file.getFloat(nodeOffset + 12), file.getFloat(nodeOffset + 16), file.getFloat(nodeOffset + 20)));
+        }
+    }
+
+    /**
+     * Wraps node records written by {@link #write(BVH, WritableByteChannel)}.
+     *
+     * @param file           The mapped file.
+     * @param nodeOffset     Byte offset of the first node record.
+     * @param nodeCount      Number of node records including padding, as returned by {@code write}.
+     * @param primitiveCount Number of primitive indices following the records.
+     * @return The hierarchy.
+     * @throws IllegalArgumentException If the records do not fit into the file.
+     */
+    public static PagedBVH map(MappedFile file, long nodeOffset, int nodeCount, int primitiveCount) {
+        if (nodeOffset % 4 != 0 || nodeOffset + getSerializedSize(nodeCount, primitiveCount) > file.size()) {
+            throw new IllegalArgumentException("Node records do not fit into " + file.getFile());
+        }
+        return new PagedBVH(file, nodeOffset, nodeCount, primitiveCount);
+    }
+
+    /**
+     * @param hierarchy The hierarchy to write.
+     * @return Number of bytes {@link #write(BVH, WritableByteChannel)} produces.
+     */
+    public static long getSerializedSize(BVH hierarchy) {
+        int recordCount = treeletOrder(hierarchy.nodeBounds(), hierarchy.nodes(), hierarchy.getNodeCount()).recordCount();
+        return getSerializedSize(recordCount, hierarchy.primitiveIndices().length);
+    }
+
+    private static long getSerializedSize(int nodeCount, int primitiveCount) {
+        return (long) NODE_BYTES * nodeCount + 4L * primitiveCount;
+    }
+
+    /**
+     * Writes the node records of a hierarchy in treelet order, followed by its primitive indices.
+     *
+     * @param hierarchy The hierarchy to write.
+     * @param channel   Destination, positioned at a page boundary of the file.
+     * @return Number of records written including padding, to be passed to {@link #map}.
+     * @throws IOException If writing fails.
+     */
+    public static int write(BVH hierarchy, WritableByteChannel channel) throws IOException {
+        float[] nodeBounds = hierarchy.nodeBounds();
+        int[] nodes = hierarchy.nodes();
+        int nodeCount = hierarchy.getNodeCount();
+        if (nodeCount >= 1 << 30) {
+            throw new IllegalArgumentException("Too many nodes for the record format: " + nodeCount);
+        }
+
+        Layout layout = treeletOrder(nodeBounds, nodes, nodeCount);
+        int[] position = layout.position();
+        int[] nodeAt = new int[layout.recordCount()];
+        Arrays.fill(nodeAt, -1);
+        for (int node = 0; node < nodeCount; node++) {
+            nodeAt[position[node]] = node;
+        }
+
+        ByteBuffer staging = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < nodeAt.length; i++) {
+            if (staging.remaining() < NODE_BYTES) flush(staging, channel);
+            int node = nodeAt[i];
+            if (node < 0) {
+                // Padding up to the next treelet, never visited
+                staging.put(new byte[NODE_BYTES]);
+                continue;
+            }
+            for (int k = 0; k < 6; k++) {
+                staging.putFloat(nodeBounds[6 * node + k]);
+            }
+            int count = nodes[2 * node + 1];
+            if (count > 0) {
+                staging.putInt(nodes[2 * node]).putInt(-count);
+            } else {
+                staging.putInt(position[node + 1] | -count << 30).putInt(position[nodes[2 * node]]);
+            }
+        }
+        for (int index : hierarchy.primitiveIndices()) {
+            if (staging.remaining() < 4) flush(staging, channel);
+            staging.putInt(index);
+        }
+        flush(staging, channel);
+        return nodeAt.length;
+    }
+
+    private static void flush(ByteBuffer staging, WritableByteChannel channel) throws IOException {
+        staging.flip();
+        while (staging.hasRemaining()) {
+            channel.write(staging);
+        }
+        staging.clear();
+    }
+
+    /**
+     * Record positions of the nodes and the number of records including padding.
+     */
+    private record Layout(int[] position, int recordCount) {
+    }
+
+    /**
+     * Assigns record positions so that each treelet occupies consecutive records within one page.
+     *
+     * @return New position of every node.
+     */
+    private static Layout treeletOrder(float[] nodeBounds, int[] nodes, int nodeCount) {
+        int[] position = new int[nodeCount];
+        if (nodeCount == 0) return new Layout(position, 0);
+        float[] area = new float[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            area[node] = BVH.area(nodeBounds, 6 * node);
+        }
+
+        ArrayDeque<Integer> roots = new ArrayDeque<>();
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((a, b) -> Float.compare(area[b], area[a]));
+        int[] treelet = new int[TREELET_NODES];
+        int pages = 0;
+        int sharedPage = -1, sharedFill = TREELET_NODES;   // page that small treelets are packed into
+        int recordCount = 0;
+        roots.add(0);
+        while (!roots.isEmpty()) {
+            frontier.add(roots.poll());
+            int size = 0;
+            while (size < TREELET_NODES && !frontier.isEmpty()) {
+                int node = frontier.poll();
+                treelet[size++] = node;
+                if (nodes[2 * node + 1] <= 0) {
+                    frontier.add(node + 1);
+                    frontier.add(nodes[2 * node]);
+                }
+            }
+            roots.addAll(frontier);
+            frontier.clear();
+
+            int first;
+            if (size == TREELET_NODES) {
+                first = pages++ * TREELET_NODES;
+            } else {
+                if (sharedFill + size > TREELET_NODES) {
+                    sharedPage = pages++;
+                    sharedFill = 0;
+                }
+                first = sharedPage * TREELET_NODES + sharedFill;
+                sharedFill += size;
+            }
+            for (int i = 0; i < size; i++) {
+                position[treelet[i]] = first + i;
+            }
+            recordCount = Math.max(recordCount, first + size);
+        }
+        return new Layout(position, recordCount);
+    }
+
+    /**
+     * Visits the primitives of all leaves the ray reaches, nearer child first.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    @Override
+    public void traverse(Ray ray, float tMax, PrimitiveVisitor visitor) {
+        if (nodeCount == 0) return;
+
+        float ox = ray.p().getX(), oy = ray.p().getY(), oz = ray.p().getZ();
+        float ix = 1f / ray.v().getX(), iy = 1f / ray.v().getY(), iz = 1f / ray.v().getZ();
+        boolean[] negative = {ix < 0f, iy < 0f, iz < 0f};
+
+        int[] stack = new int[64];
+        int stackSize = 0;
+        int node = 0;
+
+        while (true) {
+            long record = nodeOffset + (long) NODE_BYTES * node;
+            if (hitsNode(record, ox, oy, oz, ix, iy, iz, tMax)) {
+                int a = file.getInt(record + 24), b = file.getInt(record + 28);
+                if (b < 0) {
+                    for (int i = a; i < a - b; i++) {
+                        tMax = visitor.visit(file.getInt(primitiveOffset + 4L * i), tMax);
+                        if (tMax < 0f) return;
+                    }
+                } else {
+                    if (stackSize == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                    int left = a & ((1 << 30) - 1);
+                    if (negative[a >>> 30]) {
+                        stack[stackSize++] = left;
+                        node = b;
+                    } else {
+                        stack[stackSize++] = b;
+                        node = left;
+                    }
+                    continue;
+                }
+            }
+            if (stackSize == 0) return;
+            node = stack[--stackSize];
+        }
+    }
+
+    /**
+     * Slab test against a node record. Comparisons are ordered so NaNs from 0 * infinity are ignored.
+     */
+    private boolean hitsNode(long record, float ox, float oy, float oz, float ix, float iy, float iz, float tMax) {
+        float tNear = 0f, tFar = tMax;
+
+        float t0 = (file.getFloat(record) - ox) * ix, t1 = (file.getFloat(record + 12) - ox) * ix;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (file.getFloat(record + 4) - oy) * iy;
+        t1 = (file.getFloat(record + 16) - oy) * iy;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (file.getFloat(record + 8) - oz) * iz;
+        t1 = (file.getFloat(record + 20) - oz) * iz;
+        if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        return tNear <= tFar;
+    }
+
+    /**
+     * @return Bounding box of all primitives, read from the root record.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return One-line summary of the node count and mapped size, for logging.
+     */
+    @Override
+    public String getStatistics() {
+        return String.format("%d primitives, %d nodes (%d KiB mapped from %s)", primitiveCount, nodeCount,
+                getSerializedSize(nodeCount, primitiveCount) / 1024, file.getFile().getName());
+    }
+}
@@ -0,0 +1,18 @@
+package math.geometry.acceleration;
+
+/**
+ * Callback invoked by an {@link Accelerator} for every primitive whose bounds the ray reaches.
+ */
+@FunctionalInterface
+public interface PrimitiveVisitor {
+
+    /**
+     * Tests a single primitive.
+     *
+     * @param primitive Index of the primitive in the array the structure was built from.
+     * @param tMax      Current maximum distance along the ray.
+     * @return The new maximum distance (smaller to cull farther nodes, unchanged to visit all
+     *         primitives along the ray), or a negative value to stop the traversal.
+     */
+    float visit(int primitive, float tMax);
+}
@@ -0,0 +1,170 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.objects.SceneObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Top level of a two-level scene: an acceleration structure over the bounds of the scene objects.
+ *
+ * <p>Objects with finite bounds (meshes, instances, spheres, ...) are indexed by the
+ * structure (a BVH by default, or a grid for dense, evenly distributed scenes); objects without finite bounds (planes, unbounded quadrics) are kept in a
+ * separate list and always tested. Each object may have its own acceleration structure,
+ * which the ray reaches after the top level has culled all objects it misses.</p>
+ *
+ * <p>Between frames of an animation the scene can be {@link #update updated}: a top-level
+ * BVH is refitted to the new object bounds and only rebuilt when its quality has degraded,
+ * other structures are rebuilt.</p>
+ */
+public class SceneAccelerator {
+
+    private List<SceneObject> objects;
+    private SceneObject[] bounded;
+    private List<SceneObject> unbounded;
+    private byte[] kinds;    // classification of each object, see classify
+    private final AcceleratorType type;
+    private Accelerator accelerator;
+
+    private static final byte BOUNDED = 0, UNBOUNDED = 1, EMPTY = 2;
+
+    /**
+     * Builds a top-level SAH BVH over the given objects.
+     *
+     * @param objects The scene objects.
+     */
+    public SceneAccelerator(List<SceneObject> objects) {
+        this(objects, AcceleratorType.SAH_BVH);
+    }
+
+    /**
+     * Builds the given type of acceleration structure over the objects.
+     *
+     * @param objects The scene objects.
+     * @param type    The structure to use for the bounded objects.
+     */
+    public SceneAccelerator(List<SceneObject> objects, AcceleratorType type) {
+        this.type = type;
+        AABB[] bounds = classify(objects);
+        accelerator = type.build(bounds);
+    }
+
+    /**
+     * Updates the scene for moved or replaced objects, e.g. instances with new transforms.
+     *
+     * <p>If every object keeps its bounded/unbounded classification, a top-level BVH is
+     * refitted in linear time and rebuilt only when its SAH cost exceeds
+     * {@link BVH#REBUILD_COST_RATIO} times the cost after the last build. Other structures
+     * are rebuilt, which is linear for grids. Must not be called while the scene is being rendered.</p>
+     *
+     * @param objects The scene objects, in the same order as before.
+     */
+    public void update(List<SceneObject> objects) {
+        byte[] previousKinds = kinds;
+        AABB[] bounds = classify(objects);
+
+        if (Arrays.equals(previousKinds, kinds) && accelerator instanceof BVH bvh) {
+            bvh.refit(bounds);
+            if (!bvh.needsRebuild()) return;
+        }
+        accelerator = type.build(bounds);
+    }
+
+    /**
+     * Splits the objects into those with finite bounds, which go into the structure, and the rest.
+     * Bounded objects with empty bounds can never be hit and are dropped.
+     *
+     * @param objects The scene objects.
+     * @return Bounds of the bounded objects, indexed like {@link #bounded}.
+     */
+    private AABB[] classify(List<SceneObject> objects) {
+        List<SceneObject> boundedObjects = new ArrayList<>();
+        List<SceneObject> unboundedObjects = new ArrayList<>();
+        List<AABB> bounds = new ArrayList<>();
+        byte[] newKinds = new byte[objects.size()];
+
+        for (int i = 0; i < objects.size(); i++) {
+            SceneObject obj = objects.get(i);
+            AABB box = obj.getBounds();
+            if (!box.isBounded()) {
+                unboundedObjects.add(obj);
+                newKinds[i] = UNBOUNDED;
+            } else if (box.isEmpty()) {
+                newKinds[i] = EMPTY;
+            } else {
+                boundedObjects.add(obj);
+                bounds.add(box);
+                newKinds[i] = BOUNDED;
+            }
+        }
+
+        this.objects = List.copyOf(objects);
+        this.bounded = boundedObjects.toArray(new SceneObject[0]);
+        this.unbounded = unboundedObjects;
+        this.kinds = newKinds;
+        return bounds.toArray(new AABB[0]);
+    }
+
+    /**
+     * Finds the closest intersection in front of the ray origin.
+     * Farther objects are culled as soon as a closer hit is known.
+     *
+     * @param ray The ray to trace.
+     * @return The nearest intersection with a distance above 1e-4, or null if none is found.
+     */
+    public Intersection getNearestIntersection(Ray ray) {
+        Intersection[] nearest = new Intersection[1];
+        float minDist = Float.MAX_VALUE;
+        for (SceneObject obj : unbounded) {
+            minDist = nearestHit(obj, ray, minDist, nearest);
+        }
+
+        accelerator.traverse(ray, minDist, (i, tMax) -> nearestHit(bounded[i], ray, tMax, nearest));
+        return nearest[0];
+    }
+
+    private static float nearestHit(SceneObject obj, Ray ray, float minDist, Intersection[] nearest) {
+        Intersection inter = obj.intersectNearest(ray, 1e-4f, minDist);
+        // Instances measure the range in local units, so check it again in world units
+        if (inter != null && inter.distance() > 1e-4f && inter.distance() < minDist) {
+            nearest[0] = inter;
+            return inter.distance();
+        }
+        return minDist;
+    }
+
+    /**
+     * Collects the objects that may block the ray before the given distance,
+     * i.e. all unbounded objects and the bounded ones whose boxes the ray reaches.
+     *
+     * @param ray         The ray to trace.
+     * @param maxDistance Maximum distance along the ray.
+     * @return Candidate occluders to test with {@link SceneObject#isOccluding(Ray, float)}.
+     */
+    public List<SceneObject> getCandidates(Ray ray, float maxDistance) {
+        List<SceneObject> candidates = new ArrayList<>(unbounded);
+        accelerator.traverse(ray, maxDistance, (i, tMax) -> {
+            candidates.add(bounded[i]);
+            return tMax;
+        });
+        return candidates;
+    }
+
+    /**
+     * @return Summary of the top-level structure, for logging.
+     */
+    public String getStatistics() {
+        return type + ": " + accelerator.getStatistics() + ", " + unbounded.size() + " unbounded objects";
+    }
+
+    /**
+     * @return All objects of the scene, in their original order.
+     */
+    public List<SceneObject> getObjects() {
+        return objects;
+    }
+}
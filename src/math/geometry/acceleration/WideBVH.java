@@ -0,0 +1,305 @@
+package math.geometry.acceleration;
+
+import math.geometry.AABB;
+import math.geometry.Ray;
+
+import java.util.Arrays;
+
+/**
+ * Four-wide BVH with child bounds quantized to 8 bits relative to their parent's box.
+ *
+ * <p>The hierarchy is obtained by collapsing a binary {@link BVH}: each wide node repeatedly
+ * opens its largest interior child until it has four children. All nodes are packed into a
+ * single {@code int[]} in depth-first order, {@value #NODE_SIZE} ints per node:</p>
+ * <ul>
+ *     <li>0-2: origin of the parent box, 3-5: quantization step per axis (float bits),</li>
+ *     <li>6-11: quantized child min x, y, z and max x, y, z, one byte per child,</li>
+ *     <li>12-15: child references (node offset or first primitive),</li>
+ *     <li>16: child kinds, one byte per child: 0 empty, {@value #INTERIOR} interior, otherwise the leaf's primitive count.</li>
+ * </ul>
+ * <p>A node therefore takes 68 bytes for four children, where a binary hierarchy needs three
+ * 32-byte nodes for the same subtree. The four child boxes are decoded and slab-tested
+ * together in one loop over the packed bytes.</p>
+ */
+public final class WideBVH implements Accelerator {
+
+    private static final int WIDTH = 4;
+    private static final int NODE_SIZE = 17;
+    private static final int INTERIOR = 0xFF;
+
+    private final int[] data;
+    private final int[] primitiveIndices;
+    private final AABB bounds;
+    private final long buildNanos;
+    private final int size;
+
+    /**
+     * Builds a binary SAH hierarchy over the given bounds and collapses it into a wide one.
+     *
+     * @param bounds Bounding box of each primitive; the array index is the primitive id.
+     * @return The finished hierarchy.
+     */
+    public static WideBVH build(AABB[] bounds) {
+        long startTime = System.nanoTime();
+        BVH binary = BVH.build(bounds);
+        return fromBinary(binary, System.nanoTime() - startTime);
+    }
+
+    private static WideBVH fromBinary(BVH binary, long binaryNanos) {
+        long startTime = System.nanoTime();
+        Collapser collapser = new Collapser(binary);
+        if (binary.getNodeCount() > 0) {
+            collapser.collapse(0);
+        }
+        return new WideBVH(binary, collapser.data, collapser.size, binaryNanos + System.nanoTime() - startTime);
+    }
+
+    private WideBVH(BVH source, int[] data, int size, long buildNanos) {
+        this.primitiveIndices = source.primitiveIndices();
+        this.bounds = source.getBounds();
+        this.buildNanos = buildNanos;
+        this.data = Arrays.copyOf(data, size);
+        this.size = size;
+    }
+
+    /**
+     * Converts the binary node arrays into packed wide nodes.
+     */
+    private static final class Collapser {
+        private final float[] nodeBounds;
+        private final int[] nodes;
+        private int[] data;
+        private int size;
+
+        Collapser(BVH binary) {
+            this.nodeBounds = binary.nodeBounds();
+            this.nodes = binary.nodes();
+            this.data = new int[NODE_SIZE * Math.max(1, binary.getNodeCount() / 2)];
+        }
+
+        private boolean isLeaf(int node) {
+            return nodes[2 * node + 1] > 0;
+        }
+
+        /**
+         * Emits the wide node covering the given binary node and its subtree.
+         *
+         * @return Offset of the wide node in the packed array.
+         */
+        int collapse(int binaryNode) {
+            int[] children = new int[WIDTH];
+            int childCount;
+            if (isLeaf(binaryNode)) {
+                children[0] = binaryNode;
+                childCount = 1;
+            } else {
+                children[0] = binaryNode + 1;
+                children[1] = nodes[2 * binaryNode];
+                childCount = 2;
+            }
+
+            // Open the interior child with the largest surface area until the node is full
+            while (childCount < WIDTH) {
+                int best = -1;
+                float bestArea = -1f;
+                for (int c = 0; c < childCount; c++) {
+                    if (isLeaf(children[c])) continue;
+                    float area = BVH.area(nodeBounds, 6 * children[c]);
+                    if (area > bestArea) {
+                        bestArea = area;
+                        best = c;
+                    }
+                }
+                if (best < 0) break;
+                int opened = children[best];
+                children[best] = opened + 1;
+                children[childCount++] = nodes[2 * opened];
+            }
+
+            int offset = size;
+            size += NODE_SIZE;
+            if (size > data.length) data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+
+            // Quantization frame: the parent box, rounded outwards so decoded boxes stay conservative
+            float[] origin = new float[3];
+            float[] step = new float[3];
+            for (int axis = 0; axis < 3; axis++) {
+                float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+                for (int c = 0; c < childCount; c++) {
+                    min = Math.min(min, nodeBounds[6 * children[c] + axis]);
+                    max = Math.max(max, nodeBounds[6 * children[c] + 3 + axis]);
+                }
+                origin[axis] = Math.nextDown(min);
+                float extent = Math.nextUp(max) - origin[axis];
+                step[axis] = extent > 0f ? Math.nextUp(extent / 254f) : 0f;
+                data[offset + axis] = Float.floatToRawIntBits(origin[axis]);
+                data[offset + 3 + axis] = Float.floatToRawIntBits(step[axis]);
+            }
+
+            int kinds = 0;
+            for (int c = 0; c < childCount; c++) {
+                int child = children[c];
+                for (int axis = 0; axis < 3; axis++) {
+                    int qMin = quantizeDown(nodeBounds[6 * child + axis], origin[axis], step[axis]);
+                    int qMax = quantizeUp(nodeBounds[6 * child + 3 + axis], origin[axis], step[axis]);
+                    data[offset + 6 + axis] |= qMin << (8 * c);
+                    data[offset + 9 + axis] |= qMax << (8 * c);
+                }
+                int count = nodes[2 * child + 1];
+                if (count > 0) {
+                    if (count >= INTERIOR) throw new IllegalStateException("Leaf too large for a wide node: " + count);
+                    data[offset + 12 + c] = nodes[2 * child];
+                    kinds |= count << (8 * c);
+                } else {
+                    kinds |= INTERIOR << (8 * c);
+                }
+            }
+            data[offset + 16] = kinds;
+
+            // Children are emitted after their parent, keeping depth-first order
+            for (int c = 0; c < childCount; c++) {
+                if (!isLeaf(children[c])) {
+                    data[offset + 12 + c] = collapse(children[c]);
+                }
+            }
+            return offset;
+        }
+
+        private static int quantizeDown(float value, float origin, float step) {
+            if (step == 0f) return 0;
+            int q = (int) Math.floor((value - origin) / step);
+            while (q > 0 && origin + q * step > value) q--;
+            return Math.max(0, Math.min(255, q));
+        }
+
+        private static int quantizeUp(float value, float origin, float step) {
+            if (step == 0f) return 0;
+            int q = (int) Math.ceil((value - origin) / step);
+            while (q < 255 && origin + q * step < value) q++;
+            return Math.max(0, Math.min(255, q));
+        }
+    }
+
+    /**
+     * Visits the primitives of all leaves the ray reaches. The children of each node are
+     * tested together and pushed so that the nearest one is processed first; stack entries
+     * farther than the current {@code tMax} are skipped.
+     *
+     * @param ray     The ray to trace.
+     * @param tMax    Maximum distance along the ray.
+     * @param visitor Callback performing the primitive tests.
+     */
+    @Override
+    public void traverse(Ray ray, float tMax, PrimitiveVisitor visitor) {
+        if (size == 0) return;
+
+        float ox = ray.p().getX(), oy = ray.p().getY(), oz = ray.p().getZ();
+        float ix = 1f / ray.v().getX(), iy = 1f / ray.v().getY(), iz = 1f / ray.v().getZ();
+
+        int[] stackRef = new int[64];
+        int[] stackKind = new int[64];
+        float[] stackT = new float[64];
+        stackKind[0] = INTERIOR;    // root node at offset 0
+        int stackSize = 1;
+
+        float[] hitT = new float[WIDTH];
+        int[] hitChild = new int[WIDTH];
+
+        while (stackSize > 0) {
+            stackSize--;
+            if (stackT[stackSize] > tMax) continue;
+            int ref = stackRef[stackSize];
+            int kind = stackKind[stackSize];
+
+            if (kind != INTERIOR) {
+                for (int i = ref; i < ref + kind; i++) {
+                    tMax = visitor.visit(primitiveIndices[i], tMax);
+                    if (tMax < 0f) return;
+                }
+                continue;
+            }
+
+            float originX = Float.intBitsToFloat(data[ref]), originY = Float.intBitsToFloat(data[ref + 1]), originZ = Float.intBitsToFloat(data[ref + 2]);
+            float stepX = Float.intBitsToFloat(data[ref + 3]), stepY = Float.intBitsToFloat(data[ref + 4]), stepZ = Float.intBitsToFloat(data[ref + 5]);
+            int minX = data[ref + 6], minY = data[ref + 7], minZ = data[ref + 8];
+            int maxX = data[ref + 9], maxY = data[ref + 10], maxZ = data[ref + 11];
+            int kinds = data[ref + 16];
+
+            // Slab test of all children, keeping the hits sorted by entry distance
+            int hits = 0;
+            for (int c = 0; c < WIDTH; c++) {
+                int shift = 8 * c;
+                if (((kinds >>> shift) & 0xFF) == 0) continue;
+
+                float tNear = 0f, tFar = tMax;
+                float t0 = (originX + ((minX >>> shift) & 0xFF) * stepX - ox) * ix;
+                float t1 = (originX + ((maxX >>> shift) & 0xFF) * stepX - ox) * ix;
+                if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+                if (t0 > tNear) tNear = t0;
+                if (t1 < tFar) tFar = t1;
+
+                t0 = (originY + ((minY >>> shift) & 0xFF) * stepY - oy) * iy;
+                t1 = (originY + ((maxY >>> shift) & 0xFF) * stepY - oy) * iy;
+                if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+                if (t0 > tNear) tNear = t0;
+                if (t1 < tFar) tFar = t1;
+
+                t0 = (originZ + ((minZ >>> shift) & 0xFF) * stepZ - oz) * iz;
+                t1 = (originZ + ((maxZ >>> shift) & 0xFF) * stepZ - oz) * iz;
+                if (t0 > t1) { float tmp = t0; t0 = t1; t1 = tmp; }
+                if (t0 > tNear) tNear = t0;
+                if (t1 < tFar) tFar = t1;
+
+                if (tNear <= tFar) {
+                    int j = hits++;
+                    while (j > 0 && hitT[j - 1] > tNear) {
+                        hitT[j] = hitT[j - 1];
+                        hitChild[j] = hitChild[j - 1];
+                        j--;
+                    }
+                    hitT[j] = tNear;
+                    hitChild[j] = c;
+                }
+            }
+
+            if (stackSize + hits > stackRef.length) {
+                int capacity = stackRef.length * 2;
+                stackRef = Arrays.copyOf(stackRef, capacity);
+                stackKind = Arrays.copyOf(stackKind, capacity);
+                stackT = Arrays.copyOf(stackT, capacity);
+            }
+            // Push farthest first so the nearest child is popped next
+            for (int h = hits - 1; h >= 0; h--) {
+                int c = hitChild[h];
+                stackRef[stackSize] = data[ref + 12 + c];
+                stackKind[stackSize] = (kinds >>> (8 * c)) & 0xFF;
+                stackT[stackSize] = hitT[h];
+                stackSize++;
+            }
+        }
+    }
+
+    /**
+     * @return Bounding box of all primitives.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return Memory used by the packed nodes in bytes.
+     */
+    public long getNodeMemoryBytes() {
+        return 4L * data.length;
+    }
+
+    /**
+     * @return One-line summary of size and build time, for logging.
+     */
+    @Override
+    public String getStatistics() {
+        return String.format("%d primitives, %d wide nodes (%d KiB), build in %.1f ms",
+                primitiveIndices.length, size / NODE_SIZE, getNodeMemoryBytes() / 1024, buildNanos / 1e6);
+    }
+}
@@ -0,0 +1,199 @@
+package math.geometry.objects;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.Span;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places a shared object in the scene with its own transformation.
+ *
+ * <p>The instance only stores the transformation and its inverse; the referenced object
+ * (typically a {@link MeshObject} with its BVH) is shared between all instances. Rays are
+ * transformed into the object's space at intersection time and the hits are mapped back to
+ * world space, so memory grows with the number of unique objects instead of placements.</p>
+ */
+public class Instance extends SceneObject {
+
+    private final SceneObject object;
+    private final Mat4 transform, inverseTransform, normalMatrix;
+    private AABB[] bounds;    // {local bounds the world bounds were computed from, world bounds}
+
+    /**
+     * Creates an instance of an object.
+     *
+     * @param object    The shared object, defined in its local space.
+     * @param transform The transformation from local to world space.
+     */
+    public Instance(SceneObject object, Mat4 transform) {
+        super(object.getMaterial());
+        this.object = object;
+        this.transform = transform;
+        this.inverseTransform = transform.inverse();
+        this.normalMatrix = inverseTransform.transpose();
+    }
+
+    /**
+     * Intersects the ray with the shared object in its local space.
+     *
+     * @param ray Ray in world space.
+     * @return Intersections mapped to world space and attributed to this instance.
+     */
+    @Override
+    public List<Intersection> intersect(Ray ray) {
+        List<Intersection> hits = new ArrayList<>();
+        for (Intersection hit : object.intersect(ray.transform(inverseTransform))) {
+            hits.add(toWorld(hit, ray));
+        }
+        return hits;
+    }
+
+    /**
+     * Finds the closest hit on the shared object in its local space, converting the distance
+     * range to local units with the length of the transformed direction.
+     *
+     * @param ray         Ray in world space.
+     * @param minDistance Hits at or below this world-space distance are ignored.
+     * @param maxDistance Hits at or beyond this world-space distance are ignored.
+     * @return The nearest hit mapped to world space, or null.
+     */
+    @Override
+    public Intersection intersectNearest(Ray ray, float minDistance, float maxDistance) {
+        if (!getBounds().intersects(ray, minDistance, maxDistance)) return null;
+        Ray localRay = ray.transform(inverseTransform);
+        float scale = inverseTransform.multiply(ray.v(), 0).getLength();
+        Intersection hit = object.intersectNearest(localRay, minDistance * scale, maxDistance * scale);
+        return hit == null ? null : toWorld(hit, ray);
+    }
+
+    /**
+     * Computes the inside spans in local space and maps their boundaries to world space.
+     *
+     * @param ray Ray in world space.
+     * @return Sorted, disjoint list of inside intervals.
+     */
+    @Override
+    public List<Span> intersectSpans(Ray ray) {
+        List<Span> spans = new ArrayList<>();
+        for (Span span : object.intersectSpans(ray.transform(inverseTransform))) {
+            spans.add(new Span(
+                    span.enter() == null ? null : toWorld(span.enter(), ray),
+                    span.exit() == null ? null : toWorld(span.exit(), ray)));
+        }
+        return spans;
+    }
+
+    /**
+     * Maps a local hit to world space, keeping its primitive information.
+     *
+     * @param hit Hit on the shared object in local space.
+     * @param ray The original world-space ray.
+     * @return The hit in world space with the distance measured along the world ray.
+     */
+    private Intersection toWorld(Intersection hit, Ray ray) {
+        Vec3 point = transform.multiply(hit.point(), 1);
+        Vec3 normal = normalMatrix.multiply(hit.normal(), 0);
+        float distance = point.subtract(ray.p()).dot(ray.v());
+        return new Intersection(point, normal, distance, this, hit.material(), hit.primitiveId(), hit.u(), hit.v());
+    }
+
+    /**
+     * Computes the surface normal at a world-space point.
+     *
+     * @param p Point on the surface in world space.
+     * @return Normalized surface normal in world space.
+     */
+    @Override
+    public Vec3 getNormal(Vec3 p) {
+        return normalMatrix.multiply(object.getNormal(inverseTransform.multiply(p, 1)), 0).normalize();
+    }
+
+    /**
+     * Computes the surface normal for a hit, letting the shared object use the primitive id.
+     *
+     * @param hit Intersection on this instance.
+     * @return Normalized surface normal in world space.
+     */
+    @Override
+    public Vec3 getNormal(Intersection hit) {
+        Intersection localHit = new Intersection(inverseTransform.multiply(hit.point(), 1),
+                transform.transpose().multiply(hit.normal(), 0), hit.distance(),
+                object, hit.material(), hit.primitiveId(), hit.u(), hit.v());
+        return normalMatrix.multiply(object.getNormal(localHit), 0).normalize();
+    }
+
+    /**
+     * Tests the point against the shared object in local space.
+     *
+     * @param point Point in world space.
+     * @return True if the point is inside the instance.
+     */
+    @Override
+    public boolean isInside(Vec3 point) {
+        return getBounds().contains(point) && object.isInside(inverseTransform.multiply(point, 1));
+    }
+
+    /**
+     * Tests occlusion in local space, converting the maximum distance to local units with the
+     * length of the transformed direction, so an infinite distance stays infinite.
+     *
+     * @param ray         Ray in world space.
+     * @param maxDistance Maximum world-space distance along the ray.
+     * @return True if the ray is occluded within maxDistance.
+     */
+    @Override
+    public boolean isOccluding(Ray ray, float maxDistance) {
+        if (!getBounds().intersects(ray, 0f, maxDistance)) return false;
+        Ray localRay = ray.transform(inverseTransform);
+        float scale = inverseTransform.multiply(ray.v(), 0).getLength();
+        return object.isOccluding(localRay, maxDistance * scale);
+    }
+
+    /**
+     * Returns the shared object's bounds transformed to world space.
+     * The result is cached and recomputed when the shared object's bounds change,
+     * e.g. after its vertices were updated.
+     *
+     * @return World-space bounding box of the instance.
+     */
+    @Override
+    public AABB getBounds() {
+        AABB local = object.getBounds();
+        AABB[] cached = bounds;
+        if (cached == null || cached[0] != local) {
+            cached = new AABB[]{local, local.transform(transform)};
+            bounds = cached;
+        }
+        return cached[1];
+    }
+
+    /**
+     * @return The shared object referenced by this instance.
+     */
+    public SceneObject getObject() {
+        return object;
+    }
+
+    /**
+     * @return The transformation from local to world space.
+     */
+    public Mat4 getTransform() {
+        return transform;
+    }
+
+    /**
+     * Returns a new instance of the same object with the transformation applied on top.
+     *
+     * @param transformationMatrix Transformation matrix to apply.
+     * @return New instance sharing the object.
+     */
+    @Override
+    public Instance transform(Mat4 transformationMatrix) {
+        return new Instance(object, transformationMatrix.multiply(transform));
+    }
+}
@@ -1,8 +1,18 @@
 package math.geometry.objects;
 
 import math.*;
+import math.geometry.AABB;
 import math.geometry.Intersection;
 import math.geometry.Ray;
+import math.geometry.acceleration.Accelerator;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.acceleration.BVH;
+import math.geometry.objects.mesh.FloatMeshGeometry;
+import math.geometry.objects.mesh.MeshCache;
+import math.geometry.objects.mesh.MeshGeometry;
+import math.geometry.objects.mesh.ObjParser;
+import math.geometry.objects.mesh.TriangleIntersector;
+import math.geometry.objects.mesh.VertexFormat;
 import stuff.*;
 import java.io.*;
 import java.util.*;
@@ -10,17 +20,27 @@ import java.util.*;
 /**
  * Represents a triangle mesh loaded from an OBJ file as a scene object.
  *
- * <p>This class supports loading vertex and face data from OBJ files,
- * triangulating faces on the fly (using fan triangulation), and performing
+ * <p>This class supports loading vertex and face data from OBJ files with the parallel
+ * {@link ObjParser}, including texture coordinates and vertex normals, and performing
  * ray intersection tests against all triangles in the mesh.</p>
  *
- * <p>The mesh is stored internally as a list of {@link Triangle} objects,
- * each associated with the same material.</p>
+ * <p>The triangles are kept as indexed {@link MeshGeometry}, optionally compressed with a quantized
+ * {@link VertexFormat}, and indexed by an {@link Accelerator} (a {@link BVH} by default). The intersection
+ * kernel decodes only the triangles a ray visits, so all triangles share the mesh material.</p>
  */
 public class MeshObject extends SceneObject {
 
-    private final List<Vec3> vertices = new ArrayList<>();  // Don't actually need them
-    private final List<Triangle> triangles = new ArrayList<>();
+    private final AcceleratorType acceleratorType;
+    private final VertexFormat vertexFormat;
+    private MeshGeometry geometry;
+    private Accelerator accelerator;
+
+    // Non-axis-aligned directions used for the parity votes of the inside test
+    private static final Vec3[] PARITY_DIRECTIONS = {
+            new Vec3(1, 0.5f, 0.3f).normalize(),
+            new Vec3(-0.3f, 1, 0.6f).normalize(),
+            new Vec3(0.4f, -0.7f, -1).normalize()
+    };
 
     /**
      * Loads a mesh from the given OBJ file and applies the specified material to the entire mesh.
@@ -30,137 +50,403 @@ public class MeshObject extends SceneObject {
      * @throws IOException if the OBJ file cannot be read.
      */
     public MeshObject(File file, Material material) throws IOException {
+        this(file, material, AcceleratorType.SAH_BVH);
+    }
+
+    /**
+     * Loads a mesh from the given OBJ file and indexes it with the given acceleration structure.
+     *
+     * @param file            The OBJ file containing vertex and face data.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure to build over the triangles.
+     * @throws IOException if the OBJ file cannot be read.
+     */
+    public MeshObject(File file, Material material, AcceleratorType acceleratorType) throws IOException {
+        this(file, material, acceleratorType, VertexFormat.FLOAT);
+    }
+
+    /**
+     * Loads a mesh from the given OBJ file and stores its vertices in the given format.
+     *
+     * @param file            The OBJ file containing vertex and face data.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure to build over the triangles.
+     * @param vertexFormat    Storage format of the vertices, e.g. quantized for large scanned meshes.
+     * @throws IOException if the OBJ file cannot be read.
+     */
+    public MeshObject(File file, Material material, AcceleratorType acceleratorType, VertexFormat vertexFormat) throws IOException {
+        this(ObjParser.parse(file), material, acceleratorType, vertexFormat);
+    }
+
+    /**
+     * Loads a mesh from the given OBJ file through a binary cache.
+     *
+     * <p>If the cache holds an entry for the file content and settings, the parsed geometry and,
+     * for binary BVHs, the built hierarchy are taken from it. Otherwise the file is parsed, the
+     * structure is built and a new entry is written; failing to write it only prints a warning.</p>
+     *
+     * @param file            The OBJ file containing vertex and face data.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure to build over the triangles.
+     * @param vertexFormat    Storage format of the vertices.
+     * @param cache           Cache to load the mesh from and store it in.
+     * @throws IOException if the OBJ file cannot be read.
+     */
+    public MeshObject(File file, Material material, AcceleratorType acceleratorType, VertexFormat vertexFormat, MeshCache cache) throws IOException {
         super(material);
-        loadOBJ(file);
-    }
-
-    /**
-     * Loads vertex and face data from the OBJ file.
-     * Supports vertices (lines starting with "v ") and faces (lines starting with "f ").
-     * Faces with more than three vertices are fan triangulated into multiple triangles.
-     *
-     * @param file The OBJ file to read.
-     * @throws IOException if the file cannot be read.
-     */
-    private void loadOBJ(File file) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (line.startsWith("v ")) {
-                String[] tokens = line.split("\\s+");
-                float x = Float.parseFloat(tokens[1]);
-                float y = Float.parseFloat(tokens[2]);
-                float z = Float.parseFloat(tokens[3]);
-                vertices.add(new Vec3(x, y, z));
-            } else if (line.startsWith("f ")) {
-                String[] tokens = line.split("\\s+");
-                int[] indices = new int[tokens.length - 1];
-                for (int i = 0; i < indices.length; i++) {
-                    String[] parts = tokens[i + 1].split("/");
-                    indices[i] = Integer.parseInt(parts[0]) - 1; // OBJ indices are 1-based
-                }
-
-                // Fan triangulation: create triangles (v0, vi, vi+1) for i in 1..n-2
-                Vec3 v0 = vertices.get(indices[0]);
-                for (int i = 1; i < indices.length - 1; i++) {
-                    Vec3 v1 = vertices.get(indices[i]);
-                    Vec3 v2 = vertices.get(indices[i + 1]);
-                    triangles.add(new Triangle(v0, v1, v2, getMaterial()));
-                }
-            }
+        this.acceleratorType = acceleratorType;
+        this.vertexFormat = vertexFormat;
+
+        MeshCache.Key key = cache.key(file, acceleratorType, vertexFormat);
+        MeshCache.Entry entry = cache.load(key);
+        if (entry != null) {
+            geometry = vertexFormat.encode(entry.geometry());
+            accelerator = entry.hierarchy() != null ? entry.hierarchy() : acceleratorType.build(geometry.getTriangleBounds());
+            return;
+        }
+
+        FloatMeshGeometry source = ObjParser.parse(file);
+        geometry = vertexFormat.encode(source);
+        accelerator = acceleratorType.build(geometry.getTriangleBounds());
+        try {
+            cache.store(key, source, accelerator);
+        } catch (IOException e) {
+            System.out.println("Could not write mesh cache for " + file + ": " + e.getMessage());
         }
-        reader.close();
+    }
+
+    /**
+     * Creates a mesh from existing geometry.
+     *
+     * @param geometry        Uncompressed triangles of the mesh.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure to build over the triangles.
+     * @param vertexFormat    Storage format of the vertices.
+     */
+    public MeshObject(MeshGeometry geometry, Material material, AcceleratorType acceleratorType, VertexFormat vertexFormat) {
+        super(material);
+        this.acceleratorType = acceleratorType;
+        this.vertexFormat = vertexFormat;
+        this.geometry = vertexFormat.encode(geometry);
+        // Built over the decoded triangles, so quantized corners stay inside their node bounds
+        this.accelerator = acceleratorType.build(this.geometry.getTriangleBounds());
+    }
+
+    /**
+     * Creates a mesh from geometry and an acceleration structure that were built elsewhere,
+     * e.g. mapped from a {@link math.geometry.objects.mesh.PagedMesh} file.
+     *
+     * @param geometry    Triangles of the mesh.
+     * @param accelerator Structure indexing the triangles; the primitive ids are triangle indices.
+     * @param material    The material to apply to all triangles in the mesh.
+     */
+    public MeshObject(MeshGeometry geometry, Accelerator accelerator, Material material) {
+        super(material);
+        this.acceleratorType = null;
+        this.vertexFormat = VertexFormat.FLOAT;
+        this.geometry = geometry;
+        this.accelerator = accelerator;
+    }
+
+    /**
+     * Moves the mesh vertices, keeping the faces, e.g. for the next frame of an animation.
+     *
+     * <p>The geometry is re-encoded from the new positions and a binary BVH is refitted in
+     * linear time. If refitting has degraded the tree too much, or the structure cannot be
+     * refitted, it is rebuilt from scratch. Must not be called while the mesh is being rendered.</p>
+     *
+     * @param positions New vertex positions, in the order of {@link #getVertices()}.
+     * @throws IllegalArgumentException If the number of vertices differs.
+     * @throws UnsupportedOperationException If the mesh was created with a prebuilt acceleration structure.
+     */
+    public void updateVertices(List<Vec3> positions) {
+        if (acceleratorType == null) {
+            throw new UnsupportedOperationException("Mesh with a prebuilt acceleration structure cannot be updated");
+        }
+        if (positions.size() != geometry.getVertexCount()) {
+            throw new IllegalArgumentException("Expected " + geometry.getVertexCount() + " vertices, got " + positions.size());
+        }
+        float[] positionArray = new float[3 * positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            Vec3 p = positions.get(i);
+            positionArray[3 * i] = p.getX();
+            positionArray[3 * i + 1] = p.getY();
+            positionArray[3 * i + 2] = p.getZ();
+        }
+        geometry = vertexFormat.encode(withPositions(geometry, positionArray));
+
+        AABB[] bounds = geometry.getTriangleBounds();
+        if (accelerator instanceof BVH bvh) {
+            bvh.refit(bounds);
+            if (!bvh.needsRebuild()) return;
+        }
+        accelerator = acceleratorType.build(bounds);
+    }
+
+    /**
+     * Decodes geometry into float arrays, replacing the positions and keeping the faces and vertex attributes.
+     */
+    private static FloatMeshGeometry withPositions(MeshGeometry geometry, float[] positions) {
+        if (geometry instanceof FloatMeshGeometry floatGeometry) {
+            return floatGeometry.withPositions(positions);
+        }
+        int vertexCount = geometry.getVertexCount();
+        int[] indices = new int[3 * geometry.getTriangleCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = geometry.getIndex(i / 3, i % 3);
+        }
+        float[] normals = geometry.hasNormals() ? new float[3 * vertexCount] : null;
+        float[] texCoords = geometry.hasTexCoords() ? new float[2 * vertexCount] : null;
+        for (int v = 0; v < vertexCount; v++) {
+            if (normals != null) geometry.getNormal(v, normals, 3 * v);
+            if (texCoords != null) geometry.getTexCoord(v, texCoords, 2 * v);
+        }
+        return new FloatMeshGeometry(positions, indices, normals, texCoords);
+    }
+
+    /**
+     * @return The acceleration structure over the triangles, e.g. for reporting its statistics.
+     */
+    public Accelerator getAccelerator() {
+        return accelerator;
+    }
+
+    /**
+     * @return The triangle storage, indexed like the primitive ids of the hits.
+     */
+    public MeshGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return The current vertex positions, decoded, in order of their first use by a face.
+     */
+    public List<Vec3> getVertices() {
+        List<Vec3> vertices = new ArrayList<>(geometry.getVertexCount());
+        for (int i = 0; i < geometry.getVertexCount(); i++) {
+            vertices.add(geometry.getPosition(i));
+        }
+        return vertices;
     }
 
     /**
      * Intersects a ray with the mesh.
      *
      * @param ray The ray to intersect with the mesh.
-     * @return List of all intersections with the mesh triangles.
+     * @return List of all intersections with the mesh triangles, tagged with the triangle index.
      */
     @Override
     public List<Intersection> intersect(Ray ray) {
         List<Intersection> hits = new ArrayList<>();
-        for (Triangle t : triangles) {
-            hits.addAll(t.intersect(ray));
-        }
+        TriangleIntersector kernel = new TriangleIntersector(geometry, ray);
+        accelerator.traverse(ray, Float.POSITIVE_INFINITY, (i, tMax) -> {
+            float t = kernel.intersect(i);
+            if (!Float.isNaN(t)) {
+                Vec3 normal = getShadingNormal(i, kernel.getU(), kernel.getV());
+                hits.add(new Intersection(ray.getPoint(t), normal, t, this, getMaterial(), i, kernel.getU(), kernel.getV()));
+            }
+            return tMax;
+        });
         return hits;
     }
 
+    /**
+     * Finds the closest triangle hit. Each hit shrinks the traversal's maximum distance, so the
+     * acceleration structure skips everything behind it, and only the winner gets an
+     * {@link Intersection} and a shading normal.
+     *
+     * @param ray         The ray to intersect with the mesh.
+     * @param minDistance Hits at or below this distance are ignored.
+     * @param maxDistance Hits at or beyond this distance are ignored.
+     * @return The nearest hit in the range, tagged with the triangle index, or null.
+     */
+    @Override
+    public Intersection intersectNearest(Ray ray, float minDistance, float maxDistance) {
+        TriangleIntersector kernel = new TriangleIntersector(geometry, ray);
+        int[] nearest = {-1};
+        float[] hit = new float[3];     // t, u, v of the nearest hit
+        accelerator.traverse(ray, maxDistance, (i, tMax) -> {
+            float t = kernel.intersect(i);
+            if (t > minDistance && t < tMax) {
+                nearest[0] = i;
+                hit[0] = t;
+                hit[1] = kernel.getU();
+                hit[2] = kernel.getV();
+                return t;
+            }
+            return tMax;
+        });
+        if (nearest[0] < 0) return null;
+        Vec3 normal = getShadingNormal(nearest[0], hit[1], hit[2]);
+        return new Intersection(ray.getPoint(hit[0]), normal, hit[0], this, getMaterial(), nearest[0], hit[1], hit[2]);
+    }
+
+    /**
+     * Gets the normal of the triangle that was hit, looked up by the hit's primitive id.
+     *
+     * @param hit Intersection on this mesh.
+     * @return Interpolated vertex normal if the mesh has normals, otherwise the normal of the hit triangle.
+     */
+    @Override
+    public Vec3 getNormal(Intersection hit) {
+        if (hit.primitiveId() < 0) return getNormal(hit.point());
+        return getShadingNormal(hit.primitiveId(), hit.u(), hit.v());
+    }
+
+    /**
+     * Computes the normal used for shading a point of a triangle.
+     *
+     * @param triangle Triangle index.
+     * @param u        Barycentric weight of corner b.
+     * @param v        Barycentric weight of corner c.
+     * @return Vertex normals blended with the barycentric weights, or the face normal if the mesh has none.
+     */
+    private Vec3 getShadingNormal(int triangle, float u, float v) {
+        if (!geometry.hasNormals()) return geometry.getFaceNormal(triangle);
+        Vec3 a = geometry.getNormal(geometry.getIndex(triangle, 0));
+        Vec3 b = geometry.getNormal(geometry.getIndex(triangle, 1));
+        Vec3 c = geometry.getNormal(geometry.getIndex(triangle, 2));
+        return a.multiply(1f - u - v).add(b.multiply(u)).add(c.multiply(v)).normalize();
+    }
+
     /**
      * Gets the normal vector at the given point on the mesh.
      *
-     * <p>If the point lies inside any triangle, returns that triangle's normal.
-     * Otherwise, returns a default upward vector.</p>
+     * <p>Only the triangles whose bounds a tiny segment through the point reaches are visited,
+     * found through the acceleration structure. Of those that contain the point, the one whose
+     * plane is nearest wins. Otherwise, returns a default upward vector. Prefer
+     * {@link #getNormal(Intersection)} for hits produced by {@link #intersect(Ray)}.</p>
      *
      * @param p Point on or near the mesh surface.
      * @return Normal vector at the point.
      */
     @Override
     public Vec3 getNormal(Vec3 p) {
-        for (Triangle t : triangles) {
-            if (t.contains(p)) return t.getNormal(p);
-        }
-        return new Vec3(0, 1, 0); // fallback normal
+        AABB bounds = accelerator.getBounds();
+        float epsilon = 1e-4f * bounds.size().getLength() + 1e-6f;
+        Vec3 direction = PARITY_DIRECTIONS[0];
+        Ray probe = new Ray(p.subtract(direction.multiply(epsilon)), direction);
+
+        float px = p.getX(), py = p.getY(), pz = p.getZ();
+        float[] corners = new float[9];
+        float[] best = {Float.POSITIVE_INFINITY, -1f, 0f, 0f};   // plane distance, triangle, u, v
+        accelerator.traverse(probe, 2f * epsilon, (i, tMax) -> {
+            geometry.getTriangle(i, corners);
+            float e1x = corners[3] - corners[0], e1y = corners[4] - corners[1], e1z = corners[5] - corners[2];
+            float e2x = corners[6] - corners[0], e2y = corners[7] - corners[1], e2z = corners[8] - corners[2];
+            float qx = px - corners[0], qy = py - corners[1], qz = pz - corners[2];
+
+            float d00 = e1x * e1x + e1y * e1y + e1z * e1z;
+            float d01 = e1x * e2x + e1y * e2y + e1z * e2z;
+            float d11 = e2x * e2x + e2y * e2y + e2z * e2z;
+            float d20 = qx * e1x + qy * e1y + qz * e1z;
+            float d21 = qx * e2x + qy * e2y + qz * e2z;
+            float denom = d00 * d11 - d01 * d01;
+            if (Math.abs(denom) < 1e-12f) return tMax;
+            float u = (d11 * d20 - d01 * d21) / denom;
+            float v = (d00 * d21 - d01 * d20) / denom;
+            if (u < 0f || v < 0f || u + v > 1f) return tMax;
+
+            float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+            float distance = Math.abs(nx * qx + ny * qy + nz * qz) / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (distance < best[0]) {
+                best[0] = distance;
+                best[1] = i;
+                best[2] = u;
+                best[3] = v;
+            }
+            return tMax;
+        });
+        if (best[1] < 0f) return new Vec3(0, 1, 0); // fallback normal
+        return getShadingNormal((int) best[1], best[2], best[3]);
     }
 
     /**
      * Determines if a point is inside the mesh.
      *
-     * <p>This uses a ray casting method: casts a ray in a fixed direction from the point,
-     * counts intersections with mesh triangles, and returns true if the count is odd.</p>
+     * <p>This uses a ray casting method: casts rays in three fixed directions from the point,
+     * counts their crossings with the mesh through the acceleration structure and takes the majority of the
+     * parity results. The vote keeps the answer stable when one ray grazes an edge or
+     * escapes through a hole of a mesh that is not watertight.</p>
      *
      * @param point The point to test.
      * @return True if the point is inside the mesh, false otherwise.
      */
     @Override
     public boolean isInside(Vec3 point) {
-        for (Triangle tri : triangles) {
-            if (tri.contains(point)) {
-                return true;
+        if (!getBounds().contains(point)) return false;
+
+        int insideVotes = 0;
+        for (int i = 0; i < PARITY_DIRECTIONS.length; i++) {
+            if (countCrossings(new Ray(point, PARITY_DIRECTIONS[i])) % 2 == 1) {
+                insideVotes++;
             }
+            int outsideVotes = i + 1 - insideVotes;
+            if (2 * insideVotes > PARITY_DIRECTIONS.length) return true;
+            if (2 * outsideVotes > PARITY_DIRECTIONS.length) return false;
         }
+        return false;
+    }
 
-        Vec3 direction = new Vec3(1, 0.5f, 0.3f).normalize();
-        Ray ray = new Ray(point, direction);
+    /**
+     * Counts the triangles crossed by a ray.
+     *
+     * @param ray The ray to trace.
+     * @return Number of crossings in front of the ray origin.
+     */
+    private int countCrossings(Ray ray) {
+        int[] count = new int[1];
+        TriangleIntersector kernel = new TriangleIntersector(geometry, ray);
+        accelerator.traverse(ray, Float.POSITIVE_INFINITY, (i, tMax) -> {
+            if (kernel.intersect(i) > 1e-5f) count[0]++;
+            return tMax;
+        });
+        return count[0];
+    }
 
-        int count = 0;
-        for (Triangle tri : triangles) {
-            List<Intersection> hits = tri.intersect(ray);
-            for (Intersection hit : hits) {
-                if (hit.distance() > 1e-5f) {
-                    count++;
-                }
+    /**
+     * Checks for any triangle hit closer than {@code maxDistance}, stopping at the first one.
+     *
+     * @param ray         Ray to test.
+     * @param maxDistance Maximum distance along the ray to check for occlusion.
+     * @return True if the ray is occluded within maxDistance, false otherwise.
+     */
+    @Override
+    public boolean isOccluding(Ray ray, float maxDistance) {
+        boolean[] occluded = new boolean[1];
+        TriangleIntersector kernel = new TriangleIntersector(geometry, ray);
+        accelerator.traverse(ray, maxDistance, (i, tMax) -> {
+            float t = kernel.intersect(i);
+            if (t > 1e-5f && t < maxDistance) {
+                occluded[0] = true;
+                return -1f;
             }
-        }
-        return count % 2 == 1;
+            return tMax;
+        });
+        return occluded[0];
     }
 
     /**
-     * Returns a transformed copy of this mesh object.
+     * Returns the bounding box of all triangles, taken from the acceleration structure.
      *
-     * <p>Transforms each triangle in the mesh by the given matrix and returns a new {@code MeshObject} instance.</p>
-     *
-     * @param matrix Transformation matrix to apply.
-     * @return New {@code MeshObject} with transformed geometry.
+     * @return Bounding box of the mesh.
      */
     @Override
-    public SceneObject transform(Mat4 matrix) {
-        List<Triangle> newTris = new ArrayList<>();
-        for (Triangle t : triangles) {
-            newTris.add((Triangle) t.transform(matrix));
-        }
-        MeshObject copy = new MeshObject(getMaterial());
-        copy.triangles.addAll(newTris);
-        copy.vertices.addAll(this.vertices);
-        return copy;
+    public AABB getBounds() {
+        return accelerator.getBounds();
     }
 
     /**
-     * Private constructor used internally for cloning during transformation.
+     * Returns an instance of this mesh placed with the given transformation.
+     *
+     * <p>The geometry and the acceleration structure are shared with the instance instead of being copied,
+     * so placing the same mesh many times only costs a transformation per placement.</p>
+     *
+     * @param matrix Transformation matrix to apply.
+     * @return New {@link Instance} referencing this mesh.
      */
-    private MeshObject(Material material) {
-        super(material);
+    @Override
+    public SceneObject transform(Mat4 matrix) {
+        return new Instance(this, matrix);
     }
-}
\ No newline at end of file
+}
@@ -53,6 +53,162 @@ public class Quadric extends SceneObject {
     public List<Intersection> intersect(Ray ray) {
         List<Intersection> intersections = new ArrayList<>();
 
+        float[] q = rayPolynomial(ray);
+        float A = q[0], B = q[1], C = q[2];
+
+        if (A == 0 && B != 0) {
+            float t = -C / B;
+            Vec3 point = ray.getPoint(t);
+            Vec3 normal = getNormal(point);
+            intersections.add(new Intersection(point, normal, t, this, getMaterial()));
+            return intersections;
+        }
+
+        float discriminant = B * B - 4 * A * C;
+
+        if (discriminant > 1e-6f) {
+            float sqrtDiscriminant = (float) Math.sqrt(discriminant);
+            float k = (B < 1e-6f) ? (-B - sqrtDiscriminant) / 2f : (-B + sqrtDiscriminant) / 2f;
+            float t1 = k / A;
+            float t2 = C / k;
+
+            Vec3 point1 = ray.getPoint(t1);
+            Vec3 point2 = ray.getPoint(t2);
+
+            intersections.add(new Intersection(point1, getNormal(point1), t1, this, getMaterial()));
+            intersections.add(new Intersection(point2, getNormal(point2), t2, this, getMaterial()));
+        }
+
+        return intersections;
+    }
+
+    /**
+     * Classifies the whole ray line against the quadric analytically.
+     *
+     * <p>Along the ray the quadric becomes the polynomial Q(t) = At² + Bt + C and the
+     * inside region is where Q(t) ≤ 0, so the spans follow from the roots and the sign
+     * of the leading coefficient without any point-in-object queries.</p>
+     *
+     * @param ray Ray to test against.
+     * @return Sorted list of inside intervals.
+     */
+    @Override
+    public List<Span> intersectSpans(Ray ray) {
+        List<Span> spans = new ArrayList<>();
+
+        float[] q = rayPolynomial(ray);
+        float A = q[0], B = q[1], C = q[2];
+
+        if (A == 0) {
+            if (B == 0) {
+                // Constant along the ray: either completely inside or outside
+                if (C <= 1e-6f) spans.add(new Span(null, null));
+                return spans;
+            }
+            Intersection hit = intersectionAt(ray, -C / B);
+            spans.add(B > 0 ? new Span(null, hit) : new Span(hit, null));
+            return spans;
+        }
+
+        float discriminant = B * B - 4 * A * C;
+
+        if (discriminant > 1e-6f) {
+            float sqrtDiscriminant = (float) Math.sqrt(discriminant);
+            float k = (B < 1e-6f) ? (-B - sqrtDiscriminant) / 2f : (-B + sqrtDiscriminant) / 2f;
+            Intersection near = intersectionAt(ray, Math.min(k / A, C / k));
+            Intersection far = intersectionAt(ray, Math.max(k / A, C / k));
+
+            if (A > 0) {
+                spans.add(new Span(near, far));
+            } else {
+                spans.add(new Span(null, near));
+                spans.add(new Span(far, null));
+            }
+        } else if (A < 0) {
+            // No real roots and opening downwards: the whole line is inside
+            spans.add(new Span(null, null));
+        }
+
+        return spans;
+    }
+
+    /**
+     * Returns a box enclosing the inside region of the quadric, if it is finite.
+     *
+     * <p>Ellipsoids are bounded by their center ± the extent along each axis; half-spaces
+     * with an axis-aligned normal are bounded on one side, which makes intersections of
+     * such planes (e.g. boxes) cullable. All other quadrics are treated as unbounded.</p>
+     *
+     * @return Bounding box of the solid.
+     */
+    @Override
+    public AABB getBounds() {
+        float a = coefficients[0], b = coefficients[1], c = coefficients[2];
+        float d = coefficients[3], e = coefficients[4], f = coefficients[5];
+        float g = coefficients[6], h = coefficients[7], i = coefficients[8], j = coefficients[9];
+
+        if (a == 0 && b == 0 && c == 0 && d == 0 && e == 0 && f == 0) {
+            return halfSpaceBounds(g, h, i, j);
+        }
+
+        // Leading principal minors of the quadratic part must be positive for an ellipsoid
+        float minor2 = a * b - d * d;
+        float det = a * (b * c - f * f) - d * (d * c - f * e) + e * (d * f - b * e);
+        if (a <= 0 || minor2 <= 0 || det <= 0) {
+            return AABB.INFINITE;
+        }
+
+        // Inverse of the symmetric 3x3 quadratic part
+        float inv00 = (b * c - f * f) / det, inv01 = (e * f - d * c) / det, inv02 = (d * f - b * e) / det;
+        float inv11 = (a * c - e * e) / det, inv12 = (d * e - a * f) / det;
+        float inv22 = minor2 / det;
+
+        // Center -M⁻¹g and level k of the form (x - c)ᵀ M (x - c) ≤ k
+        float cx = -(inv00 * g + inv01 * h + inv02 * i);
+        float cy = -(inv01 * g + inv11 * h + inv12 * i);
+        float cz = -(inv02 * g + inv12 * h + inv22 * i);
+        float k = -(g * cx + h * cy + i * cz) - j;
+        if (k < 0) {
+            return AABB.EMPTY;
+        }
+
+        Vec3 extent = new Vec3(
+                (float) Math.sqrt(k * inv00),
+                (float) Math.sqrt(k * inv11),
+                (float) Math.sqrt(k * inv22));
+        Vec3 center = new Vec3(cx, cy, cz);
+        return new AABB(center.subtract(extent), center.add(extent));
+    }
+
+    /**
+     * Computes the bounds of the half-space 2(gx + hy + iz) + j ≤ 0.
+     *
+     * @return One-sided bounds for axis-aligned planes, otherwise unbounded.
+     */
+    private static AABB halfSpaceBounds(float g, float h, float i, float j) {
+        float inf = Float.POSITIVE_INFINITY;
+        if (g != 0 && h == 0 && i == 0) {
+            float x = -j / (2 * g);
+            return g > 0 ? new AABB(new Vec3(-inf), new Vec3(x, inf, inf)) : new AABB(new Vec3(x, -inf, -inf), new Vec3(inf));
+        }
+        if (g == 0 && h != 0 && i == 0) {
+            float y = -j / (2 * h);
+            return h > 0 ? new AABB(new Vec3(-inf), new Vec3(inf, y, inf)) : new AABB(new Vec3(-inf, y, -inf), new Vec3(inf));
+        }
+        if (g == 0 && h == 0 && i != 0) {
+            float z = -j / (2 * i);
+            return i > 0 ? new AABB(new Vec3(-inf), new Vec3(inf, inf, z)) : new AABB(new Vec3(-inf, -inf, z), new Vec3(inf));
+        }
+        return AABB.INFINITE;
+    }
+
+    /**
+     * Substitutes the ray into the quadric equation.
+     *
+     * @param ray The ray.
+     * @return Coefficients {A, B, C} of Q(t) = At² + Bt + C.
+     */
+    private float[] rayPolynomial(Ray ray) {
         Vec3 o = ray.p();
         Vec3 d = ray.v();
 
@@ -78,30 +234,12 @@ public class Quadric extends SceneObject {
                 + 2 * (d1 * px * py + e * px * pz + f * py * pz
                 + g * px + h * py + i * pz) + j;
 
-        if (A == 0 && B != 0) {
-            float t = -C / B;
-            Vec3 point = ray.getPoint(t);
-            Vec3 normal = getNormal(point);
-            intersections.add(new Intersection(point, normal, t, this, getMaterial()));
-            return intersections;
-        }
-
-        float discriminant = B * B - 4 * A * C;
-
-        if (discriminant > 1e-6f) {
-            float sqrtDiscriminant = (float) Math.sqrt(discriminant);
-            float k = (B < 1e-6f) ? (-B - sqrtDiscriminant) / 2f : (-B + sqrtDiscriminant) / 2f;
-            float t1 = k / A;
-            float t2 = C / k;
-
-            Vec3 point1 = ray.getPoint(t1);
-            Vec3 point2 = ray.getPoint(t2);
-
-            intersections.add(new Intersection(point1, getNormal(point1), t1, this, getMaterial()));
-            intersections.add(new Intersection(point2, getNormal(point2), t2, this, getMaterial()));
-        }
+        return new float[]{A, B, C};
+    }
 
-        return intersections;
+    private Intersection intersectionAt(Ray ray, float t) {
+        Vec3 point = ray.getPoint(t);
+        return new Intersection(point, getNormal(point), t, this, getMaterial());
     }
 
     /**
@@ -48,6 +48,62 @@ public abstract class SceneObject {
      */
     public abstract List<Intersection> intersect(Ray ray);
 
+    /**
+     * Finds the closest intersection inside a distance range, for closest-hit queries.
+     *
+     * <p>The default implementation picks the nearest of {@link #intersect(Ray)}. Objects made of
+     * many surfaces override it to stop searching beyond the closest hit found so far.</p>
+     *
+     * @param ray         Ray to test against.
+     * @param minDistance Hits at or below this distance are ignored, e.g. self-intersections.
+     * @param maxDistance Hits at or beyond this distance are ignored.
+     * @return The nearest intersection in the range, or null if there is none.
+     */
+    public Intersection intersectNearest(Ray ray, float minDistance, float maxDistance) {
+        Intersection nearest = null;
+        for (Intersection intersection : intersect(ray)) {
+            float dist = intersection.distance();
+            if (dist > minDistance && dist < maxDistance) {
+                maxDistance = dist;
+                nearest = intersection;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Computes the intervals along the ray that lie inside this object.
+     *
+     * <p>The default implementation sorts the intersections and derives the starting state
+     * from {@link #isInside(Vec3)} just past the ray origin. Objects that can classify the
+     * ray analytically override this to avoid the point query.</p>
+     *
+     * @param ray Ray to test against.
+     * @return Sorted, disjoint list of inside intervals (may be empty).
+     */
+    public List<Span> intersectSpans(Ray ray) {
+        List<Intersection> hits = new ArrayList<>(intersect(ray));
+        hits.removeIf(hit -> hit.distance() < 1e-5f);
+        Collections.sort(hits);
+
+        List<Span> spans = new ArrayList<>();
+        boolean inside = isInside(ray.getPoint(1e-5f));
+        Intersection enter = null;
+
+        for (Intersection hit : hits) {
+            if (inside) {
+                spans.add(new Span(enter, hit));
+            } else {
+                enter = hit;
+            }
+            inside = !inside;
+        }
+        if (inside) {
+            spans.add(new Span(enter, null));
+        }
+        return spans;
+    }
+
     /**
      * Computes the surface normal vector at a given point on the object.
      *
@@ -56,6 +112,18 @@ public abstract class SceneObject {
      */
     public abstract Vec3 getNormal(Vec3 p);
 
+    /**
+     * Computes the surface normal for a hit on this object.
+     * Objects made of several primitives override this to use the hit's primitive id
+     * instead of searching for the surface containing the point.
+     *
+     * @param hit Intersection on this object.
+     * @return Normalized surface normal vector.
+     */
+    public Vec3 getNormal(Intersection hit) {
+        return getNormal(hit.point());
+    }
+
     /**
      * Tests if a point is inside this object.
      *
@@ -83,6 +151,16 @@ public abstract class SceneObject {
         return false;
     }
 
+    /**
+     * Returns an axis-aligned box enclosing this object in world space.
+     * Objects without finite extent (e.g. planes) return {@link AABB#INFINITE}.
+     *
+     * @return Bounding box of the object.
+     */
+    public AABB getBounds() {
+        return AABB.INFINITE;
+    }
+
     /**
      * Returns a new transformed instance of this scene object.
      *
@@ -105,6 +105,17 @@ public class Sphere extends SceneObject {
         return point.subtract(center).getLengthSquared() < radius * radius;
     }
 
+    /**
+     * Returns the bounding box of the sphere.
+     *
+     * @return Box from center - radius to center + radius.
+     */
+    @Override
+    public AABB getBounds() {
+        Vec3 extent = new Vec3(radius);
+        return new AABB(center.subtract(extent), center.add(extent));
+    }
+
     /**
      * Transforms the sphere using a transformation matrix by converting it into a quadric.
      *
@@ -2,6 +2,7 @@ package math.geometry.objects;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import math.geometry.Intersection;
 import math.geometry.Ray;
 import stuff.Material;
@@ -46,8 +47,8 @@ public class Triangle extends SceneObject {
      * Performs ray-triangle intersection using the optimized Möller–Trumbore algorithm.
      *
      * @param ray The ray to test for intersection.
-     * @return A list containing a single {@link Intersection} if hit,
-     *         or an empty list if no intersection occurs.
+     * @return A list containing a single {@link Intersection} carrying the barycentric
+     *         coordinates of the hit, or an empty list if no intersection occurs.
      */
     @Override
     public List<Intersection> intersect(Ray ray) {
@@ -69,7 +70,7 @@ public class Triangle extends SceneObject {
         if (t < 1e-4f) return Collections.emptyList(); // Behind ray or too close
 
         Vec3 hitPoint = ray.p().add(ray.v().multiply(t));
-        Intersection hit = new Intersection(hitPoint, normal, t, this, getMaterial());
+        Intersection hit = new Intersection(hitPoint, normal, t, this, getMaterial(), 0, u, v);
         return List.of(hit);
     }
 
@@ -98,6 +99,16 @@ public class Triangle extends SceneObject {
         return false;
     }
 
+    /**
+     * Returns the bounding box of the three vertices.
+     *
+     * @return Bounding box of the triangle.
+     */
+    @Override
+    public AABB getBounds() {
+        return AABB.of(a, b, c);
+    }
+
     /**
      * Returns a new {@code Triangle} transformed by the given matrix.
      *
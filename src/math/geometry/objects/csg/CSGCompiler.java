@@ -0,0 +1,130 @@
+package math.geometry.objects.csg;
+
+import math.geometry.AABB;
+import math.geometry.objects.SceneObject;
+import stuff.Material;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles nested {@link CSGObject} trees into a {@link CompiledCSGObject}.
+ *
+ * <p>The tree is flattened in post-order, so children always precede their parents.
+ * Every non-CSG node becomes a leaf primitive; every boolean node stores the truth table
+ * of its {@code computeIsInside} operation, which keeps the compiler independent of
+ * the concrete operation classes.</p>
+ */
+public final class CSGCompiler {
+
+    private final List<SceneObject> primitives = new ArrayList<>();
+    private final List<Integer> primitiveNode = new ArrayList<>();
+    private final List<Boolean> flipNormal = new ArrayList<>();
+    private final List<Material> materials = new ArrayList<>();
+
+    private final List<Integer> parent = new ArrayList<>();
+    private final List<Integer> left = new ArrayList<>();
+    private final List<Integer> right = new ArrayList<>();
+    private final List<Byte> truthTable = new ArrayList<>();
+    private final List<Integer> firstPrimitive = new ArrayList<>();
+    private final List<Integer> lastPrimitive = new ArrayList<>();
+    private final List<AABB> nodeBounds = new ArrayList<>();
+
+    private CSGCompiler() {
+    }
+
+    /**
+     * Flattens a CSG tree into a primitive table and a boolean expression.
+     *
+     * @param root The root of the CSG tree.
+     * @return The compiled, semantically equivalent object.
+     */
+    public static CompiledCSGObject compile(CSGObject root) {
+        CSGCompiler compiler = new CSGCompiler();
+        compiler.visit(root, false, null);
+
+        return new CompiledCSGObject(
+                root,
+                compiler.primitives.toArray(new SceneObject[0]),
+                toIntArray(compiler.primitiveNode),
+                toBooleanArray(compiler.flipNormal),
+                compiler.materials.toArray(new Material[0]),
+                toIntArray(compiler.parent),
+                toIntArray(compiler.left),
+                toIntArray(compiler.right),
+                toByteArray(compiler.truthTable),
+                toIntArray(compiler.firstPrimitive),
+                toIntArray(compiler.lastPrimitive),
+                compiler.nodeBounds.toArray(new AABB[0])
+        );
+    }
+
+    /**
+     * Emits the subtree rooted at {@code obj} in post-order.
+     *
+     * @param obj      The current node.
+     * @param flipped  Whether normals of this subtree are inverted by enclosing differences.
+     * @param material Material the root reports for hits in this subtree, null at the root.
+     * @return Index of the emitted node.
+     */
+    private int visit(SceneObject obj, boolean flipped, Material material) {
+        int first = primitives.size();
+
+        if (obj instanceof CSGObject csg) {
+            // Hits are reported with the material of the root's direct child containing them
+            int a = visit(csg.objA, flipped, material != null ? material : csg.objA.getMaterial());
+            int b = visit(csg.objB, flipped ^ (csg instanceof DifferenceObject), material != null ? material : csg.objB.getMaterial());
+
+            byte table = 0;
+            for (int index = 0; index < 4; index++) {
+                if (csg.computeIsInside((index & 1) != 0, (index & 2) != 0)) {
+                    table |= (byte) (1 << index);
+                }
+            }
+
+            int node = addNode(-1, -1, table, first, csg.getBounds());
+            parent.set(a, node);
+            parent.set(b, node);
+            left.set(node, a);
+            right.set(node, b);
+            return node;
+        }
+
+        int node = addNode(-1, -1, (byte) 0, first, obj.getBounds());
+        primitives.add(obj);
+        primitiveNode.add(node);
+        flipNormal.add(flipped);
+        materials.add(material != null ? material : obj.getMaterial());
+        lastPrimitive.set(node, primitives.size());
+        return node;
+    }
+
+    private int addNode(int leftChild, int rightChild, byte table, int first, AABB bounds) {
+        parent.add(-1);
+        left.add(leftChild);
+        right.add(rightChild);
+        truthTable.add(table);
+        firstPrimitive.add(first);
+        lastPrimitive.add(primitives.size());
+        nodeBounds.add(bounds);
+        return parent.size() - 1;
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) result[i] = values.get(i);
+        return result;
+    }
+
+    private static boolean[] toBooleanArray(List<Boolean> values) {
+        boolean[] result = new boolean[values.size()];
+        for (int i = 0; i < result.length; i++) result[i] = values.get(i);
+        return result;
+    }
+
+    private static byte[] toByteArray(List<Byte> values) {
+        byte[] result = new byte[values.size()];
+        for (int i = 0; i < result.length; i++) result[i] = values.get(i);
+        return result;
+    }
+}
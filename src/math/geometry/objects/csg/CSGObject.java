@@ -2,21 +2,23 @@ package math.geometry.objects.csg;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import math.geometry.Intersection;
 import math.geometry.Ray;
+import math.geometry.Span;
 import math.geometry.objects.SceneObject;
 import stuff.Material;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 /**
  * Abstract base class for Constructive Solid Geometry (CSG) operations.
  *
  * CSG objects combine two {@link SceneObject}s (`objA` and `objB`) using boolean set operations
- * like union, intersection, and difference. This class handles the logic of ray intersection
- * filtering and inside/outside state transitions. Subclasses must define how boolean
+ * like union, intersection, and difference. Rays are evaluated as lists of inside spans:
+ * the sorted span lists of both operands are merged in a single linear sweep, and operands
+ * whose bounds the ray misses are skipped entirely. Subclasses must define how boolean
  * operations work and how to adjust surface normals.
  *
  * <p>Subclasses include:
@@ -29,6 +31,7 @@ import java.util.List;
 public abstract class CSGObject extends SceneObject {
 
     protected SceneObject objA, objB;
+    private final AABB boundsA, boundsB;
 
     /**
      * Constructs a CSG object with two scene objects and a material.
@@ -41,12 +44,13 @@ public abstract class CSGObject extends SceneObject {
         super(material);
         this.objA = objA;
         this.objB = objB;
+        this.boundsA = objA.getBounds();
+        this.boundsB = objB.getBounds();
     }
 
     /**
      * Computes the intersections of the ray with the CSG object.
-     * The method collects intersections from both operand objects, sorts them,
-     * and filters them based on the CSG operation semantics.
+     * The boundaries of the merged inside spans in front of the ray origin are the visible surface.
      *
      * @param ray Ray to test against the object.
      * @return List of filtered intersections.
@@ -54,10 +58,49 @@ public abstract class CSGObject extends SceneObject {
     @Override
     public List<Intersection> intersect(Ray ray) {
         List<Intersection> intersections = new ArrayList<>();
-        intersections.addAll(objA.intersect(ray));
-        intersections.addAll(objB.intersect(ray));
-        intersections.sort(Comparator.comparingDouble(Intersection::distance));
-        return filterIntersections(intersections, ray);
+        for (Span span : intersectSpans(ray)) {
+            if (span.enter() != null && span.enter().distance() >= 1e-5f) intersections.add(span.enter());
+            if (span.exit() != null && span.exit().distance() >= 1e-5f) intersections.add(span.exit());
+        }
+        return intersections;
+    }
+
+    /**
+     * Computes the inside spans of the composite shape by merging the spans of both operands.
+     *
+     * <p>Operands are culled by their bounds first: a missed operand contributes no spans,
+     * and if the result is then fully determined (e.g. A missed for intersection or
+     * difference, B missed for difference) the other operand is not evaluated at all.</p>
+     *
+     * @param ray Ray to test against the object.
+     * @return Sorted, disjoint list of inside spans.
+     */
+    @Override
+    public List<Span> intersectSpans(Ray ray) {
+        boolean reachesA = reaches(boundsA, ray);
+        boolean reachesB = reaches(boundsB, ray);
+
+        // Without A the shape is empty for intersection and difference, without B for intersection
+        if (!reachesA && !computeIsInside(false, true)) return new ArrayList<>();
+        if (!reachesB && !computeIsInside(true, false)) return new ArrayList<>();
+
+        List<Span> spansA = reachesA ? objA.intersectSpans(ray) : List.of();
+        if (spansA.isEmpty() && !computeIsInside(false, true)) return new ArrayList<>();
+
+        List<Span> spansB = reachesB ? objB.intersectSpans(ray) : List.of();
+        return mergeSpans(spansA, spansB);
+    }
+
+    /**
+     * Checks whether the forward part of the ray can touch an operand.
+     *
+     * @param bounds Bounds of the operand.
+     * @param ray    The ray.
+     * @return False if the operand cannot contribute spans in front of the ray origin.
+     */
+    private static boolean reaches(AABB bounds, Ray ray) {
+        if (bounds.isEmpty()) return false;
+        return bounds.intersects(ray, 1e-5f, Float.POSITIVE_INFINITY);
     }
 
     /**
@@ -90,46 +133,75 @@ public abstract class CSGObject extends SceneObject {
     protected abstract Vec3 getAdjustedNormal(Intersection inter, SceneObject obj);
 
     /**
-     * Filters raw intersections using CSG logic to retain only those contributing
-     * to the visible surface of the composite shape.
+     * Merges the sorted span lists of both operands in one linear sweep.
+     * Every span boundary toggles the inside state of its operand; a new span is opened or
+     * closed whenever the combined state changes.
      *
-     * @param intersections All intersections (sorted).
-     * @param ray           The originating ray.
-     * @return List of filtered intersections.
+     * @param spansA Inside spans of objA.
+     * @param spansB Inside spans of objB.
+     * @return Sorted inside spans of the composite shape.
      */
-    private List<Intersection> filterIntersections(List<Intersection> intersections, Ray ray) {
-        List<Intersection> result = new ArrayList<>();
+    private List<Span> mergeSpans(List<Span> spansA, List<Span> spansB) {
+        List<Intersection> eventsA = boundaries(spansA);
+        List<Intersection> eventsB = boundaries(spansB);
+        boolean insideA = !spansA.isEmpty() && spansA.get(0).enter() == null;
+        boolean insideB = !spansB.isEmpty() && spansB.get(0).enter() == null;
 
-        // Slight offset to avoid precision errors
-        Vec3 startPoint = ray.p().add(ray.v().multiply(1e-5f));
-        boolean insideA = objA.isInside(startPoint);
-        boolean insideB = objB.isInside(startPoint);
+        List<Span> result = new ArrayList<>();
         boolean wasInside = computeWasInside(insideA, insideB);
-
-        for (Intersection inter : intersections) {
-            if (inter.distance() < 1e-5f) continue;
-
-            SceneObject obj = inter.object();
-            if (obj == objA) insideA = !insideA;
-            else if (obj == objB) insideB = !insideB;
+        Intersection enter = null;
+
+        int i = 0, j = 0;
+        while (i < eventsA.size() || j < eventsB.size()) {
+            boolean takeA = j >= eventsB.size()
+                    || (i < eventsA.size() && eventsA.get(i).distance() <= eventsB.get(j).distance());
+
+            Intersection inter;
+            SceneObject obj;
+            if (takeA) {
+                inter = eventsA.get(i++);
+                obj = objA;
+                insideA = !insideA;
+            } else {
+                inter = eventsB.get(j++);
+                obj = objB;
+                insideB = !insideB;
+            }
 
             boolean isInside = computeIsInside(insideA, insideB);
             if (isInside != wasInside) {
-                result.add(new Intersection(
-                        inter.point(),
-                        getAdjustedNormal(inter, obj),
-                        inter.distance(),
-                        this,
-                        obj.getMaterial()
-                ));
+                Intersection boundary = inter.withObject(getAdjustedNormal(inter, obj), this, obj.getMaterial());
+                if (isInside) {
+                    enter = boundary;
+                } else {
+                    result.add(new Span(enter, boundary));
+                }
             }
 
             wasInside = isInside;
         }
 
+        if (wasInside) {
+            result.add(new Span(enter, null));
+        }
         return result;
     }
 
+    /**
+     * Flattens spans into their finite boundary intersections in ray order.
+     *
+     * @param spans Sorted, disjoint spans.
+     * @return Alternating enter/exit intersections.
+     */
+    private static List<Intersection> boundaries(List<Span> spans) {
+        List<Intersection> events = new ArrayList<>(spans.size() * 2);
+        for (Span span : spans) {
+            if (span.enter() != null) events.add(span.enter());
+            if (span.exit() != null) events.add(span.exit());
+        }
+        return events;
+    }
+
     /**
      * Not supported. For CSG objects, surface normals should be retrieved from intersections.
      *
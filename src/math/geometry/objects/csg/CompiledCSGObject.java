@@ -0,0 +1,251 @@
+package math.geometry.objects.csg;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.Span;
+import math.geometry.objects.SceneObject;
+import stuff.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Constructive Solid Geometry (CSG) tree compiled into a flat primitive table
+ * and a boolean expression over per-primitive inside bits.
+ *
+ * <p>Instead of recursively merging intersection lists at every tree level, the spans of all
+ * leaf primitives are gathered once and their boundaries are swept in distance order
+ * (Goldfeather-style classification). Each boundary toggles the inside bit of its primitive
+ * and the change is propagated towards the root only while node values actually change,
+ * so deep trees cost a constant amount of work per event in the common case.</p>
+ *
+ * <p>Instances are created with {@link CSGCompiler#compile(CSGObject)}.</p>
+ */
+public class CompiledCSGObject extends SceneObject {
+
+    private final CSGObject source;
+
+    private final SceneObject[] primitives;
+    private final int[] primitiveNode;       // node index of each primitive's leaf
+    private final boolean[] flipNormal;      // leaf lies on the subtracted side of an odd number of differences
+    private final Material[] materials;      // material reported by the tree for hits on each primitive
+
+    private final int[] parent;              // parent node, -1 for the root
+    private final int[] left, right;         // children of internal nodes, -1 for leaves
+    private final byte[] truthTable;         // inside table indexed by (insideA | insideB << 1)
+    private final int[] firstPrimitive, lastPrimitive;
+    private final AABB[] nodeBounds;
+    private final int root;
+
+    /**
+     * Constructs the compiled object from the flattened tables. Use {@link CSGCompiler} instead.
+     */
+    CompiledCSGObject(CSGObject source, SceneObject[] primitives, int[] primitiveNode, boolean[] flipNormal,
+                      Material[] materials, int[] parent, int[] left, int[] right, byte[] truthTable,
+                      int[] firstPrimitive, int[] lastPrimitive, AABB[] nodeBounds) {
+        super(source.getMaterial());
+        this.source = source;
+        this.primitives = primitives;
+        this.primitiveNode = primitiveNode;
+        this.flipNormal = flipNormal;
+        this.materials = materials;
+        this.parent = parent;
+        this.left = left;
+        this.right = right;
+        this.truthTable = truthTable;
+        this.firstPrimitive = firstPrimitive;
+        this.lastPrimitive = lastPrimitive;
+        this.nodeBounds = nodeBounds;
+        this.root = parent.length - 1;
+    }
+
+    /**
+     * Computes the intersections of the ray with the compiled shape.
+     *
+     * @param ray Ray to test against the object.
+     * @return Visible surface intersections in front of the ray origin.
+     */
+    @Override
+    public List<Intersection> intersect(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        for (Span span : intersectSpans(ray)) {
+            if (span.enter() != null && span.enter().distance() >= 1e-5f) intersections.add(span.enter());
+            if (span.exit() != null && span.exit().distance() >= 1e-5f) intersections.add(span.exit());
+        }
+        return intersections;
+    }
+
+    /**
+     * Classifies the ray against all primitives and sweeps their span boundaries once.
+     *
+     * @param ray Ray to test against the object.
+     * @return Sorted, disjoint list of inside spans.
+     */
+    @Override
+    public List<Span> intersectSpans(Ray ray) {
+        boolean[] culled = new boolean[primitives.length];
+        cull(root, ray, culled);
+
+        boolean[] value = new boolean[parent.length];
+        List<Intersection> events = new ArrayList<>();
+        int[] eventPrimitives = new int[16];
+
+        for (int p = 0; p < primitives.length; p++) {
+            if (culled[p]) continue;
+            List<Span> spans = primitives[p].intersectSpans(ray);
+            if (!spans.isEmpty() && spans.get(0).enter() == null) {
+                value[primitiveNode[p]] = true;
+            }
+            for (Span span : spans) {
+                for (Intersection boundary : new Intersection[]{span.enter(), span.exit()}) {
+                    if (boundary == null) continue;
+                    if (events.size() == eventPrimitives.length) {
+                        eventPrimitives = Arrays.copyOf(eventPrimitives, eventPrimitives.length * 2);
+                    }
+                    eventPrimitives[events.size()] = p;
+                    events.add(boundary);
+                }
+            }
+        }
+
+        // Children always precede their parent, so one pass settles the initial state
+        for (int node = 0; node < parent.length; node++) {
+            if (left[node] >= 0) value[node] = evaluate(node, value);
+        }
+
+        long[] order = sortByDistance(events);
+        List<Span> result = new ArrayList<>();
+        Intersection enter = null;
+        boolean wasInside = value[root];
+
+        for (long key : order) {
+            int e = (int) key;
+            int p = eventPrimitives[e];
+            int node = primitiveNode[p];
+            value[node] = !value[node];
+
+            // Propagate towards the root only while the node values change
+            boolean changed = true;
+            while (changed && parent[node] >= 0) {
+                node = parent[node];
+                boolean newValue = evaluate(node, value);
+                changed = newValue != value[node];
+                value[node] = newValue;
+            }
+
+            if (value[root] != wasInside) {
+                Intersection inter = events.get(e);
+                Vec3 normal = flipNormal[p] ? inter.normal().multiply(-1f) : inter.normal();
+                Intersection boundary = inter.withObject(normal, this, materials[p]);
+                if (value[root]) {
+                    enter = boundary;
+                } else {
+                    result.add(new Span(enter, boundary));
+                }
+                wasInside = value[root];
+            }
+        }
+
+        if (wasInside) {
+            result.add(new Span(enter, null));
+        }
+        return result;
+    }
+
+    /**
+     * Marks the primitives of every subtree whose bounds the forward ray misses.
+     */
+    private void cull(int node, Ray ray, boolean[] culled) {
+        AABB bounds = nodeBounds[node];
+        if (bounds.isEmpty() || !bounds.intersects(ray, 1e-5f, Float.POSITIVE_INFINITY)) {
+            Arrays.fill(culled, firstPrimitive[node], lastPrimitive[node], true);
+            return;
+        }
+        if (left[node] >= 0) {
+            cull(left[node], ray, culled);
+            cull(right[node], ray, culled);
+        }
+    }
+
+    private boolean evaluate(int node, boolean[] value) {
+        int index = (value[left[node]] ? 1 : 0) | (value[right[node]] ? 2 : 0);
+        return ((truthTable[node] >> index) & 1) == 1;
+    }
+
+    /**
+     * Sorts event indices by distance without boxing, using sortable float keys.
+     *
+     * @param events The events to sort.
+     * @return Keys whose lower 32 bits hold the event index, in ascending distance order.
+     */
+    private static long[] sortByDistance(List<Intersection> events) {
+        long[] keys = new long[events.size()];
+        for (int i = 0; i < keys.length; i++) {
+            int bits = Float.floatToIntBits(events.get(i).distance());
+            int sortable = bits ^ ((bits >> 31) & 0x7fffffff);
+            keys[i] = ((long) sortable << 32) | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Not supported. For CSG objects, surface normals should be retrieved from intersections.
+     *
+     * @param p Point on the surface (unused).
+     * @return Never returns; always throws.
+     * @throws UnsupportedOperationException Use the normal from the {@link Intersection} object.
+     */
+    @Override
+    public Vec3 getNormal(Vec3 p) {
+        throw new UnsupportedOperationException("Use normal from Intersection instead.");
+    }
+
+    /**
+     * Evaluates the compiled expression with point queries on every primitive.
+     *
+     * @param point Point to test.
+     * @return True if the point lies inside the composite shape.
+     */
+    @Override
+    public boolean isInside(Vec3 point) {
+        boolean[] value = new boolean[parent.length];
+        for (int p = 0; p < primitives.length; p++) {
+            value[primitiveNode[p]] = primitives[p].isInside(point);
+        }
+        for (int node = 0; node < parent.length; node++) {
+            if (left[node] >= 0) value[node] = evaluate(node, value);
+        }
+        return value[root];
+    }
+
+    /**
+     * @return The bounds of the compiled tree's root.
+     */
+    @Override
+    public AABB getBounds() {
+        return nodeBounds[root];
+    }
+
+    /**
+     * @return Number of leaf primitives in the compiled table.
+     */
+    public int getPrimitiveCount() {
+        return primitives.length;
+    }
+
+    /**
+     * Transforms the source tree and compiles the result.
+     *
+     * @param transformMatrix The transformation matrix.
+     * @return A new compiled object for the transformed tree.
+     */
+    @Override
+    public CompiledCSGObject transform(Mat4 transformMatrix) {
+        return CSGCompiler.compile((CSGObject) source.transform(transformMatrix));
+    }
+}
@@ -78,6 +78,16 @@ public class DifferenceObject extends CSGObject {
         return objA.isInside(point) && !objB.isInside(point);
     }
 
+    /**
+     * Returns the bounds of A, since subtracting B can only shrink the shape.
+     *
+     * @return Bounding box of the composite shape.
+     */
+    @Override
+    public AABB getBounds() {
+        return objA.getBounds();
+    }
+
     /**
      * Transforms both component objects using the provided matrix and
      * returns a new difference object with the same material.
@@ -76,6 +76,16 @@ public class IntersectionObject extends CSGObject {
         return objA.isInside(point) && objB.isInside(point);
     }
 
+    /**
+     * Returns the overlap of both operand bounds.
+     *
+     * @return Bounding box of the composite shape.
+     */
+    @Override
+    public AABB getBounds() {
+        return objA.getBounds().intersection(objB.getBounds());
+    }
+
     /**
      * Applies a transformation to both input objects and returns a new intersection object.
      *
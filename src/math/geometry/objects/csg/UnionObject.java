@@ -2,6 +2,7 @@ package math.geometry.objects.csg;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import math.geometry.Intersection;
 import math.geometry.objects.SceneObject;
 import stuff.Material;
@@ -77,6 +78,16 @@ public class UnionObject extends CSGObject {
         return objA.isInside(point) || objB.isInside(point);
     }
 
+    /**
+     * Returns the union of both operand bounds.
+     *
+     * @return Bounding box of the composite shape.
+     */
+    @Override
+    public AABB getBounds() {
+        return objA.getBounds().union(objB.getBounds());
+    }
+
     /**
      * Applies a transformation to both input objects and returns a new union object.
      *
@@ -0,0 +1,173 @@
+package math.geometry.objects.mesh;
+
+import math.geometry.AABB;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mesh geometry reading its vertices and indices straight from strided byte buffers,
+ * e.g. the accessor slices of a memory-mapped glTF binary buffer.
+ *
+ * <p>Positions, normals and texture coordinates are little-endian floats; indices are
+ * unsigned 8-, 16- or 32-bit integers. Without an index buffer, consecutive vertex triples
+ * form the triangles. No element is copied or converted when the geometry is created.</p>
+ */
+final class BufferMeshGeometry implements MeshGeometry {
+
+    private final ByteBuffer positions, indices, normals, texCoords;   // indices, normals and texCoords may be null
+    private final int positionStride, indexSize, normalStride, texCoordStride;
+    private final int vertexCount, triangleCount;
+    private final AABB bounds;
+
+    /**
+     * Wraps the buffers.
+     *
+     * @param positions      Buffer whose element {@code i} starts at {@code i * positionStride}.
+     * @param positionStride Distance between positions in bytes.
+     * @param vertexCount    Number of vertices.
+     * @param indices        Buffer of tightly packed indices, or null for non-indexed triangles.
+     * @param indexSize      Size of an index in bytes: 1, 2 or 4.
+     * @param indexCount     Number of indices, or of vertices if there are no indices.
+     * @param normals        Buffer of normals, or null.
+     * @param normalStride   Distance between normals in bytes.
+     * @param texCoords      Buffer of texture coordinates, or null.
+     * @param texCoordStride Distance between texture coordinates in bytes.
+     * @param bounds         Bounding box of the positions.
+     * @throws IllegalArgumentException If an index refers to a vertex that does not exist.
+     */
+    BufferMeshGeometry(ByteBuffer positions, int positionStride, int vertexCount,
+                       ByteBuffer indices, int indexSize, int indexCount,
+                       ByteBuffer normals, int normalStride, ByteBuffer texCoords, int texCoordStride, AABB bounds) {
+        this.positions = positions;
+        this.positionStride = positionStride;
+        this.vertexCount = vertexCount;
+        this.indices = indices;
+        this.indexSize = indexSize;
+        this.triangleCount = indexCount / 3;
+        this.normals = normals;
+        this.normalStride = normalStride;
+        this.texCoords = texCoords;
+        this.texCoordStride = texCoordStride;
+        this.bounds = bounds;
+
+        // Checked once here, so a broken file fails on load instead of in the middle of a render
+        for (int t = 0; indices != null && t < triangleCount; t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                int index = getIndex(t, corner);
+                if (index < 0 || index >= vertexCount) {
+                    throw new IllegalArgumentException("Vertex index " + index + " out of range");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of vertices.
+     */
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return Number of triangles.
+     */
+    @Override
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Reads the position of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getPosition(int vertex, float[] out, int offset) {
+        int at = vertex * positionStride;
+        out[offset] = positions.getFloat(at);
+        out[offset + 1] = positions.getFloat(at + 4);
+        out[offset + 2] = positions.getFloat(at + 8);
+    }
+
+    /**
+     * @param triangle Triangle index.
+     * @param corner   Corner 0, 1 or 2.
+     * @return The vertex index, read with the width of the index buffer.
+     */
+    @Override
+    public int getIndex(int triangle, int corner) {
+        int i = 3 * triangle + corner;
+        if (indices == null) return i;
+        return switch (indexSize) {
+            case 1 -> indices.get(i) & 0xFF;
+            case 2 -> indices.getShort(2 * i) & 0xFFFF;
+            default -> indices.getInt(4 * i);
+        };
+    }
+
+    /**
+     * @return True if a normal buffer was given.
+     */
+    @Override
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    /**
+     * Reads the shading normal of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getNormal(int vertex, float[] out, int offset) {
+        if (normals == null) throw new UnsupportedOperationException("Mesh has no vertex normals");
+        int at = vertex * normalStride;
+        out[offset] = normals.getFloat(at);
+        out[offset + 1] = normals.getFloat(at + 4);
+        out[offset + 2] = normals.getFloat(at + 8);
+    }
+
+    /**
+     * @return True if a texture coordinate buffer was given.
+     */
+    @Override
+    public boolean hasTexCoords() {
+        return texCoords != null;
+    }
+
+    /**
+     * Reads the texture coordinates of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving u and v.
+     * @param offset Index of u in {@code out}.
+     */
+    @Override
+    public void getTexCoord(int vertex, float[] out, int offset) {
+        if (texCoords == null) throw new UnsupportedOperationException("Mesh has no texture coordinates");
+        int at = vertex * texCoordStride;
+        out[offset] = texCoords.getFloat(at);
+        out[offset + 1] = texCoords.getFloat(at + 4);
+    }
+
+    /**
+     * @return Bounding box of the positions.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return Zero, since the buffers are views of a mapped file instead of heap arrays.
+     */
+    @Override
+    public long getMemoryBytes() {
+        return 0;
+    }
+}
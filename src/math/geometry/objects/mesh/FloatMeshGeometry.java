@@ -0,0 +1,223 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.AABB;
+
+/**
+ * Uncompressed mesh geometry with 32-bit float positions and 32-bit indices,
+ * optionally with float vertex normals and texture coordinates.
+ */
+public class FloatMeshGeometry implements MeshGeometry {
+
+    private final float[] positions;    // x, y, z per vertex
+    private final int[] indices;        // three vertex indices per triangle
+    private final float[] normals;      // x, y, z per vertex, or null
+    private final float[] texCoords;    // u, v per vertex, or null
+    private final AABB bounds;
+
+    /**
+     * Creates the geometry from flat arrays, which are used without copying.
+     *
+     * @param positions Three floats per vertex.
+     * @param indices   Three vertex indices per triangle.
+     * @throws IllegalArgumentException If an array length is not a multiple of three or an index is out of range.
+     */
+    public FloatMeshGeometry(float[] positions, int[] indices) {
+        this(positions, indices, null, null);
+    }
+
+    /**
+     * Creates the geometry with vertex attributes from flat arrays, which are used without copying.
+     *
+     * @param positions Three floats per vertex.
+     * @param indices   Three vertex indices per triangle.
+     * @param normals   Three floats per vertex, or null.
+     * @param texCoords Two floats per vertex, or null.
+     * @throws IllegalArgumentException If an array length does not match the vertex count or an index is out of range.
+     */
+    public FloatMeshGeometry(float[] positions, int[] indices, float[] normals, float[] texCoords) {
+        if (positions.length % 3 != 0 || indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Positions and indices must come in triples");
+        }
+        int vertexCount = positions.length / 3;
+        if ((normals != null && normals.length != 3 * vertexCount) || (texCoords != null && texCoords.length != 2 * vertexCount)) {
+            throw new IllegalArgumentException("Vertex attributes do not match the " + vertexCount + " vertices");
+        }
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount) {
+                throw new IllegalArgumentException("Vertex index " + index + " out of range");
+            }
+        }
+        this.positions = positions;
+        this.indices = indices;
+        this.normals = normals;
+        this.texCoords = texCoords;
+        this.bounds = computeBounds(positions);
+    }
+
+    private static AABB computeBounds(float[] positions) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < positions.length; i += 3) {
+            minX = Math.min(minX, positions[i]);
+            minY = Math.min(minY, positions[i + 1]);
+            minZ = Math.min(minZ, positions[i + 2]);
+            maxX = Math.max(maxX, positions[i]);
+            maxY = Math.max(maxY, positions[i + 1]);
+            maxZ = Math.max(maxZ, positions[i + 2]);
+        }
+        return new AABB(new Vec3(minX, minY, minZ), new Vec3(maxX, maxY, maxZ));
+    }
+
+    /**
+     * @return Number of vertices.
+     */
+    @Override
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    /**
+     * @return Number of triangles.
+     */
+    @Override
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    /**
+     * Copies the position of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getPosition(int vertex, float[] out, int offset) {
+        out[offset] = positions[3 * vertex];
+        out[offset + 1] = positions[3 * vertex + 1];
+        out[offset + 2] = positions[3 * vertex + 2];
+    }
+
+    /**
+     * @return True if normals were given.
+     */
+    @Override
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    /**
+     * Copies the shading normal of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getNormal(int vertex, float[] out, int offset) {
+        if (normals == null) throw new UnsupportedOperationException("Mesh has no vertex normals");
+        System.arraycopy(normals, 3 * vertex, out, offset, 3);
+    }
+
+    /**
+     * @return True if texture coordinates were given.
+     */
+    @Override
+    public boolean hasTexCoords() {
+        return texCoords != null;
+    }
+
+    /**
+     * Copies the texture coordinates of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving u and v.
+     * @param offset Index of u in {@code out}.
+     */
+    @Override
+    public void getTexCoord(int vertex, float[] out, int offset) {
+        if (texCoords == null) throw new UnsupportedOperationException("Mesh has no texture coordinates");
+        System.arraycopy(texCoords, 2 * vertex, out, offset, 2);
+    }
+
+    /**
+     * @param triangle Triangle index.
+     * @param corner   Corner 0, 1 or 2.
+     * @return The vertex index.
+     */
+    @Override
+    public int getIndex(int triangle, int corner) {
+        return indices[3 * triangle + corner];
+    }
+
+    /**
+     * Copies the three corners of a triangle with one array copy per corner.
+     *
+     * @param triangle Triangle index.
+     * @param out      Array of at least nine floats receiving the corners a, b and c.
+     */
+    @Override
+    public void getTriangle(int triangle, float[] out) {
+        int base = 3 * triangle;
+        System.arraycopy(positions, 3 * indices[base], out, 0, 3);
+        System.arraycopy(positions, 3 * indices[base + 1], out, 3, 3);
+        System.arraycopy(positions, 3 * indices[base + 2], out, 6, 3);
+    }
+
+    /**
+     * @return Bounding box of all vertices.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return Memory used by the position, index and attribute arrays in bytes.
+     */
+    @Override
+    public long getMemoryBytes() {
+        return 4L * (positions.length + indices.length
+                + (normals != null ? normals.length : 0) + (texCoords != null ? texCoords.length : 0));
+    }
+
+    /**
+     * @return A copy of the three vertex indices per triangle.
+     */
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    /**
+     * Creates geometry with the same triangles but new vertex positions.
+     *
+     * @param newPositions Three floats per vertex, for the same number of vertices.
+     * @return New geometry sharing the index and attribute arrays.
+     * @throws IllegalArgumentException If the number of vertices differs.
+     */
+    public FloatMeshGeometry withPositions(float[] newPositions) {
+        if (newPositions.length != positions.length) {
+            throw new IllegalArgumentException("Expected " + getVertexCount() + " vertices, got " + newPositions.length / 3);
+        }
+        return new FloatMeshGeometry(newPositions, indices, normals, texCoords);
+    }
+
+    // Raw arrays for the mesh cache
+
+    float[] positions() {
+        return positions;
+    }
+
+    int[] indices() {
+        return indices;
+    }
+
+    float[] normals() {
+        return normals;
+    }
+
+    float[] texCoords() {
+        return texCoords;
+    }
+}
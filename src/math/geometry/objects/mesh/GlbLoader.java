@@ -0,0 +1,437 @@
+package math.geometry.objects.mesh;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.objects.Instance;
+import math.geometry.objects.MeshObject;
+import math.geometry.objects.SceneObject;
+import stuff.Color;
+import stuff.Material;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads binary glTF 2.0 files ({@code .glb}) without copying their vertex data.
+ *
+ * <p>The file is memory-mapped and every accessor becomes a strided slice of the binary chunk,
+ * so positions, normals, texture coordinates and indices are read in place by
+ * {@link BufferMeshGeometry}; only the JSON scene description is parsed. Each triangle
+ * primitive becomes a {@link MeshObject} with its own acceleration structure. Meshes referenced
+ * by several nodes are shared, and every node with a non-identity world transformation is
+ * placed as an {@link Instance}.</p>
+ *
+ * <p>Materials are mapped onto {@link Material} from the metallic-roughness factors, the
+ * {@code KHR_materials_transmission} and {@code KHR_materials_ior} extensions, and the alpha of
+ * blended materials as transmission. Textures, skins, morph targets, sparse accessors and
+ * external buffers are not supported.</p>
+ */
+public final class GlbLoader {
+
+    private static final int MAGIC = 0x46546C67;        // "glTF"
+    private static final int JSON_CHUNK = 0x4E4F534A;   // "JSON"
+    private static final int BIN_CHUNK = 0x004E4942;    // "BIN\0"
+
+    private static final int UNSIGNED_BYTE = 5121, UNSIGNED_SHORT = 5123, UNSIGNED_INT = 5125, FLOAT = 5126;
+    private static final int TRIANGLES = 4;
+
+    /** The glTF default material: white, fully metallic and fully rough. */
+    private static final Material DEFAULT_MATERIAL = new Material(Color.WHITE, 1f, 1f, 0f, 1.5f);
+
+    private final File file;
+    private final AcceleratorType acceleratorType;
+    private final Map<String, Object> root;
+    private final ByteBuffer bin;   // null if the file has no binary chunk
+    private final Map<Integer, List<MeshObject>> meshes = new HashMap<>();
+    private final Map<Integer, Material> materials = new HashMap<>();
+
+    private GlbLoader(File file, AcceleratorType acceleratorType, Map<String, Object> root, ByteBuffer bin) {
+        this.file = file;
+        this.acceleratorType = acceleratorType;
+        this.root = root;
+        this.bin = bin;
+    }
+
+    /**
+     * Loads the default scene of a binary glTF file, using SAH BVHs for the meshes.
+     *
+     * @param file The {@code .glb} file.
+     * @return The placed objects of the scene.
+     * @throws IOException If the file cannot be read or uses unsupported features.
+     */
+    public static List<SceneObject> load(File file) throws IOException {
+        return load(file, AcceleratorType.SAH_BVH);
+    }
+
+    /**
+     * Loads the default scene of a binary glTF file.
+     *
+     * @param file            The {@code .glb} file.
+     * @param acceleratorType The acceleration structure to build over each mesh.
+     * @return The placed objects of the scene; instances share the meshes they place.
+     * @throws IOException If the file cannot be read or uses unsupported features.
+     */
+    public static List<SceneObject> load(File file, AcceleratorType acceleratorType) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GiB");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (mapped.capacity() < 20 || mapped.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a binary glTF file");
+        }
+        if (mapped.getInt(4) != 2) {
+            throw new IOException(file + " has glTF version " + mapped.getInt(4) + ", expected 2");
+        }
+        int length = (int) Math.min(Integer.toUnsignedLong(mapped.getInt(8)), mapped.capacity());
+
+        String json = null;
+        ByteBuffer bin = null;
+        for (int at = 12; at + 8 <= length; ) {
+            int chunkLength = mapped.getInt(at), chunkType = mapped.getInt(at + 4);
+            if (chunkLength < 0 || at + 8 + chunkLength > length) {
+                throw new IOException(file + " has a truncated chunk at offset " + at);
+            }
+            if (chunkType == JSON_CHUNK && json == null) {
+                byte[] text = new byte[chunkLength];
+                mapped.get(at + 8, text);
+                json = new String(text, StandardCharsets.UTF_8);
+            } else if (chunkType == BIN_CHUNK && bin == null) {
+                bin = mapped.slice(at + 8, chunkLength).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            at += 8 + chunkLength;
+        }
+        if (json == null) {
+            throw new IOException(file + " has no JSON chunk");
+        }
+
+        try {
+            Object root = Json.parse(json);
+            if (!(root instanceof Map)) throw new IllegalArgumentException("Root is not an object");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> document = (Map<String, Object>) root;
+            return new GlbLoader(file, acceleratorType, document, bin).loadScene();
+        } catch (IllegalArgumentException | ClassCastException | IndexOutOfBoundsException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Places the nodes of the default scene, or of all root nodes if the file has no scenes.
+     * A file without nodes places every mesh untransformed.
+     */
+    private List<SceneObject> loadScene() throws IOException {
+        List<SceneObject> objects = new ArrayList<>();
+        List<Object> nodes = list(root, "nodes");
+        List<Object> scenes = list(root, "scenes");
+
+        List<Integer> roots = new ArrayList<>();
+        if (!scenes.isEmpty()) {
+            Map<String, Object> scene = map(scenes.get(integer(root, "scene", 0)));
+            for (Object node : list(scene, "nodes")) {
+                roots.add(index(node));
+            }
+        } else if (!nodes.isEmpty()) {
+            Set<Integer> children = new HashSet<>();
+            for (Object node : nodes) {
+                for (Object child : list(map(node), "children")) {
+                    children.add(index(child));
+                }
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!children.contains(i)) roots.add(i);
+            }
+        } else {
+            for (int i = 0; i < list(root, "meshes").size(); i++) {
+                objects.addAll(getMesh(i));
+            }
+            return objects;
+        }
+
+        Mat4 identity = new Mat4();
+        for (int node : roots) {
+            placeNode(node, identity, 0, objects);
+        }
+        return objects;
+    }
+
+    private void placeNode(int index, Mat4 parent, int depth, List<SceneObject> objects) throws IOException {
+        List<Object> nodes = list(root, "nodes");
+        if (depth > nodes.size()) {
+            throw new IllegalArgumentException("Node hierarchy contains a cycle");
+        }
+        Map<String, Object> node = map(nodes.get(index));
+        Mat4 world = parent.multiply(getLocalTransform(node));
+
+        if (node.containsKey("mesh")) {
+            boolean identity = isIdentity(world);
+            for (MeshObject mesh : getMesh(integer(node, "mesh", -1))) {
+                objects.add(identity ? mesh : new Instance(mesh, world));
+            }
+        }
+        for (Object child : list(node, "children")) {
+            placeNode(index(child), world, depth + 1, objects);
+        }
+    }
+
+    /**
+     * Converts the {@code matrix} of a node, which glTF stores column-major, or its
+     * translation, rotation quaternion and scale into a local transformation {@code T * R * S}.
+     */
+    private static Mat4 getLocalTransform(Map<String, Object> node) {
+        if (node.containsKey("matrix")) {
+            return new Mat4(floats(node, "matrix", 16, null)).transpose();
+        }
+        float[] t = floats(node, "translation", 3, new float[]{0f, 0f, 0f});
+        float[] q = floats(node, "rotation", 4, new float[]{0f, 0f, 0f, 1f});
+        float[] s = floats(node, "scale", 3, new float[]{1f, 1f, 1f});
+        float x = q[0], y = q[1], z = q[2], w = q[3];
+        return new Mat4(new float[]{
+                (1 - 2 * (y * y + z * z)) * s[0], 2 * (x * y - z * w) * s[1], 2 * (x * z + y * w) * s[2], t[0],
+                2 * (x * y + z * w) * s[0], (1 - 2 * (x * x + z * z)) * s[1], 2 * (y * z - x * w) * s[2], t[1],
+                2 * (x * z - y * w) * s[0], 2 * (y * z + x * w) * s[1], (1 - 2 * (x * x + y * y)) * s[2], t[2],
+                0, 0, 0, 1
+        });
+    }
+
+    private static boolean isIdentity(Mat4 matrix) {
+        float[] values = matrix.getValues();
+        for (int i = 0; i < 16; i++) {
+            if (values[i] != (i % 5 == 0 ? 1f : 0f)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the objects of a mesh, one per triangle primitive, creating them on first use
+     * so that all nodes referencing the mesh share them.
+     */
+    private List<MeshObject> getMesh(int index) throws IOException {
+        List<MeshObject> objects = meshes.get(index);
+        if (objects != null) return objects;
+
+        objects = new ArrayList<>();
+        Map<String, Object> mesh = map(list(root, "meshes").get(index));
+        for (Object element : list(mesh, "primitives")) {
+            Map<String, Object> primitive = map(element);
+            if (integer(primitive, "mode", TRIANGLES) != TRIANGLES) continue;   // points, lines and strips
+            MeshGeometry geometry = getGeometry(primitive);
+            if (geometry.getTriangleCount() == 0) continue;
+            Material material = primitive.containsKey("material")
+                    ? getMaterial(integer(primitive, "material", -1)) : DEFAULT_MATERIAL;
+            objects.add(new MeshObject(geometry, material, acceleratorType, VertexFormat.FLOAT));
+        }
+        meshes.put(index, objects);
+        return objects;
+    }
+
+    private MeshGeometry getGeometry(Map<String, Object> primitive) throws IOException {
+        Map<String, Object> attributes = map(primitive.get("attributes"));
+        if (!attributes.containsKey("POSITION")) {
+            throw new IllegalArgumentException("Primitive without POSITION attribute");
+        }
+        Map<String, Object> positionAccessor = accessor(integer(attributes, "POSITION", -1));
+        Slice positions = slice(positionAccessor, FLOAT, "VEC3");
+        int vertexCount = positions.count();
+
+        Slice normals = null, texCoords = null;
+        if (attributes.containsKey("NORMAL")) {
+            normals = slice(accessor(integer(attributes, "NORMAL", -1)), FLOAT, "VEC3");
+            if (normals.count() != vertexCount) throw new IllegalArgumentException("NORMAL count differs from POSITION");
+        }
+        if (attributes.containsKey("TEXCOORD_0")) {
+            Map<String, Object> accessor = accessor(integer(attributes, "TEXCOORD_0", -1));
+            // Normalized integer texture coordinates would need conversion, so they are left out
+            if (integer(accessor, "componentType", 0) == FLOAT) {
+                texCoords = slice(accessor, FLOAT, "VEC2");
+                if (texCoords.count() != vertexCount) throw new IllegalArgumentException("TEXCOORD_0 count differs from POSITION");
+            }
+        }
+
+        ByteBuffer indexBuffer = null;
+        int indexSize = 0, indexCount = vertexCount;
+        if (primitive.containsKey("indices")) {
+            Map<String, Object> accessor = accessor(integer(primitive, "indices", -1));
+            int componentType = integer(accessor, "componentType", 0);
+            if (componentType != UNSIGNED_BYTE && componentType != UNSIGNED_SHORT && componentType != UNSIGNED_INT) {
+                throw new IllegalArgumentException("Unsupported index component type " + componentType);
+            }
+            Slice indices = slice(accessor, componentType, "SCALAR");
+            if (indices.stride() != indices.elementSize()) {
+                throw new IllegalArgumentException("Index buffer views must be tightly packed");
+            }
+            indexBuffer = indices.buffer();
+            indexSize = indices.elementSize();
+            indexCount = indices.count();
+        }
+
+        return new BufferMeshGeometry(positions.buffer(), positions.stride(), vertexCount,
+                indexBuffer, indexSize, indexCount,
+                normals == null ? null : normals.buffer(), normals == null ? 0 : normals.stride(),
+                texCoords == null ? null : texCoords.buffer(), texCoords == null ? 0 : texCoords.stride(),
+                getBounds(positionAccessor, positions));
+    }
+
+    /**
+     * Uses the {@code min} and {@code max} the glTF specification requires on position
+     * accessors, falling back to scanning the positions.
+     */
+    private static AABB getBounds(Map<String, Object> accessor, Slice positions) {
+        if (accessor.containsKey("min") && accessor.containsKey("max")) {
+            float[] min = floats(accessor, "min", 3, null), max = floats(accessor, "max", 3, null);
+            return new AABB(new Vec3(min[0], min[1], min[2]), new Vec3(max[0], max[1], max[2]));
+        }
+        float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int v = 0; v < positions.count(); v++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = positions.buffer().getFloat(v * positions.stride() + 4 * axis);
+                min[axis] = Math.min(min[axis], value);
+                max[axis] = Math.max(max[axis], value);
+            }
+        }
+        return new AABB(new Vec3(min[0], min[1], min[2]), new Vec3(max[0], max[1], max[2]));
+    }
+
+    private Material getMaterial(int index) {
+        Material material = materials.get(index);
+        if (material != null) return material;
+
+        Map<String, Object> definition = map(list(root, "materials").get(index));
+        Map<String, Object> pbr = map(definition.getOrDefault("pbrMetallicRoughness", Map.of()));
+        Map<String, Object> extensions = map(definition.getOrDefault("extensions", Map.of()));
+
+        float[] baseColor = floats(pbr, "baseColorFactor", 4, new float[]{1f, 1f, 1f, 1f});
+        float metalness = number(pbr, "metallicFactor", 1f);
+        float roughness = number(pbr, "roughnessFactor", 1f);
+        float transmission = number(map(extensions.getOrDefault("KHR_materials_transmission", Map.of())), "transmissionFactor", 0f);
+        if (transmission == 0f && "BLEND".equals(definition.get("alphaMode"))) {
+            transmission = 1f - baseColor[3];
+        }
+        float ior = number(map(extensions.getOrDefault("KHR_materials_ior", Map.of())), "ior", 1.5f);
+
+        material = new Material(new Color(baseColor[0], baseColor[1], baseColor[2]), roughness, metalness, transmission, ior);
+        materials.put(index, material);
+        return material;
+    }
+
+    /**
+     * A strided view of an accessor's elements in the binary chunk.
+     *
+     * @param buffer      Little-endian slice starting at the first element.
+     * @param stride      Distance between elements in bytes.
+     * @param elementSize Size of one element in bytes.
+     * @param count       Number of elements.
+     */
+    private record Slice(ByteBuffer buffer, int stride, int elementSize, int count) {
+    }
+
+    private Map<String, Object> accessor(int index) {
+        return map(list(root, "accessors").get(index));
+    }
+
+    /**
+     * Resolves an accessor to a slice of the binary chunk, checking its type and that all
+     * elements lie inside the buffer view.
+     */
+    private Slice slice(Map<String, Object> accessor, int componentType, String type) throws IOException {
+        if (accessor.containsKey("sparse")) {
+            throw new IOException(file + " uses sparse accessors, which are not supported");
+        }
+        if (!accessor.containsKey("bufferView")) {
+            throw new IOException(file + " has an accessor without buffer view, which is not supported");
+        }
+        if (integer(accessor, "componentType", 0) != componentType || !type.equals(accessor.get("type"))) {
+            throw new IllegalArgumentException("Expected accessor of type " + type + " with component type " + componentType
+                    + ", found " + accessor.get("type") + " with " + integer(accessor, "componentType", 0));
+        }
+        int componentSize = switch (componentType) {
+            case UNSIGNED_BYTE -> 1;
+            case UNSIGNED_SHORT -> 2;
+            default -> 4;
+        };
+        int elementSize = componentSize * switch (type) {
+            case "SCALAR" -> 1;
+            case "VEC2" -> 2;
+            default -> 3;
+        };
+
+        Map<String, Object> view = map(list(root, "bufferViews").get(integer(accessor, "bufferView", -1)));
+        Map<String, Object> buffer = map(list(root, "buffers").get(integer(view, "buffer", 0)));
+        if (buffer.containsKey("uri") || bin == null) {
+            throw new IOException(file + " references an external buffer, which is not supported");
+        }
+        int viewOffset = integer(view, "byteOffset", 0), viewLength = integer(view, "byteLength", 0);
+        int stride = integer(view, "byteStride", elementSize);
+        int offset = integer(accessor, "byteOffset", 0), count = integer(accessor, "count", 0);
+
+        long end = (long) offset + (count == 0 ? 0 : (long) stride * (count - 1) + elementSize);
+        if (viewOffset < 0 || offset < 0 || count < 0 || stride < elementSize
+                || end > viewLength || (long) viewOffset + viewLength > bin.capacity()) {
+            throw new IllegalArgumentException("Accessor exceeds its buffer view");
+        }
+        ByteBuffer slice = bin.slice(viewOffset + offset, (int) (end - offset)).order(ByteOrder.LITTLE_ENDIAN);
+        return new Slice(slice, stride, elementSize, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        if (!(value instanceof Map)) throw new IllegalArgumentException("Expected an object, found " + value);
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (value == null) return List.of();
+        if (!(value instanceof List)) throw new IllegalArgumentException("Expected an array for '" + key + "'");
+        return (List<Object>) value;
+    }
+
+    private static int index(Object value) {
+        if (!(value instanceof Double number)) throw new IllegalArgumentException("Expected an index, found " + value);
+        return number.intValue();
+    }
+
+    private static int integer(Map<String, Object> object, String key, int fallback) {
+        Object value = object.get(key);
+        return value == null ? fallback : index(value);
+    }
+
+    private static float number(Map<String, Object> object, String key, float fallback) {
+        Object value = object.get(key);
+        if (value == null) return fallback;
+        if (!(value instanceof Double number)) throw new IllegalArgumentException("Expected a number for '" + key + "'");
+        return number.floatValue();
+    }
+
+    private static float[] floats(Map<String, Object> object, String key, int length, float[] fallback) {
+        List<Object> values = list(object, key);
+        if (values.isEmpty() && fallback != null) return fallback;
+        if (values.size() != length) {
+            throw new IllegalArgumentException("Expected " + length + " numbers for '" + key + "'");
+        }
+        float[] result = new float[length];
+        for (int i = 0; i < length; i++) {
+            if (!(values.get(i) instanceof Double number)) throw new IllegalArgumentException("Expected a number in '" + key + "'");
+            result[i] = number.floatValue();
+        }
+        return result;
+    }
+}
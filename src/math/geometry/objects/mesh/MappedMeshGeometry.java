@@ -0,0 +1,134 @@
+package math.geometry.objects.mesh;
+
+import math.geometry.AABB;
+import math.geometry.acceleration.MappedFile;
+
+/**
+ * Mesh geometry read directly from a memory-mapped {@link PagedMesh} file.
+ *
+ * <p>Positions, indices and attributes stay off the heap; every access reads the mapped pages,
+ * which the operating system loads and evicts as needed.</p>
+ */
+final class MappedMeshGeometry implements MeshGeometry {
+
+    private final MappedFile file;
+    private final int vertexCount, triangleCount;
+    private final long positionOffset, indexOffset, normalOffset, texCoordOffset;   // negative if absent
+    private final AABB bounds;
+
+    MappedMeshGeometry(MappedFile file, int vertexCount, int triangleCount, AABB bounds,
+                       long positionOffset, long indexOffset, long normalOffset, long texCoordOffset) {
+        this.file = file;
+        this.vertexCount = vertexCount;
+        this.triangleCount = triangleCount;
+        this.bounds = bounds;
+        this.positionOffset = positionOffset;
+        this.indexOffset = indexOffset;
+        this.normalOffset = normalOffset;
+        this.texCoordOffset = texCoordOffset;
+    }
+
+    /**
+     * @return Number of vertices.
+     */
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return Number of triangles.
+     */
+    @Override
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Reads the position of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getPosition(int vertex, float[] out, int offset) {
+        long at = positionOffset + 12L * vertex;
+        out[offset] = file.getFloat(at);
+        out[offset + 1] = file.getFloat(at + 4);
+        out[offset + 2] = file.getFloat(at + 8);
+    }
+
+    /**
+     * @param triangle Triangle index.
+     * @param corner   Corner 0, 1 or 2.
+     * @return The vertex index.
+     */
+    @Override
+    public int getIndex(int triangle, int corner) {
+        return file.getInt(indexOffset + 12L * triangle + 4L * corner);
+    }
+
+    /**
+     * @return True if the file stores normals.
+     */
+    @Override
+    public boolean hasNormals() {
+        return normalOffset >= 0;
+    }
+
+    /**
+     * Reads the shading normal of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getNormal(int vertex, float[] out, int offset) {
+        if (normalOffset < 0) throw new UnsupportedOperationException("Mesh has no vertex normals");
+        long at = normalOffset + 12L * vertex;
+        out[offset] = file.getFloat(at);
+        out[offset + 1] = file.getFloat(at + 4);
+        out[offset + 2] = file.getFloat(at + 8);
+    }
+
+    /**
+     * @return True if the file stores texture coordinates.
+     */
+    @Override
+    public boolean hasTexCoords() {
+        return texCoordOffset >= 0;
+    }
+
+    /**
+     * Reads the texture coordinates of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving u and v.
+     * @param offset Index of u in {@code out}.
+     */
+    @Override
+    public void getTexCoord(int vertex, float[] out, int offset) {
+        if (texCoordOffset < 0) throw new UnsupportedOperationException("Mesh has no texture coordinates");
+        long at = texCoordOffset + 8L * vertex;
+        out[offset] = file.getFloat(at);
+        out[offset + 1] = file.getFloat(at + 4);
+    }
+
+    /**
+     * @return Bounding box of all vertices, stored in the file header.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return Zero, since the arrays are mapped instead of held on the heap.
+     */
+    @Override
+    public long getMemoryBytes() {
+        return 0;
+    }
+}
@@ -0,0 +1,327 @@
+package math.geometry.objects.mesh;
+
+import math.geometry.acceleration.Accelerator;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.acceleration.BVH;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Binary cache of parsed meshes, so large OBJ files are only parsed once.
+ *
+ * <p>A cache file holds the vertex and index arrays of the parsed geometry and, for binary BVHs,
+ * the node arrays of the built hierarchy. It is keyed by a 64-bit hash of the OBJ content together
+ * with the accelerator type and vertex format, so editing the OBJ or changing the settings never
+ * loads stale data. Cache files are written next to the OBJ or into a cache directory.</p>
+ *
+ * <p>Loading maps the cache file and copies the arrays out in bulk; nothing is parsed. Hashing the
+ * source content is the remaining start-up cost, done in parallel chunks over a memory map of the OBJ.</p>
+ *
+ * <p>File layout, little endian: a {@value #HEADER_SIZE}-byte header (magic, {@link #VERSION},
+ * content hash, source size, accelerator type, vertex format, flags, build method and the array
+ * lengths), followed by positions, indices, optional normals and texture coordinates, and the
+ * optional BVH node bounds, node links and primitive indices.</p>
+ */
+public final class MeshCache {
+
+    /** Format version; bump it whenever the layout or the meaning of the stored enums changes. */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x434D5452;   // "RTMC"
+    static final int HEADER_SIZE = 64;
+    private static final String SUFFIX = ".meshcache";
+
+    private static final int HAS_NORMALS = 1, HAS_TEX_COORDS = 2, HAS_BVH = 4;
+
+    // Largest region mapped or staged at once
+    private static final int WINDOW_SIZE = 1 << 28;
+    private static final int STAGING_SIZE = 1 << 20;
+
+    private final File directory;
+
+    /**
+     * Creates a cache that stores its files next to the OBJ files.
+     */
+    public MeshCache() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache that stores its files in the given directory.
+     *
+     * @param directory Cache directory, created when needed; null to store files next to the OBJ files.
+     */
+    public MeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Identifies one cached variant of a source file.
+     *
+     * @param source      The OBJ file.
+     * @param contentHash Hash of the file content.
+     * @param sourceSize  Size of the file in bytes.
+     * @param type        Accelerator type the mesh is built with.
+     * @param format      Vertex format the mesh is stored in.
+     */
+    public record Key(File source, long contentHash, long sourceSize, AcceleratorType type, VertexFormat format) {
+    }
+
+    /**
+     * Cached mesh data.
+     *
+     * @param geometry  Parsed geometry, before encoding into the vertex format.
+     * @param hierarchy Hierarchy built over the encoded triangles, or null if the accelerator type is not cached.
+     */
+    public record Entry(FloatMeshGeometry geometry, BVH hierarchy) {
+    }
+
+    /**
+     * Hashes a source file to look up its cache entry.
+     *
+     * @param source The OBJ file.
+     * @param type   Accelerator type the mesh is built with.
+     * @param format Vertex format the mesh is stored in.
+     * @return Key of the cache entry.
+     * @throws IOException If the file cannot be read.
+     */
+    public Key key(File source, AcceleratorType type, VertexFormat format) throws IOException {
+        return new Key(source, contentHash(source), source.length(), type, format);
+    }
+
+    /**
+     * @param key Key of the entry.
+     * @return The cache file of the entry.
+     */
+    public File getFile(Key key) {
+        File parent = directory != null ? directory : key.source().getAbsoluteFile().getParentFile();
+        return new File(parent, String.format("%s.%016x.%s.%s%s", key.source().getName(), key.contentHash(),
+                key.type().name().toLowerCase(), key.format().name().toLowerCase(), SUFFIX));
+    }
+
+    /**
+     * Loads a cache entry.
+     *
+     * @param key Key of the entry.
+     * @return The cached data, or null if there is no valid entry for the key.
+     */
+    public Entry load(Key key) {
+        File file = getFile(key);
+        if (!file.isFile()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getLong(8) != key.contentHash() || header.getLong(16) != key.sourceSize()
+                    || header.getInt(24) != key.type().ordinal() || header.getInt(28) != key.format().ordinal()) {
+                return null;
+            }
+            int flags = header.getInt(32);
+            BVH.BuildMethod buildMethod = BVH.BuildMethod.values()[header.getInt(36)];
+            int vertexCount = header.getInt(40), triangleCount = header.getInt(44);
+            int nodeCount = header.getInt(48), primitiveCount = header.getInt(52);
+
+            boolean hasNormals = (flags & HAS_NORMALS) != 0, hasTexCoords = (flags & HAS_TEX_COORDS) != 0;
+            boolean hasBVH = (flags & HAS_BVH) != 0;
+            long expectedSize = HEADER_SIZE + 4L * (3L * vertexCount + 3L * triangleCount
+                    + (hasNormals ? 3L * vertexCount : 0) + (hasTexCoords ? 2L * vertexCount : 0)
+                    + (hasBVH ? 8L * nodeCount + primitiveCount : 0));
+            if (channel.size() != expectedSize) return null;
+
+            long[] position = {HEADER_SIZE};
+            float[] positions = readFloats(channel, position, 3 * vertexCount);
+            int[] indices = readInts(channel, position, 3 * triangleCount);
+            float[] normals = hasNormals ? readFloats(channel, position, 3 * vertexCount) : null;
+            float[] texCoords = hasTexCoords ? readFloats(channel, position, 2 * vertexCount) : null;
+            BVH hierarchy = null;
+            if (hasBVH) {
+                float[] nodeBounds = readFloats(channel, position, 6 * nodeCount);
+                int[] nodes = readInts(channel, position, 2 * nodeCount);
+                int[] primitiveIndices = readInts(channel, position, primitiveCount);
+                hierarchy = BVH.fromArrays(nodeBounds, nodes, primitiveIndices, buildMethod);
+            }
+            return new Entry(new FloatMeshGeometry(positions, indices, normals, texCoords), hierarchy);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable mesh cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry and removes the entries of older versions of the same source file.
+     *
+     * <p>The file is written under a temporary name and then renamed, so concurrent or
+     * interrupted writes never leave a partial entry behind.</p>
+     *
+     * @param key         Key of the entry.
+     * @param geometry    Parsed geometry, before encoding into the vertex format.
+     * @param accelerator Accelerator built over the encoded triangles; stored if it is a {@link BVH}.
+     * @throws IOException If the file cannot be written.
+     */
+    public void store(Key key, FloatMeshGeometry geometry, Accelerator accelerator) throws IOException {
+        File file = getFile(key);
+        File parent = file.getParentFile();
+        Files.createDirectories(parent.toPath());
+        File temporary = File.createTempFile(file.getName(), ".tmp", parent);
+
+        BVH hierarchy = accelerator instanceof BVH bvh ? bvh : null;
+        int flags = (geometry.hasNormals() ? HAS_NORMALS : 0) | (geometry.hasTexCoords() ? HAS_TEX_COORDS : 0)
+                | (hierarchy != null ? HAS_BVH : 0);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putLong(key.contentHash()).putLong(key.sourceSize())
+                        .putInt(key.type().ordinal()).putInt(key.format().ordinal()).putInt(flags)
+                        .putInt(hierarchy != null ? hierarchy.getBuildMethod().ordinal() : 0)
+                        .putInt(geometry.getVertexCount()).putInt(geometry.getTriangleCount())
+                        .putInt(hierarchy != null ? hierarchy.getNodeCount() : 0)
+                        .putInt(hierarchy != null ? hierarchy.primitiveIndices().length : 0);
+                header.position(0);
+                writeFully(channel, header);
+
+                ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                writeFloats(channel, staging, geometry.positions());
+                writeInts(channel, staging, geometry.indices());
+                if (geometry.hasNormals()) writeFloats(channel, staging, geometry.normals());
+                if (geometry.hasTexCoords()) writeFloats(channel, staging, geometry.texCoords());
+                if (hierarchy != null) {
+                    writeFloats(channel, staging, hierarchy.nodeBounds());
+                    writeInts(channel, staging, hierarchy.nodes());
+                    writeInts(channel, staging, hierarchy.primitiveIndices());
+                }
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        removeStaleEntries(key, file);
+    }
+
+    /**
+     * Deletes the entries of the same source file, accelerator type and vertex format with another content hash.
+     */
+    private void removeStaleEntries(Key key, File current) {
+        String prefix = key.source().getName() + ".";
+        String variant = "." + key.type().name().toLowerCase() + "." + key.format().name().toLowerCase() + SUFFIX;
+        File[] candidates = current.getParentFile().listFiles((dir, name) ->
+                name.startsWith(prefix) && name.endsWith(variant) && name.length() == prefix.length() + 16 + variant.length());
+        if (candidates == null) return;
+        for (File candidate : candidates) {
+            if (!candidate.equals(current) && !candidate.delete()) {
+                System.out.println("Could not delete stale mesh cache " + candidate);
+            }
+        }
+    }
+
+    /**
+     * Computes a 64-bit hash of a file's content, hashing chunks of a memory map in parallel.
+     *
+     * @param file The file to hash.
+     * @return Hash of the content.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long contentHash(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<MappedByteBuffer> chunks = new ArrayList<>();
+            for (long start = 0; start < size; start += ObjParser.CHUNK_SIZE) {
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(ObjParser.CHUNK_SIZE, size - start)));
+            }
+            long[] chunkHashes = IntStream.range(0, chunks.size()).parallel()
+                    .mapToLong(i -> hashChunk(chunks.get(i).order(ByteOrder.LITTLE_ENDIAN), i)).toArray();
+            long hash = size;
+            for (long chunkHash : chunkHashes) {
+                hash = mix(hash ^ chunkHash);
+            }
+            return hash;
+        }
+    }
+
+    private static long hashChunk(ByteBuffer buffer, long seed) {
+        long hash = mix(seed + 0x9E3779B97F4A7C15L);
+        int limit = buffer.limit(), i = 0;
+        for (; i + 8 <= limit; i += 8) {
+            hash = Long.rotateLeft(hash ^ buffer.getLong(i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B185EBCA87L;
+        }
+        for (; i < limit; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    // Bulk transfers between arrays and the file, in windows small enough for a single mapping or buffer
+
+    private static float[] readFloats(FileChannel channel, long[] position, int count) throws IOException {
+        float[] values = new float[count];
+        for (int offset = 0; offset < count; ) {
+            int n = Math.min(count - offset, WINDOW_SIZE / 4);
+            channel.map(FileChannel.MapMode.READ_ONLY, position[0], 4L * n).order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer().get(values, offset, n);
+            position[0] += 4L * n;
+            offset += n;
+        }
+        return values;
+    }
+
+    private static int[] readInts(FileChannel channel, long[] position, int count) throws IOException {
+        int[] values = new int[count];
+        for (int offset = 0; offset < count; ) {
+            int n = Math.min(count - offset, WINDOW_SIZE / 4);
+            channel.map(FileChannel.MapMode.READ_ONLY, position[0], 4L * n).order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer().get(values, offset, n);
+            position[0] += 4L * n;
+            offset += n;
+        }
+        return values;
+    }
+
+    private static void writeFloats(FileChannel channel, ByteBuffer staging, float[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            int n = Math.min(values.length - offset, staging.capacity() / 4);
+            staging.clear();
+            staging.asFloatBuffer().put(values, offset, n);
+            staging.limit(4 * n);
+            writeFully(channel, staging);
+            offset += n;
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer staging, int[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            int n = Math.min(values.length - offset, staging.capacity() / 4);
+            staging.clear();
+            staging.asIntBuffer().put(values, offset, n);
+            staging.limit(4 * n);
+            writeFully(channel, staging);
+            offset += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
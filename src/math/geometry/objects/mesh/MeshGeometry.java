@@ -0,0 +1,168 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.AABB;
+
+/**
+ * Indexed triangle storage of a mesh.
+ *
+ * <p>Implementations decide how vertex positions and indices are encoded; the intersection
+ * kernel only reads them through {@link #getTriangle(int, float[])}, so compressed formats
+ * are decoded on the fly for the triangles a ray actually visits.</p>
+ */
+public interface MeshGeometry {
+
+    /**
+     * @return Number of vertices.
+     */
+    int getVertexCount();
+
+    /**
+     * @return Number of triangles.
+     */
+    int getTriangleCount();
+
+    /**
+     * Decodes the position of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    void getPosition(int vertex, float[] out, int offset);
+
+    /**
+     * Returns one vertex index of a triangle.
+     *
+     * @param triangle Triangle index.
+     * @param corner   Corner 0, 1 or 2.
+     * @return The vertex index.
+     */
+    int getIndex(int triangle, int corner);
+
+    /**
+     * @return Bounding box of all vertices.
+     */
+    AABB getBounds();
+
+    /**
+     * @return Memory used by the vertex, index and attribute arrays in bytes.
+     */
+    long getMemoryBytes();
+
+    /**
+     * @return True if the vertices carry shading normals.
+     */
+    default boolean hasNormals() {
+        return false;
+    }
+
+    /**
+     * Decodes the shading normal of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     * @throws UnsupportedOperationException If the geometry has no normals.
+     */
+    default void getNormal(int vertex, float[] out, int offset) {
+        throw new UnsupportedOperationException("Mesh has no vertex normals");
+    }
+
+    /**
+     * @return True if the vertices carry texture coordinates.
+     */
+    default boolean hasTexCoords() {
+        return false;
+    }
+
+    /**
+     * Decodes the texture coordinates of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving u and v.
+     * @param offset Index of u in {@code out}.
+     * @throws UnsupportedOperationException If the geometry has no texture coordinates.
+     */
+    default void getTexCoord(int vertex, float[] out, int offset) {
+        throw new UnsupportedOperationException("Mesh has no texture coordinates");
+    }
+
+    /**
+     * Decodes the three corners of a triangle.
+     *
+     * @param triangle Triangle index.
+     * @param out      Array of at least nine floats receiving the corners a, b and c.
+     */
+    default void getTriangle(int triangle, float[] out) {
+        getPosition(getIndex(triangle, 0), out, 0);
+        getPosition(getIndex(triangle, 1), out, 3);
+        getPosition(getIndex(triangle, 2), out, 6);
+    }
+
+    /**
+     * Returns the position of a vertex as a vector. Allocates; not meant for the intersection kernel.
+     *
+     * @param vertex Vertex index.
+     * @return The vertex position.
+     */
+    default Vec3 getPosition(int vertex) {
+        float[] p = new float[3];
+        getPosition(vertex, p, 0);
+        return new Vec3(p[0], p[1], p[2]);
+    }
+
+    /**
+     * Returns the shading normal of a vertex as a vector.
+     *
+     * @param vertex Vertex index.
+     * @return The vertex normal.
+     * @throws UnsupportedOperationException If the geometry has no normals.
+     */
+    default Vec3 getNormal(int vertex) {
+        float[] n = new float[3];
+        getNormal(vertex, n, 0);
+        return new Vec3(n[0], n[1], n[2]);
+    }
+
+    /**
+     * Computes the bounding box of a triangle.
+     *
+     * @param triangle Triangle index.
+     * @return Bounding box of its corners.
+     */
+    default AABB getTriangleBounds(int triangle) {
+        float[] c = new float[9];
+        getTriangle(triangle, c);
+        return new AABB(
+                new Vec3(Math.min(c[0], Math.min(c[3], c[6])), Math.min(c[1], Math.min(c[4], c[7])), Math.min(c[2], Math.min(c[5], c[8]))),
+                new Vec3(Math.max(c[0], Math.max(c[3], c[6])), Math.max(c[1], Math.max(c[4], c[7])), Math.max(c[2], Math.max(c[5], c[8]))));
+    }
+
+    /**
+     * Computes the geometric normal of a triangle from its winding.
+     *
+     * @param triangle Triangle index.
+     * @return Normalized face normal.
+     */
+    default Vec3 getFaceNormal(int triangle) {
+        float[] c = new float[9];
+        getTriangle(triangle, c);
+        Vec3 edge1 = new Vec3(c[3] - c[0], c[4] - c[1], c[5] - c[2]);
+        Vec3 edge2 = new Vec3(c[6] - c[0], c[7] - c[1], c[8] - c[2]);
+        return edge1.cross(edge2).normalize();
+    }
+
+    /**
+     * Computes the bounding boxes of all triangles, e.g. as input for an acceleration structure.
+     *
+     * @return Bounding box of each triangle, indexed by triangle.
+     */
+    default AABB[] getTriangleBounds() {
+        AABB[] bounds = new AABB[getTriangleCount()];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = getTriangleBounds(i);
+        }
+        return bounds;
+    }
+}
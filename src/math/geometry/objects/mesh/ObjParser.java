@@ -0,0 +1,498 @@
+package math.geometry.objects.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parallel parser for Wavefront OBJ files.
+ *
+ * <p>The file is memory-mapped and split into chunks of about {@link #CHUNK_SIZE} bytes that end
+ * at line breaks. The chunks are parsed in parallel directly from the mapped bytes, without
+ * creating strings: numbers are read digit by digit and faces are fan triangulated on the fly.
+ * Each chunk fills its own primitive arrays; afterwards the chunks are concatenated, relative
+ * (negative) indices are resolved and the {@code v/vt/vn} corners are deduplicated into the
+ * vertices of a {@link FloatMeshGeometry}.</p>
+ *
+ * <p>Supported statements are {@code v}, {@code vt}, {@code vn} and {@code f} with the corner
+ * forms {@code v}, {@code v/vt}, {@code v//vn} and {@code v/vt/vn}. All other statements are
+ * ignored. Vertices with bit-identical positions are welded, so meshes exported with duplicated
+ * vertices per face are indexed again. Normals and texture coordinates are kept only if every
+ * face corner references one.</p>
+ */
+public final class ObjParser {
+
+    /** Target size of the chunks parsed in parallel, in bytes. */
+    static final int CHUNK_SIZE = 8 << 20;
+
+    private static final int ABSENT = Integer.MIN_VALUE;
+
+    // Significant digits whose integer value is always exact in a double (10^15 < 2^53)
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ObjParser() {
+    }
+
+    /**
+     * Parses an OBJ file into indexed triangles.
+     *
+     * @param file The OBJ file.
+     * @return Geometry with one vertex per distinct position, texture coordinate and normal combination.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public static FloatMeshGeometry parse(File file) throws IOException {
+        List<Chunk> chunks;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<MappedByteBuffer> buffers = new ArrayList<>();
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = findLineEnd(channel, Math.min(size, start + CHUNK_SIZE), size);
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+                start = end;
+            }
+            // The mappings stay valid after the channel is closed
+            chunks = buffers.parallelStream().map(buffer -> new Chunk(buffer).parse()).toList();
+        } catch (UncheckedIOException e) {
+            throw new IOException(file + ": " + e.getCause().getMessage(), e.getCause());
+        }
+        try {
+            return merge(chunks);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the first position after a line break at or after the given position.
+     *
+     * @return Position of the next line start, or {@code size} if there is none.
+     */
+    private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Concatenates the chunk results, resolves indices and deduplicates the face corners.
+     */
+    private static FloatMeshGeometry merge(List<Chunk> chunks) throws IOException {
+        int positionCount = 0, texCoordCount = 0, normalCount = 0, cornerCount = 0;
+        for (Chunk chunk : chunks) {
+            positionCount += chunk.positions.size / 3;
+            texCoordCount += chunk.texCoords.size / 2;
+            normalCount += chunk.normals.size / 3;
+            cornerCount += chunk.corners.size / 3;
+        }
+
+        float[] positions = new float[3 * positionCount];
+        float[] texCoords = new float[2 * texCoordCount];
+        float[] normals = new float[3 * normalCount];
+        int[] corners = new int[3 * cornerCount];
+        int[] offsets = new int[3];   // attributes preceding the current chunk: positions, texture coordinates, normals
+        int cornerOffset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.positions.data, 0, positions, 3 * offsets[0], chunk.positions.size);
+            System.arraycopy(chunk.texCoords.data, 0, texCoords, 2 * offsets[1], chunk.texCoords.size);
+            System.arraycopy(chunk.normals.data, 0, normals, 3 * offsets[2], chunk.normals.size);
+            System.arraycopy(chunk.corners.data, 0, corners, cornerOffset, chunk.corners.size);
+            for (int i = 0; i < chunk.relativeSlots.size; i++) {
+                int slot = chunk.relativeSlots.data[i];
+                corners[cornerOffset + slot] += offsets[slot % 3];
+            }
+            offsets[0] += chunk.positions.size / 3;
+            offsets[1] += chunk.texCoords.size / 2;
+            offsets[2] += chunk.normals.size / 3;
+            cornerOffset += chunk.corners.size;
+        }
+
+        boolean hasTexCoords = texCoordCount > 0, hasNormals = normalCount > 0;
+        int[] counts = {positionCount, texCoordCount, normalCount};
+        for (int i = 0; i < corners.length; i++) {
+            int index = corners[i];
+            if (index == ABSENT) {
+                if (i % 3 == 1) hasTexCoords = false;
+                if (i % 3 == 2) hasNormals = false;
+            } else if (index < 0 || index >= counts[i % 3]) {
+                throw new IOException("Face index " + (index + 1) + " out of range");
+            }
+        }
+
+        int[] welded = weldPositions(positions);
+        return buildVertices(corners, welded, positions, hasTexCoords ? texCoords : null, hasNormals ? normals : null);
+    }
+
+    /**
+     * Maps every position to the first position with the same coordinate bits.
+     */
+    private static int[] weldPositions(float[] positions) {
+        int count = positions.length / 3;
+        int[] canonical = new int[count];
+        int[] table = new int[tableSize(count)];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int p = 0; p < count; p++) {
+            int x = Float.floatToIntBits(positions[3 * p]);
+            int y = Float.floatToIntBits(positions[3 * p + 1]);
+            int z = Float.floatToIntBits(positions[3 * p + 2]);
+            int slot = mix(x, y, z) & mask;
+            while (table[slot] >= 0) {
+                int q = table[slot];
+                if (Float.floatToIntBits(positions[3 * q]) == x && Float.floatToIntBits(positions[3 * q + 1]) == y
+                        && Float.floatToIntBits(positions[3 * q + 2]) == z) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) table[slot] = p;
+            canonical[p] = table[slot];
+        }
+        return canonical;
+    }
+
+    /**
+     * Creates one output vertex per distinct corner, in order of first use.
+     */
+    private static FloatMeshGeometry buildVertices(int[] corners, int[] welded, float[] positions,
+                                                   float[] texCoords, float[] normals) {
+        int cornerCount = corners.length / 3;
+        int[] indices = new int[cornerCount];
+        int[] vertexPosition = new int[cornerCount], vertexTexCoord = new int[cornerCount], vertexNormal = new int[cornerCount];
+        int[] table = new int[tableSize(cornerCount)];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        int vertexCount = 0;
+
+        for (int c = 0; c < cornerCount; c++) {
+            int p = welded[corners[3 * c]];
+            int t = texCoords != null ? corners[3 * c + 1] : -1;
+            int n = normals != null ? corners[3 * c + 2] : -1;
+            int slot = mix(p, t, n) & mask;
+            while (table[slot] >= 0) {
+                int v = table[slot];
+                if (vertexPosition[v] == p && vertexTexCoord[v] == t && vertexNormal[v] == n) break;
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) {
+                table[slot] = vertexCount;
+                vertexPosition[vertexCount] = p;
+                vertexTexCoord[vertexCount] = t;
+                vertexNormal[vertexCount] = n;
+                vertexCount++;
+            }
+            indices[c] = table[slot];
+        }
+
+        float[] outPositions = new float[3 * vertexCount];
+        float[] outTexCoords = texCoords != null ? new float[2 * vertexCount] : null;
+        float[] outNormals = normals != null ? new float[3 * vertexCount] : null;
+        for (int v = 0; v < vertexCount; v++) {
+            System.arraycopy(positions, 3 * vertexPosition[v], outPositions, 3 * v, 3);
+            if (outTexCoords != null) System.arraycopy(texCoords, 2 * vertexTexCoord[v], outTexCoords, 2 * v, 2);
+            if (outNormals != null) System.arraycopy(normals, 3 * vertexNormal[v], outNormals, 3 * v, 3);
+        }
+        return new FloatMeshGeometry(outPositions, indices, outNormals, outTexCoords);
+    }
+
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(2, entries) * 2 - 1) << 1;
+    }
+
+    private static int mix(int a, int b, int c) {
+        int h = a * 0x9E3779B9 ^ b * 0x85EBCA6B ^ c * 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Parse state and results of one chunk of the file.
+     */
+    private static final class Chunk {
+
+        private final ByteBuffer buffer;
+        private final int end;
+        private int pos;
+
+        final FloatList positions = new FloatList();
+        final FloatList texCoords = new FloatList();
+        final FloatList normals = new FloatList();
+        final IntList corners = new IntList();        // position, texture coordinate and normal index per triangle corner
+        final IntList relativeSlots = new IntList();  // corner entries still relative to the start of this chunk
+        private final IntList face = new IntList();   // three indices and a mask of the relative ones per corner
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.end = buffer.limit();
+        }
+
+        /**
+         * Parses all lines of the chunk.
+         *
+         * @return This chunk.
+         * @throws UncheckedIOException If a line is malformed.
+         */
+        Chunk parse() {
+            while (pos < end) {
+                skipSpaces();
+                if (pos < end) {
+                    byte first = buffer.get(pos);
+                    byte second = peek(pos + 1);
+                    if (first == 'v' && isSpace(second)) {
+                        pos += 1;
+                        positions.add(parseFloat());
+                        positions.add(parseFloat());
+                        positions.add(parseFloat());
+                    } else if (first == 'v' && second == 't' && isSpace(peek(pos + 2))) {
+                        pos += 2;
+                        texCoords.add(parseFloat());
+                        texCoords.add(parseFloat());
+                    } else if (first == 'v' && second == 'n' && isSpace(peek(pos + 2))) {
+                        pos += 2;
+                        normals.add(parseFloat());
+                        normals.add(parseFloat());
+                        normals.add(parseFloat());
+                    } else if (first == 'f' && isSpace(second)) {
+                        pos += 1;
+                        parseFace();
+                    }
+                }
+                skipLine();
+            }
+            return this;
+        }
+
+        /**
+         * Reads the corners of a face and emits its fan triangulation.
+         */
+        private void parseFace() {
+            face.size = 0;
+            while (true) {
+                skipSpaces();
+                if (atLineEnd()) break;
+                int relative = 0;
+                int vertex = parseInt();
+                int texCoord = ABSENT, normal = ABSENT;
+                if (peek(pos) == '/') {
+                    pos++;
+                    if (peek(pos) != '/') texCoord = parseInt();
+                    if (peek(pos) == '/') {
+                        pos++;
+                        normal = parseInt();
+                    }
+                }
+                if (vertex < 0) relative |= 1;
+                if (texCoord != ABSENT && texCoord < 0) relative |= 2;
+                if (normal != ABSENT && normal < 0) relative |= 4;
+                face.add(resolve(vertex, 0));
+                face.add(texCoord == ABSENT ? ABSENT : resolve(texCoord, 1));
+                face.add(normal == ABSENT ? ABSENT : resolve(normal, 2));
+                face.add(relative);
+            }
+            int cornerCount = face.size / 4;
+            if (cornerCount < 3) throw malformed("Face with fewer than three corners");
+
+            // Fan triangulation: create triangles (v0, vi, vi+1) for i in 1..n-2
+            for (int i = 1; i < cornerCount - 1; i++) {
+                emitCorner(0);
+                emitCorner(i);
+                emitCorner(i + 1);
+            }
+        }
+
+        private void emitCorner(int corner) {
+            int relative = face.data[4 * corner + 3];
+            for (int attribute = 0; attribute < 3; attribute++) {
+                if ((relative >> attribute & 1) != 0) relativeSlots.add(corners.size);
+                corners.add(face.data[4 * corner + attribute]);
+            }
+        }
+
+        /**
+         * Converts a 1-based OBJ index into a 0-based one. Negative indices count back from the
+         * last element read so far and are returned relative to the start of this chunk, to be
+         * shifted once the sizes of the preceding chunks are known.
+         */
+        private int resolve(int index, int attribute) {
+            if (index > 0) return index - 1;
+            if (index == 0) throw malformed("Index 0 in face");
+            int count = attribute == 0 ? positions.size / 3 : attribute == 1 ? texCoords.size / 2 : normals.size / 3;
+            return count + index;
+        }
+
+        private int parseInt() {
+            boolean negative = false;
+            byte b = peek(pos);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                b = peek(++pos);
+            }
+            if (b < '0' || b > '9') throw malformed("Expected an integer");
+            long value = 0;
+            while (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (value > Integer.MAX_VALUE) throw malformed("Integer out of range");
+                b = peek(++pos);
+            }
+            return negative ? (int) -value : (int) value;
+        }
+
+        /**
+         * Reads a decimal number from the bytes. Mantissas of up to 15 significant digits with
+         * exponents up to 22 are exact in a double, so a single multiplication or division rounds
+         * them correctly to double before the narrowing to float; longer mantissas and other forms
+         * fall back to {@link Float#parseFloat(String)}.
+         */
+        private float parseFloat() {
+            skipSpaces();
+            int start = pos;
+            boolean negative = false;
+            byte b = peek(pos);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                b = peek(++pos);
+            }
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            boolean any = false;
+            while (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) digits++;
+                any = true;
+                b = peek(++pos);
+                if (digits > MAX_EXACT_DIGITS) return parseFallback(start);
+            }
+            if (b == '.') {
+                b = peek(++pos);
+                while (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                    any = true;
+                    b = peek(++pos);
+                    if (digits > MAX_EXACT_DIGITS) return parseFallback(start);
+                }
+            }
+            if (any && (b == 'e' || b == 'E')) {
+                b = peek(++pos);
+                boolean negativeExponent = b == '-';
+                if (b == '-' || b == '+') b = peek(++pos);
+                int value = 0;
+                while (b >= '0' && b <= '9') {
+                    if (value < 10000) value = value * 10 + (b - '0');
+                    b = peek(++pos);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (!any || !isDelimiter(b)) return parseFallback(start);
+
+            double value;
+            if (exponent == 0) {
+                value = mantissa;
+            } else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return parseFallback(start);
+            }
+            return (float) (negative ? -value : value);
+        }
+
+        private float parseFallback(int start) {
+            pos = start;
+            while (!isDelimiter(peek(pos))) pos++;
+            byte[] token = new byte[pos - start];
+            buffer.get(start, token);
+            try {
+                return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw malformed("Expected a number");
+            }
+        }
+
+        private UncheckedIOException malformed(String message) {
+            int lineStart = pos;
+            while (lineStart > 0 && buffer.get(lineStart - 1) != '\n') lineStart--;
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') lineEnd++;
+            byte[] line = new byte[Math.min(lineEnd - lineStart, 80)];
+            buffer.get(lineStart, line);
+            return new UncheckedIOException(new IOException(message + " in line \""
+                    + new String(line, StandardCharsets.US_ASCII) + "\""));
+        }
+
+        private byte peek(int position) {
+            return position < end ? buffer.get(position) : (byte) '\n';
+        }
+
+        private void skipSpaces() {
+            while (pos < end && isSpace(buffer.get(pos))) pos++;
+        }
+
+        private void skipLine() {
+            while (pos < end && buffer.get(pos++) != '\n') {
+                // Skips the rest of the line, including unused components and comments
+            }
+        }
+
+        private boolean atLineEnd() {
+            byte b = peek(pos);
+            return b == '\n' || b == '\r' || b == '#';
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t';
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '/' || b == '#';
+        }
+    }
+
+    /**
+     * Growable float array.
+     */
+    private static final class FloatList {
+        float[] data = new float[1024];
+        int size;
+
+        void add(float value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static final class IntList {
+        int[] data = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+    }
+}
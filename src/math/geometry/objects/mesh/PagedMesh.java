@@ -0,0 +1,200 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.acceleration.BVH;
+import math.geometry.acceleration.MappedFile;
+import math.geometry.acceleration.PagedBVH;
+import math.geometry.objects.MeshObject;
+import stuff.Material;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File format for meshes that are rendered straight from a memory map, without loading them into the heap.
+ *
+ * <p>A paged mesh file holds the float positions, indices and optional vertex attributes of a mesh
+ * followed by its BVH as treelet-ordered {@link PagedBVH} records. Every section starts on a 4 KiB
+ * page boundary. {@link #open(File, Material)} maps the file and returns a {@link MeshObject} whose
+ * geometry and hierarchy read the mapped pages directly, so a mesh larger than the heap can be
+ * rendered with a fixed {@code -Xmx}; the operating system page cache decides what stays resident.</p>
+ *
+ * <p>Writing needs the mesh and its hierarchy in memory once, e.g. in a separate conversion run
+ * with a larger heap: {@code PagedMesh <mesh.obj> <output>}.</p>
+ */
+public final class PagedMesh {
+
+    /** Format version; bump it whenever the layout changes. */
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x4D505452;   // "RTPM"
+    private static final int PAGE_SIZE = 4096;
+    private static final int HAS_NORMALS = 1, HAS_TEX_COORDS = 2;
+
+    private PagedMesh() {
+    }
+
+    /**
+     * Converts an OBJ file into a paged mesh file.
+     *
+     * @param args Path of the OBJ file and of the output file.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: PagedMesh <mesh.obj> <output>");
+            return;
+        }
+        FloatMeshGeometry geometry = ObjParser.parse(new File(args[0]));
+        BVH hierarchy = BVH.build(geometry.getTriangleBounds());
+        write(new File(args[1]), geometry, hierarchy);
+        System.out.println(hierarchy.getStatistics());
+        System.out.println("Wrote " + args[1] + " (" + new File(args[1]).length() / 1024 + " KiB)");
+    }
+
+    /**
+     * Writes a mesh and its hierarchy into a paged mesh file.
+     *
+     * @param file      Destination file, replaced if it exists.
+     * @param geometry  The mesh triangles; compressed formats are stored decoded.
+     * @param hierarchy BVH built over the bounds of the decoded triangles.
+     * @throws IOException If the file cannot be written.
+     * @throws IllegalArgumentException If the hierarchy does not index the mesh triangles.
+     */
+    public static void write(File file, MeshGeometry geometry, BVH hierarchy) throws IOException {
+        int vertexCount = geometry.getVertexCount(), triangleCount = geometry.getTriangleCount();
+        if (hierarchy.primitiveIndices().length != triangleCount) {
+            throw new IllegalArgumentException("Hierarchy over " + hierarchy.primitiveIndices().length
+                    + " primitives does not match " + triangleCount + " triangles");
+        }
+        long positionOffset = PAGE_SIZE;
+        long indexOffset = align(positionOffset + 12L * vertexCount);
+        long end = indexOffset + 12L * triangleCount;
+        long normalOffset = -1, texCoordOffset = -1;
+        if (geometry.hasNormals()) {
+            normalOffset = align(end);
+            end = normalOffset + 12L * vertexCount;
+        }
+        if (geometry.hasTexCoords()) {
+            texCoordOffset = align(end);
+            end = texCoordOffset + 8L * vertexCount;
+        }
+        long nodeOffset = align(end);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer staging = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            float[] value = new float[3];
+            channel.position(positionOffset);
+            for (int v = 0; v < vertexCount; v++) {
+                geometry.getPosition(v, value, 0);
+                putFloats(staging, channel, value, 3);
+            }
+            flush(staging, channel);
+
+            channel.position(indexOffset);
+            for (int t = 0; t < triangleCount; t++) {
+                for (int corner = 0; corner < 3; corner++) {
+                    if (staging.remaining() < 4) flush(staging, channel);
+                    staging.putInt(geometry.getIndex(t, corner));
+                }
+            }
+            flush(staging, channel);
+
+            if (geometry.hasNormals()) {
+                channel.position(normalOffset);
+                for (int v = 0; v < vertexCount; v++) {
+                    geometry.getNormal(v, value, 0);
+                    putFloats(staging, channel, value, 3);
+                }
+                flush(staging, channel);
+            }
+            if (geometry.hasTexCoords()) {
+                channel.position(texCoordOffset);
+                for (int v = 0; v < vertexCount; v++) {
+                    geometry.getTexCoord(v, value, 0);
+                    putFloats(staging, channel, value, 2);
+                }
+                flush(staging, channel);
+            }
+
+            channel.position(nodeOffset);
+            int recordCount = PagedBVH.write(hierarchy, channel);
+
+            // Written last because the node record count includes the treelet padding
+            AABB bounds = geometry.getBounds();
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(triangleCount)
+                    .putInt((geometry.hasNormals() ? HAS_NORMALS : 0) | (geometry.hasTexCoords() ? HAS_TEX_COORDS : 0))
+                    .putInt(recordCount).putInt(triangleCount).putInt(0)
+                    .putFloat(bounds.min().getX()).putFloat(bounds.min().getY()).putFloat(bounds.min().getZ())
+                    .putFloat(bounds.max().getX()).putFloat(bounds.max().getY()).putFloat(bounds.max().getZ())
+                    .putLong(positionOffset).putLong(indexOffset).putLong(normalOffset).putLong(texCoordOffset).putLong(nodeOffset);
+            header.clear();
+            channel.position(0);
+            write(channel, header);
+        }
+    }
+
+    /**
+     * Maps a paged mesh file.
+     *
+     * @param file     The paged mesh file.
+     * @param material The material to apply to all triangles in the mesh.
+     * @return A mesh reading its geometry and hierarchy from the mapped file.
+     * @throws IOException If the file cannot be mapped or is not a paged mesh of this version.
+     */
+    public static MeshObject open(File file, Material material) throws IOException {
+        MappedFile mapped = MappedFile.open(file);
+        if (mapped.size() < PAGE_SIZE || mapped.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a paged mesh file");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException(file + " has paged mesh version " + mapped.getInt(4) + ", expected " + VERSION);
+        }
+        int vertexCount = mapped.getInt(8), triangleCount = mapped.getInt(12), flags = mapped.getInt(16);
+        int nodeCount = mapped.getInt(20), primitiveCount = mapped.getInt(24);
+        AABB bounds = new AABB(new Vec3(mapped.getFloat(32), mapped.getFloat(36), mapped.getFloat(40)),
+                new Vec3(mapped.getFloat(44), mapped.getFloat(48), mapped.getFloat(52)));
+        long positionOffset = mapped.getLong(56), indexOffset = mapped.getLong(64);
+        long normalOffset = (flags & HAS_NORMALS) != 0 ? mapped.getLong(72) : -1;
+        long texCoordOffset = (flags & HAS_TEX_COORDS) != 0 ? mapped.getLong(80) : -1;
+        long nodeOffset = mapped.getLong(88);
+
+        MappedMeshGeometry geometry = new MappedMeshGeometry(mapped, vertexCount, triangleCount, bounds,
+                positionOffset, indexOffset, normalOffset, texCoordOffset);
+        try {
+            return new MeshObject(geometry, PagedBVH.map(mapped, nodeOffset, nodeCount, primitiveCount), material);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " is truncated: " + e.getMessage(), e);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    private static void putFloats(ByteBuffer staging, FileChannel channel, float[] values, int count) throws IOException {
+        if (staging.remaining() < 4 * count) flush(staging, channel);
+        for (int i = 0; i < count; i++) {
+            staging.putFloat(values[i]);
+        }
+    }
+
+    private static void flush(ByteBuffer staging, FileChannel channel) throws IOException {
+        staging.flip();
+        write(channel, staging);
+        staging.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.AABB;
+
+/**
+ * Compressed mesh geometry with positions quantized relative to the mesh bounds.
+ *
+ * <p>Each axis is stored as an unsigned fixed-point offset into the bounding box, with either
+ * 16 bits per axis (three shorts, 6 bytes per vertex) or 21 bits per axis (packed into one long,
+ * 8 bytes per vertex) instead of 12 bytes of floats. Meshes with at most 65536 vertices also use
+ * 16-bit indices. For a typical mesh with about twice as many triangles as vertices this shrinks
+ * the geometry to a third (16 bits) or two fifths (21 bits) of its float size.</p>
+ *
+ * <p>Shared vertices are quantized once, so the compressed mesh stays watertight. The error per
+ * axis is at most half a step, i.e. the extent divided by 2<sup>bits+1</sup>.</p>
+ *
+ * <p>Vertex normals are stored octahedron-encoded with 16 bits per component (4 bytes per vertex);
+ * texture coordinates are kept as floats since they may repeat outside the unit square.</p>
+ */
+public class QuantizedMeshGeometry implements MeshGeometry {
+
+    private static final int MASK_21 = (1 << 21) - 1;
+
+    private final int bits;
+    private final float minX, minY, minZ;
+    private final float stepX, stepY, stepZ;
+    private final short[] positions16;  // x, y, z per vertex, used with 16 bits
+    private final long[] positions21;   // x << 42 | y << 21 | z per vertex, used with 21 bits
+    private final int[] normals;        // octahedral u << 16 | v per vertex, or null
+    private final float[] texCoords;    // u, v per vertex, or null
+    private final char[] indices16;     // used when all vertex indices fit into 16 bits
+    private final int[] indices32;
+    private final int vertexCount;
+    private final AABB bounds;
+
+    /**
+     * Quantizes the positions of a mesh and narrows its indices where possible.
+     *
+     * @param source Geometry to compress.
+     * @param bits   Bits per axis, 16 or 21.
+     * @return The compressed geometry.
+     * @throws IllegalArgumentException If the number of bits is not supported.
+     */
+    public static QuantizedMeshGeometry quantize(MeshGeometry source, int bits) {
+        if (bits != 16 && bits != 21) {
+            throw new IllegalArgumentException("Unsupported position precision: " + bits + " bits");
+        }
+        return new QuantizedMeshGeometry(source, bits);
+    }
+
+    private QuantizedMeshGeometry(MeshGeometry source, int bits) {
+        this.bits = bits;
+        this.vertexCount = source.getVertexCount();
+        int levels = (1 << bits) - 1;
+
+        AABB sourceBounds = source.getBounds();
+        minX = sourceBounds.min().getX();
+        minY = sourceBounds.min().getY();
+        minZ = sourceBounds.min().getZ();
+        Vec3 size = sourceBounds.size();
+        stepX = size.getX() / levels;
+        stepY = size.getY() / levels;
+        stepZ = size.getZ() / levels;
+
+        float[] p = new float[3];
+        if (bits == 16) {
+            positions16 = new short[3 * vertexCount];
+            positions21 = null;
+            for (int v = 0; v < vertexCount; v++) {
+                source.getPosition(v, p, 0);
+                positions16[3 * v] = (short) encode(p[0], minX, stepX, levels);
+                positions16[3 * v + 1] = (short) encode(p[1], minY, stepY, levels);
+                positions16[3 * v + 2] = (short) encode(p[2], minZ, stepZ, levels);
+            }
+        } else {
+            positions16 = null;
+            positions21 = new long[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                source.getPosition(v, p, 0);
+                positions21[v] = (long) encode(p[0], minX, stepX, levels) << 42
+                        | (long) encode(p[1], minY, stepY, levels) << 21
+                        | encode(p[2], minZ, stepZ, levels);
+            }
+        }
+
+        if (source.hasNormals()) {
+            normals = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                source.getNormal(v, p, 0);
+                normals[v] = encodeOctahedral(p[0], p[1], p[2]);
+            }
+        } else {
+            normals = null;
+        }
+        if (source.hasTexCoords()) {
+            texCoords = new float[2 * vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                source.getTexCoord(v, texCoords, 2 * v);
+            }
+        } else {
+            texCoords = null;
+        }
+
+        int indexCount = 3 * source.getTriangleCount();
+        if (vertexCount <= 1 << 16) {
+            indices16 = new char[indexCount];
+            indices32 = null;
+            for (int i = 0; i < indexCount; i++) {
+                indices16[i] = (char) source.getIndex(i / 3, i % 3);
+            }
+        } else {
+            indices16 = null;
+            indices32 = new int[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                indices32[i] = source.getIndex(i / 3, i % 3);
+            }
+        }
+
+        bounds = new AABB(new Vec3(minX, minY, minZ),
+                new Vec3(minX + levels * stepX, minY + levels * stepY, minZ + levels * stepZ));
+    }
+
+    private static int encode(float value, float min, float step, int levels) {
+        if (step == 0f) return 0;
+        return Math.max(0, Math.min(levels, Math.round((value - min) / step)));
+    }
+
+    /**
+     * Maps a unit vector onto the octahedron and unfolds it into the unit square.
+     *
+     * @return Both square coordinates with 16 bits each, u in the upper half.
+     */
+    private static int encodeOctahedral(float x, float y, float z) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0f) return 0x7FFF7FFF;
+        float u = x / l1, v = y / l1;
+        if (z < 0f) {
+            float foldedU = (1f - Math.abs(v)) * Math.signum(u == 0f ? 1f : u);
+            v = (1f - Math.abs(u)) * Math.signum(v == 0f ? 1f : v);
+            u = foldedU;
+        }
+        int qu = Math.round((u * 0.5f + 0.5f) * 0xFFFF);
+        int qv = Math.round((v * 0.5f + 0.5f) * 0xFFFF);
+        return qu << 16 | qv;
+    }
+
+    /**
+     * @return Bits per axis of the stored positions, 16 or 21.
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return True if the indices are stored with 16 bits.
+     */
+    public boolean hasShortIndices() {
+        return indices16 != null;
+    }
+
+    /**
+     * @return Number of vertices.
+     */
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return Number of triangles.
+     */
+    @Override
+    public int getTriangleCount() {
+        return (indices16 != null ? indices16.length : indices32.length) / 3;
+    }
+
+    /**
+     * Decodes the position of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getPosition(int vertex, float[] out, int offset) {
+        if (positions16 != null) {
+            int base = 3 * vertex;
+            out[offset] = minX + (positions16[base] & 0xFFFF) * stepX;
+            out[offset + 1] = minY + (positions16[base + 1] & 0xFFFF) * stepY;
+            out[offset + 2] = minZ + (positions16[base + 2] & 0xFFFF) * stepZ;
+        } else {
+            long packed = positions21[vertex];
+            out[offset] = minX + (int) (packed >>> 42 & MASK_21) * stepX;
+            out[offset + 1] = minY + (int) (packed >>> 21 & MASK_21) * stepY;
+            out[offset + 2] = minZ + (int) (packed & MASK_21) * stepZ;
+        }
+    }
+
+    /**
+     * @return True if the source geometry had normals.
+     */
+    @Override
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    /**
+     * Decodes the octahedron-encoded normal of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving x, y and z.
+     * @param offset Index of x in {@code out}.
+     */
+    @Override
+    public void getNormal(int vertex, float[] out, int offset) {
+        if (normals == null) throw new UnsupportedOperationException("Mesh has no vertex normals");
+        int packed = normals[vertex];
+        float u = (packed >>> 16) / (float) 0xFFFF * 2f - 1f;
+        float v = (packed & 0xFFFF) / (float) 0xFFFF * 2f - 1f;
+        float z = 1f - Math.abs(u) - Math.abs(v);
+        if (z < 0f) {
+            float unfoldedU = (1f - Math.abs(v)) * Math.signum(u == 0f ? 1f : u);
+            v = (1f - Math.abs(u)) * Math.signum(v == 0f ? 1f : v);
+            u = unfoldedU;
+        }
+        float length = (float) Math.sqrt(u * u + v * v + z * z);
+        out[offset] = u / length;
+        out[offset + 1] = v / length;
+        out[offset + 2] = z / length;
+    }
+
+    /**
+     * @return True if the source geometry had texture coordinates.
+     */
+    @Override
+    public boolean hasTexCoords() {
+        return texCoords != null;
+    }
+
+    /**
+     * Copies the texture coordinates of a vertex into an array.
+     *
+     * @param vertex Vertex index.
+     * @param out    Array receiving u and v.
+     * @param offset Index of u in {@code out}.
+     */
+    @Override
+    public void getTexCoord(int vertex, float[] out, int offset) {
+        if (texCoords == null) throw new UnsupportedOperationException("Mesh has no texture coordinates");
+        System.arraycopy(texCoords, 2 * vertex, out, offset, 2);
+    }
+
+    /**
+     * @param triangle Triangle index.
+     * @param corner   Corner 0, 1 or 2.
+     * @return The vertex index.
+     */
+    @Override
+    public int getIndex(int triangle, int corner) {
+        int i = 3 * triangle + corner;
+        return indices16 != null ? indices16[i] : indices32[i];
+    }
+
+    /**
+     * @return Bounding box of the quantization grid, enclosing all decoded vertices.
+     */
+    @Override
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return Memory used by the packed position, index and attribute arrays in bytes.
+     */
+    @Override
+    public long getMemoryBytes() {
+        long positionBytes = positions16 != null ? 2L * positions16.length : 8L * positions21.length;
+        long indexBytes = indices16 != null ? 2L * indices16.length : 4L * indices32.length;
+        long attributeBytes = (normals != null ? 4L * normals.length : 0) + (texCoords != null ? 4L * texCoords.length : 0);
+        return positionBytes + indexBytes + attributeBytes;
+    }
+}
@@ -0,0 +1,86 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.Ray;
+
+/**
+ * Ray-triangle kernel working on decoded corner arrays instead of {@code Triangle} objects.
+ *
+ * <p>An intersector is created once per ray and reused for every triangle the acceleration
+ * structure visits. It keeps the ray in scalar fields and a scratch array for the decoded
+ * corners, so testing a triangle of any {@link MeshGeometry} does not allocate.</p>
+ */
+public final class TriangleIntersector {
+
+    private final MeshGeometry geometry;
+    private final float ox, oy, oz, dx, dy, dz;
+    private final float[] corners = new float[9];
+    private float u, v;
+
+    /**
+     * Prepares the kernel for one ray.
+     *
+     * @param geometry Geometry whose triangles are tested.
+     * @param ray      The ray.
+     */
+    public TriangleIntersector(MeshGeometry geometry, Ray ray) {
+        this.geometry = geometry;
+        Vec3 p = ray.p(), d = ray.v();
+        ox = p.getX();
+        oy = p.getY();
+        oz = p.getZ();
+        dx = d.getX();
+        dy = d.getY();
+        dz = d.getZ();
+    }
+
+    /**
+     * Decodes a triangle and intersects it with the ray (Möller–Trumbore).
+     *
+     * <p>Uses the same tolerances as {@code Triangle}: nearly parallel rays miss and hits
+     * closer than 1e-4 to the origin are ignored.</p>
+     *
+     * @param triangle Triangle index.
+     * @return Distance along the ray, or NaN if the ray misses.
+     */
+    public float intersect(int triangle) {
+        float[] c = corners;
+        geometry.getTriangle(triangle, c);
+        float e1x = c[3] - c[0], e1y = c[4] - c[1], e1z = c[5] - c[2];
+        float e2x = c[6] - c[0], e2y = c[7] - c[1], e2z = c[8] - c[2];
+
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-6f) return Float.NaN; // Ray parallel to triangle
+
+        float invDet = 1f / det;
+        float tx = ox - c[0], ty = oy - c[1], tz = oz - c[2];
+        float hitU = (tx * px + ty * py + tz * pz) * invDet;
+        if (hitU < 0f || hitU > 1f) return Float.NaN;
+
+        float qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx * e1y - ty * e1x;
+        float hitV = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (hitV < 0f || hitU + hitV > 1f) return Float.NaN;
+
+        float t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+        if (t < 1e-4f) return Float.NaN; // Behind ray or too close
+
+        u = hitU;
+        v = hitV;
+        return t;
+    }
+
+    /**
+     * @return Barycentric weight of corner b of the last hit.
+     */
+    public float getU() {
+        return u;
+    }
+
+    /**
+     * @return Barycentric weight of corner c of the last hit.
+     */
+    public float getV() {
+        return v;
+    }
+}
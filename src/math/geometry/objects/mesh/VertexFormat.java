@@ -0,0 +1,28 @@
+package math.geometry.objects.mesh;
+
+/**
+ * Storage formats for the vertices of a mesh.
+ */
+public enum VertexFormat {
+
+    /** 32-bit float positions and 32-bit indices. */
+    FLOAT,
+    /** Positions quantized to 16 bits per axis within the mesh bounds; 16-bit indices for small meshes. */
+    QUANTIZED_16,
+    /** Positions quantized to 21 bits per axis within the mesh bounds; 16-bit indices for small meshes. */
+    QUANTIZED_21;
+
+    /**
+     * Converts geometry into this format.
+     *
+     * @param geometry Uncompressed geometry.
+     * @return The geometry itself for {@link #FLOAT}, otherwise a quantized copy.
+     */
+    public MeshGeometry encode(MeshGeometry geometry) {
+        return switch (this) {
+            case FLOAT -> geometry;
+            case QUANTIZED_16 -> QuantizedMeshGeometry.quantize(geometry, 16);
+            case QUANTIZED_21 -> QuantizedMeshGeometry.quantize(geometry, 21);
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package math.geometry.objects.sdf;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.AABB;
+import stuff.Material;
+
+/**
+ * Repeats an SDF object a limited number of times along each axis.
+ *
+ * <p>The copies are laid out centered around the origin of the local space. Since the
+ * lattice is finite, the object publishes bounds covering all copies, which lets the
+ * sphere tracer skip rays that miss the whole field.</p>
+ */
+public class BoundedRepetitionObject extends RepetitionObject {
+
+    private final int countX, countY, countZ;
+
+    /**
+     * Constructs a bounded repetition with identity transform.
+     *
+     * @param child    The SDF object to repeat.
+     * @param spacing  Distance between neighbouring copies along each axis.
+     * @param countX   Number of copies along the x-axis (at least 1).
+     * @param countY   Number of copies along the y-axis (at least 1).
+     * @param countZ   Number of copies along the z-axis (at least 1).
+     * @param material The material of the resulting shape.
+     */
+    public BoundedRepetitionObject(SDFObject child, Vec3 spacing, int countX, int countY, int countZ, Material material) {
+        this(child, spacing, countX, countY, countZ, material, new Mat4());
+    }
+
+    /**
+     * Constructs a bounded repetition with a given transform.
+     *
+     * @param child     The SDF object to repeat.
+     * @param spacing   Distance between neighbouring copies along each axis.
+     * @param countX    Number of copies along the x-axis (at least 1).
+     * @param countY    Number of copies along the y-axis (at least 1).
+     * @param countZ    Number of copies along the z-axis (at least 1).
+     * @param material  The material of the resulting shape.
+     * @param transform Transformation matrix applied to the whole lattice.
+     */
+    public BoundedRepetitionObject(SDFObject child, Vec3 spacing, int countX, int countY, int countZ, Material material, Mat4 transform) {
+        super(child, spacing, material, transform);
+        if (countX < 1 || countY < 1 || countZ < 1) {
+            throw new IllegalArgumentException("Repetition counts must be at least 1!");
+        }
+        this.countX = countX;
+        this.countY = countY;
+        this.countZ = countZ;
+    }
+
+    /**
+     * Folds the point into the nearest cell, clamping the cell index to the lattice.
+     *
+     * @param p The query point in local coordinates.
+     * @return The corresponding point relative to the nearest copy.
+     */
+    @Override
+    protected Vec3 repeat(Vec3 p) {
+        return new Vec3(
+                foldClamped(p.getX(), spacing.getX(), countX),
+                foldClamped(p.getY(), spacing.getY(), countY),
+                foldClamped(p.getZ(), spacing.getZ(), countZ));
+    }
+
+    /**
+     * Returns the child bounds extended over all copies of the lattice.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        AABB childBounds = child.getBounds();
+        Vec3 halfExtent = new Vec3(
+                halfExtent(spacing.getX(), countX),
+                halfExtent(spacing.getY(), countY),
+                halfExtent(spacing.getZ(), countZ));
+        return new AABB(childBounds.min().subtract(halfExtent), childBounds.max().add(halfExtent));
+    }
+
+    /**
+     * Returns a new repetition with the transformation composed onto the current one.
+     *
+     * @param transformationMatrix Transformation to apply.
+     * @return Transformed BoundedRepetitionObject.
+     */
+    @Override
+    public SDFObject transform(Mat4 transformationMatrix) {
+        Mat4 newTransform = transformationMatrix.multiply(this.transform);
+        return new BoundedRepetitionObject(child, spacing, countX, countY, countZ, getMaterial(), newTransform);
+    }
+
+    private static float halfExtent(float size, int count) {
+        return size * (count - 1) * 0.5f;
+    }
+
+    private static float foldClamped(float value, float size, int count) {
+        if (size <= 0f || count == 1) return value;
+        float shifted = value + halfExtent(size, count);
+        float index = Math.max(0f, Math.min(count - 1, cellIndex(shifted, size)));
+        return shifted - size * index;
+    }
+}
@@ -0,0 +1,68 @@
+package math.geometry.objects.sdf;
+
+import math.Mat4;
+import math.Vec3;
+import stuff.Material;
+
+/**
+ * Repeats an SDF object infinitely on a regular lattice.
+ *
+ * <p>The lattice is centered at the origin of the local space, with one copy of the child
+ * at every multiple of the spacing. Axes with a spacing of 0 are not repeated.</p>
+ */
+public class InfiniteRepetitionObject extends RepetitionObject {
+
+    /**
+     * Constructs an infinite repetition with identity transform.
+     *
+     * @param child    The SDF object to repeat.
+     * @param spacing  Cell size along each axis; 0 disables repetition along that axis.
+     * @param material The material of the resulting shape.
+     */
+    public InfiniteRepetitionObject(SDFObject child, Vec3 spacing, Material material) {
+        super(child, spacing, material, new Mat4());
+    }
+
+    /**
+     * Constructs an infinite repetition with a given transform.
+     *
+     * @param child     The SDF object to repeat.
+     * @param spacing   Cell size along each axis; 0 disables repetition along that axis.
+     * @param material  The material of the resulting shape.
+     * @param transform Transformation matrix applied to the whole lattice.
+     */
+    public InfiniteRepetitionObject(SDFObject child, Vec3 spacing, Material material, Mat4 transform) {
+        super(child, spacing, material, transform);
+    }
+
+    /**
+     * Folds the point into the cell around the origin: p - s * round(p / s).
+     *
+     * @param p The query point in local coordinates.
+     * @return The corresponding point in the central cell.
+     */
+    @Override
+    protected Vec3 repeat(Vec3 p) {
+        return new Vec3(
+                fold(p.getX(), spacing.getX()),
+                fold(p.getY(), spacing.getY()),
+                fold(p.getZ(), spacing.getZ()));
+    }
+
+    /**
+     * Returns a new repetition with the transformation composed onto the current one.
+     *
+     * @param transformationMatrix Transformation to apply.
+     * @return Transformed InfiniteRepetitionObject.
+     */
+    @Override
+    public SDFObject transform(Mat4 transformationMatrix) {
+        Mat4 newTransform = transformationMatrix.multiply(this.transform);
+        return new InfiniteRepetitionObject(child, spacing, getMaterial(), newTransform);
+    }
+
+    private static float fold(float value, float size) {
+        if (size <= 0f) return value;
+        return value - size * cellIndex(value, size);
+    }
+}
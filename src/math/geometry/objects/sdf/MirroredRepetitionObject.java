@@ -0,0 +1,70 @@
+package math.geometry.objects.sdf;
+
+import math.Mat4;
+import math.Vec3;
+import stuff.Material;
+
+/**
+ * Repeats an SDF object infinitely, mirroring every other cell.
+ *
+ * <p>Neighbouring copies are reflections of each other, so shapes that are not symmetric
+ * still meet seamlessly at the cell borders. Axes with a spacing of 0 are not repeated.</p>
+ */
+public class MirroredRepetitionObject extends RepetitionObject {
+
+    /**
+     * Constructs a mirrored repetition with identity transform.
+     *
+     * @param child    The SDF object to repeat.
+     * @param spacing  Cell size along each axis; 0 disables repetition along that axis.
+     * @param material The material of the resulting shape.
+     */
+    public MirroredRepetitionObject(SDFObject child, Vec3 spacing, Material material) {
+        super(child, spacing, material, new Mat4());
+    }
+
+    /**
+     * Constructs a mirrored repetition with a given transform.
+     *
+     * @param child     The SDF object to repeat.
+     * @param spacing   Cell size along each axis; 0 disables repetition along that axis.
+     * @param material  The material of the resulting shape.
+     * @param transform Transformation matrix applied to the whole lattice.
+     */
+    public MirroredRepetitionObject(SDFObject child, Vec3 spacing, Material material, Mat4 transform) {
+        super(child, spacing, material, transform);
+    }
+
+    /**
+     * Folds the point into the central cell and flips the axes of odd cells.
+     *
+     * @param p The query point in local coordinates.
+     * @return The corresponding point in the central cell.
+     */
+    @Override
+    protected Vec3 repeat(Vec3 p) {
+        return new Vec3(
+                mirror(p.getX(), spacing.getX()),
+                mirror(p.getY(), spacing.getY()),
+                mirror(p.getZ(), spacing.getZ()));
+    }
+
+    /**
+     * Returns a new repetition with the transformation composed onto the current one.
+     *
+     * @param transformationMatrix Transformation to apply.
+     * @return Transformed MirroredRepetitionObject.
+     */
+    @Override
+    public SDFObject transform(Mat4 transformationMatrix) {
+        Mat4 newTransform = transformationMatrix.multiply(this.transform);
+        return new MirroredRepetitionObject(child, spacing, getMaterial(), newTransform);
+    }
+
+    private static float mirror(float value, float size) {
+        if (size <= 0f) return value;
+        float index = cellIndex(value, size);
+        float local = value - size * index;
+        return (Math.abs(index) % 2f == 1f) ? -local : local;
+    }
+}
@@ -0,0 +1,66 @@
+package math.geometry.objects.sdf;
+
+import math.Mat4;
+import math.Vec3;
+import stuff.Material;
+
+/**
+ * Abstract base class for domain repetition of a Signed Distance Function (SDF) object.
+ *
+ * <p>Instead of instantiating many copies of a shape, the query point is folded into a
+ * single cell of a regular lattice before the child distance is evaluated. Any number of
+ * copies therefore costs about as much as evaluating the child once.</p>
+ *
+ * <p>The child is evaluated in its own local space, so it should be placed around the
+ * origin and fit inside one cell; otherwise the distance estimate is no longer conservative.</p>
+ */
+public abstract class RepetitionObject extends SDFObject {
+
+    protected final SDFObject child;
+    protected final Vec3 spacing;
+
+    /**
+     * Constructs a repetition of the child with the given cell spacing.
+     *
+     * @param child     The SDF object to repeat.
+     * @param spacing   Cell size along each axis; 0 disables repetition along that axis.
+     * @param material  The material of the resulting shape.
+     * @param transform Transformation matrix applied to the whole lattice.
+     */
+    protected RepetitionObject(SDFObject child, Vec3 spacing, Material material, Mat4 transform) {
+        super(material, transform);
+        this.child = child;
+        this.spacing = spacing;
+    }
+
+    /**
+     * Maps a point in local space into the representative cell of the lattice.
+     *
+     * @param p The query point in local coordinates.
+     * @return The corresponding point within the representative cell.
+     */
+    protected abstract Vec3 repeat(Vec3 p);
+
+    /**
+     * Estimates the signed distance by folding the point into one cell and evaluating the child.
+     *
+     * @param p The query point in local coordinates.
+     * @return Estimated signed distance to the nearest copy.
+     */
+    @Override
+    public float estimateDistance(Vec3 p) {
+        Vec3 cellPoint = repeat(p);
+        return child.estimateDistance(child.inverseTransform.multiply(cellPoint, 1));
+    }
+
+    /**
+     * Returns the index of the cell containing the coordinate along one axis.
+     *
+     * @param value Coordinate along the axis.
+     * @param size  Cell size along the axis.
+     * @return Index of the nearest cell center.
+     */
+    protected static float cellIndex(float value, float size) {
+        return (float) Math.floor(value / size + 0.5f);
+    }
+}
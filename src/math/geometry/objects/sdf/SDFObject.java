@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import math.geometry.Intersection;
 import math.geometry.Ray;
 import math.geometry.objects.SceneObject;
@@ -66,11 +67,20 @@ public abstract class SDFObject extends SceneObject {
         Ray localRay = ray.transform(inverseTransform);
 
         float t = 0f;
-        final float maxDistance = 100f;
+        float maxDistance = 100f;
         final float epsilon = 1e-4f;
         final int maxSteps = 512;
 
-        float prevT = 0f;
+        // Restrict marching to the part of the ray inside the local bounds
+        AABB localBounds = getLocalBounds();
+        if (localBounds.isBounded()) {
+            float[] span = localBounds.intersect(localRay);
+            if (span == null || span[1] < 0f) return intersections;
+            t = Math.max(0f, span[0]);
+            maxDistance = Math.min(maxDistance, span[1] + 10 * epsilon);
+        }
+
+        float prevT = t;
         Vec3 prevPoint = localRay.getPoint(prevT);
         float prevDist = estimateDistance(prevPoint);
 
@@ -130,6 +140,63 @@ public abstract class SDFObject extends SceneObject {
         return intersections;
     }
 
+    /**
+     * Estimates the visibility of a spherical light along a shadow ray with a single march.
+     *
+     * Uses the min-ratio penumbra estimate (Quílez): while sphere tracing towards the light,
+     * the closest approach {@code h} at distance {@code t} is compared against the cone
+     * spanned by the light radius. The smallest ratio along the ray determines how much
+     * of the light is covered, which yields a noise-free penumbra at the cost of one ray.
+     *
+     * @param ray         The shadow ray in world space, starting at the shaded point.
+     * @param maxDistance The world-space distance to the light center.
+     * @param lightRadius The radius of the light source; 0 produces a hard shadow.
+     * @return Visibility between 0 (fully occluded) and 1 (fully lit). If the march runs out of steps
+     *         before reaching the light, an exact occlusion test decides instead of the partial estimate.
+     */
+    public float softShadow(Ray ray, float maxDistance, float lightRadius) {
+        Ray localRay = ray.transform(inverseTransform);
+        Vec3 localEnd = inverseTransform.multiply(ray.getPoint(maxDistance), 1);
+        float localMaxDistance = localEnd.subtract(localRay.p()).getLength();
+
+        final float epsilon = 1e-4f;
+        final int maxSteps = 512;
+
+        // Ratio of light radius to light distance is invariant under the local transform's uniform scale
+        float coneSlope = lightRadius / maxDistance;
+
+        // Only the part of the ray within the widest cone radius of the bounds can darken the light;
+        // rays passing them entirely are fully lit
+        float t = 10 * epsilon;
+        float end = localMaxDistance;
+        AABB localBounds = getLocalBounds();
+        if (localBounds.isBounded()) {
+            float[] span = localBounds.expand(coneSlope * localMaxDistance).intersect(localRay);
+            if (span == null || span[1] < t || span[0] > localMaxDistance) return 1f;
+            t = Math.max(t, span[0]);
+            end = Math.min(end, span[1]);
+        }
+        float visibility = 1f;
+
+        for (int i = 0; i < maxSteps && t < end; i++) {
+            float h = estimateDistance(localRay.getPoint(t));
+            if (h < epsilon) return 0f;
+
+            if (coneSlope > 0f) {
+                visibility = Math.min(visibility, h / (coneSlope * t));
+            }
+
+            t += Math.max(h, epsilon) * 0.2f;
+        }
+
+        // Out of steps before reaching the light, e.g. grazing thin geometry: the partial estimate could
+        // leak light, so let the exact occlusion test decide whether the light is blocked
+        if (t < end && isOccluding(ray, maxDistance)) return 0f;
+
+        visibility = Math.max(0f, Math.min(1f, visibility));
+        return visibility * visibility * (3f - 2f * visibility);
+    }
+
     /**
      * Calculates the surface normal at a given point on the object surface.
      *
@@ -165,6 +232,28 @@ public abstract class SDFObject extends SceneObject {
     }
 
 
+    /**
+     * Returns a box enclosing the surface in local object space.
+     *
+     * Subclasses with a finite shape override this to enable bounds culling;
+     * the default is unbounded.
+     *
+     * @return Local bounding box of the object.
+     */
+    protected AABB getLocalBounds() {
+        return AABB.INFINITE;
+    }
+
+    /**
+     * Returns the local bounds transformed into world space.
+     *
+     * @return World-space bounding box of the object.
+     */
+    @Override
+    public AABB getBounds() {
+        return getLocalBounds().transform(transform);
+    }
+
     /**
      * Returns a new instance of this object transformed by the given matrix.
      *
@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import stuff.Material;
 
 /**
@@ -68,6 +69,16 @@ public class SmoothDifferenceObject extends SDFObject {
         return smoothMax(dA, -dB, smoothness);
     }
 
+    /**
+     * Returns the bounds of the minuend; subtracting can only shrink the shape.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        return objA.getBounds();
+    }
+
     /**
      * Returns a new transformed instance of this smooth difference object.
      *
@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import stuff.Material;
 
 /**
@@ -68,6 +69,16 @@ public class SmoothIntersectionObject extends SDFObject {
         return smoothMax(dA, dB, smoothness);
     }
 
+    /**
+     * Returns the overlap of both child bounds; the smooth maximum only shrinks the shape.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        return objA.getBounds().intersection(objB.getBounds());
+    }
+
     /**
      * Returns a new transformed instance of this smooth intersection object.
      *
@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import stuff.Material;
 
 /**
@@ -68,6 +69,17 @@ public class SmoothUnionObject extends SDFObject {
         return smoothMin(dA, dB, smoothness);
     }
 
+    /**
+     * Returns the union of both child bounds, grown by the maximum amount
+     * the smooth minimum can pull the surface outwards.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        return objA.getBounds().union(objB.getBounds()).expand(smoothness * 0.25f);
+    }
+
     /**
      * Returns a new transformed instance of this smooth union object.
      *
@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import stuff.Material;
 
 /**
@@ -75,6 +76,16 @@ public class SuperEllipsoid extends SDFObject {
         return (float) (value - 1.0);
     }
 
+    /**
+     * Returns the local bounds of the superellipsoid given by its radii.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        return new AABB(new Vec3(-a1, -a2, -a3), new Vec3(a1, a2, a3));
+    }
+
     /**
      * Returns a new SuperEllipsoid transformed by the given matrix.
      * The new transform is composed by multiplying the given matrix with the current transform.
@@ -2,6 +2,7 @@ package math.geometry.objects.sdf;
 
 import math.Mat4;
 import math.Vec3;
+import math.geometry.AABB;
 import stuff.Material;
 
 /**
@@ -61,6 +62,17 @@ public class Torus extends SDFObject {
         return (float) Math.sqrt(qx * qx + qy * qy) - minorRadius;
     }
 
+    /**
+     * Returns the local bounds of the torus: the tube swept around the Y axis.
+     *
+     * @return Local bounding box.
+     */
+    @Override
+    protected AABB getLocalBounds() {
+        float outer = majorRadius + minorRadius;
+        return new AABB(new Vec3(-outer, -minorRadius, -outer), new Vec3(outer, minorRadius, outer));
+    }
+
     /**
      * Returns a new Torus transformed by the given matrix.
      * The new transform is composed by multiplying the given matrix with the current transform.
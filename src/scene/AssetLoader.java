@@ -0,0 +1,201 @@
+package scene;
+
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.objects.MeshObject;
+import math.geometry.objects.SceneObject;
+import math.geometry.objects.mesh.GlbLoader;
+import math.geometry.objects.mesh.MeshCache;
+import math.geometry.objects.mesh.ObjParser;
+import math.geometry.objects.mesh.PagedMesh;
+import math.geometry.objects.mesh.VertexFormat;
+import stuff.Material;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads scene assets concurrently during scene setup.
+ *
+ * <p>Every asset is read and decoded as its own task on a virtual thread, so file reads and
+ * image decoding overlap instead of running one after another. CPU-heavy follow-up work, such
+ * as building the acceleration structure of a parsed mesh, is chained onto the common
+ * fork/join pool as soon as that asset has arrived, while the remaining assets are still loading.
+ * All methods return immediately; {@link #await(CompletableFuture)} waits for a result.</p>
+ *
+ * <pre>{@code
+ * try (AssetLoader assets = new AssetLoader()) {
+ *     CompletableFuture<CubeMap> skybox = assets.loadSkybox(new File("src/scene/environment"));
+ *     CompletableFuture<MeshObject> duck = assets.loadMesh(new File("duck.obj"), material, AcceleratorType.SAH_BVH);
+ *     ...
+ *     CubeMap cubeMap = assets.await(skybox);
+ * }
+ * }</pre>
+ */
+public class AssetLoader implements AutoCloseable {
+
+    private static final String[] SKYBOX_FACES = {"posx", "negx", "posy", "negy", "posz", "negz"};
+
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Reads and decodes an image.
+     *
+     * @param file The image file, in any format supported by {@link ImageIO}.
+     * @return The decoded image; completes exceptionally with an {@link IOException} if reading fails.
+     */
+    public CompletableFuture<BufferedImage> loadImage(File file) {
+        return submit(file, () -> {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) throw new IOException("No image reader for " + file);
+            return image;
+        });
+    }
+
+    /**
+     * Decodes the six faces of a skybox in parallel and assembles them into a cube map.
+     *
+     * @param directory Directory containing {@code posx.jpg}, {@code negx.jpg}, {@code posy.jpg},
+     *                  {@code negy.jpg}, {@code posz.jpg} and {@code negz.jpg}.
+     * @return The cube map, assembled on the fork/join pool once all faces are decoded.
+     */
+    public CompletableFuture<CubeMap> loadSkybox(File directory) {
+        List<CompletableFuture<BufferedImage>> faces = new ArrayList<>();
+        for (String face : SKYBOX_FACES) {
+            faces.add(loadImage(new File(directory, face + ".jpg")));
+        }
+        return CompletableFuture.allOf(faces.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> new CubeMap(faces.get(0).join(), faces.get(1).join(), faces.get(2).join(),
+                        faces.get(3).join(), faces.get(4).join(), faces.get(5).join()), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses an OBJ file and builds its acceleration structure once parsing has finished.
+     *
+     * @param file            The OBJ file.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure to build over the triangles.
+     * @return The mesh; the structure is built on the fork/join pool while other assets keep loading.
+     */
+    public CompletableFuture<MeshObject> loadMesh(File file, Material material, AcceleratorType acceleratorType) {
+        return submit(file, () -> ObjParser.parse(file))
+                .thenApplyAsync(geometry -> new MeshObject(geometry, material, acceleratorType, VertexFormat.FLOAT),
+                        ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads a mesh through a {@link MeshCache}, reading the baked geometry and hierarchy if present
+     * and parsing, building and storing them otherwise.
+     *
+     * @param file            The OBJ file.
+     * @param material        The material to apply to all triangles in the mesh.
+     * @param acceleratorType The acceleration structure of the mesh.
+     * @param vertexFormat    Storage format of the vertices.
+     * @param cache           The cache holding the baked data.
+     * @return The mesh.
+     */
+    public CompletableFuture<MeshObject> loadMesh(File file, Material material, AcceleratorType acceleratorType,
+                                                  VertexFormat vertexFormat, MeshCache cache) {
+        return submit(file, () -> new MeshObject(file, material, acceleratorType, vertexFormat, cache));
+    }
+
+    /**
+     * Maps a baked {@link PagedMesh} file.
+     *
+     * @param file     The paged mesh file.
+     * @param material The material to apply to all triangles in the mesh.
+     * @return The mesh reading its geometry and hierarchy from the mapped file.
+     */
+    public CompletableFuture<MeshObject> loadPagedMesh(File file, Material material) {
+        return submit(file, () -> PagedMesh.open(file, material));
+    }
+
+    /**
+     * Loads the default scene of a binary glTF file.
+     *
+     * @param file            The {@code .glb} file.
+     * @param acceleratorType The acceleration structure to build over each mesh.
+     * @return The placed objects of the scene.
+     */
+    public CompletableFuture<List<SceneObject>> loadGlb(File file, AcceleratorType acceleratorType) {
+        return submit(file, () -> GlbLoader.load(file, acceleratorType));
+    }
+
+    /**
+     * Waits for an asset.
+     *
+     * @param asset The pending asset.
+     * @param <T>   Type of the asset.
+     * @return The loaded asset.
+     * @throws IOException If the asset could not be read.
+     */
+    public <T> T await(CompletableFuture<T> asset) throws IOException {
+        try {
+            return asset.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) throw unchecked.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for several assets.
+     *
+     * @param assets The pending assets.
+     * @param <T>    Type of the assets.
+     * @return The loaded assets, in the given order.
+     * @throws IOException If any asset could not be read.
+     */
+    public <T> List<T> awaitAll(List<CompletableFuture<T>> assets) throws IOException {
+        List<T> loaded = new ArrayList<>(assets.size());
+        for (CompletableFuture<T> asset : assets) {
+            loaded.add(await(asset));
+        }
+        return loaded;
+    }
+
+    /**
+     * Stops accepting new assets and waits for the running load tasks to finish.
+     */
+    @Override
+    public void close() {
+        io.close();
+    }
+
+    /**
+     * Task that may throw an {@link IOException}.
+     */
+    @FunctionalInterface
+    private interface IOTask<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Runs a task on a virtual thread, logging when it finishes. An {@link IOException} is
+     * wrapped so that {@link #await(CompletableFuture)} can rethrow it.
+     */
+    private <T> CompletableFuture<T> submit(File file, IOTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                T asset = task.call();
+                System.out.printf("Loaded %s after %.2f seconds%n", file.getName(), (System.nanoTime() - startTime) / 1e9);
+                return asset;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, io);
+    }
+}
@@ -1,24 +1,64 @@
 package scene;
 
+import math.AliasTable;
 import math.Vec3;
 import stuff.Color;
 
 import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
 
 /**
  * Represents a cubemap texture consisting of six faces.
- * Each face is a {@link BufferedImage} representing one side of the cube.
  * The faces are stored in the order: +X, -X, +Y, -Y, +Z, -Z.
  *
- * This class provides functionality to sample a color from the cubemap
- * given a 3D direction vector.
+ * The faces are decoded once from sRGB into linear RGB floats, packed three per texel
+ * in row-major order, and sampled with bilinear filtering. In addition to a box-filtered
+ * mip chain, the cube map holds {@value #ROUGHNESS_LEVELS} levels prefiltered with the GGX
+ * distribution for increasing roughness (the radiance part of the split-sum approximation),
+ * so a glossy reflection of the environment is a single lookup with {@link #sample(Vec3, float)}.
+ *
+ * For next-event estimation, {@link #sampleDirection} draws directions proportional to the
+ * luminance of a low-resolution mip: an alias table picks a face by its total power, a second
+ * alias table per face picks a texel, and the direction is jittered uniformly inside the texel.
+ * {@link #pdf(Vec3)} returns the matching solid-angle density for multiple importance sampling.
+ * The same mip is projected onto spherical harmonics for constant-time diffuse irradiance,
+ * see {@link #getIrradiance()}.
  */
 public class CubeMap {
 
-    private final BufferedImage[] faces;
+    /** Number of prefiltered levels, for roughness 0, 0.2, ..., 1. */
+    public static final int ROUGHNESS_LEVELS = 6;
+
+    /** Edge length of the first prefiltered level; each further level halves it. */
+    private static final int PREFILTERED_SIZE = 128;
+
+    /** GGX samples per prefiltered texel. */
+    private static final int PREFILTER_SAMPLES = 64;
+
+    /** Maximum edge length of the mip level the sampling distribution is built from. */
+    private static final int DISTRIBUTION_SIZE = 64;
+
+    /**
+     * A direction drawn from the environment distribution.
+     *
+     * @param direction Normalized direction towards the environment.
+     * @param pdf       Density of the direction with respect to solid angle.
+     */
+    public record DirectionSample(Vec3 direction, float pdf) {
+    }
+
+    private final float[][][] mips;          // [level][face][3 * (y * size + x)], box-filtered
+    private final int[] mipSizes;
+    private final float[][][] prefiltered;   // [roughness level][face][...], level 0 shares mip 0
+    private final int[] prefilteredSizes;
+    private final int distributionSize;
+    private final AliasTable faceTable;
+    private final AliasTable[] texelTables;
+    private final IrradianceSH irradiance;
 
     /**
      * Constructs a CubeMap from six BufferedImages representing the faces.
+     * All faces must be square and of the same size.
      *
      * @param posX Image for the positive X face
      * @param negX Image for the negative X face
@@ -26,90 +66,334 @@ public class CubeMap {
      * @param negY Image for the negative Y face
      * @param posZ Image for the positive Z face
      * @param negZ Image for the negative Z face
+     * @throws IllegalArgumentException if the faces are not square or differ in size
      */
     public CubeMap(BufferedImage posX, BufferedImage negX,
                    BufferedImage posY, BufferedImage negY,
                    BufferedImage posZ, BufferedImage negZ) {
-        this.faces = new BufferedImage[]{posX, negX, posY, negY, posZ, negZ};
+        BufferedImage[] faces = {posX, negX, posY, negY, posZ, negZ};
+        int size = posX.getWidth();
+        for (BufferedImage face : faces) {
+            if (face.getWidth() != size || face.getHeight() != size) {
+                throw new IllegalArgumentException("Cube map faces must be square and of equal size");
+            }
+        }
+
+        // sRGB to linear with the same gamma that Color.toHex applies on output
+        float[] toLinear = new float[256];
+        for (int i = 0; i < 256; i++) {
+            toLinear[i] = (float) Math.pow(i / 255.0, 2.2);
+        }
+
+        int levels = 32 - Integer.numberOfLeadingZeros(size);
+        mips = new float[levels][6][];
+        mipSizes = new int[levels];
+        mipSizes[0] = size;
+        for (int f = 0; f < 6; f++) {
+            int[] rgb = faces[f].getRGB(0, 0, size, size, null, 0, size);
+            float[] texels = new float[3 * rgb.length];
+            for (int i = 0; i < rgb.length; i++) {
+                texels[3 * i] = toLinear[(rgb[i] >> 16) & 0xFF];
+                texels[3 * i + 1] = toLinear[(rgb[i] >> 8) & 0xFF];
+                texels[3 * i + 2] = toLinear[rgb[i] & 0xFF];
+            }
+            mips[0][f] = texels;
+        }
+        for (int level = 1; level < levels; level++) {
+            mipSizes[level] = Math.max(1, mipSizes[level - 1] / 2);
+            for (int f = 0; f < 6; f++) {
+                mips[level][f] = downsample(mips[level - 1][f], mipSizes[level - 1], mipSizes[level]);
+            }
+        }
+
+        // Luminance times the solid angle of each texel, so bright and large texels are drawn more often
+        int distributionLevel = 0;
+        while (mipSizes[distributionLevel] > DISTRIBUTION_SIZE) distributionLevel++;
+        distributionSize = mipSizes[distributionLevel];
+        texelTables = new AliasTable[6];
+        float[] facePower = new float[6];
+        for (int f = 0; f < 6; f++) {
+            float[] texels = mips[distributionLevel][f];
+            float[] weights = new float[distributionSize * distributionSize];
+            for (int i = 0; i < weights.length; i++) {
+                float luminance = 0.2126f * texels[3 * i] + 0.7152f * texels[3 * i + 1] + 0.0722f * texels[3 * i + 2];
+                float a = 2f * (i % distributionSize + 0.5f) / distributionSize - 1f;
+                float b = 2f * (i / distributionSize + 0.5f) / distributionSize - 1f;
+                // Small floor keeps every direction samplable, which MIS relies on
+                weights[i] = (luminance + 1e-3f) / (float) Math.pow(1f + a * a + b * b, 1.5);
+            }
+            texelTables[f] = new AliasTable(weights);
+            facePower[f] = (float) texelTables[f].getTotal();
+        }
+        faceTable = new AliasTable(facePower);
+        irradiance = IrradianceSH.project(mips[distributionLevel], distributionSize);
+
+        prefiltered = new float[ROUGHNESS_LEVELS][6][];
+        prefilteredSizes = new int[ROUGHNESS_LEVELS];
+        prefiltered[0] = mips[0];
+        prefilteredSizes[0] = size;
+        for (int level = 1; level < ROUGHNESS_LEVELS; level++) {
+            int levelSize = Math.max(1, Math.min(size >> level, PREFILTERED_SIZE >> (level - 1)));
+            float roughness = level / (float) (ROUGHNESS_LEVELS - 1);
+            prefilteredSizes[level] = levelSize;
+            for (int f = 0; f < 6; f++) {
+                prefiltered[level][f] = prefilter(f, levelSize, roughness);
+            }
+        }
+    }
+
+    /**
+     * Averages 2x2 blocks of texels.
+     */
+    private static float[] downsample(float[] source, int sourceSize, int size) {
+        float[] result = new float[3 * size * size];
+        int step = sourceSize / size;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int c = 0; c < 3; c++) {
+                    float sum = 0f;
+                    for (int dy = 0; dy < step; dy++) {
+                        for (int dx = 0; dx < step; dx++) {
+                            sum += source[3 * ((y * step + dy) * sourceSize + x * step + dx) + c];
+                        }
+                    }
+                    result[3 * (y * size + x) + c] = sum / (step * step);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convolves the environment with the GGX lobe around each texel direction, assuming the view
+     * and reflection direction coincide with the normal (split-sum approximation). Samples are
+     * importance-sampled and read from the box-filtered mip whose texels cover the solid angle
+     * of a sample, which keeps the estimate smooth with few samples.
+     */
+    private float[] prefilter(int face, int size, float roughness) {
+        float[] result = new float[3 * size * size];
+        float alpha = roughness * roughness;
+        float a2 = alpha * alpha;
+        float texelSolidAngle = 4f * (float) Math.PI / (6f * mipSizes[0] * mipSizes[0]);
+        IntStream.range(0, size).parallel().forEach(y -> {
+            float[] color = new float[3];
+            float[] n = new float[3];
+            for (int x = 0; x < size; x++) {
+                direction(face, 2f * (x + 0.5f) / size - 1f, 2f * (y + 0.5f) / size - 1f, n);
+                // Tangent frame around the normal
+                float tx, ty, tz;
+                if (Math.abs(n[2]) < 0.999f) {
+                    tx = -n[1]; ty = n[0]; tz = 0f;              // up (0, 0, 1) x n
+                } else {
+                    tx = 0f; ty = -n[2]; tz = n[1];               // (1, 0, 0) x n
+                }
+                float tl = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+                tx /= tl; ty /= tl; tz /= tl;
+                float bx = n[1] * tz - n[2] * ty, by = n[2] * tx - n[0] * tz, bz = n[0] * ty - n[1] * tx;
+
+                float r = 0f, g = 0f, b = 0f, weight = 0f;
+                for (int i = 0; i < PREFILTER_SAMPLES; i++) {
+                    // Hammersley point mapped to a GGX-distributed half vector
+                    float u1 = (i + 0.5f) / PREFILTER_SAMPLES;
+                    float u2 = (Integer.reverse(i) & 0xFFFFFFFFL) * 0x1p-32f;
+                    float phi = 2f * (float) Math.PI * u1;
+                    float cosTheta = (float) Math.sqrt((1f - u2) / (1f + (a2 - 1f) * u2));
+                    float sinTheta = (float) Math.sqrt(1f - cosTheta * cosTheta);
+                    float hx = sinTheta * (float) Math.cos(phi), hy = sinTheta * (float) Math.sin(phi);
+                    float wx = tx * hx + bx * hy + n[0] * cosTheta;
+                    float wy = ty * hx + by * hy + n[1] * cosTheta;
+                    float wz = tz * hx + bz * hy + n[2] * cosTheta;
+
+                    // Reflect the normal (= view direction) about the half vector
+                    float nDotL = 2f * cosTheta * cosTheta - 1f;
+                    if (nDotL <= 0f) continue;
+                    float lx = 2f * cosTheta * wx - n[0], ly = 2f * cosTheta * wy - n[1], lz = 2f * cosTheta * wz - n[2];
+
+                    float d = cosTheta * cosTheta * (a2 - 1f) + 1f;
+                    float pdf = a2 / ((float) Math.PI * d * d) / 4f;   // D * nDotH / (4 vDotH) with n = v
+                    float sampleSolidAngle = 1f / (PREFILTER_SAMPLES * pdf + 1e-4f);
+                    float lod = roughness == 0f ? 0f
+                            : Math.max(0f, 0.5f * (float) (Math.log(sampleSolidAngle / texelSolidAngle) / Math.log(2)) + 1f);
+
+                    lookup(mips, mipSizes, lx, ly, lz, lod, color);
+                    r += color[0] * nDotL;
+                    g += color[1] * nDotL;
+                    b += color[2] * nDotL;
+                    weight += nDotL;
+                }
+                int at = 3 * (y * size + x);
+                result[at] = r / weight;
+                result[at + 1] = g / weight;
+                result[at + 2] = b / weight;
+            }
+        });
+        return result;
     }
 
     /**
      * Samples the cubemap with a given 3D direction vector.
-     * The direction vector is first normalized.
-     * The face to sample is chosen based on the major component of the vector.
-     * Then, the 2D coordinates (u, v) within that face are computed.
-     * The color at that pixel is retrieved and converted to a normalized {@link Color}.
+     * The direction vector does not have to be normalized.
+     * The face to sample is chosen based on the major component of the vector,
+     * and the color is bilinearly interpolated from the full-resolution face.
      *
      * @param dir The direction vector to sample (does not have to be normalized)
-     * @return The color sampled from the cubemap in the given direction
+     * @return The linear color sampled from the cubemap in the given direction
      */
     public Color sample(Vec3 dir) {
-        dir = dir.normalize();
-
-        float absX = Math.abs(dir.getX());
-        float absY = Math.abs(dir.getY());
-        float absZ = Math.abs(dir.getZ());
-
-        int faceIndex;  // Index of the CubeMap face to sample
-        float u, v;     // 2D coordinates on the selected face
-
-        // Determine which face is the major axis (the largest absolute component)
-        if (absX >= absY && absX >= absZ) {
-            // X-major axis
-            if (dir.getX() > 0) {
-                // Positive X face (+X)
-                faceIndex = 0;
-                u = -dir.getZ() / absX;
-                v = -dir.getY() / absX;
-            } else {
-                // Negative X face (-X)
-                faceIndex = 1;
-                u = dir.getZ() / absX;
-                v = -dir.getY() / absX;
-            }
-        } else if (absY >= absX && absY >= absZ) {
-            // Y-major axis
-            if (dir.getY() > 0) {
-                // Positive Y face (+Y)
-                faceIndex = 2;
-                u = dir.getX() / absY;
-                v = dir.getZ() / absY;
-            } else {
-                // Negative Y face (-Y)
-                faceIndex = 3;
-                u = dir.getX() / absY;
-                v = -dir.getZ() / absY;
-            }
-        } else {
-            // Z-major axis
-            if (dir.getZ() > 0) {
-                // Positive Z face (+Z)
-                faceIndex = 4;
-                u = dir.getX() / absZ;
-                v = -dir.getY() / absZ;
-            } else {
-                // Negative Z face (-Z)
-                faceIndex = 5;
-                u = -dir.getX() / absZ;
-                v = -dir.getY() / absZ;
-            }
-        }
+        float[] color = new float[3];
+        lookup(mips, mipSizes, dir.getX(), dir.getY(), dir.getZ(), 0f, color);
+        return new Color(color[0], color[1], color[2]);
+    }
 
-        // Convert range from [-1, 1] to [0, 1] for texture coordinate mapping
-        u = 0.5f * (u + 1.0f);
-        v = 0.5f * (v + 1.0f);
+    /**
+     * Samples the environment as reflected by a surface of the given roughness, i.e. the
+     * incoming radiance convolved with the GGX lobe around the reflection direction.
+     * Interpolates between the two nearest prefiltered levels.
+     *
+     * @param dir       The reflection direction (does not have to be normalized)
+     * @param roughness Surface roughness in [0, 1]
+     * @return The prefiltered linear color
+     */
+    public Color sample(Vec3 dir, float roughness) {
+        float[] color = new float[3];
+        float level = Math.max(0f, Math.min(1f, roughness)) * (ROUGHNESS_LEVELS - 1);
+        lookup(prefiltered, prefilteredSizes, dir.getX(), dir.getY(), dir.getZ(), level, color);
+        return new Color(color[0], color[1], color[2]);
+    }
+
+    /**
+     * Returns the spherical-harmonic projection of the environment for diffuse lighting.
+     *
+     * @return The irradiance of the unoccluded environment
+     */
+    public IrradianceSH getIrradiance() {
+        return irradiance;
+    }
+
+    /**
+     * Draws a direction with a density roughly proportional to the radiance arriving from it.
+     *
+     * @param u1 Uniform random number in [0, 1) choosing the face.
+     * @param u2 Uniform random number in [0, 1) choosing the texel.
+     * @param u3 Uniform random number in [0, 1) for the horizontal position inside the texel.
+     * @param u4 Uniform random number in [0, 1) for the vertical position inside the texel.
+     * @return The direction and its solid-angle density.
+     */
+    public DirectionSample sampleDirection(float u1, float u2, float u3, float u4) {
+        int face = faceTable.sample(u1);
+        int texel = texelTables[face].sample(u2);
+        float a = 2f * (texel % distributionSize + u3) / distributionSize - 1f;
+        float b = 2f * (texel / distributionSize + u4) / distributionSize - 1f;
+        float[] d = new float[3];
+        direction(face, a, b, d);
+        return new DirectionSample(new Vec3(d[0], d[1], d[2]), pdf(face, texel, a, b));
+    }
+
+    /**
+     * Returns the density with which {@link #sampleDirection} draws a direction.
+     *
+     * @param dir The direction (does not have to be normalized)
+     * @return Density with respect to solid angle
+     */
+    public float pdf(Vec3 dir) {
+        float[] uv = new float[2];
+        int face = project(dir.getX(), dir.getY(), dir.getZ(), uv);
+        int x = Math.min((int) (uv[0] * distributionSize), distributionSize - 1);
+        int y = Math.min((int) (uv[1] * distributionSize), distributionSize - 1);
+        return pdf(face, y * distributionSize + x, 2f * uv[0] - 1f, 2f * uv[1] - 1f);
+    }
 
-        BufferedImage face = faces[faceIndex];
+    /**
+     * Converts the probability of a texel into a solid-angle density at face coordinates
+     * {@code a, b} in [-1, 1], where {@code dω = da db / (1 + a² + b²)^(3/2)}.
+     */
+    private float pdf(int face, int texel, float a, float b) {
+        float probability = faceTable.getProbability(face) * texelTables[face].getProbability(texel);
+        float texelArea = 4f / (distributionSize * distributionSize);
+        return probability / texelArea * (float) Math.pow(1f + a * a + b * b, 1.5);
+    }
 
-        int px = Math.min((int)(u * face.getWidth()), face.getWidth() - 1);
-        int py = Math.min((int)(v * face.getHeight()), face.getHeight() - 1);
+    /**
+     * Trilinear lookup: bilinear samples of the two levels around {@code level}, blended linearly.
+     */
+    private static void lookup(float[][][] levels, int[] sizes, float x, float y, float z, float level, float[] out) {
+        int lower = Math.min((int) level, levels.length - 1);
+        int upper = Math.min(lower + 1, levels.length - 1);
+        float blend = upper == lower ? 0f : level - lower;
 
-        int rgb = face.getRGB(px, py);
+        float[] uv = new float[2];
+        int face = project(x, y, z, uv);
+        bilinear(levels[lower][face], sizes[lower], uv[0], uv[1], out, 1f - blend, false);
+        if (blend > 0f) {
+            bilinear(levels[upper][face], sizes[upper], uv[0], uv[1], out, blend, true);
+        }
+    }
+
+    /**
+     * Finds the face a direction points at, chosen by its major component, and the
+     * texture coordinates in [0, 1] on that face.
+     *
+     * @return Index of the face.
+     */
+    private static int project(float x, float y, float z, float[] uv) {
+        float ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+        int face;
+        float u, v;
+        if (ax >= ay && ax >= az) {
+            face = x > 0 ? 0 : 1;
+            u = (x > 0 ? -z : z) / ax;
+            v = -y / ax;
+        } else if (ay >= az) {
+            face = y > 0 ? 2 : 3;
+            u = x / ay;
+            v = (y > 0 ? z : -z) / ay;
+        } else {
+            face = z > 0 ? 4 : 5;
+            u = (z > 0 ? x : -x) / az;
+            v = -y / az;
+        }
+        // Convert range from [-1, 1] to [0, 1] for texture coordinate mapping
+        uv[0] = 0.5f * (u + 1f);
+        uv[1] = 0.5f * (v + 1f);
+        return face;
+    }
 
-        float r = ((rgb >> 16) & 0xFF) / 255.0f;
-        float g = ((rgb >> 8) & 0xFF) / 255.0f;
-        float b = (rgb & 0xFF) / 255.0f;
+    /**
+     * Bilinear interpolation between texel centers, clamped at the face edges.
+     */
+    private static void bilinear(float[] texels, int size, float u, float v, float[] out, float weight, boolean accumulate) {
+        float fx = Math.max(0f, Math.min(size - 1f, u * size - 0.5f));
+        float fy = Math.max(0f, Math.min(size - 1f, v * size - 0.5f));
+        int x0 = (int) fx, y0 = (int) fy;
+        int x1 = Math.min(x0 + 1, size - 1), y1 = Math.min(y0 + 1, size - 1);
+        float sx = fx - x0, sy = fy - y0;
+        int i00 = 3 * (y0 * size + x0), i10 = 3 * (y0 * size + x1);
+        int i01 = 3 * (y1 * size + x0), i11 = 3 * (y1 * size + x1);
+        for (int c = 0; c < 3; c++) {
+            float top = texels[i00 + c] + (texels[i10 + c] - texels[i00 + c]) * sx;
+            float bottom = texels[i01 + c] + (texels[i11 + c] - texels[i01 + c]) * sx;
+            float value = (top + (bottom - top) * sy) * weight;
+            out[c] = accumulate ? out[c] + value : value;
+        }
+    }
 
-        return new Color(r, g, b);
+    /**
+     * Inverse of the face mapping in {@link #lookup}: the normalized direction through face
+     * coordinates {@code u, v} in [-1, 1].
+     */
+    static void direction(int face, float u, float v, float[] out) {
+        float x, y, z;
+        switch (face) {
+            case 0 -> { x = 1f; y = -v; z = -u; }
+            case 1 -> { x = -1f; y = -v; z = u; }
+            case 2 -> { x = u; y = 1f; z = v; }
+            case 3 -> { x = u; y = -1f; z = -v; }
+            case 4 -> { x = u; y = -v; z = 1f; }
+            default -> { x = -u; y = -v; z = -1f; }
+        }
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        out[0] = x / length;
+        out[1] = y / length;
+        out[2] = z / length;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package scene;
+
+import math.Vec3;
+
+/**
+ * Diffuse irradiance of an environment, stored as its projection onto the nine real spherical
+ * harmonics of bands 0 to 2.
+ *
+ * <p>Irradiance is the environment convolved with the clamped cosine lobe, which is so smooth
+ * that the first three bands reproduce it to within a few percent (Ramamoorthi and Hanrahan,
+ * "An Efficient Representation for Irradiance Environment Maps"). After the one-time projection,
+ * {@link #getIrradiance(Vec3)} is a constant-time polynomial evaluation instead of a hemisphere
+ * of rays. Visibility is not included; the result is the unoccluded sky term.</p>
+ */
+public final class IrradianceSH {
+
+    // Cosine lobe convolution per band: pi, 2 pi / 3, pi / 4
+    private static final float A0 = (float) Math.PI, A1 = (float) (2.0 * Math.PI / 3.0), A2 = (float) (Math.PI / 4.0);
+
+    private final float[] coefficients;   // 9 RGB triples, already multiplied by the band's convolution factor
+
+    private IrradianceSH(float[] coefficients) {
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Projects the radiance of cube map faces onto the spherical harmonics.
+     *
+     * @param faces Linear RGB texels of the six faces, three floats per texel, in the order of {@link CubeMap}.
+     * @param size  Edge length of each face in texels.
+     * @return The irradiance representation.
+     */
+    static IrradianceSH project(float[][] faces, int size) {
+        double[] sums = new double[27];
+        float[] basis = new float[9];
+        float[] d = new float[3];
+        float texelArea = 4f / (size * size);
+        for (int f = 0; f < 6; f++) {
+            float[] texels = faces[f];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    float a = 2f * (x + 0.5f) / size - 1f, b = 2f * (y + 0.5f) / size - 1f;
+                    float solidAngle = texelArea / (float) Math.pow(1f + a * a + b * b, 1.5);
+                    CubeMap.direction(f, a, b, d);
+                    evaluateBasis(d[0], d[1], d[2], basis);
+                    int at = 3 * (y * size + x);
+                    for (int k = 0; k < 9; k++) {
+                        float weight = basis[k] * solidAngle;
+                        sums[3 * k] += texels[at] * weight;
+                        sums[3 * k + 1] += texels[at + 1] * weight;
+                        sums[3 * k + 2] += texels[at + 2] * weight;
+                    }
+                }
+            }
+        }
+        float[] coefficients = new float[27];
+        for (int k = 0; k < 9; k++) {
+            float band = k == 0 ? A0 : k < 4 ? A1 : A2;
+            for (int c = 0; c < 3; c++) {
+                coefficients[3 * k + c] = (float) sums[3 * k + c] * band;
+            }
+        }
+        return new IrradianceSH(coefficients);
+    }
+
+    /**
+     * Evaluates the real spherical harmonics of bands 0 to 2 for a unit direction.
+     */
+    private static void evaluateBasis(float x, float y, float z, float[] out) {
+        out[0] = 0.282095f;
+        out[1] = 0.488603f * y;
+        out[2] = 0.488603f * z;
+        out[3] = 0.488603f * x;
+        out[4] = 1.092548f * x * y;
+        out[5] = 1.092548f * y * z;
+        out[6] = 0.315392f * (3f * z * z - 1f);
+        out[7] = 1.092548f * x * z;
+        out[8] = 0.546274f * (x * x - y * y);
+    }
+
+    /**
+     * Returns the irradiance arriving at a surface from the whole unoccluded environment.
+     * Multiplying by {@code albedo / pi} gives the diffusely reflected radiance.
+     *
+     * @param normal Surface normal (does not have to be normalized).
+     * @return Irradiance per color channel, never negative.
+     */
+    public Vec3 getIrradiance(Vec3 normal) {
+        Vec3 n = normal.normalize();
+        float[] basis = new float[9];
+        evaluateBasis(n.getX(), n.getY(), n.getZ(), basis);
+        float r = 0f, g = 0f, b = 0f;
+        for (int k = 0; k < 9; k++) {
+            r += coefficients[3 * k] * basis[k];
+            g += coefficients[3 * k + 1] * basis[k];
+            b += coefficients[3 * k + 2] * basis[k];
+        }
+        // Ringing of the truncated series can dip below zero opposite very bright regions
+        return new Vec3(Math.max(0f, r), Math.max(0f, g), Math.max(0f, b));
+    }
+}
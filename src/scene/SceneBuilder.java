@@ -8,30 +8,31 @@ import math.geometry.objects.Area;
 import math.geometry.objects.MeshObject;
 import math.geometry.objects.Quadric;
 import math.geometry.objects.SceneObject;
+import math.geometry.objects.csg.CSGCompiler;
+import math.geometry.objects.csg.CSGObject;
 import math.geometry.objects.csg.DifferenceObject;
 import math.geometry.objects.csg.IntersectionObject;
 import math.geometry.objects.sdf.*;
 import stuff.Color;
 import stuff.Material;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SceneBuilder {
 
     public static CubeMap getSkybox() throws IOException {
-        BufferedImage posX = ImageIO.read(new File("src/scene/environment/posx.jpg"));
-        BufferedImage negX = ImageIO.read(new File("src/scene/environment/negx.jpg"));
-        BufferedImage posY = ImageIO.read(new File("src/scene/environment/posy.jpg"));
-        BufferedImage negY = ImageIO.read(new File("src/scene/environment/negy.jpg"));
-        BufferedImage posZ = ImageIO.read(new File("src/scene/environment/posz.jpg"));
-        BufferedImage negZ = ImageIO.read(new File("src/scene/environment/negz.jpg"));
-        return new CubeMap(posX, negX, posY, negY, posZ, negZ);
+        try (AssetLoader assets = new AssetLoader()) {
+            return assets.await(loadSkybox(assets));
+        }
+    }
+
+    public static CompletableFuture<CubeMap> loadSkybox(AssetLoader assets) {
+        return assets.loadSkybox(new File("src/scene/environment"));
     }
 
     public static ArrayList<SceneObject> getObjects() throws IOException {
@@ -106,6 +107,7 @@ public class SceneBuilder {
                 new Quadric(new float[]{0, 0, 0, 0, 0, 0, 0, 0, 1, -1}, material)
         );
 
-        return faces.stream().reduce((a, b) -> new IntersectionObject(a, b, material)).orElseThrow();
+        SceneObject cube = faces.stream().reduce((a, b) -> new IntersectionObject(a, b, material)).orElseThrow();
+        return CSGCompiler.compile((CSGObject) cube);
     }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Checks the sampling densities of the {@link AreaLight} implementations.
+ *
+ * <p>For every light, {@link AreaLight#pdf} must agree with the density {@link AreaLight#sample}
+ * reports, and the irradiance estimated with solid-angle samples must match a reference estimated
+ * by sampling the light's surface uniformly by area. Stratified samples from
+ * {@link AreaLight#stratify} must cover every stratum once and lower the variance. Run with
+ * {@code java -cp out lighting.AreaLightCheck}; a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class AreaLightCheck {
+
+    private static final int REFERENCE_SAMPLES = 2_000_000;
+    private static final int ESTIMATES = 20_000;
+    private static final int SAMPLES_PER_ESTIMATE = 4;
+
+    private AreaLightCheck() {
+    }
+
+    public static void main(String[] args) {
+        checkStratify();
+
+        Vec3 point = new Vec3(0.3f, 0, 0.2f), normal = new Vec3(0.2f, 1, 0).normalize();
+        AreaLight[] lights = {
+                new RectLight(new Vec3(0, 1, 0), 1f, Color.WHITE, new Vec3(0, 0, -1), new Vec3(2, 0, 0)),
+                new DiskLight(new Vec3(0, 1, 0), 1f, 0.8f, Color.WHITE, new Vec3(0, -1, 0)),
+                new SphereLight(new Vec3(0, 1.5f, 0), 1f, 0.7f, Color.WHITE),
+                // Far away, so the rectangle falls back to sampling by area
+                new RectLight(new Vec3(0, 100, 0), 1f, Color.WHITE, new Vec3(0, 0, -0.2f), new Vec3(0.2f, 0, 0))
+        };
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (AreaLight light : lights) {
+            String name = light.getClass().getSimpleName();
+            if (light.getNormal() != null) {
+                Vec3 behind = light.getP().subtract(light.getNormal());
+                expect(light.sample(behind, 0.5f, 0.5f) == null && light.pdf(behind, light.getP()) == 0f, name + " is sampled from behind");
+            }
+
+            double reference = 0;
+            for (int i = 0; i < REFERENCE_SAMPLES; i++) reference += areaEstimate(light, point, normal, random.nextFloat(), random.nextFloat());
+            reference /= REFERENCE_SAMPLES;
+
+            double[] independent = estimates(light, point, normal, false);
+            double[] stratified = estimates(light, point, normal, true);
+            expectClose(reference, independent[0], 0.01, name + " irradiance");
+            expectClose(reference, stratified[0], 0.01, name + " stratified irradiance");
+            expect(stratified[1] <= independent[1] * 1.05, name + " stratified variance " + stratified[1] + " above " + independent[1]);
+        }
+        System.out.println("AreaLightCheck passed");
+    }
+
+    private static void checkStratify() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int count : new int[] {1, 4, 6, 16}) {
+            float[] u = AreaLight.stratify(count, random);
+            int side = (int) Math.sqrt(count);
+            boolean grid = side * side == count;
+            boolean[] rows = new boolean[count], columns = new boolean[count], cells = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                expect(u[2 * i] >= 0f && u[2 * i] < 1f && u[2 * i + 1] >= 0f && u[2 * i + 1] < 1f, "stratified numbers in [0, 1)");
+                if (grid) {
+                    cells[(int) (u[2 * i + 1] * side) * side + (int) (u[2 * i] * side)] = true;
+                } else {
+                    columns[(int) (u[2 * i] * count)] = true;
+                    rows[(int) (u[2 * i + 1] * count)] = true;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                expect(grid ? cells[i] : rows[i] && columns[i], count + " stratified samples leave stratum " + i + " empty");
+            }
+        }
+    }
+
+    /**
+     * Estimates the irradiance from the light many times with its own sampling.
+     *
+     * @return The mean and the variance of the estimates.
+     */
+    private static double[] estimates(AreaLight light, Vec3 point, Vec3 normal, boolean stratified) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double sum = 0, sumSquares = 0;
+        for (int t = 0; t < ESTIMATES; t++) {
+            float[] u = stratified ? AreaLight.stratify(SAMPLES_PER_ESTIMATE, random) : null;
+            double estimate = 0;
+            for (int i = 0; i < SAMPLES_PER_ESTIMATE; i++) {
+                LightSample sample = stratified ? light.sample(point, u[2 * i], u[2 * i + 1])
+                        : light.sample(point, random.nextFloat(), random.nextFloat());
+                if (sample == null) continue;
+                float pdf = light.pdf(point, sample.position());
+                expect(Math.abs(pdf - sample.pdf()) <= 1e-3f * sample.pdf(), "pdf() gives " + pdf + " for a sample of density " + sample.pdf());
+                float cosine = Math.max(0f, sample.position().subtract(point).normalize().dot(normal));
+                estimate += light.getIntensity() * cosine / sample.pdf();
+            }
+            estimate /= SAMPLES_PER_ESTIMATE;
+            sum += estimate;
+            sumSquares += estimate * estimate;
+        }
+        double mean = sum / ESTIMATES;
+        return new double[] {mean, sumSquares / ESTIMATES - mean * mean};
+    }
+
+    /**
+     * Irradiance estimate from one point picked uniformly on the light's surface.
+     */
+    private static double areaEstimate(AreaLight light, Vec3 point, Vec3 normal, float u1, float u2) {
+        Vec3 position = light.samplePosition(u1, u2);
+        Vec3 toLight = position.subtract(point);
+        float distanceSquared = toLight.getLengthSquared();
+        Vec3 direction = toLight.normalize();
+        Vec3 lightNormal = light.getNormal() != null ? light.getNormal() : position.subtract(light.getP()).normalize();
+        float cosine = Math.max(0f, direction.dot(normal)), lightCosine = Math.max(0f, -direction.dot(lightNormal));
+        return light.getIntensity() * cosine * lightCosine / distanceSquared * light.getArea();
+    }
+
+    private static void expectClose(double expected, double actual, double tolerance, String what) {
+        if (Math.abs(actual - expected) > tolerance * expected) {
+            throw new AssertionError(what + ": expected " + expected + " but got " + actual);
+        }
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
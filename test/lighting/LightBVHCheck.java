@@ -0,0 +1,69 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks light selection with {@link LightBVH} against uniform selection.
+ *
+ * <p>Among many spot, point and area lights, drawing one light from the tree and dividing its
+ * contribution by the selection probability must estimate the summed contribution of all lights
+ * without bias, and with a much lower variance than picking lights uniformly. The contribution is
+ * {@link LightResampler#targetPdf}, the unshadowed term the renderer shades with. Run with
+ * {@code java -cp out lighting.LightBVHCheck}; a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class LightBVHCheck {
+
+    private static final int TRIALS = 200_000;
+
+    private LightBVHCheck() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(5);
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Vec3 position = new Vec3(random.nextFloat() * 100 - 50, 8 + random.nextFloat() * 4, random.nextFloat() * 100 - 50);
+            Color color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            lights.add(switch (i % 3) {
+                case 0 -> new SpotLight(position, random.nextFloat() * 2, 0.1f, color, new Vec3(random.nextFloat() - 0.5f, -1, random.nextFloat() - 0.5f),
+                        (float) Math.toRadians(15 + random.nextFloat() * 40), 1f);
+                case 1 -> new Light(position, random.nextFloat(), 0.1f, color);
+                default -> new RectLight(position, random.nextFloat() * 20, color, new Vec3(0, 0, -0.5f), new Vec3(0.5f, 0, 0));
+            });
+        }
+        LightBVH hierarchy = new LightBVH(lights);
+
+        Vec3 normal = new Vec3(0, 1, 0);
+        Vec3[] points = {new Vec3(3, 0, -7), new Vec3(-40, 0, 35), new Vec3(20, 5, 20)};
+        for (Vec3 point : points) {
+            double exact = 0;
+            for (Light light : lights) exact += LightResampler.targetPdf(light, point, normal);
+
+            double sum = 0, sumSquares = 0, uniformSum = 0, uniformSquares = 0;
+            for (int t = 0; t < TRIALS; t++) {
+                LightBVH.Selection selection = hierarchy.sample(point, normal, random.nextFloat());
+                double estimate = selection == null ? 0 : LightResampler.targetPdf(selection.light(), point, normal) / selection.probability();
+                sum += estimate;
+                sumSquares += estimate * estimate;
+                double uniform = LightResampler.targetPdf(lights.get(random.nextInt(lights.size())), point, normal) * lights.size();
+                uniformSum += uniform;
+                uniformSquares += uniform * uniform;
+            }
+            double mean = sum / TRIALS, variance = sumSquares / TRIALS - mean * mean;
+            double uniformMean = uniformSum / TRIALS, uniformVariance = uniformSquares / TRIALS - uniformMean * uniformMean;
+            if (Math.abs(mean - exact) > 0.02 * exact) {
+                throw new AssertionError("estimate " + mean + " instead of " + exact + " at " + point);
+            }
+            if (variance * 2 > uniformVariance) {
+                throw new AssertionError("variance " + variance + " not 2x below uniform selection " + uniformVariance + " at " + point);
+            }
+            System.out.printf("%s: %.1fx lower variance than uniform selection%n", point, uniformVariance / variance);
+        }
+        System.out.println("LightBVHCheck passed");
+    }
+}
@@ -0,0 +1,147 @@
+package lighting;
+
+import math.Vec3;
+import stuff.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the weights of {@link Reservoir} and {@link LightResampler}.
+ *
+ * <p>Scaling a light's contribution by the reservoir weight W must give an unbiased estimate of
+ * the summed contribution of all lights, whether the candidates were streamed into one reservoir
+ * or merged from several, and with or without temporal and spatial reuse between pixels that see
+ * the same surface. Run with {@code java -cp out lighting.LightResamplerCheck}; a mismatch throws
+ * an {@link AssertionError}.</p>
+ */
+public final class LightResamplerCheck {
+
+    private LightResamplerCheck() {
+    }
+
+    public static void main(String[] args) {
+        checkReservoir();
+        checkDiscard();
+        checkResampler();
+        System.out.println("LightResamplerCheck passed");
+    }
+
+    /**
+     * Resampled importance sampling of a discrete function with a target that only roughly follows it.
+     */
+    private static void checkReservoir() {
+        Random random = new Random(5);
+        int n = 50;
+        Light[] lights = new Light[n];
+        float[] target = new float[n], contribution = new float[n];
+        double exact = 0;
+        for (int i = 0; i < n; i++) {
+            lights[i] = new Light(new Vec3(i, 0, 0), 1f, 0f, Color.WHITE);
+            target[i] = i % 7 == 0 ? 0.01f : random.nextFloat();
+            contribution[i] = target[i] * (0.5f + random.nextFloat());
+            exact += contribution[i];
+        }
+
+        int trials = 200_000;
+        double streamed = 0, merged = 0;
+        int[] chosen = new int[n];
+        for (int t = 0; t < trials; t++) {
+            Reservoir single = new Reservoir();
+            Reservoir first = new Reservoir(), second = new Reservoir();
+            for (int k = 0; k < 8; k++) {
+                int i = random.nextInt(n);
+                single.update(lights[i], target[i] * n, target[i], random.nextFloat());
+                int j = random.nextInt(n);
+                (k < 4 ? first : second).update(lights[j], target[j] * n, target[j], random.nextFloat());
+            }
+            single.finish();
+            int kept = (int) single.getLight().getP().getX();
+            chosen[kept]++;
+            streamed += contribution[kept] * single.getWeight();
+
+            first.finish();
+            second.finish();
+            Reservoir combined = new Reservoir();
+            combined.combine(first, target[index(first)], Integer.MAX_VALUE, random.nextFloat());
+            combined.combine(second, target[index(second)], Integer.MAX_VALUE, random.nextFloat());
+            combined.finish();
+            expect(combined.getCount() == 8, "merged reservoir counts " + combined.getCount() + " candidates");
+            merged += contribution[index(combined)] * combined.getWeight();
+        }
+        expectClose(exact, streamed / trials, 0.01, "streamed reservoir estimate");
+        expectClose(exact, merged / trials, 0.01, "merged reservoir estimate");
+        expect(chosen[3] > chosen[7], "light with the higher target is kept more often");
+    }
+
+    private static int index(Reservoir reservoir) {
+        return (int) reservoir.getLight().getP().getX();
+    }
+
+    /**
+     * An occluded light keeps shading with its weight but is not taken over by merging reservoirs.
+     */
+    private static void checkDiscard() {
+        Light light = new Light(new Vec3(0, 1, 0), 1f, 0f, Color.WHITE);
+        Reservoir occluded = new Reservoir();
+        occluded.update(light, 2f, 1f, 0f);
+        occluded.finish();
+        float weight = occluded.getWeight();
+        occluded.discard();
+        expect(occluded.getWeight() == weight && weight > 0f, "discard keeps the weight for shading");
+
+        Reservoir neighbour = new Reservoir();
+        neighbour.combine(occluded, 1f, 20, 0f);
+        neighbour.finish();
+        expect(neighbour.getLight() == null && neighbour.getCount() == 1, "merging skips the occluded light but counts its candidate");
+    }
+
+    /**
+     * Every pixel sees the same surface, so reuse between pixels and passes must not change the mean.
+     */
+    private static void checkResampler() {
+        Random random = new Random(5);
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Vec3 position = new Vec3(random.nextFloat() * 100 - 50, 8 + random.nextFloat() * 4, random.nextFloat() * 100 - 50);
+            Color color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            lights.add(i % 2 == 0
+                    ? new SpotLight(position, random.nextFloat() * 2, 0.1f, color, new Vec3(random.nextFloat() - 0.5f, -1, random.nextFloat() - 0.5f),
+                            (float) Math.toRadians(15 + random.nextFloat() * 40), 1f)
+                    : new Light(position, random.nextFloat(), 0.1f, color));
+        }
+        Vec3 point = new Vec3(3, 0, -7), normal = new Vec3(0, 1, 0);
+        double exact = 0;
+        for (Light light : lights) exact += LightResampler.targetPdf(light, point, normal);
+
+        int width = 64, height = 64;
+        LightResampler[] resamplers = {
+                new LightResampler(width, height, lights, null, 1, 0),
+                new LightResampler(width, height, lights, null, 32, 4),
+                new LightResampler(width, height, lights, new LightBVH(lights), 32, 4)
+        };
+        for (LightResampler resampler : resamplers) {
+            for (int pass = 0; pass < 6; pass++) {
+                double sum = 0;
+                for (int pixel = 0; pixel < width * height; pixel++) {
+                    Reservoir reservoir = resampler.resample(pixel, point, normal, 10f);
+                    expect(resampler.resample(pixel, point, normal, 10f) == reservoir, "one reservoir per pixel and pass");
+                    if (reservoir.getLight() != null) sum += LightResampler.targetPdf(reservoir.getLight(), point, normal) * reservoir.getWeight();
+                }
+                resampler.nextPass();
+                expectClose(exact, sum / (width * height), 0.05, "mean of pass " + pass);
+            }
+        }
+    }
+
+    private static void expectClose(double expected, double actual, double tolerance, String what) {
+        if (Math.abs(actual - expected) > tolerance * expected) {
+            throw new AssertionError(what + ": expected " + expected + " but got " + actual);
+        }
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,93 @@
+package lighting;
+
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.acceleration.SceneAccelerator;
+import math.geometry.objects.SceneObject;
+import math.geometry.objects.Sphere;
+import stuff.Color;
+import stuff.Material;
+
+import java.util.List;
+
+/**
+ * Checks the adaptive soft shadow sampling of {@link ShadowSampler}.
+ *
+ * <p>A sphere floats above a grid of shading points lit by a sphere light and a point light with
+ * a radius. Adaptive sampling must trace far fewer shadow rays than fixed-count sampling, light
+ * fully lit and fully shadowed points exactly, and keep the average visibility of the point light
+ * close to a reference with many samples per point. Run with {@code java -cp out lighting.ShadowSamplerCheck};
+ * a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class ShadowSamplerCheck {
+
+    private static final int GRID = 64;
+    private static final int SAMPLES = 16, PROBE_SAMPLES = 4;
+    private static final int REFERENCE_SAMPLES = 1024;
+
+    private ShadowSamplerCheck() {
+    }
+
+    public static void main(String[] args) {
+        Material material = new Material(Color.WHITE, 0.5f, 0f, 0f, 1f);
+        List<SceneObject> objects = List.of(new Sphere(new Vec3(0, 1, 0), 0.7f, material));
+        ShadowSampler sampler = new ShadowSampler(new SceneAccelerator(objects), objects, SAMPLES, PROBE_SAMPLES, false);
+        Light pointLight = new Light(new Vec3(2, 4, 1), 1f, 0.5f, Color.WHITE);
+        List<Light> lights = List.of(new SphereLight(new Vec3(0, 4, 0), 1f, 0.6f, Color.WHITE), pointLight);
+        Vec3 normal = new Vec3(0, 1, 0);
+
+        ShadowStatistics statistics = new ShadowStatistics(GRID, GRID);
+        double visibility = 0, reference = 0;
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                Vec3 point = new Vec3(-4 + 8f * x / (GRID - 1), 0, -4 + 8f * y / (GRID - 1));
+                Intersection hit = new Intersection(point, normal, 1f, null, material);
+                sampler.resetRayCounts();
+                sampler.shade(hit, lights);
+                sampler.recordRayCounts(statistics, y * GRID + x);
+
+                float factor = 0f;
+                for (Light lit : sampler.shade(hit, List.of(pointLight))) factor += lit.getIntensity() / pointLight.getIntensity();
+                float expected = referenceVisibility(pointLight, point, objects);
+                if (expected == 0f || expected == 1f) {
+                    expect(factor == expected, "visibility " + factor + " instead of " + expected + " at " + point);
+                }
+                visibility += factor;
+                reference += expected;
+            }
+        }
+
+        double saving = (double) sum(statistics, true) / sum(statistics, false);
+        expect(saving >= 3.0, "adaptive sampling traces only " + saving + "x fewer shadow rays");
+        expect(Math.abs(visibility - reference) <= 0.01 * reference, "mean visibility " + visibility + " instead of " + reference);
+        System.out.println("ShadowSamplerCheck passed: " + statistics);
+    }
+
+    /**
+     * Fraction of many jittered light positions that are visible from a point.
+     */
+    private static float referenceVisibility(Light light, Vec3 point, List<SceneObject> objects) {
+        int side = (int) Math.sqrt(REFERENCE_SAMPLES), visible = 0;
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                Vec3 toLight = light.jitterLightPosition((i + 0.5f) / side, (j + 0.5f) / side).subtract(point);
+                Intersection hit = new Ray(point, toLight).getNearestIntersection(objects);
+                if (hit == null || hit.distance() > toLight.getLength()) visible++;
+            }
+        }
+        return (float) visible / (side * side);
+    }
+
+    private static long sum(ShadowStatistics statistics, boolean fixed) {
+        long total = 0;
+        for (int pixel = 0; pixel < statistics.getWidth() * statistics.getHeight(); pixel++) {
+            total += fixed ? statistics.getFixedRays(pixel) : statistics.getRays(pixel);
+        }
+        return total;
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
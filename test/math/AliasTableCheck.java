@@ -0,0 +1,84 @@
+package math;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that {@link AliasTable} draws every outcome with the probability of its weight.
+ *
+ * <p>Sampling is a deterministic function of the uniform number, so sweeping that number over a
+ * fine grid measures the exact share of each outcome without sampling noise. Run with
+ * {@code java -cp out math.AliasTableCheck}; a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class AliasTableCheck {
+
+    private static final int STEPS_PER_OUTCOME = 100_000;
+
+    private AliasTableCheck() {
+    }
+
+    public static void main(String[] args) {
+        check(new float[] {1, 0, 3, 6});
+        check(new float[] {5});
+        check(new float[] {0, 0, 1e-6f, 0});
+
+        Random random = new Random(3);
+        for (int trial = 0; trial < 20; trial++) {
+            float[] weights = new float[1 + random.nextInt(300)];
+            for (int i = 0; i < weights.length; i++) {
+                // Mix of zeros, tiny and dominant weights
+                weights[i] = switch (random.nextInt(4)) {
+                    case 0 -> 0f;
+                    case 1 -> random.nextFloat() * 1e-4f;
+                    case 2 -> random.nextFloat() * 1e4f;
+                    default -> random.nextFloat();
+                };
+            }
+            if (weights[0] == 0f) weights[0] = 1f;
+            check(weights);
+        }
+
+        expectThrows(new float[0]);
+        expectThrows(new float[] {0, 0});
+        expectThrows(new float[] {1, -1});
+        expectThrows(new float[] {1, Float.NaN});
+        expectThrows(new float[] {1, Float.POSITIVE_INFINITY});
+        System.out.println("AliasTableCheck passed");
+    }
+
+    private static void check(float[] weights) {
+        AliasTable table = new AliasTable(weights);
+        double sum = 0;
+        for (float weight : weights) sum += weight;
+        expect(table.size() == weights.length && Math.abs(table.getTotal() - sum) <= 1e-9 * sum, "size and total");
+
+        int steps = STEPS_PER_OUTCOME * weights.length;
+        int[] counts = new int[weights.length];
+        for (int k = 0; k < steps; k++) counts[table.sample((float) ((k + 0.5) / steps))]++;
+        int last = table.sample(0x1.fffffep-1f);
+        expect(weights[last] > 0f, "largest uniform number drew zero-weight outcome " + last);
+
+        for (int i = 0; i < weights.length; i++) {
+            double expected = weights[i] / sum;
+            expect(Math.abs(table.getProbability(i) - expected) <= 1e-6 * Math.max(expected, 1e-3),
+                    "getProbability(" + i + ") = " + table.getProbability(i) + ", expected " + expected);
+            double drawn = (double) counts[i] / steps;
+            expect(Math.abs(drawn - expected) <= 2.0 / STEPS_PER_OUTCOME / weights.length + 1e-6,
+                    "outcome " + i + " drawn with " + drawn + ", expected " + expected);
+            if (weights[i] == 0f) expect(counts[i] == 0, "outcome " + i + " has zero weight but was drawn");
+        }
+    }
+
+    private static void expectThrows(float[] weights) {
+        try {
+            new AliasTable(weights);
+        } catch (IllegalArgumentException expected) {
+            return;
+        }
+        throw new AssertionError("no exception for " + Arrays.toString(weights));
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
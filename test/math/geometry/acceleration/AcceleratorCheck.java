@@ -0,0 +1,141 @@
+package math.geometry.acceleration;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.objects.MeshObject;
+import math.geometry.objects.SceneObject;
+import math.geometry.objects.Sphere;
+import math.geometry.objects.Triangle;
+import math.geometry.objects.mesh.FloatMeshGeometry;
+import math.geometry.objects.mesh.VertexFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that every {@link AcceleratorType} finds the same nearest hits as testing all primitives.
+ *
+ * <p>A random triangle soup is intersected through a mesh built with each accelerator, both by
+ * the closest-hit query and as a full hit list, and compared against its triangles one by one; a scene of spheres and mesh instances is compared the same way
+ * through {@link SceneAccelerator}, whose occlusion queries must also agree, including infinitely
+ * long shadow rays like those towards the environment. Run with {@code java -cp out math.geometry.acceleration.AcceleratorCheck};
+ * a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class AcceleratorCheck {
+
+    private static final int RAYS = 5000;
+    private static final float TOLERANCE = 1e-4f;
+
+    private AcceleratorCheck() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        FloatMeshGeometry soup = triangleSoup(4000, random);
+        List<SceneObject> triangles = new ArrayList<>();
+        float[] corners = new float[9];
+        for (int i = 0; i < soup.getTriangleCount(); i++) {
+            soup.getTriangle(i, corners);
+            triangles.add(new Triangle(new Vec3(corners[0], corners[1], corners[2]), new Vec3(corners[3], corners[4], corners[5]),
+                    new Vec3(corners[6], corners[7], corners[8]), null));
+        }
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            MeshObject mesh = new MeshObject(soup, null, type, VertexFormat.FLOAT);
+            Random rays = new Random(11);
+            for (int i = 0; i < RAYS; i++) {
+                Ray ray = randomRay(rays, 12f);
+                expectSameHit(nearestOfAllHits(triangles, ray), ray.getNearestIntersection(List.of(mesh)), "mesh " + type, ray);
+                expectSameHit(nearestOfAllHits(triangles, ray), nearestOfAllHits(List.of(mesh), ray), "all mesh hits " + type, ray);
+            }
+        }
+
+        MeshObject mesh = new MeshObject(triangleSoup(200, random), null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT);
+        List<SceneObject> objects = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Vec3 center = new Vec3(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+            objects.add(i % 2 == 0
+                    ? new Sphere(center, 0.2f + random.nextFloat() * 0.5f, null)
+                    : mesh.transform(new Mat4().translate(center.getX(), center.getY(), center.getZ()).multiply(new Mat4().scale(0.1f))));
+        }
+        for (AcceleratorType type : AcceleratorType.values()) {
+            SceneAccelerator accelerator = new SceneAccelerator(objects, type);
+            Random rays = new Random(13);
+            for (int i = 0; i < RAYS; i++) {
+                Ray ray = randomRay(rays, 15f);
+                Intersection nearest = nearestOfAllHits(objects, ray);
+                expectSameHit(nearest, ray.getNearestIntersection(accelerator), "scene " + type, ray);
+                expectOcclusion(accelerator, ray, Float.POSITIVE_INFINITY, nearest != null, type);
+                if (nearest != null) {
+                    expectOcclusion(accelerator, ray, 1.001f * nearest.distance(), true, type);
+                    expectOcclusion(accelerator, ray, 0.999f * nearest.distance(), false, type);
+                }
+            }
+        }
+        System.out.println("AcceleratorCheck passed for " + AcceleratorType.values().length + " accelerator types");
+    }
+
+    /**
+     * Scatters small random triangles over the cube [-5, 5]^3.
+     */
+    private static FloatMeshGeometry triangleSoup(int count, Random random) {
+        float[] positions = new float[9 * count];
+        int[] indices = new int[3 * count];
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 10 - 5, y = random.nextFloat() * 10 - 5, z = random.nextFloat() * 10 - 5;
+            for (int c = 0; c < 3; c++) {
+                positions[9 * i + 3 * c] = x + random.nextFloat() - 0.5f;
+                positions[9 * i + 3 * c + 1] = y + random.nextFloat() - 0.5f;
+                positions[9 * i + 3 * c + 2] = z + random.nextFloat() - 0.5f;
+                indices[3 * i + c] = 3 * i + c;
+            }
+        }
+        return new FloatMeshGeometry(positions, indices);
+    }
+
+    /**
+     * Starts a ray on a sphere of the given radius and aims it at a random point near the origin.
+     */
+    private static Ray randomRay(Random random, float radius) {
+        Vec3 origin = new Vec3((float) random.nextGaussian(), (float) random.nextGaussian(), (float) random.nextGaussian()).normalize().multiply(radius);
+        Vec3 target = new Vec3(random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4);
+        return new Ray(origin, target.subtract(origin));
+    }
+
+    /**
+     * Reference closest hit from the full hit lists of {@link SceneObject#intersect}, without any
+     * object's closest-hit shortcut.
+     */
+    private static Intersection nearestOfAllHits(List<SceneObject> objects, Ray ray) {
+        Intersection nearest = null;
+        for (SceneObject object : objects) {
+            for (Intersection hit : object.intersect(ray)) {
+                if (hit.distance() > 1e-4f && (nearest == null || hit.distance() < nearest.distance())) nearest = hit;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Asks the candidates of an occlusion query whether they block the ray, like a shadow ray does.
+     */
+    private static void expectOcclusion(SceneAccelerator accelerator, Ray ray, float maxDistance, boolean expected, AcceleratorType type) {
+        boolean occluded = false;
+        for (SceneObject object : accelerator.getCandidates(ray, maxDistance)) occluded |= object.isOccluding(ray, maxDistance);
+        if (occluded != expected) {
+            throw new AssertionError("occlusion " + type + ": expected " + expected + " within " + maxDistance + " for " + ray);
+        }
+    }
+
+    private static void expectSameHit(Intersection expected, Intersection actual, String what, Ray ray) {
+        boolean same = expected == null ? actual == null
+                : actual != null && Math.abs(expected.distance() - actual.distance()) <= TOLERANCE * Math.max(1f, expected.distance());
+        if (!same) {
+            throw new AssertionError(what + ": expected " + (expected == null ? "miss" : expected.distance())
+                    + " but got " + (actual == null ? "miss" : actual.distance()) + " for " + ray);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package math.geometry.objects.csg;
+
+import math.Vec3;
+import math.geometry.AABB;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.Span;
+import math.geometry.objects.Quadric;
+import math.geometry.objects.SceneObject;
+import math.geometry.objects.Sphere;
+import stuff.Color;
+import stuff.Material;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link CSGCompiler} produces objects equivalent to the CSG trees they come from.
+ *
+ * <p>Random nested unions, intersections and differences of spheres are spread over a large
+ * volume, so most rays cull whole subtrees by their bounds. Hand-built trees cover coincident
+ * boundaries: identical spheres combined with each operation and boxes sharing a face. The spans,
+ * visible hits and inside tests of the compiled object must match those of the tree. Run with
+ * {@code java -cp out math.geometry.objects.csg.CSGCompilerCheck}; a mismatch throws an
+ * {@link AssertionError}.</p>
+ */
+public final class CSGCompilerCheck {
+
+    private static final float TOLERANCE = 1e-4f;
+    private static final Material MATERIAL = new Material(Color.WHITE, 0.5f, 0f, 0f, 1f);
+
+    private CSGCompilerCheck() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(9);
+        int hitRays = 0;
+        for (int tree = 0; tree < 200; tree++) {
+            hitRays += check((CSGObject) randomTree(random, 1 + random.nextInt(5)), random, 500);
+        }
+        expect(hitRays > 10_000, "only " + hitRays + " rays hit the random trees");
+
+        Sphere a = new Sphere(new Vec3(0, 0, 0), 1f, MATERIAL), b = new Sphere(new Vec3(0, 0, 0), 1f, MATERIAL);
+        expect(check(new UnionObject(a, b, MATERIAL), random, 2000) > 0, "union of identical spheres is hit");
+        expect(check(new IntersectionObject(a, b, MATERIAL), random, 2000) > 0, "intersection of identical spheres is hit");
+        check(new DifferenceObject(a, b, MATERIAL), random, 2000);
+        SceneObject box = box(-1, 0), neighbour = box(0, 1);
+        expect(box.isInside(new Vec3(-0.5f, 0.9f, 0)) && !box.isInside(new Vec3(0.5f, 0, 0)), "box half-spaces");
+        expect(check(new UnionObject(box, neighbour, MATERIAL), random, 2000) > 0, "boxes sharing a face are hit");
+        expect(check(new DifferenceObject(new UnionObject(box, neighbour, MATERIAL), box(-0.5f, 0.5f), MATERIAL), random, 2000) > 0,
+                "boxes with a slab cut out are hit");
+        expect(check(new IntersectionObject(box, new DifferenceObject(box(-1, 1), neighbour, MATERIAL), MATERIAL), random, 2000) > 0,
+                "box cut by its neighbour is hit");
+        System.out.println("CSGCompilerCheck passed");
+    }
+
+    /**
+     * Compares the tree and its compiled form on random rays and points.
+     *
+     * @return Number of rays that hit the object.
+     */
+    private static int check(CSGObject tree, Random random, int rays) {
+        CompiledCSGObject compiled = CSGCompiler.compile(tree);
+        AABB bounds = tree.getBounds();
+        boolean aimed = bounds.isBounded() && !bounds.isEmpty();
+        int hitRays = 0;
+        for (int i = 0; i < rays; i++) {
+            // Aim at the tree's bounds, so that rays reach the surface instead of only culling it
+            Vec3 origin = randomPoint(random, 12f);
+            Vec3 target = aimed ? pointIn(bounds, random) : randomPoint(random, 3f);
+            Ray ray = new Ray(origin, target.subtract(origin));
+            // Axis-aligned rays along the shared faces of the boxes
+            if (i % 10 == 0) ray = new Ray(new Vec3(random.nextInt(3) - 1, random.nextFloat() * 2 - 1, -10), new Vec3(0, 0, 1));
+
+            List<Span> expected = tree.intersectSpans(ray), actual = compiled.intersectSpans(ray);
+            if (!expected.isEmpty()) hitRays++;
+            expect(expected.size() == actual.size(), "span count " + actual.size() + " instead of " + expected.size() + " for " + ray);
+            for (int s = 0; s < expected.size(); s++) {
+                expectClose(expected.get(s).start(), actual.get(s).start(), "span start", ray);
+                expectClose(expected.get(s).end(), actual.get(s).end(), "span end", ray);
+            }
+
+            List<Intersection> hits = tree.intersect(ray), compiledHits = compiled.intersect(ray);
+            expect(hits.size() == compiledHits.size(), "hit count " + compiledHits.size() + " instead of " + hits.size() + " for " + ray);
+            for (int h = 0; h < hits.size(); h++) {
+                expectClose(hits.get(h).distance(), compiledHits.get(h).distance(), "hit", ray);
+                expect(hits.get(h).normal().dot(compiledHits.get(h).normal()) > 0.999f, "normal at hit " + h + " for " + ray);
+            }
+
+            Vec3 point = aimed ? pointIn(bounds, random) : randomPoint(random, 3f);
+            expect(tree.isInside(point) == compiled.isInside(point), "inside test at " + point);
+        }
+        return hitRays;
+    }
+
+    private static SceneObject randomTree(Random random, int depth) {
+        if (depth == 0) {
+            return new Sphere(randomPoint(random, 6f), 0.3f + random.nextFloat() * 1.5f, MATERIAL);
+        }
+        SceneObject a = randomTree(random, random.nextInt(depth)), b = randomTree(random, random.nextInt(depth));
+        return switch (random.nextInt(3)) {
+            case 0 -> new UnionObject(a, b, MATERIAL);
+            case 1 -> new IntersectionObject(a, b, MATERIAL);
+            default -> new DifferenceObject(a, b, MATERIAL);
+        };
+    }
+
+    /**
+     * The box {@code [x0, x1] x [-1, 1] x [-1, 1]} as an intersection of half-spaces.
+     */
+    private static SceneObject box(float x0, float x1) {
+        SceneObject result = null;
+        // 2 (a x + b y + c z) + d <= 0 inside each half-space
+        float[][] planes = {{-1, 0, 0, 2 * x0}, {1, 0, 0, -2 * x1}, {0, -1, 0, -2}, {0, 1, 0, -2}, {0, 0, -1, -2}, {0, 0, 1, -2}};
+        for (float[] plane : planes) {
+            SceneObject halfSpace = new Quadric(new float[]{0, 0, 0, 0, 0, 0, plane[0], plane[1], plane[2], plane[3]}, MATERIAL);
+            result = result == null ? halfSpace : new IntersectionObject(result, halfSpace, MATERIAL);
+        }
+        return result;
+    }
+
+    private static Vec3 pointIn(AABB bounds, Random random) {
+        Vec3 size = bounds.size();
+        return bounds.min().add(new Vec3(random.nextFloat() * size.getX(), random.nextFloat() * size.getY(), random.nextFloat() * size.getZ()));
+    }
+
+    private static Vec3 randomPoint(Random random, float extent) {
+        return new Vec3((random.nextFloat() * 2 - 1) * extent, (random.nextFloat() * 2 - 1) * extent, (random.nextFloat() * 2 - 1) * extent);
+    }
+
+    private static void expectClose(float expected, float actual, String what, Ray ray) {
+        boolean same = expected == actual || Math.abs(expected - actual) <= TOLERANCE * Math.max(1f, Math.abs(expected));
+        expect(same, what + " " + actual + " instead of " + expected + " for " + ray);
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,131 @@
+package math.geometry.objects.mesh;
+
+import math.Mat4;
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.objects.Instance;
+import math.geometry.objects.MeshObject;
+import math.geometry.objects.SceneObject;
+import stuff.Material;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link GlbLoader} on a generated {@code .glb} file.
+ *
+ * <p>The file holds an interleaved position and normal buffer, 16-bit indices, one mesh placed by
+ * two nodes (one under a parent with a matrix, one with translation, rotation and scale) and a
+ * blended material with the IOR extension. The loaded objects must hit rays where the same mesh
+ * placed by hand does, and the material factors must come through. Run with
+ * {@code java -cp out math.geometry.objects.mesh.GlbLoaderCheck}; a mismatch throws an
+ * {@link AssertionError}.</p>
+ */
+public final class GlbLoaderCheck {
+
+    private static final float[] CUBE_POSITIONS = {
+            -1, -1, -1, 1, -1, -1, 1, 1, -1, -1, 1, -1,
+            -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, 1, 1
+    };
+    private static final int[] CUBE_INDICES = {
+            0, 2, 1, 0, 3, 2, 4, 5, 6, 4, 6, 7, 0, 1, 5, 0, 5, 4,
+            3, 7, 6, 3, 6, 2, 0, 4, 7, 0, 7, 3, 1, 2, 6, 1, 6, 5
+    };
+
+    private GlbLoaderCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("glbloader", ".glb");
+        file.deleteOnExit();
+        Files.write(file.toPath(), buildGlb());
+
+        List<SceneObject> objects = GlbLoader.load(file);
+        expect(objects.size() == 2, "two placed nodes, got " + objects.size());
+
+        Material material = objects.get(1).getMaterial();
+        expect(material.getRoughness() == 0.3f && material.getMetalness() == 0f, "roughness and metalness factors");
+        expect(Math.abs(material.getIor() - 1.33f) < 1e-6f, "KHR_materials_ior, got " + material.getIor());
+        expect(Math.abs(material.getTransmission() - 0.5f) < 1e-6f, "blended alpha as transmission, got " + material.getTransmission());
+
+        MeshObject cube = new MeshObject(new FloatMeshGeometry(CUBE_POSITIONS, CUBE_INDICES), null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT);
+        Mat4 placement = new Mat4().translate(0, 0, -10).multiply(new Mat4().translate(3, 0, 0))
+                .multiply(new Mat4().rotateY((float) Math.toRadians(90))).multiply(new Mat4().scale(2));
+        SceneObject placed = new Instance(cube, placement);
+
+        Random random = new Random(1);
+        int hits = 0;
+        for (int i = 0; i < 2000; i++) {
+            Ray child = new Ray(new Vec3(random.nextFloat() * 6, random.nextFloat() * 6 - 3, 10), new Vec3(0, 0, -1));
+            hits += expectSameHit(placed.intersect(child), objects.get(0).intersect(child), "child node");
+            Ray root = new Ray(new Vec3(random.nextFloat() * 3 - 1.5f, random.nextFloat() * 3 - 1.5f, 10), new Vec3(0, 0, -1));
+            hits += expectSameHit(cube.intersect(root), objects.get(1).intersect(root), "root node");
+        }
+        expect(hits > 1000, "rays hit the cubes, " + hits + " hits");
+        System.out.println("GlbLoaderCheck passed");
+    }
+
+    /**
+     * Builds a binary glTF file with the cube placed twice.
+     */
+    private static byte[] buildGlb() {
+        int vertexCount = CUBE_POSITIONS.length / 3;
+        ByteBuffer bin = ByteBuffer.allocate(vertexCount * 24 + CUBE_INDICES.length * 2 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int v = 0; v < vertexCount; v++) {
+            float x = CUBE_POSITIONS[3 * v], y = CUBE_POSITIONS[3 * v + 1], z = CUBE_POSITIONS[3 * v + 2];
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            bin.putFloat(x).putFloat(y).putFloat(z).putFloat(x / length).putFloat(y / length).putFloat(z / length);
+        }
+        int indexOffset = bin.position();
+        for (int index : CUBE_INDICES) bin.putShort((short) index);
+        while (bin.position() % 4 != 0) bin.put((byte) 0);
+        int binLength = bin.position();
+
+        String json = "{\"asset\":{\"version\":\"2.0\"},\"scene\":0,\"scenes\":[{\"nodes\":[0,2]}],"
+                + "\"nodes\":[{\"matrix\":[1,0,0,0,0,1,0,0,0,0,1,0,0,0,-10,1],\"children\":[1]},"
+                + "{\"mesh\":0,\"translation\":[3,0,0],\"rotation\":[0,0.7071068,0,0.7071068],\"scale\":[2,2,2]},{\"mesh\":0}],"
+                + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0,\"NORMAL\":1},\"indices\":2,\"material\":0}]}],"
+                + "\"materials\":[{\"pbrMetallicRoughness\":{\"baseColorFactor\":[1,0.5,0.25,0.5],\"metallicFactor\":0,\"roughnessFactor\":0.3},"
+                + "\"alphaMode\":\"BLEND\",\"extensions\":{\"KHR_materials_ior\":{\"ior\":1.33}}}],"
+                + "\"accessors\":[{\"bufferView\":0,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC3\",\"min\":[-1,-1,-1],\"max\":[1,1,1]},"
+                + "{\"bufferView\":0,\"byteOffset\":12,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC3\"},"
+                + "{\"bufferView\":1,\"componentType\":5123,\"count\":" + CUBE_INDICES.length + ",\"type\":\"SCALAR\"}],"
+                + "\"bufferViews\":[{\"buffer\":0,\"byteOffset\":0,\"byteLength\":" + vertexCount * 24 + ",\"byteStride\":24},"
+                + "{\"buffer\":0,\"byteOffset\":" + indexOffset + ",\"byteLength\":" + CUBE_INDICES.length * 2 + "}],"
+                + "\"buffers\":[{\"byteLength\":" + binLength + "}]}";
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        int jsonLength = (jsonBytes.length + 3) / 4 * 4;
+
+        ByteBuffer glb = ByteBuffer.allocate(12 + 8 + jsonLength + 8 + binLength).order(ByteOrder.LITTLE_ENDIAN);
+        glb.putInt(0x46546C67).putInt(2).putInt(glb.capacity());
+        glb.putInt(jsonLength).putInt(0x4E4F534A).put(jsonBytes);
+        while (glb.position() % 4 != 0) glb.put((byte) ' ');
+        glb.putInt(binLength).putInt(0x004E4942).put(bin.array(), 0, binLength);
+        return glb.array();
+    }
+
+    /**
+     * @return 1 if both lists report the same nearest hit, 0 if both miss.
+     */
+    private static int expectSameHit(List<Intersection> expected, List<Intersection> actual, String what) {
+        expect(expected.isEmpty() == actual.isEmpty(), what + ": hit and miss disagree");
+        if (expected.isEmpty()) return 0;
+        float near = Float.POSITIVE_INFINITY, nearActual = Float.POSITIVE_INFINITY;
+        for (Intersection hit : expected) near = Math.min(near, hit.distance());
+        for (Intersection hit : actual) nearActual = Math.min(nearActual, hit.distance());
+        expect(Math.abs(near - nearActual) < 1e-4f, what + ": nearest hit " + nearActual + " instead of " + near);
+        return 1;
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,145 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.acceleration.BVH;
+import math.geometry.objects.MeshObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link MeshCache} on a generated OBJ file.
+ *
+ * <p>A mesh is built through the cache, which parses the file and stores an entry; the entry must
+ * reload with the parsed arrays and the built hierarchy, and a second mesh built from it must hit
+ * rays exactly where the first does. A truncated entry must be rejected by {@code load} and
+ * rewritten on the next build, and editing the OBJ must give a new key whose entry replaces the
+ * old one. Run with {@code java -cp out math.geometry.objects.mesh.MeshCacheCheck}; a mismatch
+ * throws an {@link AssertionError}.</p>
+ */
+public final class MeshCacheCheck {
+
+    private static final int GRID = 60;
+
+    private MeshCacheCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("meshcache").toFile();
+        File obj = new File(directory, "terrain.obj");
+        File cacheDirectory = new File(directory, "cache");
+        writeTerrain(obj, 0f);
+        MeshCache cache = new MeshCache(cacheDirectory);
+
+        MeshCache.Key key = cache.key(obj, AcceleratorType.SAH_BVH, VertexFormat.FLOAT);
+        expect(cache.load(key) == null, "no entry before the first build");
+        MeshObject parsed = new MeshObject(obj, null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT, cache);
+        File entryFile = cache.getFile(key);
+        expect(entryFile.isFile(), "entry written to " + entryFile);
+
+        MeshCache.Entry entry = cache.load(key);
+        expect(entry != null, "stored entry loads");
+        FloatMeshGeometry source = ObjParser.parse(obj);
+        FloatMeshGeometry cached = entry.geometry();
+        expect(Arrays.equals(cached.positions(), source.positions()), "positions");
+        expect(Arrays.equals(cached.indices(), source.indices()), "indices");
+        expect(Arrays.equals(cached.normals(), source.normals()) && cached.hasNormals(), "normals");
+        expect(Arrays.equals(cached.texCoords(), source.texCoords()) && cached.hasTexCoords(), "texture coordinates");
+        BVH built = (BVH) parsed.getAccelerator(), hierarchy = entry.hierarchy();
+        expect(hierarchy != null && hierarchy.getNodeCount() == built.getNodeCount(), "node count");
+        expect(Arrays.equals(hierarchy.nodeBounds(), Arrays.copyOf(built.nodeBounds(), 6 * built.getNodeCount())), "node bounds");
+        expect(Arrays.equals(hierarchy.nodes(), Arrays.copyOf(built.nodes(), 2 * built.getNodeCount())), "node links");
+        expect(Arrays.equals(hierarchy.primitiveIndices(), built.primitiveIndices()), "primitive indices");
+        expect(hierarchy.getBuildMethod() == built.getBuildMethod(), "build method");
+
+        MeshObject loaded = new MeshObject(obj, null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT, cache);
+        int hits = expectSameHits(parsed, loaded);
+        expect(hits > 1000, "rays hit the terrain, " + hits + " hits");
+
+        try (RandomAccessFile file = new RandomAccessFile(entryFile, "rw")) {
+            file.setLength(file.length() - 4);
+        }
+        expect(cache.load(key) == null, "truncated entry is rejected");
+        try (RandomAccessFile file = new RandomAccessFile(entryFile, "rw")) {
+            file.setLength(MeshCache.HEADER_SIZE - 1);
+        }
+        expect(cache.load(key) == null, "entry shorter than its header is rejected");
+        expectSameHits(parsed, new MeshObject(obj, null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT, cache));
+        expect(cache.load(key) != null, "rejected entry is rewritten");
+
+        writeTerrain(obj, 0.25f);
+        MeshCache.Key edited = cache.key(obj, AcceleratorType.SAH_BVH, VertexFormat.FLOAT);
+        expect(edited.contentHash() != key.contentHash() && !cache.getFile(edited).equals(entryFile), "edited OBJ gets a new key");
+        expect(cache.load(edited) == null, "no entry for the edited OBJ yet");
+        MeshObject reparsed = new MeshObject(obj, null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT, cache);
+        expect(cache.getFile(edited).isFile() && !entryFile.exists(), "stale entry replaced by " + cache.getFile(edited));
+        expectSameHits(new MeshObject(ObjParser.parse(obj), null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT), reparsed);
+
+        for (File file : cacheDirectory.listFiles()) file.delete();
+        cacheDirectory.delete();
+        obj.delete();
+        directory.delete();
+        System.out.println("MeshCacheCheck passed: " + hits + " hits");
+    }
+
+    /**
+     * Writes a wavy height field with per-vertex normals and texture coordinates, raised by the given offset.
+     */
+    private static void writeTerrain(File file, float offset) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int j = 0; j <= GRID; j++) {
+                for (int i = 0; i <= GRID; i++) {
+                    float x = 10f * i / GRID - 5f, z = 10f * j / GRID - 5f;
+                    writer.println("v " + x + " " + (float) (Math.sin(x) * Math.cos(z) + offset) + " " + z);
+                    writer.println("vt " + (float) i / GRID + " " + (float) j / GRID);
+                    Vec3 normal = new Vec3((float) (-Math.cos(x) * Math.cos(z)), 1f, (float) (Math.sin(x) * Math.sin(z))).normalize();
+                    writer.println("vn " + normal.getX() + " " + normal.getY() + " " + normal.getZ());
+                }
+            }
+            for (int j = 0; j < GRID; j++) {
+                for (int i = 0; i < GRID; i++) {
+                    int a = j * (GRID + 1) + i + 1, b = a + 1, c = a + GRID + 1, d = c + 1;
+                    writer.println("f " + a + "/" + a + "/" + a + " " + c + "/" + c + "/" + c + " " + b + "/" + b + "/" + b);
+                    writer.println("f " + b + "/" + b + "/" + b + " " + c + "/" + c + "/" + c + " " + d + "/" + d + "/" + d);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shoots rays down onto both meshes; hits must agree exactly, since both hold the same arrays.
+     *
+     * @return Number of rays that hit.
+     */
+    private static int expectSameHits(MeshObject expected, MeshObject actual) {
+        Random random = new Random(3);
+        int hits = 0;
+        for (int i = 0; i < 2000; i++) {
+            Vec3 origin = new Vec3(random.nextFloat() * 12 - 6, 5, random.nextFloat() * 12 - 6);
+            Ray ray = new Ray(origin, new Vec3(random.nextFloat() - 0.5f, -1, random.nextFloat() - 0.5f));
+            Intersection a = ray.getNearestIntersection(List.of(expected));
+            Intersection b = ray.getNearestIntersection(List.of(actual));
+            if (a == null || b == null) {
+                expect(a == b, "hit versus miss for " + ray);
+                continue;
+            }
+            expect(a.distance() == b.distance() && a.primitiveId() == b.primitiveId(), "hit distance for " + ray);
+            expect(a.normal().subtract(b.normal()).getLength() == 0f, "shading normal for " + ray);
+            hits++;
+        }
+        return hits;
+    }
+
+    private static void expect(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
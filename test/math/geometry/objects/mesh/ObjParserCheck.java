@@ -0,0 +1,104 @@
+package math.geometry.objects.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link ObjParser} against {@link Float#parseFloat} and a hand-written polygon file.
+ *
+ * <p>The number check writes more than {@link ObjParser#CHUNK_SIZE} bytes of vertices in many
+ * notations, including mantissas longer than a double holds, so the file is parsed in several
+ * chunks; every coordinate must equal {@code Float.parseFloat} of its text. The face check covers
+ * the corner forms, negative indices and fan triangulation. Run with
+ * {@code java -cp out math.geometry.objects.mesh.ObjParserCheck}; a mismatch throws an
+ * {@link AssertionError}.</p>
+ */
+public final class ObjParserCheck {
+
+    private ObjParserCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        checkNumbers();
+        checkFaces();
+        System.out.println("ObjParserCheck passed");
+    }
+
+    private static void checkNumbers() throws IOException {
+        Random random = new Random(4);
+        List<String> values = new ArrayList<>();
+        long bytes = 0;
+        while (bytes < ObjParser.CHUNK_SIZE + (1 << 20) || values.size() % 9 != 0) {
+            String value = switch (values.size() % 6) {
+                case 0 -> Float.toString(random.nextFloat() * 200 - 100);
+                case 1 -> String.format("%.6f", random.nextGaussian() * 10);
+                case 2 -> Double.toString(random.nextDouble());
+                case 3 -> "0.12345678901234567890123";
+                case 4 -> String.format("%.3e", random.nextGaussian() * 1e-5);
+                default -> Integer.toString(random.nextInt(2001) - 1000);
+            };
+            values.add(value);
+            bytes += value.length() + 1;
+        }
+
+        File file = File.createTempFile("objparser", ".obj");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < values.size(); i += 3) writer.println("v " + values.get(i) + " " + values.get(i + 1) + " " + values.get(i + 2));
+            for (int i = 0; i < values.size() / 9; i++) writer.println("f " + (3 * i + 1) + " " + (3 * i + 2) + " " + (3 * i + 3));
+        }
+
+        FloatMeshGeometry geometry = ObjParser.parse(file);
+        expect(geometry.getTriangleCount() == values.size() / 9, "triangle count " + geometry.getTriangleCount());
+        float[] corners = new float[9];
+        for (int i = 0; i < geometry.getTriangleCount(); i++) {
+            geometry.getTriangle(i, corners);
+            for (int k = 0; k < 9; k++) {
+                String text = values.get(9 * i + k);
+                expect(corners[k] == Float.parseFloat(text), text + " parsed as " + corners[k]);
+            }
+        }
+    }
+
+    private static void checkFaces() throws IOException {
+        File file = File.createTempFile("objfaces", ".obj");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("# unit square in z = 0 and a triangle above it");
+            writer.println("o square");
+            writer.println("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0");
+            writer.println("vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1");
+            writer.println("vn 0 0 1");
+            writer.println("f 1/1/1 2/2/1 3/3/1 4/4/1");
+            writer.println("v 0 0 1\nv 1 0 1\nv 0 1 1");
+            writer.println("f -3/1/1 -2/2/1 -1/4/1");
+        }
+
+        FloatMeshGeometry geometry = ObjParser.parse(file);
+        expect(geometry.getTriangleCount() == 3, "quad and triangle give " + geometry.getTriangleCount() + " triangles");
+        expect(geometry.hasNormals() && geometry.hasTexCoords(), "normals and texture coordinates kept");
+        float[] corners = new float[9];
+        geometry.getTriangle(2, corners);
+        expect(corners[2] == 1f && corners[5] == 1f && corners[8] == 1f, "negative indices resolve to the last vertices");
+
+        float area = 0f;
+        float[] normal = new float[3];
+        for (int i = 0; i < 2; i++) {
+            geometry.getTriangle(i, corners);
+            float ux = corners[3] - corners[0], uy = corners[4] - corners[1];
+            float vx = corners[6] - corners[0], vy = corners[7] - corners[1];
+            area += 0.5f * (ux * vy - uy * vx);
+            geometry.getNormal(geometry.getIndex(i, 0), normal, 0);
+            expect(normal[2] == 1f, "normal of the square");
+        }
+        expect(Math.abs(area - 1f) < 1e-6f, "fan triangulation covers the square, area " + area);
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
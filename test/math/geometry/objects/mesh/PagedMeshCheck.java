@@ -0,0 +1,193 @@
+package math.geometry.objects.mesh;
+
+import math.Vec3;
+import math.geometry.Intersection;
+import math.geometry.Ray;
+import math.geometry.acceleration.AcceleratorType;
+import math.geometry.acceleration.BVH;
+import math.geometry.acceleration.PagedBVH;
+import math.geometry.objects.MeshObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Checks {@link PagedMesh} against the same mesh held in the heap.
+ *
+ * <p>A random triangle soup is written to a paged mesh file in a temporary directory and opened
+ * again; the mapped mesh must find the same nearest hits as a {@link MeshObject} over the
+ * in-heap geometry. The node records of the file are then matched against the hierarchy they were
+ * written from, and every treelet, grown from its root by largest area first as the writer does,
+ * must lie within one 4 KiB page. Run with {@code java -cp out math.geometry.objects.mesh.PagedMeshCheck};
+ * a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class PagedMeshCheck {
+
+    private static final int RAYS = 5000;
+    private static final float TOLERANCE = 1e-4f;
+    private static final int PAGE_SIZE = 4096;
+    private static final int TREELET_NODES = PAGE_SIZE / PagedBVH.NODE_BYTES;
+
+    private PagedMeshCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        FloatMeshGeometry soup = triangleSoup(20000, new Random(5));
+        BVH hierarchy = BVH.build(soup.getTriangleBounds());
+
+        File directory = Files.createTempDirectory("pagedmesh").toFile();
+        directory.deleteOnExit();
+        File file = new File(directory, "soup.mesh");
+        file.deleteOnExit();
+        PagedMesh.write(file, soup, hierarchy);
+
+        MeshObject paged = PagedMesh.open(file, null);
+        MeshObject heap = new MeshObject(soup, null, AcceleratorType.SAH_BVH, VertexFormat.FLOAT);
+        Random rays = new Random(11);
+        int hits = 0;
+        for (int i = 0; i < RAYS; i++) {
+            Ray ray = randomRay(rays, 12f);
+            Intersection expected = ray.getNearestIntersection(List.of(heap));
+            Intersection actual = ray.getNearestIntersection(List.of(paged));
+            expectSameHit(expected, actual, ray);
+            if (expected != null) hits++;
+        }
+        expect(hits > RAYS / 2, "most rays hit the soup, got " + hits);
+
+        int pages = checkTreelets(file, hierarchy);
+        System.out.println("PagedMeshCheck passed: " + hits + " hits, " + hierarchy.getNodeCount()
+                + " nodes in " + pages + " treelet pages");
+    }
+
+    /**
+     * Finds the record of every node by following the child links in the file from the root, then
+     * groups the nodes into treelets the way {@link PagedBVH} does and checks the page of each.
+     *
+     * @return Number of distinct pages the records occupy.
+     */
+    private static int checkTreelets(File file, BVH hierarchy) throws IOException {
+        ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            contents = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                // read the whole file
+            }
+        }
+        int recordCount = contents.getInt(20);
+        long nodeOffset = contents.getLong(88);
+        expect(nodeOffset % PAGE_SIZE == 0, "node records start on a page boundary, got offset " + nodeOffset);
+
+        float[] nodeBounds = hierarchy.nodeBounds();
+        int[] nodes = hierarchy.nodes();
+        int nodeCount = hierarchy.getNodeCount();
+        int[] position = new int[nodeCount];
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int node = pending.poll();
+            int record = (int) nodeOffset + PagedBVH.NODE_BYTES * position[node];
+            expect(position[node] < recordCount, "record of node " + node + " lies within the record count");
+            for (int k = 0; k < 6; k++) {
+                expect(contents.getFloat(record + 4 * k) == nodeBounds[6 * node + k], "bounds of node " + node);
+            }
+            int a = contents.getInt(record + 24), b = contents.getInt(record + 28);
+            if (nodes[2 * node + 1] > 0) {
+                expect(a == nodes[2 * node] && b == -nodes[2 * node + 1], "leaf range of node " + node);
+            } else {
+                expect(a >>> 30 == -nodes[2 * node + 1], "split axis of node " + node);
+                position[node + 1] = a & ((1 << 30) - 1);
+                position[nodes[2 * node]] = b;
+                pending.add(node + 1);
+                pending.add(nodes[2 * node]);
+            }
+        }
+
+        // Same greedy growth as the writer, so a treelet split across pages cannot hide in a shared page
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((p, q) -> Float.compare(area(nodeBounds, q), area(nodeBounds, p)));
+        ArrayDeque<Integer> roots = new ArrayDeque<>();
+        roots.add(0);
+        int treelets = 0, largest = 0;
+        BitSet pages = new BitSet();
+        while (!roots.isEmpty()) {
+            frontier.add(roots.poll());
+            long page = -1;
+            int size = 0;
+            while (size < TREELET_NODES && !frontier.isEmpty()) {
+                int node = frontier.poll();
+                long nodePage = (nodeOffset + (long) PagedBVH.NODE_BYTES * position[node]) / PAGE_SIZE;
+                if (page < 0) page = nodePage;
+                expect(nodePage == page, "treelet " + treelets + " crosses from page " + page + " to " + nodePage);
+                size++;
+                if (nodes[2 * node + 1] <= 0) {
+                    frontier.add(node + 1);
+                    frontier.add(nodes[2 * node]);
+                }
+            }
+            roots.addAll(frontier);
+            frontier.clear();
+            pages.set((int) page);
+            largest = Math.max(largest, size);
+            treelets++;
+        }
+        expect(largest == TREELET_NODES && treelets > 1, "hierarchy spans several full treelets, got " + treelets);
+        return pages.cardinality();
+    }
+
+    private static float area(float[] box, int node) {
+        int offset = 6 * node;
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        if (dx < 0f || dy < 0f || dz < 0f) return 0f;
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /**
+     * Scatters small random triangles over the cube [-5, 5]^3.
+     */
+    private static FloatMeshGeometry triangleSoup(int count, Random random) {
+        float[] positions = new float[9 * count];
+        int[] indices = new int[3 * count];
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 10 - 5, y = random.nextFloat() * 10 - 5, z = random.nextFloat() * 10 - 5;
+            for (int c = 0; c < 3; c++) {
+                positions[9 * i + 3 * c] = x + random.nextFloat() - 0.5f;
+                positions[9 * i + 3 * c + 1] = y + random.nextFloat() - 0.5f;
+                positions[9 * i + 3 * c + 2] = z + random.nextFloat() - 0.5f;
+                indices[3 * i + c] = 3 * i + c;
+            }
+        }
+        return new FloatMeshGeometry(positions, indices);
+    }
+
+    /**
+     * Starts a ray on a sphere of the given radius and aims it at a random point near the origin.
+     */
+    private static Ray randomRay(Random random, float radius) {
+        Vec3 origin = new Vec3((float) random.nextGaussian(), (float) random.nextGaussian(), (float) random.nextGaussian()).normalize().multiply(radius);
+        Vec3 target = new Vec3(random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4);
+        return new Ray(origin, target.subtract(origin));
+    }
+
+    private static void expectSameHit(Intersection expected, Intersection actual, Ray ray) {
+        boolean same = expected == null ? actual == null
+                : actual != null && Math.abs(expected.distance() - actual.distance()) <= TOLERANCE * Math.max(1f, expected.distance());
+        if (!same) {
+            throw new AssertionError("paged mesh: expected " + (expected == null ? "miss" : expected.distance())
+                    + " but got " + (actual == null ? "miss" : actual.distance()) + " for " + ray);
+        }
+    }
+
+    private static void expect(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,110 @@
+package scene;
+
+import math.Vec3;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Checks the importance sampling of a {@link CubeMap}.
+ *
+ * <p>For an environment with a small bright sun, the density must integrate to one over the
+ * sphere, {@link CubeMap#sampleDirection} must report the density {@link CubeMap#pdf} gives for
+ * the same direction, and estimating irradiance with it must agree with cosine-weighted sampling
+ * at a fraction of the variance. Run with {@code java -cp out scene.EnvironmentSamplingCheck};
+ * a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class EnvironmentSamplingCheck {
+
+    private static final int ESTIMATES = 2000;
+    private static final int SAMPLES_PER_ESTIMATE = 16;
+
+    private EnvironmentSamplingCheck() {
+    }
+
+    public static void main(String[] args) {
+        CubeMap map = sunAndSky(128);
+        Random random = new Random(2);
+
+        // Integral of the density over the sphere, with uniformly distributed directions
+        double integral = 0;
+        int n = 1_000_000;
+        for (int i = 0; i < n; i++) integral += map.pdf(uniformDirection(random));
+        integral *= 4 * Math.PI / n;
+        expect(Math.abs(integral - 1) < 0.01, "density integrates to " + integral);
+
+        for (int i = 0; i < 20_000; i++) {
+            CubeMap.DirectionSample sample = map.sampleDirection(random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+            float pdf = map.pdf(sample.direction());
+            expect(Math.abs(pdf - sample.pdf()) <= 1e-3f * sample.pdf(), "sampled pdf " + sample.pdf() + " but pdf() gives " + pdf);
+        }
+
+        Vec3 normal = new Vec3(0, 1, 0);
+        double[] cosine = irradianceEstimates(map, normal, random, false);
+        double[] environment = irradianceEstimates(map, normal, random, true);
+        double error = Math.abs(cosine[0] - environment[0]) / cosine[0];
+        expect(error < 0.02, "irradiance " + environment[0] + " differs from cosine sampling " + cosine[0]);
+        expect(environment[1] < 0.25 * cosine[1], "variance " + environment[1] + " not well below cosine sampling " + cosine[1]);
+        System.out.printf("EnvironmentSamplingCheck passed: irradiance %.4f against %.4f, variance %.3g instead of %.3g%n",
+                environment[0], cosine[0], environment[1], cosine[1]);
+    }
+
+    /**
+     * A dim sky with a bright sun on the positive y face.
+     */
+    static CubeMap sunAndSky(int size) {
+        BufferedImage[] faces = new BufferedImage[6];
+        for (int face = 0; face < 6; face++) {
+            faces[face] = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    boolean sun = face == 2 && Math.hypot(x - 0.4 * size, y - 0.55 * size) < size / 32.0;
+                    faces[face].setRGB(x, y, sun ? 0xFFFFFF : face == 2 ? 0x404060 : 0x101010);
+                }
+            }
+        }
+        return new CubeMap(faces[0], faces[1], faces[2], faces[3], faces[4], faces[5]);
+    }
+
+    /**
+     * Estimates the red irradiance at a normal many times.
+     *
+     * @return The mean and the variance of the estimates.
+     */
+    private static double[] irradianceEstimates(CubeMap map, Vec3 normal, Random random, boolean importance) {
+        double sum = 0, sumSquares = 0;
+        for (int k = 0; k < ESTIMATES; k++) {
+            double estimate = 0;
+            for (int j = 0; j < SAMPLES_PER_ESTIMATE; j++) {
+                Vec3 direction;
+                float pdf;
+                if (importance) {
+                    CubeMap.DirectionSample sample = map.sampleDirection(random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+                    direction = sample.direction();
+                    pdf = sample.pdf();
+                } else {
+                    // Cosine-weighted around +y
+                    double r = Math.sqrt(random.nextDouble()), phi = 2 * Math.PI * random.nextDouble();
+                    direction = new Vec3((float) (r * Math.cos(phi)), (float) Math.sqrt(Math.max(0, 1 - r * r)), (float) (r * Math.sin(phi)));
+                    pdf = direction.getY() / (float) Math.PI;
+                }
+                float cos = normal.dot(direction);
+                if (cos > 0f && pdf > 0f) estimate += map.sample(direction).getR() * cos / pdf;
+            }
+            estimate /= SAMPLES_PER_ESTIMATE;
+            sum += estimate;
+            sumSquares += estimate * estimate;
+        }
+        double mean = sum / ESTIMATES;
+        return new double[] {mean, sumSquares / ESTIMATES - mean * mean};
+    }
+
+    static Vec3 uniformDirection(Random random) {
+        double z = 2 * random.nextDouble() - 1, phi = 2 * Math.PI * random.nextDouble(), r = Math.sqrt(1 - z * z);
+        return new Vec3((float) (r * Math.cos(phi)), (float) (r * Math.sin(phi)), (float) z);
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,119 @@
+package scene;
+
+import math.Vec3;
+import stuff.Color;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Checks {@link IrradianceSH} against closed-form and Monte Carlo irradiance.
+ *
+ * <p>Radiance that is a polynomial of degree two in the direction lies entirely in bands 0 to 2,
+ * so its projected irradiance must match the analytic integral up to the texel discretization.
+ * For a cube map with a sharp horizon, the truncated series must stay within a few percent of a
+ * Monte Carlo estimate of the full hemisphere integral, measured against the brightest irradiance
+ * of each channel as in Ramamoorthi and Hanrahan's error bound; in near-black directions the
+ * relative error of the three bands is much larger. Run with {@code java -cp out scene.IrradianceSHCheck};
+ * a mismatch throws an {@link AssertionError}.</p>
+ */
+public final class IrradianceSHCheck {
+
+    private static final Vec3[] NORMALS = {
+            new Vec3(0, 1, 0), new Vec3(0, -1, 0), new Vec3(1, 0, 0), new Vec3(0, 0, -1),
+            new Vec3(0.3f, 0.5f, -0.8f).normalize(), new Vec3(-0.6f, -0.2f, 0.7f).normalize()
+    };
+
+    private IrradianceSHCheck() {
+    }
+
+    public static void main(String[] args) {
+        checkPolynomialRadiance();
+        checkAgainstMonteCarlo();
+        System.out.println("IrradianceSHCheck passed");
+    }
+
+    /**
+     * Red is constant, green linear and blue quadratic in the direction:
+     * {@code L = (1, 1 + y / 2, 1 + z^2)} gives {@code E = (pi, pi + pi / 3 * ny, 5 pi / 4 + pi / 4 * nz^2)}.
+     */
+    private static void checkPolynomialRadiance() {
+        int size = 64;
+        float[][] faces = new float[6][3 * size * size];
+        float[] d = new float[3];
+        for (int f = 0; f < 6; f++) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    CubeMap.direction(f, 2f * (x + 0.5f) / size - 1f, 2f * (y + 0.5f) / size - 1f, d);
+                    float length = (float) Math.sqrt(d[0] * d[0] + d[1] * d[1] + d[2] * d[2]);
+                    int at = 3 * (y * size + x);
+                    faces[f][at] = 1f;
+                    faces[f][at + 1] = 1f + 0.5f * d[1] / length;
+                    faces[f][at + 2] = 1f + d[2] * d[2] / (length * length);
+                }
+            }
+        }
+        IrradianceSH sh = IrradianceSH.project(faces, size);
+        for (Vec3 n : NORMALS) {
+            Vec3 expected = new Vec3((float) Math.PI, (float) (Math.PI + Math.PI / 3 * n.getY()),
+                    (float) (5 * Math.PI / 4 + Math.PI / 4 * n.getZ() * n.getZ()));
+            float[] scale = {expected.getX(), expected.getY(), expected.getZ()};
+            expectClose(expected, sh.getIrradiance(n), 0.005f, scale, "polynomial radiance at " + n);
+        }
+    }
+
+    private static void checkAgainstMonteCarlo() {
+        int size = 128;
+        BufferedImage[] faces = new BufferedImage[6];
+        for (int face = 0; face < 6; face++) {
+            faces[face] = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    int sideColor = y < size / 2 ? 0x8080A0 : 0x404030;
+                    faces[face].setRGB(x, y, face == 2 ? 0xC0C0FF : face == 3 ? 0x302010 : sideColor);
+                }
+            }
+        }
+        CubeMap map = new CubeMap(faces[0], faces[1], faces[2], faces[3], faces[4], faces[5]);
+        IrradianceSH sh = map.getIrradiance();
+
+        Random random = new Random(3);
+        int samples = 400_000;
+        Vec3[] expected = new Vec3[NORMALS.length];
+        float[] peak = new float[3];
+        for (int k = 0; k < NORMALS.length; k++) {
+            Vec3 n = NORMALS[k];
+            double r = 0, g = 0, b = 0;
+            for (int i = 0; i < samples; i++) {
+                CubeMap.DirectionSample sample = map.sampleDirection(random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+                float cos = n.dot(sample.direction());
+                if (cos <= 0f || sample.pdf() <= 0f) continue;
+                Color radiance = map.sample(sample.direction());
+                float weight = cos / sample.pdf();
+                r += radiance.getR() * weight;
+                g += radiance.getG() * weight;
+                b += radiance.getB() * weight;
+            }
+            expected[k] = new Vec3((float) (r / samples), (float) (g / samples), (float) (b / samples));
+            peak[0] = Math.max(peak[0], expected[k].getX());
+            peak[1] = Math.max(peak[1], expected[k].getY());
+            peak[2] = Math.max(peak[2], expected[k].getZ());
+        }
+        for (int k = 0; k < NORMALS.length; k++) {
+            expectClose(expected[k], sh.getIrradiance(NORMALS[k]), 0.03f, peak, "cube map irradiance at " + NORMALS[k]);
+        }
+    }
+
+    /**
+     * Fails if a channel differs by more than {@code tolerance * scale[channel]}.
+     */
+    private static void expectClose(Vec3 expected, Vec3 actual, float tolerance, float[] scale, String what) {
+        float[] e = {expected.getX(), expected.getY(), expected.getZ()};
+        float[] a = {actual.getX(), actual.getY(), actual.getZ()};
+        for (int c = 0; c < 3; c++) {
+            if (Math.abs(a[c] - e[c]) > tolerance * scale[c]) {
+                throw new AssertionError(what + ": expected " + expected + " but got " + actual);
+            }
+        }
+    }
+}